@@ -0,0 +1,198 @@
+package org.griddynamics.bench;
+
+import org.griddynamics.domain.Directory;
+import org.griddynamics.domain.File;
+import org.griddynamics.service.DatabaseService;
+import org.griddynamics.service.InMemoryMetadataRepository;
+import org.griddynamics.service.MetadataRepository;
+import org.griddynamics.service.StorageService;
+import org.postgresql.ds.PGSimpleDataSource;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * A drive to measure: an {@link InMemoryMetadataRepository} or a {@link DatabaseService} on
+ * PostgreSQL, a {@link StorageService} in a temporary folder, and a generated tree under a folder
+ * of its own.
+ * <p>
+ * The PostgreSQL backend connects to {@code -Dbench.db.url} (default: the local database from
+ * the README) as {@code -Dbench.db.user} with {@code -Dbench.db.password}; the schema must have
+ * been created with init.sql. The tree is built through the same calls as uploads, so rollups
+ * and digests are maintained, and it is deleted again on {@link #close()}.
+ */
+public class BenchDrive implements AutoCloseable {
+
+    /** Backend answering from an {@link InMemoryMetadataRepository}. */
+    public static final String MEMORY = "memory";
+
+    /** Backend on a running PostgreSQL. */
+    public static final String POSTGRES = "postgres";
+
+    /** The PostgreSQL connection, or {@code null} on the in-memory backend. */
+    private final Connection connection;
+    private final MetadataRepository db;
+    private final StorageService storage;
+    private final Path storageDir;
+    private final List<Directory> directories = new ArrayList<>();
+    private final List<File> files = new ArrayList<>();
+    private Directory top;
+
+    private BenchDrive(Connection connection, MetadataRepository db, Path storageDir) {
+        this.connection = connection;
+        this.db = db;
+        this.storageDir = storageDir;
+        this.storage = new StorageService(storageDir.toString());
+    }
+
+    /**
+     * Opens a drive with an empty tree.
+     *
+     * @param backend {@link #MEMORY} or {@link #POSTGRES}.
+     * @return The drive.
+     * @throws SQLException If PostgreSQL cannot be reached.
+     * @throws IOException  If the storage folder cannot be created.
+     */
+    public static BenchDrive open(String backend) throws SQLException, IOException {
+        Path base = Path.of(System.getProperty("bench.dir", System.getProperty("java.io.tmpdir")));
+        return switch (backend) {
+            case MEMORY -> new BenchDrive(null, new InMemoryMetadataRepository(), Files.createTempDirectory(base, "drive"));
+            case POSTGRES -> {
+                Connection connection = postgres().getConnection();
+                yield new BenchDrive(connection, new DatabaseService(connection), Files.createTempDirectory(base, "drive"));
+            }
+            default -> throw new IllegalArgumentException("Unknown backend " + backend);
+        };
+    }
+
+    /**
+     * Returns the configured PostgreSQL database.
+     *
+     * @return The data source.
+     */
+    public static DataSource postgres() {
+        PGSimpleDataSource postgres = new PGSimpleDataSource();
+        postgres.setURL(System.getProperty("bench.db.url", "jdbc:postgresql://localhost:5432/jhil_database"));
+        postgres.setUser(System.getProperty("bench.db.user", "jhkumari"));
+        postgres.setPassword(System.getProperty("bench.db.password", "abcd1234"));
+        return postgres;
+    }
+
+    /**
+     * Creates a tree under a new folder in root: {@code fanOut} folders per folder down to
+     * {@code depth} levels, and {@code filesPerDirectory} files in every folder below the top.
+     *
+     * @param depth             The levels of folders below the top one.
+     * @param fanOut            The subfolders per folder.
+     * @param filesPerDirectory The files per folder.
+     * @param fileSize          The size of each file in bytes.
+     * @return The top folder.
+     */
+    public Directory createTree(int depth, int fanOut, int filesPerDirectory, int fileSize) {
+        Directory root = db.getRootDirectory();
+        top = mkdir(root, "bench-" + System.nanoTime());
+        byte[] content = new byte[fileSize];
+        List<Directory> level = List.of(top);
+        for (int d = 0; d < depth; d++) {
+            List<Directory> next = new ArrayList<>();
+            for (Directory parent : level) {
+                for (int i = 0; i < fanOut; i++) {
+                    Directory dir = mkdir(parent, "folder-" + d + "-" + i);
+                    directories.add(dir);
+                    next.add(dir);
+                    for (int f = 0; f < filesPerDirectory; f++) {
+                        files.add(upload(dir, "document-" + f + ".pdf", content));
+                    }
+                }
+            }
+            level = next;
+        }
+        return top;
+    }
+
+    /**
+     * Creates a folder.
+     *
+     * @param parent The parent folder.
+     * @param name   The name.
+     * @return The saved folder.
+     */
+    public Directory mkdir(Directory parent, String name) {
+        Directory dir = new Directory();
+        dir.setName(name);
+        dir.setParentId(parent.getId());
+        dir.setPath(parent.getPath() + "/" + name);
+        db.saveDirectory(dir);
+        return dir;
+    }
+
+    /**
+     * Uploads a file.
+     *
+     * @param parent  The folder.
+     * @param name    The name, with its extension.
+     * @param content The content.
+     * @return The saved file.
+     */
+    public File upload(Directory parent, String name, byte[] content) {
+        File file = new File();
+        file.setName(name);
+        file.setParentId(parent.getId());
+        file.setFileType(name.substring(name.lastIndexOf('.') + 1));
+        file.setFileSize(content.length);
+        db.saveFile(file, new ByteArrayInputStream(content), storage);
+        return file;
+    }
+
+    public MetadataRepository db() {
+        return db;
+    }
+
+    public StorageService storage() {
+        return storage;
+    }
+
+    /**
+     * Returns the folders of the generated tree, level by level, without the top one.
+     *
+     * @return The folders.
+     */
+    public List<Directory> directories() {
+        return directories;
+    }
+
+    /**
+     * Returns the files of the generated tree, in creation order.
+     *
+     * @return The files.
+     */
+    public List<File> files() {
+        return files;
+    }
+
+    /**
+     * Deletes the generated tree and its blobs, and closes the connection if there is one.
+     */
+    @Override
+    public void close() throws SQLException, IOException {
+        try {
+            if (top != null) db.deleteDirectory(top.getId());
+        } finally {
+            if (connection != null) connection.close();
+            try (Stream<Path> blobs = Files.walk(storageDir)) {
+                for (Path path : blobs.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+}
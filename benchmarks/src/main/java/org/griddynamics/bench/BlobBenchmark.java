@@ -0,0 +1,72 @@
+package org.griddynamics.bench;
+
+import org.griddynamics.domain.File;
+import org.griddynamics.service.StorageService;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Time per blob and bytes allocated per blob ({@code -prof gc}) when {@link StorageService}
+ * writes an upload (with its SHA-256) and copies a stored blob out, from small documents to
+ * large media. Blobs go under {@code -Dbench.dir} (default: the temp directory).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlobBenchmark {
+
+    @Param({"4096", "1048576", "67108864"})
+    int size;
+
+    private Path dir;
+    private StorageService storage;
+    private byte[] content;
+    private File stored;
+    private Path target;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory(Path.of(System.getProperty("bench.dir", System.getProperty("java.io.tmpdir"))),
+                "blob");
+        storage = new StorageService(dir.resolve("storage").toString());
+        content = new byte[size];
+        new Random(1).nextBytes(content);
+        stored = new File();
+        stored.setId(2);
+        stored.setFileType("bin");
+        storage.saveFileToDisk(stored.getId(), new ByteArrayInputStream(content), stored.getFileType());
+        target = dir.resolve("copy.bin");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public byte[] write() throws Exception {
+        return storage.saveFileToDisk(1, new ByteArrayInputStream(content), "bin");
+    }
+
+    /** Includes deleting the previous copy, as copyBlob only creates new files. */
+    @Benchmark
+    public long read() throws IOException {
+        Files.deleteIfExists(target);
+        return storage.copyBlob(stored, target);
+    }
+}
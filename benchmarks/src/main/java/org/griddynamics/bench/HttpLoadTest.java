@@ -0,0 +1,123 @@
+package org.griddynamics.bench;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test for the HTTP server mode. Each client uploads one file, then for the given number of
+ * seconds alternates full downloads and random 64 KiB range requests, and the test reports
+ * requests per second, bytes per second and latency percentiles. Responses with 503 are counted
+ * separately: they are the server shedding load at its configured limits.
+ * <pre>
+ *   java -cp target/benchmarks.jar org.griddynamics.bench.HttpLoadTest http://localhost:8080 64 30 1048576
+ * </pre>
+ */
+public final class HttpLoadTest {
+
+    private static final int RANGE_SIZE = 64 * 1024;
+
+    private HttpLoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 4) {
+            System.err.println("usage: HttpLoadTest <base-url> <clients> <seconds> <file-size>");
+            System.exit(2);
+        }
+        String baseUrl = args[0];
+        int clients = Integer.parseInt(args[1]);
+        long seconds = Long.parseLong(args[2]);
+        int fileSize = Integer.parseInt(args[3]);
+
+        HttpClient client = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        String folder = "root/load-" + System.currentTimeMillis();
+        check(client.send(HttpRequest.newBuilder(URI.create(baseUrl + "/api/dirs/" + folder))
+                .POST(HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.ofString()), 201);
+        byte[] content = new byte[fileSize];
+        new Random(42).nextBytes(content);
+        for (int i = 0; i < clients; i++) {
+            check(client.send(HttpRequest.newBuilder(URI.create(baseUrl + "/api/files/" + folder + "/f" + i + ".bin"))
+                    .PUT(HttpRequest.BodyPublishers.ofByteArray(content)).build(), HttpResponse.BodyHandlers.ofString()), 201);
+        }
+
+        AtomicLong rejected = new AtomicLong();
+        AtomicLong bytes = new AtomicLong();
+        long deadline = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+        List<Future<long[]>> results = new ArrayList<>();
+        try (ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                URI uri = URI.create(baseUrl + "/api/files/" + folder + "/f" + i + ".bin");
+                results.add(workers.submit(() -> run(client, uri, fileSize, deadline, rejected, bytes)));
+            }
+        }
+
+        long[] latencies = results.stream().map(HttpLoadTest::join).flatMapToLong(Arrays::stream).sorted().toArray();
+        System.out.printf("clients=%d file=%d B requests=%d rejected=%d%n", clients, fileSize, latencies.length, rejected.get());
+        System.out.printf("throughput: %.0f req/s, %.1f MiB/s%n",
+                (double) latencies.length / seconds, (double) bytes.get() / seconds / (1024 * 1024));
+        System.out.printf("latency ms: p50=%.2f p95=%.2f p99=%.2f max=%.2f%n",
+                percentile(latencies, 50), percentile(latencies, 95), percentile(latencies, 99),
+                percentile(latencies, 100));
+    }
+
+    private static long[] run(HttpClient client, URI uri, int fileSize, long deadline,
+                              AtomicLong rejected, AtomicLong bytes) throws Exception {
+        long[] latencies = new long[1024];
+        int count = 0;
+        for (boolean range = false; System.nanoTime() < deadline; range = !range) {
+            HttpRequest.Builder request = HttpRequest.newBuilder(uri).GET();
+            if (range && fileSize > RANGE_SIZE) {
+                long start = ThreadLocalRandom.current().nextLong(fileSize - RANGE_SIZE);
+                request.header("Range", "bytes=" + start + "-" + (start + RANGE_SIZE - 1));
+            }
+            long started = System.nanoTime();
+            HttpResponse<byte[]> response = client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+            long took = System.nanoTime() - started;
+            if (response.statusCode() == 503) {
+                rejected.incrementAndGet();
+                continue;
+            }
+            check(response, range && fileSize > RANGE_SIZE ? 206 : 200);
+            bytes.addAndGet(response.body().length);
+            if (count == latencies.length) latencies = Arrays.copyOf(latencies, count * 2);
+            latencies[count++] = took;
+        }
+        return Arrays.copyOf(latencies, count);
+    }
+
+    private static void check(HttpResponse<?> response, int expected) {
+        if (response.statusCode() != expected) {
+            throw new IllegalStateException(response.request().method() + " " + response.uri()
+                    + " returned " + response.statusCode() + ": " + response.body());
+        }
+    }
+
+    private static long[] join(Future<long[]> result) {
+        try {
+            return result.get();
+        } catch (Exception e) {
+            throw new IllegalStateException("Client failed", e);
+        }
+    }
+
+    private static double percentile(long[] sorted, int p) {
+        if (sorted.length == 0) return 0;
+        int index = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1_000_000.0;
+    }
+}
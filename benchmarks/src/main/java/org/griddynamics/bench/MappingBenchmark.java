@@ -0,0 +1,52 @@
+package org.griddynamics.bench;
+
+import org.griddynamics.db.EntityRowMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rows per second and bytes allocated per row ({@code -prof gc}, gc.alloc.rate.norm) when
+ * mapping a listing page to entities, before and after the switch to index-based mapping.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MappingBenchmark {
+
+    static final int ROWS = 10_000;
+
+    /** Every n-th row is a directory. */
+    @Param({"10"})
+    int directoryEvery;
+
+    private RowsResultSet rows;
+
+    @Setup
+    public void setUp() {
+        rows = new RowsResultSet(ROWS, directoryEvery);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void byName(Blackhole blackhole) throws SQLException {
+        rows.beforeFirst();
+        while (rows.next()) {
+            blackhole.consume(ByNameMapping.map(rows));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void byIndex(Blackhole blackhole) throws SQLException {
+        rows.beforeFirst();
+        while (rows.next()) {
+            blackhole.consume(EntityRowMapper.map(rows));
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package org.griddynamics.bench;
+
+import org.griddynamics.app.MenuBar;
+import org.griddynamics.domain.Directory;
+import org.griddynamics.domain.StorageEntity;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time per call of the metadata paths behind the menu, on a generated tree: listing a folder,
+ * computing the folders a folder may not be moved into, and renaming a folder, which rewrites
+ * the paths of its subtree. The {@code memory} backend runs on the in-memory repository, so it
+ * measures the tree operations without SQL; {@code postgres} runs the same calls through
+ * {@code DatabaseService}, adding the statements, the server and the round trips. Menu output goes to a null stream, so
+ * rendering is measured without the console.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetadataBenchmark {
+
+    @Param({BenchDrive.MEMORY, BenchDrive.POSTGRES})
+    String backend;
+
+    /** Folder levels below the benchmark's top folder. */
+    @Param({"3"})
+    int depth;
+
+    @Param({"8"})
+    int fanOut;
+
+    @Param({"10"})
+    int filesPerDirectory;
+
+    private BenchDrive drive;
+    private Directory subtree;
+    private PrintStream console;
+    private int renames;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException, IOException {
+        drive = BenchDrive.open(backend);
+        drive.createTree(depth, fanOut, filesPerDirectory, 1024);
+        // A first-level folder: fanOut^(depth-1) folders below it
+        subtree = drive.directories().get(0);
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException, IOException {
+        System.setOut(console);
+        drive.close();
+    }
+
+    @Benchmark
+    public List<StorageEntity> getChildren() {
+        return drive.db().getChildren(subtree.getId());
+    }
+
+    @Benchmark
+    public void listItems() {
+        MenuBar.listItemsInDirectory(drive.db(), subtree, true, false);
+    }
+
+    @Benchmark
+    public Set<Integer> descendantDirectoryIds() {
+        return drive.db().getAllDescendantDirectoryIds(subtree.getId());
+    }
+
+    @Benchmark
+    public void listValidDestinations() {
+        MenuBar.listValidDestinationDirectories(drive.db(), subtree);
+    }
+
+    @Benchmark
+    public void renameSubtree() {
+        drive.db().rename(subtree.getId(), "renamed-" + (renames++ & 1), true);
+    }
+}
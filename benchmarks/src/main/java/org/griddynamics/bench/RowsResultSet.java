@@ -0,0 +1,174 @@
+package org.griddynamics.bench;
+
+import org.griddynamics.db.SqlQueries;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * In-memory result set over synthetic storage_entities rows, laid out as
+ * {@link SqlQueries#ENTITY_COLUMNS}.
+ * <p>
+ * It behaves like a JDBC driver where it matters for mapping cost: labels resolve through a
+ * hash map, and every {@code getString} or {@code getTimestamp} call decodes a fresh object.
+ */
+public class RowsResultSet extends ResultSetAdapter {
+
+    private final Map<String, Integer> columnIndex = new HashMap<>();
+    private final int rows;
+    private final int[] ids;
+    private final byte[][] names;
+    private final int[] parentIds;
+    private final boolean[] directories;
+    private final byte[][] fileTypes;
+    private final long[] fileSizes;
+    private final byte[][] paths;
+    private final long[] createdAt;
+    private final long[] updatedAt;
+    private final int[] childCounts;
+    private final long[] fileCounts;
+    private final long[] totalBytes;
+    private int row = -1;
+
+    /**
+     * Generates rows where every {@code directoryEvery}-th row is a directory.
+     *
+     * @param rows           The number of rows.
+     * @param directoryEvery The spacing of directory rows.
+     */
+    public RowsResultSet(int rows, int directoryEvery) {
+        String[] columns = SqlQueries.ENTITY_COLUMNS.split(",\\s*");
+        for (int i = 0; i < columns.length; i++) {
+            columnIndex.put(columns[i], i + 1);
+        }
+        this.rows = rows;
+        ids = new int[rows];
+        names = new byte[rows][];
+        parentIds = new int[rows];
+        directories = new boolean[rows];
+        fileTypes = new byte[rows][];
+        fileSizes = new long[rows];
+        paths = new byte[rows][];
+        createdAt = new long[rows];
+        updatedAt = new long[rows];
+        childCounts = new int[rows];
+        fileCounts = new long[rows];
+        totalBytes = new long[rows];
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < rows; i++) {
+            boolean directory = i % directoryEvery == 0;
+            String name = directory ? "folder-" + i : "document-" + i + ".pdf";
+            ids[i] = i + 2;
+            names[i] = name.getBytes(StandardCharsets.UTF_8);
+            parentIds[i] = 1;
+            directories[i] = directory;
+            fileTypes[i] = directory ? null : "pdf".getBytes(StandardCharsets.UTF_8);
+            fileSizes[i] = directory ? 0 : 1024L * (i % 4096);
+            paths[i] = ("root/projects/2024/" + name).getBytes(StandardCharsets.UTF_8);
+            createdAt[i] = now - i * 60_000L;
+            updatedAt[i] = now - i * 30_000L;
+            childCounts[i] = directory ? 12 : 0;
+            fileCounts[i] = directory ? 340 : 0;
+            totalBytes[i] = directory ? 1L << 30 : 0;
+        }
+    }
+
+    @Override
+    public boolean next() {
+        return ++row < rows;
+    }
+
+    @Override
+    public void beforeFirst() {
+        row = -1;
+    }
+
+    @Override
+    public int findColumn(String columnLabel) throws SQLException {
+        Integer index = columnIndex.get(columnLabel);
+        if (index == null) {
+            throw new SQLException("Unknown column " + columnLabel);
+        }
+        return index;
+    }
+
+    @Override
+    public int getInt(int columnIndex) throws SQLException {
+        return switch (columnIndex) {
+            case 1 -> ids[row];
+            case 3 -> parentIds[row];
+            case 10 -> childCounts[row];
+            default -> throw new SQLException("Not an int column: " + columnIndex);
+        };
+    }
+
+    @Override
+    public long getLong(int columnIndex) throws SQLException {
+        return switch (columnIndex) {
+            case 6 -> fileSizes[row];
+            case 11 -> fileCounts[row];
+            case 12 -> totalBytes[row];
+            default -> getInt(columnIndex);
+        };
+    }
+
+    @Override
+    public boolean getBoolean(int columnIndex) throws SQLException {
+        if (columnIndex != 4) {
+            throw new SQLException("Not a boolean column: " + columnIndex);
+        }
+        return directories[row];
+    }
+
+    @Override
+    public String getString(int columnIndex) throws SQLException {
+        byte[] bytes = switch (columnIndex) {
+            case 2 -> names[row];
+            case 5 -> fileTypes[row];
+            case 7 -> paths[row];
+            default -> throw new SQLException("Not a text column: " + columnIndex);
+        };
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public Timestamp getTimestamp(int columnIndex) throws SQLException {
+        return switch (columnIndex) {
+            case 8 -> new Timestamp(createdAt[row]);
+            case 9 -> new Timestamp(updatedAt[row]);
+            default -> throw new SQLException("Not a timestamp column: " + columnIndex);
+        };
+    }
+
+    @Override
+    public int getInt(String columnLabel) throws SQLException {
+        return getInt(findColumn(columnLabel));
+    }
+
+    @Override
+    public long getLong(String columnLabel) throws SQLException {
+        return getLong(findColumn(columnLabel));
+    }
+
+    @Override
+    public boolean getBoolean(String columnLabel) throws SQLException {
+        return getBoolean(findColumn(columnLabel));
+    }
+
+    @Override
+    public String getString(String columnLabel) throws SQLException {
+        return getString(findColumn(columnLabel));
+    }
+
+    @Override
+    public Timestamp getTimestamp(String columnLabel) throws SQLException {
+        return getTimestamp(findColumn(columnLabel));
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,94 @@
+package org.griddynamics.bench;
+
+import org.griddynamics.service.SegmentedCopier;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to copy one large file: the stream copy that saveFileToDisk used, a sequential channel
+ * copy, and {@link SegmentedCopier}. Files are created under {@code -Dbench.dir} (default: the
+ * temp directory), which should be on the disk being measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TransferBenchmark {
+
+    @Param({"1073741824"})
+    long size;
+
+    @Param({"67108864"})
+    long segmentSize;
+
+    @Param({"4"})
+    int parallelism;
+
+    private Path dir;
+    private Path source;
+    private Path target;
+
+    @Setup(Level.Trial)
+    public void createSource() throws IOException {
+        dir = Files.createTempDirectory(Path.of(System.getProperty("bench.dir", System.getProperty("java.io.tmpdir"))),
+                "transfer");
+        source = dir.resolve("source.bin");
+        target = dir.resolve("target.bin");
+        byte[] chunk = new byte[1 << 20];
+        new Random(1).nextBytes(chunk);
+        try (OutputStream out = Files.newOutputStream(source)) {
+            for (long written = 0; written < size; written += chunk.length) {
+                out.write(chunk, 0, (int) Math.min(chunk.length, size - written));
+            }
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteTarget() throws IOException {
+        Files.deleteIfExists(target);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteSource() throws IOException {
+        Files.deleteIfExists(source);
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public long sequentialStream() throws IOException {
+        try (InputStream in = Files.newInputStream(source);
+             OutputStream out = Files.newOutputStream(target, StandardOpenOption.CREATE_NEW)) {
+            return in.transferTo(out);
+        }
+    }
+
+    @Benchmark
+    public long sequentialChannel() throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long position = 0;
+            while (position < size) {
+                position += in.transferTo(position, size - position, out);
+            }
+            return position;
+        }
+    }
+
+    @Benchmark
+    public long segmented() throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+            return new SegmentedCopier(0, segmentSize, parallelism).copy(in, target);
+        }
+    }
+}
@@ -0,0 +1,546 @@
+package org.griddynamics.bench;
+
+import org.griddynamics.app.BatchRunner;
+import org.griddynamics.app.BatchSummary;
+import org.griddynamics.domain.Directory;
+import org.griddynamics.domain.File;
+import org.griddynamics.domain.StorageEntity;
+import org.griddynamics.service.DatabaseService;
+import org.griddynamics.service.InMemoryMetadataRepository;
+import org.griddynamics.service.MetadataRepository;
+import org.griddynamics.service.StorageService;
+
+import javax.sql.DataSource;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Scale test for the metadata and storage services.
+ * <p>
+ * It first generates a tree under a new {@code workload-*} folder in root: folders with a given
+ * depth and fan-out, and files whose sizes follow a log-normal distribution. The tree is created
+ * with batch scripts run by {@link BatchRunner}, the bulk path of the application, in chunks.
+ * Then a number of simulated users replay a weighted mix of list, search, upload, download,
+ * rename, move and delete for a while. Finally it reports throughput and latency percentiles
+ * per operation.
+ * <pre>
+ *   java -cp target/benchmarks.jar org.griddynamics.bench.Workload --backend memory \
+ *       --depth 4 --fan-out 10 --files 20 --users 16 --seconds 60
+ * </pre>
+ * Everything runs locally: {@code memory} uses one {@link InMemoryMetadataRepository} that the
+ * batch workers and users share, {@code postgres} the database set with {@code -Dbench.db.*}
+ * (see {@link BenchDrive}), with a connection per batch worker and per user. Blobs and the sample files
+ * uploads are read from go under {@code -Dbench.dir}. Operations address items by ID, so
+ * renames and moves do not invalidate what other users picked. Moves and deletes only take files,
+ * so the folder tree stays intact for the whole run.
+ */
+public final class Workload {
+
+    /** Operations of the replay, with their default weight in the mix. */
+    enum Op {
+        LIST(30), SEARCH(10), UPLOAD(15), DOWNLOAD(25), RENAME(8), MOVE(7), DELETE(5);
+
+        final int defaultWeight;
+
+        Op(int defaultWeight) {
+            this.defaultWeight = defaultWeight;
+        }
+    }
+
+    /** Script lines run by one {@link BatchRunner} call while generating. */
+    private static final int CHUNK = 10_000;
+
+    /** Sample files uploads are taken from. */
+    private static final int POOL = 256;
+
+    private static final Map<String, String> DEFAULTS = Map.ofEntries(
+            Map.entry("backend", BenchDrive.MEMORY),
+            Map.entry("depth", "3"),
+            Map.entry("fan-out", "10"),
+            Map.entry("files", "20"),
+            Map.entry("entities", "0"),
+            Map.entry("size-median", "65536"),
+            Map.entry("size-sigma", "2.0"),
+            Map.entry("size-max", "67108864"),
+            Map.entry("load-workers", "8"),
+            Map.entry("users", "16"),
+            Map.entry("seconds", "60"),
+            Map.entry("warmup", "10"),
+            Map.entry("catalog", "100000"),
+            Map.entry("mix", ""),
+            Map.entry("seed", "42"),
+            Map.entry("keep", "false"));
+
+    private final Map<String, String> options;
+    /** The PostgreSQL database, or {@code null} on the in-memory backend. */
+    private final DataSource dataSource;
+    private final Path work;
+    private final StorageService storage;
+    private final MetadataRepository db;
+    private final List<Path> pool = new ArrayList<>();
+
+    /** The normalized path of the generated tree's top folder. */
+    private final String top = "root/workload-" + System.currentTimeMillis();
+
+    private Workload(Map<String, String> options, DataSource dataSource, MetadataRepository db) throws IOException {
+        this.options = options;
+        this.dataSource = dataSource;
+        Path base = Path.of(System.getProperty("bench.dir", System.getProperty("java.io.tmpdir")));
+        this.work = Files.createTempDirectory(base, "workload");
+        this.storage = new StorageService(work.resolve("storage").toString());
+        this.db = db;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        if (options == null) {
+            System.err.println("usage: Workload [--option value]... with options and defaults:");
+            DEFAULTS.entrySet().stream().sorted(Map.Entry.comparingByKey())
+                    .forEach(e -> System.err.printf("  --%-13s %s%n", e.getKey(), e.getValue()));
+            System.err.println("  mix example: list=30,search=10,upload=15,download=25,rename=8,move=7,delete=5");
+            System.exit(2);
+        }
+        switch (options.get("backend")) {
+            case BenchDrive.MEMORY -> new Workload(options, null, new InMemoryMetadataRepository()).run();
+            case BenchDrive.POSTGRES -> {
+                DataSource dataSource = BenchDrive.postgres();
+                try (Connection connection = dataSource.getConnection()) {
+                    new Workload(options, dataSource, new DatabaseService(connection)).run();
+                }
+            }
+            default -> throw new IllegalArgumentException("Unknown backend " + options.get("backend"));
+        }
+    }
+
+    private void run() throws Exception {
+        try {
+            createPool();
+            // Creates the root of an empty backend
+            db.getRootDirectory();
+            generate();
+            Catalog catalog = Catalog.load(db, db.resolveDirectoryId(top), integer("catalog"));
+            System.out.printf(Locale.ROOT, "catalog: %d folders, %d files%n", catalog.folders.size(), catalog.files.size());
+            replay(catalog);
+        } finally {
+            if (!Boolean.parseBoolean(options.get("keep"))) {
+                Integer topId = db.resolveDirectoryId(top);
+                if (topId != null) db.deleteDirectory(topId);
+                delete(work);
+            } else {
+                System.out.println("kept " + top + " and blobs in " + work);
+            }
+        }
+    }
+
+    /** Writes the sample files, with log-normal sizes and a type that goes with the size. */
+    private void createPool() throws IOException {
+        Random random = new Random(integer("seed"));
+        byte[] chunk = new byte[1 << 20];
+        random.nextBytes(chunk);
+        Path dir = Files.createDirectories(work.resolve("pool"));
+        for (int i = 0; i < POOL; i++) {
+            long size = sampleSize(random);
+            Path file = dir.resolve("f" + i + "." + typeOf(size));
+            try (OutputStream out = Files.newOutputStream(file)) {
+                for (long written = 0; written < size; written += chunk.length) {
+                    out.write(chunk, 0, (int) Math.min(chunk.length, size - written));
+                }
+            }
+            pool.add(file);
+        }
+    }
+
+    private long sampleSize(Random random) {
+        double size = Double.parseDouble(options.get("size-median"))
+                * Math.exp(Double.parseDouble(options.get("size-sigma")) * random.nextGaussian());
+        return Math.max(1, Math.min(Long.parseLong(options.get("size-max")), Math.round(size)));
+    }
+
+    private static String typeOf(long size) {
+        if (size < 16 << 10) return "txt";
+        if (size < 1 << 20) return "pdf";
+        if (size < 16 << 20) return "jpg";
+        return "mp4";
+    }
+
+    /**
+     * Creates the tree level by level. Folder k of level d is named by the base-fan-out digits of
+     * k, so paths are computed rather than kept, and each folder gets distinct sample files.
+     */
+    private void generate() {
+        int depth = integer("depth");
+        int fanOut = integer("fan-out");
+        int files = Math.min(integer("files"), POOL);
+        long limit = Long.parseLong(options.get("entities"));
+        BatchRunner runner = dataSource == null
+                ? new BatchRunner(db, storage, integer("load-workers"))
+                : new BatchRunner(dataSource, (DatabaseService) db, storage, integer("load-workers"));
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        Random random = new Random(integer("seed"));
+        List<String> lines = new ArrayList<>(CHUNK);
+        lines.add("mkdir /" + top);
+        long entities = 1;
+        long failed = 0;
+        long started = System.nanoTime();
+        long levelSize = 1;
+        for (int d = 1; d <= depth && (limit == 0 || entities < limit); d++) {
+            levelSize *= fanOut;
+            for (long k = 0; k < levelSize && (limit == 0 || entities < limit); k++) {
+                String folder = folderPath(d, k, fanOut);
+                lines.add("mkdir " + folder);
+                entities++;
+                int first = random.nextInt(POOL);
+                for (int f = 0; f < files && (limit == 0 || entities < limit); f++) {
+                    lines.add("upload " + pool.get((first + f) % POOL) + " " + folder);
+                    entities++;
+                }
+                if (lines.size() >= CHUNK) {
+                    failed += runChunk(runner, lines, discard);
+                    System.out.printf(Locale.ROOT, "generated %,d entities%n", entities);
+                }
+            }
+        }
+        failed += runChunk(runner, lines, discard);
+        double seconds = (System.nanoTime() - started) / 1e9;
+        System.out.printf(Locale.ROOT, "tree: %,d entities in %.1f s (%.0f/s) by %d workers, %d failed%n",
+                entities, seconds, entities / seconds, integer("load-workers"), failed);
+    }
+
+    private String folderPath(int depth, long index, int fanOut) {
+        String[] names = new String[depth];
+        for (int d = depth - 1; d >= 0; d--) {
+            names[d] = "dir-" + index % fanOut;
+            index /= fanOut;
+        }
+        return "/" + top + "/" + String.join("/", names);
+    }
+
+    private static int runChunk(BatchRunner runner, List<String> lines, PrintStream discard) {
+        BatchSummary summary = runner.run(lines, discard, System.err);
+        lines.clear();
+        return summary.getFailed();
+    }
+
+    /** Runs the users, then prints the per-operation report. */
+    private void replay(Catalog catalog) throws Exception {
+        Op[] mix = mix(options.get("mix"));
+        int users = integer("users");
+        long warmupEnd = System.nanoTime() + integer("warmup") * 1_000_000_000L;
+        long end = warmupEnd + integer("seconds") * 1_000_000_000L;
+        AtomicInteger names = new AtomicInteger();
+        List<Future<Map<Op, Stats>>> results = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(users);
+        try {
+            for (int i = 0; i < users; i++) {
+                User user = new User(i, catalog, mix, names, new Random(integer("seed") + 1 + i));
+                results.add(pool.submit(() -> user.run(warmupEnd, end)));
+            }
+            Map<Op, Stats> total = new EnumMap<>(Op.class);
+            for (Future<Map<Op, Stats>> result : results) {
+                result.get().forEach((op, stats) -> total.computeIfAbsent(op, o -> new Stats()).addAll(stats));
+            }
+            report(total, users);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Expands "list=30,search=10,..." into a table of 100 slots, missing operations taking their default weight. */
+    private static Op[] mix(String spec) {
+        Map<Op, Integer> weights = new EnumMap<>(Op.class);
+        for (Op op : Op.values()) weights.put(op, spec.isBlank() ? op.defaultWeight : 0);
+        for (String part : spec.split(",")) {
+            if (part.isBlank()) continue;
+            String[] kv = part.split("=");
+            weights.put(Op.valueOf(kv[0].strip().toUpperCase(Locale.ROOT)), Integer.parseInt(kv[1].strip()));
+        }
+        List<Op> slots = new ArrayList<>();
+        weights.forEach((op, weight) -> {
+            for (int i = 0; i < weight; i++) slots.add(op);
+        });
+        if (slots.isEmpty()) throw new IllegalArgumentException("Empty mix: " + spec);
+        return slots.toArray(Op[]::new);
+    }
+
+    private void report(Map<Op, Stats> total, int users) {
+        double seconds = integer("seconds");
+        System.out.printf(Locale.ROOT, "replay: %d users for %.0f s after %d s warmup, %s backend%n",
+                users, seconds, integer("warmup"), options.get("backend"));
+        System.out.printf(Locale.ROOT, "%-10s %9s %7s %9s %9s %9s %9s %9s%n",
+                "op", "count", "failed", "ops/s", "p50 ms", "p95 ms", "p99 ms", "max ms");
+        long count = 0;
+        long failed = 0;
+        for (Op op : Op.values()) {
+            Stats stats = total.get(op);
+            if (stats == null) continue;
+            long[] sorted = Arrays.copyOf(stats.latencies, stats.count);
+            Arrays.sort(sorted);
+            System.out.printf(Locale.ROOT, "%-10s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f%n",
+                    op.name().toLowerCase(Locale.ROOT), stats.count, stats.failed, stats.count / seconds,
+                    percentile(sorted, 50), percentile(sorted, 95), percentile(sorted, 99), percentile(sorted, 100));
+            count += stats.count;
+            failed += stats.failed;
+        }
+        System.out.printf(Locale.ROOT, "total: %d operations, %.1f ops/s, %d failed%n", count, count / seconds, failed);
+        total.forEach((op, stats) -> {
+            if (stats.firstError != null) System.out.printf("first %s failure: %s%n", op, stats.firstError);
+        });
+    }
+
+    /** Nearest-rank percentile in milliseconds. */
+    private static double percentile(long[] sorted, int p) {
+        if (sorted.length == 0) return 0;
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)] / 1e6;
+    }
+
+    /** Latencies and failures of one operation, measured after the warmup. */
+    private static final class Stats {
+        private long[] latencies = new long[1024];
+        private int count;
+        private int failed;
+        private String firstError;
+
+        void add(long nanos, Exception error) {
+            if (count == latencies.length) latencies = Arrays.copyOf(latencies, count * 2);
+            latencies[count++] = nanos;
+            if (error != null) {
+                failed++;
+                if (firstError == null) firstError = String.valueOf(error.getMessage());
+            }
+        }
+
+        void addAll(Stats other) {
+            for (int i = 0; i < other.count; i++) {
+                add(other.latencies[i], null);
+            }
+            failed += other.failed;
+            if (firstError == null) firstError = other.firstError;
+        }
+    }
+
+    /** A file the users can pick; movable once its name is unique in the drive. */
+    private record FileRef(int id, String type, boolean movable) {
+    }
+
+    /** The folders and files the users pick from, shared by all of them. */
+    private static final class Catalog {
+        private final List<Integer> folders = new ArrayList<>();
+        private final List<FileRef> files = new ArrayList<>();
+
+        /** Collects up to {@code limit} folders and files breadth-first from the top folder. */
+        static Catalog load(MetadataRepository db, int topId, int limit) {
+            Catalog catalog = new Catalog();
+            catalog.folders.add(topId);
+            Queue<Integer> queue = new ArrayDeque<>(List.of(topId));
+            while (!queue.isEmpty() && (catalog.folders.size() < limit || catalog.files.size() < limit)) {
+                for (StorageEntity child : db.getChildren(queue.poll())) {
+                    if (child instanceof Directory && catalog.folders.size() < limit) {
+                        catalog.folders.add(child.getId());
+                        queue.add(child.getId());
+                    } else if (child instanceof File file && catalog.files.size() < limit) {
+                        catalog.files.add(new FileRef(file.getId(), file.getFileType(), false));
+                    }
+                }
+            }
+            return catalog;
+        }
+
+        synchronized int folder(Random random) {
+            return folders.get(random.nextInt(folders.size()));
+        }
+
+        synchronized FileRef file(Random random) {
+            return files.isEmpty() ? null : files.get(random.nextInt(files.size()));
+        }
+
+        /** Takes a file out of the catalog, so no other user picks it while it is deleted. */
+        synchronized FileRef take(Random random) {
+            if (files.isEmpty()) return null;
+            int index = random.nextInt(files.size());
+            FileRef file = files.get(index);
+            files.set(index, files.get(files.size() - 1));
+            files.remove(files.size() - 1);
+            return file;
+        }
+
+        /** Picks a movable file, or {@code null} if a few tries find none. */
+        synchronized FileRef movable(Random random) {
+            for (int i = 0; i < 16 && !files.isEmpty(); i++) {
+                FileRef file = files.get(random.nextInt(files.size()));
+                if (file.movable()) return file;
+            }
+            return null;
+        }
+
+        synchronized void add(FileRef file) {
+            files.add(file);
+        }
+
+        synchronized void replace(FileRef old, FileRef renamed) {
+            int index = files.indexOf(old);
+            if (index >= 0) files.set(index, renamed);
+        }
+    }
+
+    /** One simulated user: its own connection on PostgreSQL, random source and statistics. */
+    private final class User {
+        private final int number;
+        private final Catalog catalog;
+        private final Op[] mix;
+        private final AtomicInteger names;
+        private final Random random;
+        private final Path download;
+        private MetadataRepository db;
+
+        User(int number, Catalog catalog, Op[] mix, AtomicInteger names, Random random) {
+            this.number = number;
+            this.catalog = catalog;
+            this.mix = mix;
+            this.names = names;
+            this.random = random;
+            this.download = work.resolve("download-" + number);
+        }
+
+        Map<Op, Stats> run(long warmupEnd, long end) throws Exception {
+            if (dataSource == null) {
+                db = Workload.this.db;
+                return act(warmupEnd, end);
+            }
+            try (Connection connection = dataSource.getConnection()) {
+                db = ((DatabaseService) Workload.this.db).withConnection(connection);
+                return act(warmupEnd, end);
+            }
+        }
+
+        private Map<Op, Stats> act(long warmupEnd, long end) {
+            Map<Op, Stats> stats = new EnumMap<>(Op.class);
+            for (long now = System.nanoTime(); now < end; now = System.nanoTime()) {
+                Op op = mix[random.nextInt(mix.length)];
+                Exception error = null;
+                long started = System.nanoTime();
+                try {
+                    if (!perform(op)) continue;
+                } catch (Exception e) {
+                    error = e;
+                }
+                long took = System.nanoTime() - started;
+                if (started >= warmupEnd) stats.computeIfAbsent(op, o -> new Stats()).add(took, error);
+            }
+            return stats;
+        }
+
+        /** Runs one operation; returns {@code false} if there was nothing to run it on. */
+        private boolean perform(Op op) throws Exception {
+            switch (op) {
+                case LIST -> db.getChildren(catalog.folder(random));
+                case SEARCH -> db.searchFilesAndDirectories("f" + random.nextInt(POOL), null, 50);
+                case UPLOAD -> upload();
+                case DOWNLOAD -> {
+                    FileRef ref = catalog.file(random);
+                    if (ref == null) return false;
+                    File file = existing(ref);
+                    Files.deleteIfExists(download);
+                    storage.copyBlob(file, download);
+                }
+                case RENAME -> {
+                    if (random.nextBoolean()) {
+                        int folder = catalog.folder(random);
+                        if (folder == catalog.folders.get(0)) return false;
+                        db.rename(folder, "r" + names.incrementAndGet() + "-" + number, true);
+                    } else {
+                        FileRef ref = catalog.file(random);
+                        if (ref == null) return false;
+                        db.rename(ref.id(), "r" + names.incrementAndGet() + "-" + number + "." + ref.type(), false);
+                        catalog.replace(ref, new FileRef(ref.id(), ref.type(), true));
+                    }
+                }
+                case MOVE -> {
+                    FileRef ref = catalog.movable(random);
+                    if (ref == null) return false;
+                    File file = existing(ref);
+                    Directory target = db.getDirectory(catalog.folder(random));
+                    if (target == null || target.getId() == file.getParentId()) return false;
+                    db.move(file.getId(), target.getId(), target.getPath() + "/" + file.getName());
+                }
+                case DELETE -> {
+                    FileRef ref = catalog.take(random);
+                    if (ref == null) return false;
+                    db.deleteFile(existing(ref), storage);
+                }
+            }
+            return true;
+        }
+
+        private void upload() throws Exception {
+            Path sample = pool.get(random.nextInt(POOL));
+            String type = sample.getFileName().toString().substring(sample.getFileName().toString().indexOf('.') + 1);
+            File file = new File();
+            file.setName("u" + names.incrementAndGet() + "-" + number + "." + type);
+            file.setParentId(catalog.folder(random));
+            file.setFileType(type);
+            file.setFileSize(Files.size(sample));
+            try (InputStream in = new FileInputStream(sample.toFile())) {
+                db.saveFile(file, in, storage);
+            }
+            catalog.add(new FileRef(file.getId(), type, true));
+        }
+
+        private File existing(FileRef ref) {
+            File file = db.getFile(ref.id());
+            if (file == null) throw new IllegalStateException("File " + ref.id() + " is gone");
+            return file;
+        }
+    }
+
+    private int integer(String option) {
+        return Integer.parseInt(options.get(option));
+    }
+
+    /** Parses "--key value" and "--flag" arguments over the defaults; {@code null} on unknown options. */
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>(DEFAULTS);
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || !DEFAULTS.containsKey(args[i].substring(2))) return null;
+            String key = args[i].substring(2);
+            if (key.equals("keep")) {
+                options.put(key, "true");
+            } else if (i + 1 < args.length) {
+                options.put(key, args[++i]);
+            } else {
+                return null;
+            }
+        }
+        return options;
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
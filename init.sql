@@ -22,3 +22,155 @@ CREATE TABLE IF NOT EXISTS storage_entities (
         (parent_id IS NOT NULL)
     )
 );
+
+-- Directory rollups: direct child count plus recursive file count and bytes.
+-- Maintained incrementally by the insert/move/delete statements in SqlQueries.
+-- The columns are added, and backfilled for databases created before them, only when missing:
+-- on a later run the incremental statements own them. The ALTER locks the table until the
+-- backfill commits, so no concurrent change can slip in between.
+DO $$
+BEGIN
+    IF (SELECT count(*) FROM information_schema.columns
+        WHERE table_schema = current_schema() AND table_name = 'storage_entities'
+          AND column_name IN ('child_count', 'file_count', 'total_bytes')) < 3 THEN
+        ALTER TABLE storage_entities ADD COLUMN IF NOT EXISTS child_count INTEGER NOT NULL DEFAULT 0;
+        ALTER TABLE storage_entities ADD COLUMN IF NOT EXISTS file_count BIGINT NOT NULL DEFAULT 0;
+        ALTER TABLE storage_entities ADD COLUMN IF NOT EXISTS total_bytes BIGINT NOT NULL DEFAULT 0;
+
+        UPDATE storage_entities d
+        SET child_count = (SELECT COUNT(*) FROM storage_entities c WHERE c.parent_id = d.id)
+        WHERE d.is_directory;
+
+        WITH RECURSIVE subtree AS (
+            SELECT id AS ancestor_id, id FROM storage_entities WHERE is_directory
+            UNION ALL
+            SELECT t.ancestor_id, c.id FROM subtree t JOIN storage_entities c ON c.parent_id = t.id
+        )
+        UPDATE storage_entities d
+        SET file_count = agg.files, total_bytes = agg.bytes
+        FROM (
+            SELECT t.ancestor_id, COUNT(e.id) AS files, COALESCE(SUM(e.file_size), 0) AS bytes
+            FROM subtree t JOIN storage_entities e ON e.id = t.id AND NOT e.is_directory
+            GROUP BY t.ancestor_id
+        ) agg
+        WHERE d.id = agg.ancestor_id;
+    END IF;
+END
+$$;
+
+-- Name search: trigram index so LOWER(name) LIKE '%q%' avoids a sequential scan, and a btree
+-- matching the (is_directory DESC, name, id) keyset order used to page through results. Names
+-- sort in byte order ("C" collation), so the order does not depend on the database's locale.
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE INDEX IF NOT EXISTS idx_storage_entities_name_trgm
+    ON storage_entities USING GIN (LOWER(name) gin_trgm_ops);
+DROP INDEX IF EXISTS idx_storage_entities_search_order;
+CREATE INDEX IF NOT EXISTS idx_storage_entities_search_order_c
+    ON storage_entities (is_directory DESC, name COLLATE "C", id);
+
+-- Full-text content search: extracted text of uploaded text-like files, kept out of
+-- storage_entities so listings never pull document bodies.
+CREATE TABLE IF NOT EXISTS file_contents (
+    file_id INTEGER PRIMARY KEY REFERENCES storage_entities(id) ON DELETE CASCADE,
+    content_text TEXT NOT NULL,
+    content_tsv TSVECTOR GENERATED ALWAYS AS (to_tsvector('english', content_text)) STORED
+);
+CREATE INDEX IF NOT EXISTS idx_file_contents_tsv ON file_contents USING GIN (content_tsv);
+
+-- Find: a composite index for type/size predicates on files, BRIN indexes for the
+-- append-ordered timestamps. Subtree prefix ranges on path use the unique path index below.
+CREATE INDEX IF NOT EXISTS idx_storage_entities_type_size
+    ON storage_entities (LOWER(file_type), file_size) WHERE NOT is_directory;
+CREATE INDEX IF NOT EXISTS idx_storage_entities_created_brin
+    ON storage_entities USING BRIN (created_at);
+CREATE INDEX IF NOT EXISTS idx_storage_entities_updated_brin
+    ON storage_entities USING BRIN (updated_at);
+
+-- Usage report: largest-first indexes for top-K files and top folders (by rollup bytes).
+CREATE INDEX IF NOT EXISTS idx_storage_entities_largest_files
+    ON storage_entities (file_size DESC, id) WHERE NOT is_directory;
+CREATE INDEX IF NOT EXISTS idx_storage_entities_largest_folders
+    ON storage_entities (total_bytes DESC, id) WHERE is_directory;
+
+-- Folder listings: one (parent_id, sort key, id) index per listing order, so keyset pages
+-- in either direction are index range scans. Names sort in byte order, like name search. The
+-- name index also serves plain child lookups.
+DROP INDEX IF EXISTS idx_storage_entities_parent_name;
+CREATE INDEX IF NOT EXISTS idx_storage_entities_parent_name_c
+    ON storage_entities (parent_id, name COLLATE "C", id);
+CREATE INDEX IF NOT EXISTS idx_storage_entities_parent_size
+    ON storage_entities (parent_id, COALESCE(file_size, total_bytes), id);
+CREATE INDEX IF NOT EXISTS idx_storage_entities_parent_updated
+    ON storage_entities (parent_id, updated_at, id);
+
+-- Path resolution: every logical path names exactly one item. The unique index uses pattern ops,
+-- so it serves both exact lookups and the subtree prefix ranges used by find and the usage report.
+-- Databases created before the index may hold two items with the same path; those have to be
+-- renamed or merged by hand first, so stop with the offending paths rather than a bare 23505.
+DO $$
+DECLARE
+    duplicates TEXT;
+BEGIN
+    IF to_regclass('idx_storage_entities_path') IS NULL THEN
+        SELECT string_agg(path || ' (' || n || ' items)', ', ' ORDER BY path) INTO duplicates
+        FROM (SELECT path, count(*) AS n FROM storage_entities GROUP BY path HAVING count(*) > 1) d;
+        IF duplicates IS NOT NULL THEN
+            RAISE EXCEPTION 'Cannot create idx_storage_entities_path, these paths are used more than once: %',
+                duplicates
+                USING HINT = 'Rename or merge the duplicates, then run init.sql again.';
+        END IF;
+    END IF;
+END
+$$;
+DROP INDEX IF EXISTS idx_storage_entities_path_pattern;
+CREATE UNIQUE INDEX IF NOT EXISTS idx_storage_entities_path
+    ON storage_entities (path varchar_pattern_ops);
+
+-- Merkle digests: files carry the SHA-256 of their content; every directory carries the XOR of
+-- one entry hash per direct child, built from the child's name and either its size and content
+-- hash or, for a subdirectory, its own digest. Equal digests mean equal subtrees (names, sizes and
+-- contents), so a tree diff only descends where digests differ. XOR lets a change toggle the old
+-- entry out and the new one in on each ancestor without reading siblings (see SqlQueries.TOGGLE_DIGEST).
+CREATE OR REPLACE FUNCTION merkle_entry(name TEXT, is_directory BOOLEAN, size BIGINT, hash BYTEA, digest BIT(256))
+RETURNS BIT(256) LANGUAGE SQL IMMUTABLE AS $$
+    SELECT ('x' || encode(sha256(convert_to(
+        CASE WHEN is_directory THEN 'D/' || name || '/' || digest::TEXT
+             ELSE 'F/' || name || '/' || size || '/' || COALESCE(encode(hash, 'hex'), '') END,
+        'UTF8')), 'hex'))::BIT(256)
+$$;
+
+-- The columns are added, and digests backfilled bottom-up for databases created before them, only
+-- when the digest column is missing: on a later run the XOR toggles own the digests, and a full
+-- recompute could race with them. The ALTER locks the table until the backfill commits, so no
+-- toggle runs in between. Files stored before then have no content hash; their entries cover
+-- name and size only.
+DO $$
+DECLARE
+    level INTEGER;
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM information_schema.columns
+                   WHERE table_schema = current_schema() AND table_name = 'storage_entities'
+                     AND column_name = 'digest') THEN
+        ALTER TABLE storage_entities ADD COLUMN IF NOT EXISTS content_hash BYTEA;
+        ALTER TABLE storage_entities ADD COLUMN digest BIT(256) NOT NULL DEFAULT B'0'::BIT(256);
+        FOR level IN
+            SELECT DISTINCT array_length(string_to_array(path, '/'), 1) FROM storage_entities
+            WHERE is_directory ORDER BY 1 DESC
+        LOOP
+            UPDATE storage_entities d
+            SET digest = COALESCE((
+                SELECT bit_xor(merkle_entry(c.name, c.is_directory, c.file_size, c.content_hash, c.digest))
+                FROM storage_entities c WHERE c.parent_id = d.id
+            ), B'0'::BIT(256))
+            WHERE d.is_directory AND array_length(string_to_array(d.path, '/'), 1) = level;
+        END LOOP;
+    END IF;
+END $$;
+
+-- Write-behind journal: the last record of each local operation journal applied here. It is
+-- updated in the same transaction as the changes it covers, so a replay interrupted at any point
+-- resumes after the last batch that committed and never applies a record twice.
+CREATE TABLE IF NOT EXISTS journal_replay (
+    journal VARCHAR(255) PRIMARY KEY,
+    applied_seq BIGINT NOT NULL
+);
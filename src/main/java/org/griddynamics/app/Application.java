@@ -1,18 +1,46 @@
 package org.griddynamics.app;
 
+import org.griddynamics.db.FindQuery;
+import org.griddynamics.db.ListingOrder;
+import org.griddynamics.db.QueryTracer;
+import org.griddynamics.domain.ContentMatch;
 import org.griddynamics.domain.Directory;
+import org.griddynamics.domain.DuplicateGroup;
 import org.griddynamics.domain.File;
+import org.griddynamics.domain.Page;
 import org.griddynamics.domain.StorageEntity;
+import org.griddynamics.domain.UsageReport;
+import org.griddynamics.metrics.DriveMetrics;
+import org.griddynamics.service.BulkDownloader;
+import org.griddynamics.server.DriveServer;
 import org.griddynamics.service.DatabaseService;
+import org.griddynamics.service.DuplicateFinder;
+import org.griddynamics.service.FolderSync;
 import org.griddynamics.service.StorageService;
+import org.griddynamics.service.TreeDiff;
+import org.griddynamics.snapshot.SnapshotWriter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.ExitCodeGenerator;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.ComponentScan;
 
+import java.io.BufferedReader;
 import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
 import java.util.Scanner;
 
 import static org.griddynamics.app.MenuBar.*;
@@ -21,36 +49,252 @@ import static org.griddynamics.app.MenuBar.*;
  * The {@code Application} class serves as the entry point for the CLI-based file storage system.
  * It allows users to manage files and directories via a PostgreSQL-backed system, performing operations
  * such as creating directories, uploading files, downloading, renaming, moving, deleting, and searching.
+ *
+ * <p>Started with the {@code batch} argument it runs commands non-interactively instead, see {@link #runBatch(List)}.
+ * The {@code sync} argument syncs a local folder with a drive folder, see {@link #runSync(List, boolean, boolean)}.
+ * The {@code diff} argument compares two drive folders, see {@link #runDiff(List)}.
+ * The {@code snapshot} argument exports the metadata for offline browsing, see {@link #runSnapshot(List)};
+ * the {@code browse} argument browses such a snapshot without Spring or a database, see {@link SnapshotBrowser}.
+ * With the {@code server} profile active it serves the HTTP API of {@link DriveServer} until stopped.
  */
 @SpringBootApplication
 @ComponentScan(basePackages = "org.griddynamics")
-public class Application implements CommandLineRunner {
+public class Application implements CommandLineRunner, ExitCodeGenerator {
     private final Scanner scanner;
     private final DatabaseService dbService;
     Directory currentDirectory;
     final StorageService storageService;
 
+    /** Number of search results shown per page. */
+    @Value("${search.page-size:20}")
+    int searchPageSize = 20;
+
+    /** Number of items shown per page when listing a directory. */
+    @Value("${listing.page-size:50}")
+    int listingPageSize = 50;
+
+    /** Number of largest files and folders listed in the usage report. */
+    @Value("${report.top-k:10}")
+    int reportTopK = 10;
+
+    /** Number of threads hashing blobs in the duplicate finder. */
+    @Value("${duplicates.threads:4}")
+    int duplicateThreads = 4;
+
+    /** Number of files copied at once by the bulk download. */
+    @Value("${download.threads:4}")
+    int downloadThreads = 4;
+
+    @Autowired
+    BatchRunner batchRunner;
+
+    @Autowired(required = false)
+    DriveServer driveServer;
+
+    @Autowired(required = false)
+    DriveMetrics metrics;
+
+    @Autowired(required = false)
+    QueryTracer queryTracer;
+
+    private int exitCode;
+
     @Autowired
     public Application(DatabaseService dbService, StorageService storageService) {
         this.scanner = new Scanner(System.in);
         this.dbService = dbService;
         this.storageService = storageService;
-        this.currentDirectory = dbService.getRootDirectory();
     }
 
     public static void main(String[] args) {
-        SpringApplication.run(Application.class, args);
+        List<String> positional = Arrays.stream(args).filter(arg -> !arg.startsWith("--")).toList();
+        if (!positional.isEmpty() && positional.get(0).equals("browse")) {
+            // Browsing a snapshot needs neither Spring nor the database
+            System.exit(SnapshotBrowser.run(positional.subList(1, positional.size()), System.in, System.out));
+        }
+        System.exit(SpringApplication.exit(SpringApplication.run(Application.class, args)));
     }
 
     @Override
     public void run(String... args) {
+        if (driveServer != null) {
+            System.out.println("Serving the drive on port " + driveServer.getPort() + ", stop with Ctrl+C");
+            try {
+                driveServer.awaitShutdown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
+        // Options such as --spring.profiles.active=prod are Spring's; the rest select the mode
+        List<String> positional = Arrays.stream(args).filter(arg -> !arg.startsWith("--")).toList();
+        if (!positional.isEmpty() && positional.get(0).equals("batch")) {
+            exitCode = runBatch(positional.subList(1, positional.size()));
+            return;
+        }
+        if (!positional.isEmpty() && positional.get(0).equals("sync")) {
+            List<String> flags = Arrays.asList(args);
+            exitCode = runSync(positional.subList(1, positional.size()), flags.contains("--hash"), flags.contains("--watch"));
+            return;
+        }
+        if (!positional.isEmpty() && positional.get(0).equals("diff")) {
+            exitCode = runDiff(positional.subList(1, positional.size()));
+            return;
+        }
+        if (!positional.isEmpty() && positional.get(0).equals("snapshot")) {
+            exitCode = runSnapshot(positional.subList(1, positional.size()));
+            return;
+        }
         start();
     }
 
+    @Override
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    /**
+     * Runs commands without the menu, from one of:
+     * <ul>
+     *     <li>{@code batch -e "mkdir /root/a" "ls /root --json"}: each argument is a command;</li>
+     *     <li>{@code batch nightly.txt more.txt}: script files, one command per line;</li>
+     *     <li>{@code batch} or {@code batch -}: a script on standard input.</li>
+     * </ul>
+     * Command output goes to standard output; failures and the latency summary go to standard error.
+     * @param args The arguments after "batch"
+     * @return 0 if every command succeeded, 1 if any failed, 2 if a script could not be read
+     */
+    int runBatch(List<String> args) {
+        List<String> lines = new ArrayList<>();
+        try {
+            if (!args.isEmpty() && args.get(0).equals("-e")) {
+                lines.addAll(args.subList(1, args.size()));
+            } else if (args.isEmpty()) {
+                lines.addAll(readStandardInput());
+            } else {
+                for (String script : args) {
+                    lines.addAll(script.equals("-") ? readStandardInput() : Files.readAllLines(Path.of(script)));
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot read script: " + e.getMessage());
+            return 2;
+        }
+        BatchSummary summary = batchRunner.run(lines, System.out, System.err);
+        System.err.print(summary.format());
+        return summary.getFailed() == 0 ? 0 : 1;
+    }
+
+    /**
+     * Syncs a local folder with a drive folder without the menu:
+     * {@code sync ~/work /root/work [--hash] [--watch]}. With {@code --watch} it keeps syncing local
+     * changes until stopped.
+     * @param args The local folder and the drive folder
+     * @param hash Whether to compare content hashes of files whose times changed
+     * @param watch Whether to keep watching the local folder
+     * @return 0 if every file synced, 1 if there were conflicts or failures, 2 on bad arguments
+     */
+    int runSync(List<String> args, boolean hash, boolean watch) {
+        String drivePath = args.size() == 2 ? DatabaseService.normalizePath("root", args.get(1)) : null;
+        if (drivePath == null) {
+            System.err.println("Usage: sync <local-folder> <drive-folder> [--hash] [--watch]");
+            return 2;
+        }
+        FolderSync sync = new FolderSync(dbService, storageService, Path.of(args.get(0)), drivePath, hash);
+        try {
+            if (watch) {
+                sync.watch(Application::printSyncReport);
+                return 0;
+            }
+            FolderSync.Report report = sync.sync();
+            printSyncReport(report);
+            return report.conflicts().isEmpty() && report.failures().isEmpty() ? 0 : 1;
+        } catch (IOException e) {
+            System.err.println("Sync failed: " + e.getMessage());
+            return 2;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+    }
+
+    /**
+     * Compares two drive folders by their Merkle digests: {@code diff /root/photos /root/backup/photos}.
+     * Prints one line per change, "+" added, "-" removed and "~" modified, relative to the folders.
+     * @param args The old folder and the new folder
+     * @return 0 if the folders hold the same names, sizes and contents, 1 if they differ, 2 on bad arguments
+     */
+    int runDiff(List<String> args) {
+        String leftPath = args.size() == 2 ? DatabaseService.normalizePath("root", args.get(0)) : null;
+        String rightPath = args.size() == 2 ? DatabaseService.normalizePath("root", args.get(1)) : null;
+        if (leftPath == null || rightPath == null) {
+            System.err.println("Usage: diff <drive-folder> <drive-folder>");
+            return 2;
+        }
+        if (!(dbService.resolvePath(leftPath) instanceof Directory left)
+                || !(dbService.resolvePath(rightPath) instanceof Directory right)) {
+            System.err.println("Both arguments must be drive folders.");
+            return 2;
+        }
+        TreeDiff.Result result = new TreeDiff(dbService).diff(left, right);
+        for (TreeDiff.Change change : result.changes()) {
+            String mark = switch (change.kind()) {
+                case ADDED -> "+";
+                case REMOVED -> "-";
+                case MODIFIED -> "~";
+            };
+            System.out.println(mark + " " + change.path());
+        }
+        System.out.printf("%d change(s), %d folder(s) compared in %d ms%n", result.changes().size(),
+                result.foldersCompared(), result.elapsedNanos() / 1_000_000);
+        return result.changes().isEmpty() ? 0 : 1;
+    }
+
+    /**
+     * Exports the metadata of the whole drive to a snapshot file: {@code snapshot drive.snap}.
+     * The snapshot is browsed offline with {@code browse drive.snap}.
+     * @param args The snapshot file
+     * @return 0 on success, 1 if the file could not be written, 2 on bad arguments
+     */
+    int runSnapshot(List<String> args) {
+        if (args.size() != 1) {
+            System.err.println("Usage: snapshot <file>");
+            return 2;
+        }
+        long start = System.nanoTime();
+        Path file = Path.of(args.get(0));
+        SnapshotWriter writer = new SnapshotWriter();
+        try {
+            dbService.exportSnapshot(writer);
+            writer.write(file);
+            System.out.printf("Wrote %d items to %s (%s) in %d ms%n", writer.size(), file,
+                    formatSize(Files.size(file)), (System.nanoTime() - start) / 1_000_000);
+            return 0;
+        } catch (IOException e) {
+            System.err.println("Cannot write snapshot: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    private static void printSyncReport(FolderSync.Report report) {
+        System.out.println(report.summary());
+        report.conflicts().forEach(conflict -> System.out.println("   Conflict: " + conflict));
+        report.failures().forEach(failure -> System.out.println("   Failed: " + failure));
+    }
+
+    private static List<String> readStandardInput() throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        return reader.lines().toList();
+    }
+
     /**
      * Main application loop.
      */
     void start() {
+        // Looked up here rather than at construction, so batch, sync and diff runs never need it
+        if (currentDirectory == null) {
+            currentDirectory = dbService.getRootDirectory();
+        }
         while (true) {
             System.out.println("\n==============Current Directory: " + currentDirectory.getPath() + "==============");
             System.out.println(getMainMenu());
@@ -59,6 +303,7 @@ public class Application implements CommandLineRunner {
             String choice = scanner.nextLine().trim();
             System.out.println();
 
+            if (queryTracer != null) queryTracer.begin();
             switch (choice) {
                 case "1" -> listContents(currentDirectory);
                 case "2" -> createDirectory(currentDirectory);
@@ -70,6 +315,13 @@ public class Application implements CommandLineRunner {
                 case "8" -> viewItemDetails();
                 case "9" -> searchItems();
                 case "10" -> changeDirectory();
+                case "11" -> searchContents();
+                case "12" -> findItems();
+                case "13" -> showUsageReport();
+                case "14" -> findDuplicates();
+                case "15" -> downloadMany();
+                case "16" -> syncFolder();
+                case "17" -> showMetrics();
                 case "0" -> {
                     System.out.println("Exiting...");
                     scanner.close();
@@ -77,21 +329,42 @@ public class Application implements CommandLineRunner {
                 }
                 default -> System.out.println("Invalid choice. Try again.");
             }
+            printQuerySummary();
         }
     }
 
     /**
-     * Changes the current working directory.
+     * Prints the statements the last menu command ran, such as "[sql] 7 queries, 3.12 ms, 42 rows".
+     */
+    private void printQuerySummary() {
+        if (queryTracer == null) return;
+        QueryTracer.Summary summary = queryTracer.end();
+        if (summary.queries() > 0) {
+            System.out.println("[sql] " + summary.format());
+        }
+    }
+
+    /**
+     * Changes the current working directory, either to a subdirectory picked by ID or to any
+     * directory by absolute ("/root/a/b") or relative ("../b") path.
      */
     public void changeDirectory() {
         listAllDirectories(dbService, currentDirectory);
-        System.out.print("Enter directory ID to navigate into (or -1 to go up): ");
-        int id = scanner.nextInt();
-        scanner.nextLine();
-        if (id == -1) return;
+        System.out.print("Enter directory ID or path to navigate into (or -1 to go up): ");
+        String input = scanner.nextLine().trim();
+        if (input.equals("-1")) return;
 
+        if (!isId(input)) {
+            String path = DatabaseService.normalizePath(currentDirectory.getPath(), input);
+            if (path != null && dbService.resolvePath(path) instanceof Directory dir) {
+                currentDirectory = dir;
+            } else {
+                System.out.println("Invalid directory.");
+            }
+            return;
+        }
         try {
-            Directory dir = dbService.getDirectory(id);
+            Directory dir = dbService.getDirectory(Integer.parseInt(input));
             if (dir != null && dir.getParentId() == currentDirectory.getId()) {
                 currentDirectory = dir;
             } else {
@@ -103,21 +376,53 @@ public class Application implements CommandLineRunner {
     }
 
     /**
-     * Lists all files and directories in the current working directory.
+     * Lists the files and directories in the current working directory one page at a time,
+     * with next/previous navigation.
      * @param currentDir The current directory to list contents from.
      */
     public void listContents(Directory currentDir) {
-        List<StorageEntity> contents = dbService.getDirectoryContents(currentDir.getId());
-        if (contents.isEmpty()) {
-            System.out.println("Directory is empty.");
-        } else {
+        System.out.print("Sort by (n)ame, (s)ize or (d)ate [n]: ");
+        ListingOrder order = switch (scanner.nextLine().trim().toLowerCase(Locale.ROOT)) {
+            case "s" -> ListingOrder.SIZE;
+            case "d" -> ListingOrder.DATE;
+            default -> ListingOrder.NAME;
+        };
+
+        Page<StorageEntity> page = dbService.listChildren(currentDir.getId(), order, null, listingPageSize);
+        if (page.items().isEmpty()) {
+            System.out.println("Directory is empty.\n");
+            return;
+        }
+        boolean hasNext = page.hasMore();
+        boolean hasPrevious = false;
+        while (true) {
             System.out.println("Contents of " + currentDir.getName() + ":");
-            contents.forEach(item ->
+            page.items().forEach(item ->
                     System.out.println("   Id: " + item.getId() +
                             (item instanceof Directory ? " [Directory] " : " [File] ") + item.getName())
             );
+            System.out.println();
+            if (!hasNext && !hasPrevious) return;
+
+            System.out.print((hasNext ? "(n)ext, " : "") + (hasPrevious ? "(p)revious, " : "") + "(q)uit: ");
+            String action = scanner.nextLine().trim().toLowerCase(Locale.ROOT);
+            if (action.equals("n") && hasNext) {
+                page = dbService.listChildren(currentDir.getId(), order, page.last(), listingPageSize);
+                hasNext = page.hasMore();
+                hasPrevious = true;
+            } else if (action.equals("p") && hasPrevious) {
+                page = dbService.listChildrenBefore(currentDir.getId(), order, page.items().get(0), listingPageSize);
+                hasPrevious = page.hasMore();
+                hasNext = true;
+            } else if (action.equals("q")) {
+                return;
+            }
+            if (page.items().isEmpty()) {
+                // The folder changed underneath us
+                System.out.println("No more items.");
+                return;
+            }
         }
-        System.out.println();
     }
 
     /**
@@ -131,7 +436,13 @@ public class Application implements CommandLineRunner {
         newDir.setName(name);
         newDir.setParentId(currentDir.getId());
         newDir.setPath(currentDir.getPath() + "/" + name);
-        dbService.saveDirectory(newDir);
+        try {
+            dbService.saveDirectory(newDir);
+        } catch (RuntimeException e) {
+            if (!DatabaseService.isPathTaken(e)) throw e;
+            System.out.println(newDir.getPath() + " already exists.");
+            return;
+        }
         System.out.println("Directory created.");
     }
 
@@ -149,12 +460,25 @@ public class Application implements CommandLineRunner {
                 return;
             }
 
+            int parentId = currentDir.getId();
+            String parentPath = currentDir.getPath();
+            String destination = prompt("Upload into folder path (blank for current directory): ");
+            if (!destination.isEmpty()) {
+                parentPath = DatabaseService.normalizePath(currentDir.getPath(), destination);
+                Integer resolvedId = parentPath != null ? dbService.resolveDirectoryId(parentPath) : null;
+                if (resolvedId == null) {
+                    System.out.println("Folder not found.");
+                    return;
+                }
+                parentId = resolvedId;
+            }
+
             File file = new File();
             file.setName(f.getName());
-            file.setParentId(currentDir.getId());
-            file.setFileType(getExtension(f.getName()));
+            file.setParentId(parentId);
+            file.setFileType(File.extensionOf(f.getName()));
             file.setFileSize(f.length());
-            file.setPath(currentDir.getPath() + "/" + f.getName());
+            file.setPath(parentPath + "/" + f.getName());
 
             try (FileInputStream fis = new FileInputStream(f)) {
                 dbService.saveFile(file, fis, storageService);
@@ -188,12 +512,15 @@ public class Application implements CommandLineRunner {
             if (!newName.toLowerCase().endsWith("." + extension.toLowerCase())) {
                 newName += "." + extension;
             }
-            dbService.rename(id, newName,false);
-            System.out.println("File renamed to " + newName);
-        } else {
-            dbService.rename(id, newName,true);
-            System.out.println("Folder renamed to " + newName);
         }
+        try {
+            dbService.rename(id, newName, item instanceof Directory);
+        } catch (RuntimeException e) {
+            if (!DatabaseService.isPathTaken(e)) throw e;
+            System.out.println(newName + " already exists.");
+            return;
+        }
+        System.out.println((item instanceof File ? "File" : "Folder") + " renamed to " + newName);
     }
 
     /**
@@ -224,7 +551,13 @@ public class Application implements CommandLineRunner {
         }
 
         String newPath = newParent.getPath() + "/" + item.getName();
-        dbService.move(id, newParentId, newPath);
+        try {
+            dbService.move(id, newParentId, newPath);
+        } catch (RuntimeException e) {
+            if (!DatabaseService.isPathTaken(e)) throw e;
+            System.out.println(newPath + " already exists.");
+            return;
+        }
         System.out.println("Item moved.");
     }
 
@@ -269,8 +602,8 @@ public class Application implements CommandLineRunner {
             // Check if the item is a Directory
             Directory directoryItem = dbService.getDirectory(id);
             if (directoryItem != null) {
-                int totalContent = dbService.getDirectoryContents(id).size();
-                System.out.println(directoryItem.getDetails(totalContent));  // Call getDetails with totalContent
+                // Item counts and sizes come from the rollup columns, so no listing is needed
+                System.out.println(directoryItem.getDetails());
             } else {
                 System.out.println("Invalid ID");
             }
@@ -282,32 +615,294 @@ public class Application implements CommandLineRunner {
 
 
     /**
-     * Searches for files and directories by name.
+     * Searches for files and directories by name, one page at a time.
      */
     public void searchItems() {
         System.out.print("Enter search query: ");
         String query = scanner.nextLine();
-        List<StorageEntity> results = dbService.searchFilesAndDirectories(query);
-        if (results.isEmpty()) {
+        if (dbService.getNameIndex() != null) {
+            List<StorageEntity> results = dbService.searchByRelevance(query, searchPageSize);
+            if (results.isEmpty()) {
+                System.out.println("No results found.");
+            }
+            results.forEach(Application::printSearchResult);
+            return;
+        }
+        Page<StorageEntity> page = dbService.searchFilesAndDirectories(query, null, searchPageSize);
+        if (page.items().isEmpty()) {
             System.out.println("No results found.");
-        } else {
-            for (StorageEntity item : results) {
-                System.out.printf("Id: %d [%s] %s (Path: %s)\n",
-                        item.getId(),
-                        item instanceof Directory ? "Directory" : "File",
-                        item.getName(),
-                        item.getPath());
+            return;
+        }
+        while (true) {
+            page.items().forEach(Application::printSearchResult);
+            if (!page.hasMore()) return;
+            System.out.print("Press Enter for more results (or q to stop): ");
+            if (scanner.nextLine().trim().equalsIgnoreCase("q")) return;
+            page = dbService.searchFilesAndDirectories(query, page.last(), searchPageSize);
+        }
+    }
+
+    /**
+     * Searches the text of uploaded files and prints ranked matches with snippets.
+     */
+    public void searchContents() {
+        System.out.print("Enter words to find in file contents: ");
+        String query = scanner.nextLine();
+        List<ContentMatch> matches = dbService.searchContent(query, searchPageSize);
+        if (matches.isEmpty()) {
+            System.out.println("No results found.");
+            return;
+        }
+        for (ContentMatch match : matches) {
+            printSearchResult(match.file());
+            System.out.println("    ..." + match.snippet().replaceAll("\\s+", " ") + "...");
+        }
+    }
+
+    /**
+     * Finds files and directories below the current directory by type, size, dates and depth.
+     * Blank answers leave a predicate unset.
+     */
+    public void findItems() {
+        FindQuery query = new FindQuery();
+        query.setUnder(currentDirectory.getPath());
+        try {
+            String types = prompt("File types, comma separated (blank for any): ");
+            if (!types.isEmpty()) {
+                query.setFileTypes(Arrays.stream(types.split(","))
+                        .map(String::trim).filter(t -> !t.isEmpty()).toList());
             }
+            query.setMinSize(parseSize(prompt("Minimum size, e.g. 10MB (blank for none): ")));
+            query.setMaxSize(parseSize(prompt("Maximum size, e.g. 1GB (blank for none): ")));
+            query.setModifiedAfter(parseDate(prompt("Modified on or after yyyy-MM-dd (blank for none): ")));
+            query.setModifiedBefore(parseDate(prompt("Modified before yyyy-MM-dd (blank for none): ")));
+            String depth = prompt("Maximum depth below this directory (blank for any): ");
+            query.setMaxDepth(depth.isEmpty() ? null : Integer.parseInt(depth));
+        } catch (NumberFormatException | DateTimeParseException e) {
+            System.out.println("Invalid input: " + e.getMessage());
+            return;
         }
+
+        Page<StorageEntity> page = dbService.find(query, 0, searchPageSize);
+        if (page.items().isEmpty()) {
+            System.out.println("No results found.");
+            return;
+        }
+        while (true) {
+            page.items().forEach(Application::printSearchResult);
+            if (!page.hasMore()) return;
+            System.out.print("Press Enter for more results (or q to stop): ");
+            if (scanner.nextLine().trim().equalsIgnoreCase("q")) return;
+            page = dbService.find(query, page.last().getId(), searchPageSize);
+        }
+    }
+
+    /**
+     * Prints a storage usage report for the current directory.
+     */
+    public void showUsageReport() {
+        UsageReport report = dbService.getUsageReport(currentDirectory, reportTopK);
+        Directory scope = report.scope();
+        System.out.printf("Usage of %s: %d files, %s\n",
+                scope.getPath(), scope.getFileCount(), formatSize(scope.getTotalBytes()));
+
+        System.out.println("\nLargest files:");
+        report.largestFiles().forEach(f ->
+                System.out.printf("   %10s  %s\n", formatSize(f.getFileSize()), f.getPath()));
+
+        System.out.println("\nLargest folders:");
+        report.largestFolders().forEach(d ->
+                System.out.printf("   %10s  %s (%d files)\n", formatSize(d.getTotalBytes()), d.getPath(), d.getFileCount()));
+
+        System.out.println("\nBy type:");
+        report.byType().forEach(t ->
+                System.out.printf("   %10s  %-10s %d files\n", formatSize(t.bytes()),
+                        t.fileType().isEmpty() ? "(none)" : t.fileType(), t.files()));
+
+        System.out.println("\nSize histogram:");
+        report.histogram().forEach(b ->
+                System.out.printf("   [%s, %s)  %d files, %s\n",
+                        formatSize(b.lowerBound()), formatSize(b.upperBound()), b.files(), formatSize(b.bytes())));
+    }
+
+    /**
+     * Lists groups of files with identical content and the space that deleting the extra
+     * copies would free.
+     */
+    public void findDuplicates() {
+        DuplicateFinder.Result result = new DuplicateFinder(dbService, storageService, duplicateThreads).find();
+        if (result.groups().isEmpty()) {
+            System.out.println("No duplicates found.");
+            return;
+        }
+        for (DuplicateGroup group : result.groups()) {
+            System.out.printf("%d copies of %s (reclaimable %s), sha256 %s\n",
+                    group.files().size(), formatSize(group.fileSize()),
+                    formatSize(group.reclaimableBytes()), group.sha256());
+            group.files().forEach(f -> System.out.printf("   Id: %d %s\n", f.getId(), f.getPath()));
+        }
+        System.out.printf("\n%d duplicate groups, %s reclaimable (%d candidates, %s read)\n",
+                result.groups().size(), formatSize(result.reclaimableBytes()),
+                result.candidates(), formatSize(result.bytesRead()));
+    }
+
+    /**
+     * Downloads several files and folders at once; folders are downloaded with everything
+     * below them. Items are chosen by ID or path, and nothing selects the current directory.
+     */
+    public void downloadMany() {
+        MenuBar.listItemsInDirectory(dbService, currentDirectory, false, false);
+        String input = prompt("Enter IDs or paths to download, separated by commas (blank for the current directory): ");
+        List<StorageEntity> selection = new ArrayList<>();
+        if (input.isEmpty()) {
+            selection.add(currentDirectory);
+        }
+        for (String part : input.split(",")) {
+            String item = part.trim();
+            if (item.isEmpty()) continue;
+            StorageEntity found;
+            if (isId(item)) {
+                int id = Integer.parseInt(item);
+                found = dbService.getFile(id);
+                if (found == null) found = dbService.getDirectory(id);
+            } else {
+                String path = DatabaseService.normalizePath(currentDirectory.getPath(), item);
+                found = path == null ? null : dbService.resolvePath(path);
+            }
+            if (found == null) {
+                System.out.println("Not found: " + item);
+                return;
+            }
+            selection.add(found);
+        }
+        String destination = prompt("Enter download destination path: ");
+        if (destination.isEmpty()) {
+            System.out.println("Destination path cannot be empty.");
+            return;
+        }
+
+        BulkDownloader downloader = new BulkDownloader(dbService, storageService, downloadThreads);
+        long[] lastReport = {0};
+        BulkDownloader.Result result;
+        try {
+            result = downloader.download(selection, Path.of(destination), progress -> {
+                long now = System.nanoTime();
+                if (now - lastReport[0] >= 200_000_000L || progress.files() == progress.totalFiles()) {
+                    lastReport[0] = now;
+                    System.out.printf("\r   %d/%d files, %s of %s", progress.files(), progress.totalFiles(),
+                            formatSize(progress.bytes()), formatSize(progress.totalBytes()));
+                }
+            });
+        } catch (IOException e) {
+            System.out.println("Download failed: " + e.getMessage());
+            return;
+        }
+        System.out.printf("\nDownloaded %d files (%s) into %d folders in %.1f s, %s/s\n",
+                result.files(), formatSize(result.bytes()), result.directories(),
+                result.elapsedNanos() / 1e9, formatSize((long) result.bytesPerSecond()));
+        result.failures().forEach(failure -> System.out.println("   Failed: " + failure));
+    }
+
+    /**
+     * Syncs a local folder with the current directory once, in both directions.
+     */
+    public void syncFolder() {
+        String local = prompt("Enter local folder to sync with " + currentDirectory.getPath() + ": ");
+        if (local.isEmpty()) {
+            System.out.println("Local folder cannot be empty.");
+            return;
+        }
+        boolean hash = prompt("Compare content of files whose times changed? (y/N): ").equalsIgnoreCase("y");
+        try {
+            printSyncReport(new FolderSync(dbService, storageService, Path.of(local), currentDirectory.getPath(), hash).sync());
+        } catch (IOException e) {
+            System.out.println("Sync failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Prints the latencies, row counts, pool gauges and blob traffic recorded in this session,
+     * in the Prometheus text format.
+     */
+    public void showMetrics() {
+        if (metrics == null) {
+            System.out.println("Metrics are not enabled.");
+            return;
+        }
+        System.out.print(metrics.scrape());
+    }
+
+    private String prompt(String message) {
+        System.out.print(message);
+        return scanner.nextLine().trim();
+    }
+
+    /**
+     * Tells whether user input is a numeric item ID rather than a path.
+     * @param input The trimmed input
+     * @return {@code true} if the input is an optionally negative integer
+     */
+    static boolean isId(String input) {
+        return input.matches("-?\\d+");
+    }
+
+    /**
+     * Parses a size such as "512", "10KB" or "1.5GB" into bytes (binary multiples).
+     * @param text The size text, or blank
+     * @return The size in bytes, or {@code null} if the text is blank
+     */
+    static Long parseSize(String text) {
+        String value = text.trim().toUpperCase(Locale.ROOT);
+        if (value.isEmpty()) return null;
+        long multiplier = 1;
+        String[] units = {"KB", "MB", "GB", "TB"};
+        for (int i = 0; i < units.length; i++) {
+            if (value.endsWith(units[i])) {
+                multiplier = 1L << (10 * (i + 1));
+                value = value.substring(0, value.length() - 2).trim();
+                break;
+            }
+        }
+        if (value.endsWith("B")) {
+            value = value.substring(0, value.length() - 1).trim();
+        }
+        return (long) (Double.parseDouble(value) * multiplier);
+    }
+
+    /**
+     * Formats a byte count with a binary unit, e.g. "1.5 MB".
+     * @param bytes The size in bytes
+     * @return The formatted size
+     */
+    static String formatSize(long bytes) {
+        String[] units = {"B", "KB", "MB", "GB", "TB", "PB", "EB"};
+        int unit = 0;
+        double value = bytes;
+        while (value >= 1024 && unit < units.length - 1) {
+            value /= 1024;
+            unit++;
+        }
+        return unit == 0 ? bytes + " B" : String.format(Locale.ROOT, "%.1f %s", value, units[unit]);
+    }
+
+    /**
+     * Parses a yyyy-MM-dd date into the start of that day.
+     * @param text The date text, or blank
+     * @return The start of the day, or {@code null} if the text is blank
+     */
+    static LocalDateTime parseDate(String text) {
+        return text.isBlank() ? null : LocalDate.parse(text.trim()).atStartOfDay();
     }
 
     /**
-     * Utility method to extract file extension.
-     * @param filename The name of the file
-     * @return The file extension (without dot)
+     * Prints one search result line.
+     * @param item The matched file or directory.
      */
-    static String getExtension(String filename) {
-        int dot = filename.lastIndexOf('.');
-        return (dot == -1) ? "" : filename.substring(dot + 1);
+    private static void printSearchResult(StorageEntity item) {
+        System.out.printf("Id: %d [%s] %s (Path: %s)\n",
+                item.getId(),
+                item instanceof Directory ? "Directory" : "File",
+                item.getName(),
+                item.getPath());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,107 @@
+package org.griddynamics.app;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * One parsed line of a batch script, e.g. {@code upload "./q3 report.pdf" /root/reports}.
+ * <p>
+ * Words are separated by whitespace and may be quoted with single or double quotes.
+ * Words starting with "--" are flags; blank lines and lines starting with '#' are skipped.
+ *
+ * @param line  The 1-based line number in the script.
+ * @param text  The original line.
+ * @param name  The command name.
+ * @param args  The positional arguments.
+ * @param flags The flags, without the leading "--".
+ */
+public record BatchCommand(int line, String text, String name, List<String> args, Set<String> flags) {
+
+    /**
+     * Parses a script line.
+     *
+     * @param line The 1-based line number.
+     * @param text The line.
+     * @return The command, or {@code null} for a blank or comment line.
+     * @throws IllegalArgumentException If a quote is not closed.
+     */
+    public static BatchCommand parse(int line, String text) {
+        String trimmed = text.strip();
+        if (trimmed.isEmpty() || trimmed.startsWith("#")) return null;
+
+        List<String> words = tokenize(trimmed);
+        List<String> args = new ArrayList<>();
+        Set<String> flags = new TreeSet<>();
+        for (String word : words.subList(1, words.size())) {
+            if (word.startsWith("--")) {
+                flags.add(word.substring(2));
+            } else {
+                args.add(word);
+            }
+        }
+        return new BatchCommand(line, trimmed, words.get(0), List.copyOf(args), Set.copyOf(flags));
+    }
+
+    /**
+     * Splits a line into words, honouring single and double quotes.
+     */
+    static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        boolean inWord = false;
+        char quote = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                } else {
+                    word.append(c);
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+                inWord = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inWord) {
+                    words.add(word.toString());
+                    word.setLength(0);
+                    inWord = false;
+                }
+            } else {
+                word.append(c);
+                inWord = true;
+            }
+        }
+        if (quote != 0) {
+            throw new IllegalArgumentException("Unterminated quote");
+        }
+        if (inWord) words.add(word.toString());
+        return words;
+    }
+
+    /**
+     * Returns the positional argument at an index.
+     *
+     * @param index The argument index.
+     * @return The argument.
+     * @throws IllegalArgumentException If the command has fewer arguments.
+     */
+    public String arg(int index) {
+        if (index >= args.size()) {
+            throw new IllegalArgumentException(name + ": missing argument " + (index + 1));
+        }
+        return args.get(index);
+    }
+
+    /**
+     * Tells whether a flag was given.
+     *
+     * @param flag The flag name without "--".
+     * @return {@code true} if present.
+     */
+    public boolean hasFlag(String flag) {
+        return flags.contains(flag);
+    }
+}
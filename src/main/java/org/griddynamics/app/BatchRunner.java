@@ -0,0 +1,417 @@
+package org.griddynamics.app;
+
+import org.griddynamics.db.ListingOrder;
+import org.griddynamics.db.QueryTracer;
+import org.griddynamics.domain.Directory;
+import org.griddynamics.domain.EntityJson;
+import org.griddynamics.domain.File;
+import org.griddynamics.domain.StorageEntity;
+import org.griddynamics.service.DatabaseService;
+import org.griddynamics.service.InMemoryMetadataRepository;
+import org.griddynamics.service.MetadataRepository;
+import org.griddynamics.service.StorageService;
+import org.griddynamics.service.WriteBehindRepository;
+
+import javax.sql.DataSource;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Executes batch scripts without the interactive menu.
+ * <p>
+ * Supported commands, with paths absolute ("/root/a") or relative to the root ("a"):
+ * <pre>
+ *   mkdir &lt;path&gt;
+ *   upload &lt;local file&gt; &lt;folder&gt;
+ *   mv &lt;path&gt; &lt;folder&gt;
+ *   rm &lt;path&gt;
+ *   ls &lt;folder&gt; [--json]
+ * </pre>
+ * Commands run on a pool of workers, each with its own connection from the data source.
+ * A command waits only for earlier commands that touched the same path, one of its ancestors
+ * or one of its descendants, so independent commands run in parallel while every command still
+ * sees the effects of the script lines before it. Output is printed in script order. With a
+ * write-behind repository set, commands run against it instead and need no connections.
+ */
+public class BatchRunner {
+
+    /** Attempts per command when the database aborts it because of a deadlock or serialization failure. */
+    private static final int MAX_ATTEMPTS = 3;
+
+    /**
+     * Commands whose database work is a single transaction, so an aborted attempt leaves nothing
+     * behind. An upload has already written its blob, and rm its blob deletion, by then.
+     */
+    private static final Set<String> RETRYABLE = Set.of("mkdir", "ls");
+
+    private final DataSource dataSource;
+    private final DatabaseService dbService;
+    private final StorageService storageService;
+    private final int workers;
+    private QueryTracer queryTracer;
+    /** The repository all workers use instead of a connection each, or {@code null}. */
+    private Supplier<? extends MetadataRepository> shared;
+
+    /**
+     * Creates a runner.
+     *
+     * @param dataSource     The source of the workers' connections.
+     * @param dbService      The service whose indexes and caches the workers share.
+     * @param storageService The blob store.
+     * @param workers        The number of parallel workers.
+     */
+    public BatchRunner(DataSource dataSource, DatabaseService dbService, StorageService storageService, int workers) {
+        this.dataSource = dataSource;
+        this.dbService = dbService;
+        this.storageService = storageService;
+        this.workers = Math.max(1, workers);
+    }
+
+    /**
+     * Creates a runner whose workers share one thread-safe repository, such as an in-memory one,
+     * instead of opening a database connection each.
+     *
+     * @param repository     The repository.
+     * @param storageService The blob store.
+     * @param workers        The number of parallel workers.
+     */
+    public BatchRunner(MetadataRepository repository, StorageService storageService, int workers) {
+        this(null, null, storageService, workers);
+        this.shared = () -> repository;
+    }
+
+    /**
+     * Adds the statements each command runs to the summary from now on.
+     *
+     * @param queryTracer The tracer of the data source, or {@code null} to count nothing.
+     */
+    public void setQueryTracer(QueryTracer queryTracer) {
+        this.queryTracer = queryTracer;
+    }
+
+    /**
+     * Runs commands against a write-behind repository instead of the database. The repository is
+     * asked for when a script runs, so it need not be opened unless one does.
+     *
+     * @param writeBehind Supplies the repository, or {@code null} to write to the database directly.
+     */
+    public void setWriteBehind(Supplier<WriteBehindRepository> writeBehind) {
+        this.shared = writeBehind;
+    }
+
+    /**
+     * The result of one command.
+     */
+    private record Outcome(BatchCommand command, String output, String error, long nanos, QueryTracer.Summary queries) {
+    }
+
+    /**
+     * Runs a script.
+     *
+     * @param lines The script lines.
+     * @param out   Where command output goes.
+     * @param err   Where failures are reported.
+     * @return The latency summary.
+     */
+    public BatchSummary run(List<String> lines, PrintStream out, PrintStream err) {
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        Queue<Connection> connections = new ConcurrentLinkedQueue<>();
+        MetadataRepository repository = shared != null ? shared.get() : null;
+        ThreadLocal<MetadataRepository> services = ThreadLocal.withInitial(
+                () -> repository != null ? repository : openService(connections));
+        PathDependencies dependencies = new PathDependencies();
+        List<CompletableFuture<Outcome>> outcomes = new ArrayList<>();
+        try {
+            for (int i = 0; i < lines.size(); i++) {
+                BatchCommand command;
+                List<String> paths;
+                try {
+                    command = BatchCommand.parse(i + 1, lines.get(i));
+                    if (command == null) continue;
+                    paths = touchedPaths(command);
+                } catch (IllegalArgumentException e) {
+                    BatchCommand invalid = new BatchCommand(i + 1, lines.get(i).strip(), "invalid", List.of(), Set.of());
+                    outcomes.add(CompletableFuture.completedFuture(new Outcome(invalid, "", e.getMessage(), 0, QueryTracer.Summary.EMPTY)));
+                    continue;
+                }
+                BatchCommand ready = command;
+                CompletableFuture<Outcome> outcome = dependencies.before(paths)
+                        .thenApplyAsync(v -> execute(ready, services::get), pool);
+                dependencies.record(paths, outcome);
+                outcomes.add(outcome);
+            }
+
+            BatchSummary summary = new BatchSummary(workers);
+            for (CompletableFuture<Outcome> future : outcomes) {
+                Outcome outcome = future.join();
+                out.print(outcome.output());
+                if (outcome.error() != null) {
+                    err.printf("line %d: %s: %s%n", outcome.command().line(), outcome.command().text(), outcome.error());
+                }
+                summary.record(outcome.command().name(), outcome.nanos(), outcome.error() == null, outcome.queries());
+            }
+            out.flush();
+            summary.finish(System.nanoTime() - start);
+            return summary;
+        } finally {
+            pool.shutdown();
+            try {
+                pool.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (Connection connection : connections) {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    err.println("Failed to close batch connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private DatabaseService openService(Queue<Connection> connections) {
+        try {
+            Connection connection = dataSource.getConnection();
+            connections.add(connection);
+            return dbService.withConnection(connection);
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to open batch connection", e);
+        }
+    }
+
+    /**
+     * Returns the logical paths a command reads or writes, validating its arguments.
+     */
+    static List<String> touchedPaths(BatchCommand command) {
+        return switch (command.name()) {
+            case "mkdir", "rm", "ls" -> List.of(path(command.arg(0)));
+            case "upload" -> List.of(path(command.arg(1)) + "/" + new java.io.File(command.arg(0)).getName());
+            case "mv" -> {
+                String source = path(command.arg(0));
+                yield List.of(source, path(command.arg(1)) + "/" + nameOf(source));
+            }
+            default -> throw new IllegalArgumentException("Unknown command: " + command.name());
+        };
+    }
+
+    private Outcome execute(BatchCommand command, Supplier<MetadataRepository> db) {
+        long start = System.nanoTime();
+        StringBuilder output = new StringBuilder();
+        String error = null;
+        if (queryTracer != null) queryTracer.begin();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                output.setLength(0);
+                dispatch(command, db.get(), output);
+                break;
+            } catch (RuntimeException e) {
+                if (attempt < MAX_ATTEMPTS && RETRYABLE.contains(command.name()) && isTransient(e)) continue;
+                error = describe(e);
+                break;
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        QueryTracer.Summary queries = queryTracer != null ? queryTracer.end() : QueryTracer.Summary.EMPTY;
+        return new Outcome(command, output.toString(), error, nanos, queries);
+    }
+
+    private void dispatch(BatchCommand command, MetadataRepository db, StringBuilder output) {
+        switch (command.name()) {
+            case "mkdir" -> mkdir(db, path(command.arg(0)));
+            case "upload" -> upload(db, command.arg(0), path(command.arg(1)));
+            case "mv" -> move(db, path(command.arg(0)), path(command.arg(1)));
+            case "rm" -> remove(db, path(command.arg(0)));
+            case "ls" -> list(db, path(command.arg(0)), command.hasFlag("json"), output);
+            default -> throw new IllegalArgumentException("Unknown command: " + command.name());
+        }
+    }
+
+    private void mkdir(MetadataRepository db, String path) {
+        String parent = parentOf(path);
+        if (parent == null) {
+            throw new IllegalArgumentException("Already exists: " + path);
+        }
+        Directory dir = new Directory();
+        dir.setName(nameOf(path));
+        dir.setParentId(directoryId(db, parent));
+        dir.setPath(path);
+        db.saveDirectory(dir);
+    }
+
+    private void upload(MetadataRepository db, String localPath, String folder) {
+        java.io.File local = new java.io.File(localPath);
+        if (!local.isFile()) {
+            throw new IllegalArgumentException("No such local file: " + localPath);
+        }
+        File file = new File();
+        file.setName(local.getName());
+        file.setParentId(directoryId(db, folder));
+        file.setFileType(File.extensionOf(local.getName()));
+        file.setFileSize(local.length());
+        file.setPath(folder + "/" + local.getName());
+        try (FileInputStream in = new FileInputStream(local)) {
+            db.saveFile(file, in, storageService);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read " + localPath, e);
+        }
+    }
+
+    private void move(MetadataRepository db, String source, String folder) {
+        StorageEntity item = existing(db, source);
+        if (item instanceof Directory && (folder.equals(source) || folder.startsWith(source + "/"))) {
+            throw new IllegalArgumentException("Cannot move " + source + " into itself");
+        }
+        db.move(item.getId(), directoryId(db, folder), folder + "/" + item.getName());
+    }
+
+    private void remove(MetadataRepository db, String path) {
+        StorageEntity item = existing(db, path);
+        if (item instanceof File file) {
+            db.deleteFile(file, storageService);
+        } else if (parentOf(path) == null) {
+            throw new IllegalArgumentException("Cannot remove the root directory");
+        } else {
+            db.deleteDirectory(item.getId());
+        }
+    }
+
+    private void list(MetadataRepository db, String path, boolean json, StringBuilder output) {
+        if (!(existing(db, path) instanceof Directory dir)) {
+            throw new IllegalArgumentException("Not a directory: " + path);
+        }
+        try (Stream<StorageEntity> children = db instanceof DatabaseService database
+                ? database.streamChildren(dir.getId(), ListingOrder.NAME)
+                : db.getChildren(dir.getId()).stream()
+                        .sorted(Comparator.comparing(StorageEntity::getName, InMemoryMetadataRepository::compareNames)
+                                .thenComparingInt(StorageEntity::getId))) {
+            if (!json) {
+                children.forEach(item -> output.append(item instanceof Directory ? "d " : "f ")
+                        .append(String.format("%12d ", EntityJson.size(item))).append(item.getName()).append('\n'));
+                return;
+            }
+            output.append('[');
+            boolean[] first = {true};
+            children.forEach(item -> {
+                output.append(first[0] ? "\n  " : ",\n  ");
+                first[0] = false;
+                EntityJson.append(item, output);
+            });
+            output.append(first[0] ? "]\n" : "\n]\n");
+        }
+    }
+
+    private static StorageEntity existing(MetadataRepository db, String path) {
+        StorageEntity item = db.resolvePath(path);
+        if (item == null) {
+            throw new IllegalArgumentException("No such file or directory: " + path);
+        }
+        return item;
+    }
+
+    private static int directoryId(MetadataRepository db, String path) {
+        Integer id = db.resolveDirectoryId(path);
+        if (id == null) {
+            throw new IllegalArgumentException("No such directory: " + path);
+        }
+        return id;
+    }
+
+    /** Normalizes a script path; paths without a leading '/' are relative to the root. */
+    private static String path(String input) {
+        String path = DatabaseService.normalizePath("root", input);
+        if (path == null) {
+            throw new IllegalArgumentException("Invalid path: " + input);
+        }
+        return path;
+    }
+
+    private static String parentOf(String path) {
+        int slash = path.lastIndexOf('/');
+        return slash < 0 ? null : path.substring(0, slash);
+    }
+
+    private static String nameOf(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    /** Deadlocks and serialization failures roll the statement back, so the command can be retried. */
+    private static boolean isTransient(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException sql && ("40P01".equals(sql.getSQLState()) || "40001".equals(sql.getSQLState()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String describe(Throwable e) {
+        Throwable root = e;
+        while (root.getCause() != null) root = root.getCause();
+        return root == e || root.getMessage() == null ? e.getMessage() : e.getMessage() + ": " + root.getMessage();
+    }
+
+    /**
+     * Tracks the last commands per path so each new command waits only for conflicting ones.
+     * Only used from the thread that schedules the script.
+     */
+    static final class PathDependencies {
+
+        /** Last command that touched exactly this path. */
+        private final Map<String, CompletableFuture<?>> lastAt = new HashMap<>();
+
+        /** Completes when every command so far that touched this path or anything below it is done. */
+        private final Map<String, CompletableFuture<?>> lastBelow = new HashMap<>();
+
+        /**
+         * Returns a future completing once every earlier command touching one of the paths,
+         * their ancestors or their descendants is done.
+         */
+        CompletableFuture<Void> before(List<String> paths) {
+            List<CompletableFuture<?>> waits = new ArrayList<>();
+            for (String path : paths) {
+                for (String p = path; p != null; p = parentOf(p)) {
+                    addPending(waits, lastAt.get(p));
+                }
+                addPending(waits, lastBelow.get(path));
+            }
+            return CompletableFuture.allOf(waits.toArray(new CompletableFuture<?>[0]));
+        }
+
+        /**
+         * Records a scheduled command as the latest to touch the paths.
+         */
+        void record(List<String> paths, CompletableFuture<?> command) {
+            for (String path : paths) {
+                lastAt.put(path, command);
+                for (String p = path; p != null; p = parentOf(p)) {
+                    CompletableFuture<?> previous = lastBelow.get(p);
+                    lastBelow.put(p, previous == null || previous.isDone()
+                            ? command : CompletableFuture.allOf(previous, command));
+                }
+            }
+        }
+
+        private static void addPending(List<CompletableFuture<?>> waits, CompletableFuture<?> future) {
+            if (future != null && !future.isDone()) waits.add(future);
+        }
+    }
+}
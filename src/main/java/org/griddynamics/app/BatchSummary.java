@@ -0,0 +1,129 @@
+package org.griddynamics.app;
+
+import org.griddynamics.db.QueryTracer;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Per-command latency statistics of a batch run, with the SQL the commands ran when traced.
+ */
+public class BatchSummary {
+
+    private final Map<String, Stats> byCommand = new TreeMap<>();
+    private final int workers;
+    private long wallNanos;
+    private int total;
+    private int failed;
+    private long queries;
+
+    /**
+     * Creates an empty summary.
+     *
+     * @param workers The number of parallel workers of the run.
+     */
+    public BatchSummary(int workers) {
+        this.workers = workers;
+    }
+
+    private static final class Stats {
+        private long[] latencies = new long[16];
+        private int count;
+        private int failed;
+        private long queries;
+        private long dbNanos;
+
+        void add(long nanos, boolean ok, QueryTracer.Summary sql) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+            if (!ok) failed++;
+            queries += sql.queries();
+            dbNanos += sql.nanos();
+        }
+    }
+
+    /**
+     * Records one executed command.
+     *
+     * @param command The command name.
+     * @param nanos   The execution time, excluding time spent waiting for earlier commands.
+     * @param ok      Whether the command succeeded.
+     */
+    public void record(String command, long nanos, boolean ok) {
+        record(command, nanos, ok, QueryTracer.Summary.EMPTY);
+    }
+
+    /**
+     * Records one executed command with the statements it ran.
+     *
+     * @param command The command name.
+     * @param nanos   The execution time, excluding time spent waiting for earlier commands.
+     * @param ok      Whether the command succeeded.
+     * @param sql     The statements it ran.
+     */
+    public void record(String command, long nanos, boolean ok, QueryTracer.Summary sql) {
+        byCommand.computeIfAbsent(command, c -> new Stats()).add(nanos, ok, sql);
+        total++;
+        if (!ok) failed++;
+        queries += sql.queries();
+    }
+
+    /**
+     * Sets the wall-clock duration of the whole run.
+     *
+     * @param wallNanos The duration in nanoseconds.
+     */
+    public void finish(long wallNanos) {
+        this.wallNanos = wallNanos;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    /**
+     * Formats a table of count, failures and p50/p95/max latency per command, plus the average
+     * number of statements and database time per command when any were traced, followed by the
+     * overall throughput.
+     *
+     * @return The multi-line summary.
+     */
+    public String format() {
+        boolean traced = queries > 0;
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ROOT, "%-10s %8s %8s %10s %10s %10s",
+                "command", "count", "failed", "p50 ms", "p95 ms", "max ms"));
+        out.append(traced ? String.format(Locale.ROOT, " %10s %10s%n", "sql/cmd", "db ms/cmd") : System.lineSeparator());
+        byCommand.forEach((name, stats) -> {
+            long[] sorted = Arrays.copyOf(stats.latencies, stats.count);
+            Arrays.sort(sorted);
+            out.append(String.format(Locale.ROOT, "%-10s %8d %8d %10.2f %10.2f %10.2f",
+                    name, stats.count, stats.failed,
+                    millis(percentile(sorted, 50)), millis(percentile(sorted, 95)), millis(sorted[sorted.length - 1])));
+            out.append(traced ? String.format(Locale.ROOT, " %10.1f %10.2f%n",
+                    (double) stats.queries / stats.count, millis(stats.dbNanos) / stats.count) : System.lineSeparator());
+        });
+        double seconds = wallNanos / 1e9;
+        out.append(String.format(Locale.ROOT, "%d commands in %.2f s (%.1f/s) on %d workers, %d failed%n",
+                total, seconds, seconds > 0 ? total / seconds : 0.0, workers, failed));
+        return out.toString();
+    }
+
+    /** Nearest-rank percentile of a sorted, non-empty array. */
+    static long percentile(long[] sorted, int percent) {
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -3,7 +3,7 @@ package org.griddynamics.app;
 import org.griddynamics.domain.Directory;
 import org.griddynamics.domain.File;
 import org.griddynamics.domain.StorageEntity;
-import org.griddynamics.service.DatabaseService;
+import org.griddynamics.service.MetadataRepository;
 
 import java.util.List;
 import java.util.Optional;
@@ -36,6 +36,13 @@ public class MenuBar {
                     8. View item details
                     9. Search
                     10.Change directory
+                    11.Search file contents
+                    12.Find
+                    13.Usage report
+                    14.Find duplicates
+                    15.Download folders and files
+                    16.Sync local folder
+                    17.Show metrics
                     0. Exit
                 """;
     }
@@ -46,7 +53,7 @@ public class MenuBar {
      * @param dbService The database service used to retrieve file metadata.
      * @param dir       The directory whose files should be listed.
      */
-    public static void listFilesInDirectory(DatabaseService dbService, Directory dir) {
+    public static void listFilesInDirectory(MetadataRepository dbService, Directory dir) {
         List<StorageEntity> items = dbService.getChildren(dir.getId());
         if(items==null){
             System.out.println("No files found in the directory.");
@@ -68,7 +75,7 @@ public class MenuBar {
      * @param includeSelf  Whether to include the current directory itself in the list.
      * @param includeRoot  Whether the root directory should be included even if it's the current one.
      */
-    public static void listItemsInDirectory(DatabaseService dbService, Directory dir, boolean includeSelf, boolean includeRoot) {
+    public static void listItemsInDirectory(MetadataRepository dbService, Directory dir, boolean includeSelf, boolean includeRoot) {
         System.out.println("Available Items:\n");
         if (includeSelf && (includeRoot || dir.getParentId() != 0)) {
             System.out.println("    Id: " + dir.getId() + " (current directory) " + dir.getName());
@@ -87,7 +94,7 @@ public class MenuBar {
      * @param dbService        The database service to retrieve all directories.
      * @param currentDirectory The current directory in context.
      */
-    public static void listAllDirectories(DatabaseService dbService, Directory currentDirectory) {
+    public static void listAllDirectories(MetadataRepository dbService, Directory currentDirectory) {
         List<Directory> allDirs = dbService.getAllDirectories();
         System.out.println("Destination Directories:\n");
         for (Directory d : allDirs) {
@@ -104,7 +111,7 @@ public class MenuBar {
      * @param dbService    The database service used to retrieve directory hierarchy.
      * @param folderToMove The directory the user wants to move.
      */
-    public static void listValidDestinationDirectories(DatabaseService dbService, Directory folderToMove) {
+    public static void listValidDestinationDirectories(MetadataRepository dbService, Directory folderToMove) {
         Set<Integer> excludedIds = dbService.getAllDescendantDirectoryIds(folderToMove.getId());
         excludedIds.add(Integer.valueOf(folderToMove.getId()));
         excludedIds.add(Integer.valueOf(folderToMove.getParentId()));
@@ -0,0 +1,182 @@
+package org.griddynamics.app;
+
+import org.griddynamics.domain.Directory;
+import org.griddynamics.domain.File;
+import org.griddynamics.domain.Page;
+import org.griddynamics.domain.StorageEntity;
+import org.griddynamics.service.DatabaseService;
+import org.griddynamics.snapshot.MetadataSnapshot;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Browses a metadata snapshot offline: {@code browse drive.snap}. Runs without Spring and
+ * without a database, so it starts in well under a second on any size of tree.
+ * <p>
+ * Commands, one per line: {@code ls [folder]}, {@code cd <folder>}, {@code pwd},
+ * {@code info <path>}, {@code search <text>}, {@code next} for the next page of results,
+ * {@code help} and {@code exit}. Paths are relative to the current folder or start with "/".
+ */
+public class SnapshotBrowser {
+
+    /** Number of search results shown per page. */
+    static final int SEARCH_PAGE_SIZE = 20;
+
+    private final MetadataSnapshot snapshot;
+    private final PrintStream out;
+    private Directory currentDirectory;
+    private String lastQuery;
+    private StorageEntity lastResult;
+    private boolean hasMore;
+
+    SnapshotBrowser(MetadataSnapshot snapshot, PrintStream out) {
+        this.snapshot = snapshot;
+        this.out = out;
+        this.currentDirectory = snapshot.getRootDirectory();
+    }
+
+    /**
+     * Opens a snapshot and reads commands until {@code exit} or the end of the input.
+     *
+     * @param args The snapshot file
+     * @param in   The commands
+     * @param out  Where listings and results go
+     * @return 0 on success, 1 if the snapshot cannot be opened, 2 on bad arguments
+     */
+    static int run(List<String> args, InputStream in, PrintStream out) {
+        if (args.size() != 1) {
+            System.err.println("Usage: browse <snapshot-file>");
+            return 2;
+        }
+        long start = System.nanoTime();
+        MetadataSnapshot snapshot;
+        try {
+            snapshot = MetadataSnapshot.open(Path.of(args.get(0)));
+        } catch (IOException e) {
+            System.err.println("Cannot open snapshot: " + e.getMessage());
+            return 1;
+        }
+        if (snapshot.getRootDirectory() == null) {
+            System.err.println("The snapshot has no root folder.");
+            return 1;
+        }
+        out.printf("Opened %d items exported %s in %d ms, read-only. Type help for the commands.%n",
+                snapshot.size(), snapshot.getExportedAt(), (System.nanoTime() - start) / 1_000_000);
+        SnapshotBrowser browser = new SnapshotBrowser(snapshot, out);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        try {
+            out.print(browser.prompt());
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (!browser.execute(line)) break;
+                out.print(browser.prompt());
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to read commands: " + e.getMessage());
+            return 1;
+        }
+        return 0;
+    }
+
+    String prompt() {
+        return "/" + currentDirectory.getPath() + "> ";
+    }
+
+    /**
+     * Runs one command.
+     *
+     * @param line The command line
+     * @return {@code false} once the user asked to exit
+     */
+    boolean execute(String line) {
+        String[] parts = line.strip().split("\\s+", 2);
+        String argument = parts.length > 1 ? parts[1] : "";
+        switch (parts[0]) {
+            case "" -> { }
+            case "ls" -> list(argument.isEmpty() ? currentDirectory : folder(argument));
+            case "cd" -> {
+                Directory target = folder(argument.isEmpty() ? "/root" : argument);
+                if (target != null) currentDirectory = target;
+            }
+            case "pwd" -> out.println("/" + currentDirectory.getPath());
+            case "info" -> {
+                StorageEntity item = argument.isEmpty() ? currentDirectory : snapshot.resolvePath(resolve(argument));
+                out.println(item == null ? "No such item: " + argument : describe(item));
+            }
+            case "search" -> {
+                lastQuery = argument;
+                lastResult = null;
+                search();
+            }
+            case "next" -> {
+                if (lastQuery == null) {
+                    out.println("Search first.");
+                } else if (!hasMore) {
+                    out.println("No more results.");
+                } else {
+                    search();
+                }
+            }
+            case "help" -> out.println("Commands: ls [folder], cd <folder>, pwd, info <path>, search <text>, next, exit");
+            case "exit", "quit" -> {
+                return false;
+            }
+            default -> out.println("Unknown command: " + parts[0] + " (the snapshot is read-only; type help)");
+        }
+        return true;
+    }
+
+    private void list(Directory dir) {
+        if (dir == null) return;
+        List<StorageEntity> children = snapshot.getChildren(dir.getId());
+        children.sort(Comparator.comparing((StorageEntity item) -> !(item instanceof Directory))
+                .thenComparing(StorageEntity::getName));
+        out.println("Available Items:\n");
+        for (StorageEntity item : children) {
+            out.println("    Id: " + item.getId() + (item instanceof Directory ? " [Directory] " : " [File] ") + item.getName());
+        }
+        out.println();
+    }
+
+    private void search() {
+        long start = System.nanoTime();
+        Page<StorageEntity> page = snapshot.searchFilesAndDirectories(lastQuery, lastResult, SEARCH_PAGE_SIZE);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        for (StorageEntity item : page.items()) {
+            out.println("    " + (item instanceof Directory ? "[Directory] " : "[File] ") + "/" + item.getPath());
+        }
+        lastResult = page.last();
+        hasMore = page.hasMore();
+        out.printf("%d result(s) in %d ms%s%n", page.items().size(), elapsedMs,
+                page.hasMore() ? ", type next for more" : "");
+    }
+
+    private Directory folder(String input) {
+        if (snapshot.resolvePath(resolve(input)) instanceof Directory dir) return dir;
+        out.println("No such folder: " + input);
+        return null;
+    }
+
+    private String resolve(String input) {
+        return DatabaseService.normalizePath(currentDirectory.getPath(), input);
+    }
+
+    private static String describe(StorageEntity item) {
+        if (item instanceof Directory dir) {
+            return String.format("/%s: folder, %d item(s), %d file(s) below, %s, updated %s", dir.getPath(),
+                    dir.getChildCount(), dir.getFileCount(), Application.formatSize(dir.getTotalBytes()),
+                    dir.getUpdatedAt());
+        }
+        File file = (File) item;
+        return String.format("/%s: %s file, %s, updated %s", file.getPath(),
+                file.getFileType() == null ? "untyped" : file.getFileType(), Application.formatSize(file.getFileSize()),
+                file.getUpdatedAt());
+    }
+}
@@ -1,29 +1,121 @@
 package org.griddynamics.config;
 
+import org.griddynamics.app.BatchRunner;
+import org.griddynamics.db.QueryTracer;
+import org.griddynamics.metrics.DriveMetrics;
+import org.griddynamics.search.ContentIndexer;
+import org.griddynamics.search.CsvExtractor;
+import org.griddynamics.search.HtmlExtractor;
+import org.griddynamics.search.NameIndex;
+import org.griddynamics.search.PlainTextExtractor;
 import org.griddynamics.service.DatabaseService;
+import org.griddynamics.service.PathCache;
+import org.griddynamics.service.SegmentedCopier;
 import org.griddynamics.service.StorageService;
+import org.griddynamics.service.WriteBehindRepository;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 
+import javax.sql.DataSource;
+import java.nio.file.Path;
 import java.sql.Connection;
+import java.util.List;
 
 @Configuration
 public class AppConfig {
     @Autowired
     private Connection connection;
 
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private DriveMetrics metrics;
+
+    @Autowired
+    private QueryTracer queryTracer;
+
     @Value("${storage.folder}")
     private String storageFolder;
 
+    @Value("${search.name-index.enabled:false}")
+    private boolean nameIndexEnabled;
+
+    @Value("${search.content-index.enabled:true}")
+    private boolean contentIndexEnabled;
+
+    @Value("${paths.cache-size:1024}")
+    private int pathCacheSize;
+
+    @Value("${batch.workers:4}")
+    private int batchWorkers;
+
+    @Value("${transfer.segment-threshold:268435456}")
+    private long segmentThreshold;
+
+    @Value("${transfer.segment-size:67108864}")
+    private long segmentSize;
+
+    @Value("${transfer.parallelism:4}")
+    private int transferParallelism;
+
+    @Value("${journal.file:${storage.folder}/metadata.journal}")
+    private String journalFile;
+
+    @Value("${journal.batch-size:1000}")
+    private int journalBatchSize;
+
     @Bean
     public DatabaseService databaseService() {
-        return new DatabaseService(connection);
+        DatabaseService databaseService = new DatabaseService(connection);
+        if (nameIndexEnabled) {
+            databaseService.enableNameIndex(new NameIndex());
+        }
+        if (contentIndexEnabled) {
+            databaseService.setContentIndexer(contentIndexer());
+        }
+        if (pathCacheSize > 0) {
+            databaseService.setPathCache(new PathCache(pathCacheSize));
+        }
+        return metrics.instrument(databaseService, "db");
+    }
+
+    @Bean
+    public ContentIndexer contentIndexer() {
+        return new ContentIndexer(dataSource, List.of(
+                new PlainTextExtractor(),
+                new HtmlExtractor(),
+                new CsvExtractor()));
     }
 
     @Bean
     public StorageService storageService() {
-        return new StorageService(storageFolder);
+        StorageService storageService = new StorageService(storageFolder);
+        if (transferParallelism > 1) {
+            storageService.setSegmentedCopier(new SegmentedCopier(segmentThreshold, segmentSize, transferParallelism));
+        }
+        storageService.setMetrics(metrics);
+        return metrics.instrument(storageService, "storage");
+    }
+
+    @Bean
+    public BatchRunner batchRunner(ObjectProvider<WriteBehindRepository> writeBehindRepository) {
+        BatchRunner batchRunner = new BatchRunner(dataSource, databaseService(), storageService(), batchWorkers);
+        batchRunner.setQueryTracer(queryTracer);
+        // Opened by the first script run, so menu and server modes never load the journal
+        batchRunner.setWriteBehind(writeBehindRepository::getIfAvailable);
+        return batchRunner;
+    }
+
+    @Bean(destroyMethod = "close")
+    @Lazy
+    @ConditionalOnProperty(name = "journal.enabled", havingValue = "true")
+    public WriteBehindRepository writeBehindRepository() {
+        return new WriteBehindRepository(dataSource, databaseService(), Path.of(journalFile), journalBatchSize);
     }
-}
\ No newline at end of file
+}
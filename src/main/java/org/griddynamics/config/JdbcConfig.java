@@ -1,8 +1,13 @@
 package org.griddynamics.config;
 
+import com.zaxxer.hikari.HikariDataSource;
+import org.griddynamics.db.QueryTracer;
+import org.griddynamics.metrics.DriveMetrics;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
 import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.SQLException;
@@ -13,18 +18,51 @@ public class JdbcConfig {
     @Autowired
     private DatabaseConfig databaseConfig;
 
+    @Value("${db.trace.enabled:false}")
+    private boolean traceEnabled;
+
+    @Value("${db.slow-query-ms:200}")
+    private long slowQueryMillis;
+
+    @Value("${db.connect-lazily:false}")
+    private boolean connectLazily;
+
+    @Bean
+    public QueryTracer queryTracer() {
+        return new QueryTracer(slowQueryMillis, traceEnabled);
+    }
+
     @Bean
-    public DataSource dataSource() {
-        return DataSourceBuilder.create()
+    public DataSource dataSource(DriveMetrics metrics, QueryTracer queryTracer) {
+        HikariDataSource dataSource = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
                 .url(databaseConfig.dbUrl)
                 .username(databaseConfig.dbUser)
                 .password(databaseConfig.dbPassword)
                 .driverClassName("org.postgresql.Driver")
                 .build();
+        // Publishes the pool's active, idle and pending connection gauges and its wait times
+        dataSource.setPoolName("drive");
+        dataSource.setMetricRegistry(metrics.registry());
+        // Always wrapped: with tracing off the wrapper still emits the JFR query events
+        return queryTracer.wrap(dataSource);
     }
 
+    /**
+     * The connection of the menu and the single-connection services. With {@code db.connect-lazily}
+     * it is a stand-in that connects on the first statement, so startup does no JDBC handshake
+     * and runs that never query never connect.
+     */
     @Bean
     public Connection connection(DataSource dataSource) throws SQLException {
+        if (connectLazily) {
+            LazyConnectionDataSourceProxy lazy = new LazyConnectionDataSourceProxy();
+            // Known up front, or the proxy would connect once to read them
+            lazy.setDefaultAutoCommit(true);
+            lazy.setDefaultTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+            lazy.setTargetDataSource(dataSource);
+            return lazy.getConnection();
+        }
         return dataSource.getConnection();
     }
 }
\ No newline at end of file
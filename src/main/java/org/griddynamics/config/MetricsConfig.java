@@ -0,0 +1,21 @@
+package org.griddynamics.config;
+
+import org.griddynamics.metrics.DriveMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Creates the {@link DriveMetrics} that the services, the connection pool and the HTTP server
+ * record into. Set {@code metrics.jmx.enabled=false} to skip publishing MBeans.
+ */
+@Configuration
+public class MetricsConfig {
+    @Value("${metrics.jmx.enabled:true}")
+    private boolean jmxEnabled;
+
+    @Bean(destroyMethod = "close")
+    public DriveMetrics driveMetrics() {
+        return new DriveMetrics(jmxEnabled);
+    }
+}
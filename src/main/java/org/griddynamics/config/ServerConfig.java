@@ -0,0 +1,50 @@
+package org.griddynamics.config;
+
+import org.griddynamics.metrics.DriveMetrics;
+import org.griddynamics.server.DriveServer;
+import org.griddynamics.service.DatabaseService;
+import org.griddynamics.service.StorageService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import javax.sql.DataSource;
+
+/**
+ * Serves the drive over HTTP when the {@code server} profile is active,
+ * e.g. {@code --spring.profiles.active=dev,server}.
+ */
+@Configuration
+@Profile("server")
+public class ServerConfig {
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private DatabaseService databaseService;
+
+    @Autowired
+    private StorageService storageService;
+
+    @Autowired
+    private DriveMetrics metrics;
+
+    @Value("${http.port:8080}")
+    private int port;
+
+    @Value("${http.max-concurrent-requests:256}")
+    private int maxConcurrentRequests;
+
+    @Value("${http.max-concurrent-transfers:8}")
+    private int maxConcurrentTransfers;
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public DriveServer driveServer() {
+        DriveServer server = new DriveServer(dataSource, databaseService, storageService,
+                port, maxConcurrentRequests, maxConcurrentTransfers);
+        server.setMetrics(metrics);
+        return server;
+    }
+}
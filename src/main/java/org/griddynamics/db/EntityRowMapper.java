@@ -0,0 +1,160 @@
+package org.griddynamics.db;
+
+import org.griddynamics.domain.Directory;
+import org.griddynamics.domain.File;
+import org.griddynamics.domain.StorageEntity;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+
+/**
+ * Maps rows selected with {@link SqlQueries#ENTITY_COLUMNS} to entities by column index.
+ * <p>
+ * Used on every multi-row path (listings, search pages, find, reports), where looking each
+ * column up by name, converting timestamps eagerly and allocating unused collections per row
+ * add up. Timestamps are handed over as epoch microseconds, so no JDBC type reaches the domain
+ * objects, and decoded to {@link LocalDateTime} only if read.
+ */
+public final class EntityRowMapper {
+
+    /** Positions of the columns in {@link SqlQueries#ENTITY_COLUMNS}. */
+    public static final int ID = 1;
+    public static final int NAME = 2;
+    public static final int PARENT_ID = 3;
+    public static final int IS_DIRECTORY = 4;
+    public static final int FILE_TYPE = 5;
+    public static final int FILE_SIZE = 6;
+    public static final int PATH = 7;
+    public static final int CREATED_AT = 8;
+    public static final int UPDATED_AT = 9;
+    public static final int CHILD_COUNT = 10;
+    public static final int FILE_COUNT = 11;
+    public static final int TOTAL_BYTES = 12;
+
+    /** Positions of the columns {@link SqlQueries#GET_CHILDREN_WITH_DIGESTS} appends. */
+    public static final int CONTENT_HASH = 13;
+    public static final int DIGEST = 14;
+
+    private static final HexFormat HEX = HexFormat.of();
+
+    private EntityRowMapper() {
+    }
+
+    /**
+     * Maps the current row to a {@link Directory} or a {@link File}.
+     *
+     * @param rs The result set positioned at a row.
+     * @return The entity.
+     * @throws SQLException If a column cannot be read.
+     */
+    public static StorageEntity map(ResultSet rs) throws SQLException {
+        return rs.getBoolean(IS_DIRECTORY) ? mapDirectory(rs) : mapFile(rs);
+    }
+
+    /**
+     * Maps the current row to a {@link Directory}, including its rollups.
+     *
+     * @param rs The result set positioned at a directory row.
+     * @return The directory.
+     * @throws SQLException If a column cannot be read.
+     */
+    public static Directory mapDirectory(ResultSet rs) throws SQLException {
+        Directory dir = new Directory();
+        dir.setId(rs.getInt(ID));
+        dir.setName(rs.getString(NAME));
+        dir.setParentId(rs.getInt(PARENT_ID));
+        dir.setPath(rs.getString(PATH));
+        dir.setTimestampMicros(epochMicros(rs.getTimestamp(CREATED_AT)), epochMicros(rs.getTimestamp(UPDATED_AT)));
+        dir.setChildCount(rs.getInt(CHILD_COUNT));
+        dir.setFileCount(rs.getLong(FILE_COUNT));
+        dir.setTotalBytes(rs.getLong(TOTAL_BYTES));
+        return dir;
+    }
+
+    /**
+     * Maps the current row to a {@link File}.
+     *
+     * @param rs The result set positioned at a file row.
+     * @return The file.
+     * @throws SQLException If a column cannot be read.
+     */
+    public static File mapFile(ResultSet rs) throws SQLException {
+        File file = new File();
+        file.setId(rs.getInt(ID));
+        file.setName(rs.getString(NAME));
+        file.setParentId(rs.getInt(PARENT_ID));
+        file.setFileType(rs.getString(FILE_TYPE));
+        file.setFileSize(rs.getLong(FILE_SIZE));
+        file.setPath(rs.getString(PATH));
+        file.setTimestampMicros(epochMicros(rs.getTimestamp(CREATED_AT)), epochMicros(rs.getTimestamp(UPDATED_AT)));
+        return file;
+    }
+
+    /**
+     * Maps the current row of {@link SqlQueries#GET_CHILDREN_WITH_DIGESTS}, including the
+     * content hash of a file or the digest of a directory.
+     *
+     * @param rs The result set positioned at a row.
+     * @return The entity.
+     * @throws SQLException If a column cannot be read.
+     */
+    public static StorageEntity mapWithDigests(ResultSet rs) throws SQLException {
+        if (rs.getBoolean(IS_DIRECTORY)) {
+            Directory dir = mapDirectory(rs);
+            dir.setDigest(digestHex(rs.getString(DIGEST)));
+            return dir;
+        }
+        File file = mapFile(rs);
+        file.setContentHash(hashHex(rs.getBytes(CONTENT_HASH)));
+        return file;
+    }
+
+    /**
+     * Converts a digest column, which the driver reads as a string of 256 binary digits, to hex.
+     *
+     * @param bits The column value.
+     * @return 64 hex digits, or {@code null} for {@code null}.
+     */
+    public static String digestHex(String bits) {
+        if (bits == null) return null;
+        byte[] bytes = new byte[bits.length() / 8];
+        for (int i = 0; i < bits.length(); i++) {
+            if (bits.charAt(i) == '1') bytes[i / 8] |= (byte) (0x80 >>> (i % 8));
+        }
+        return HEX.formatHex(bytes);
+    }
+
+    /**
+     * Converts a content hash column to hex.
+     *
+     * @param hash The column value.
+     * @return 64 hex digits, or {@code null} for {@code null}.
+     */
+    public static String hashHex(byte[] hash) {
+        return hash == null ? null : HEX.formatHex(hash);
+    }
+
+    /**
+     * Converts a timestamp column to a {@link LocalDateTime}.
+     *
+     * @param time The column value.
+     * @return The local time, null if the column is null.
+     */
+    public static LocalDateTime toLocalDateTime(Timestamp time) {
+        return time == null ? null : time.toLocalDateTime();
+    }
+
+    /**
+     * Converts a timestamp column to microseconds since the epoch, PostgreSQL's own precision.
+     *
+     * @param time The column value.
+     * @return The microseconds, {@link StorageEntity#NO_TIME} if the column is null.
+     */
+    public static long epochMicros(Timestamp time) {
+        if (time == null) return StorageEntity.NO_TIME;
+        return Math.floorDiv(time.getTime(), 1000) * 1_000_000 + time.getNanos() / 1000;
+    }
+}
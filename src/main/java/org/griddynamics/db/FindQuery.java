@@ -0,0 +1,236 @@
+package org.griddynamics.db;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Predicates for the server-side find command, compiled into one parameterized SQL query.
+ * <p>
+ * Every predicate is optional; unset predicates are left out of the WHERE clause so the planner
+ * only sees the conditions that matter. File type and size predicates restrict the result to
+ * files. Depths are counted relative to the subtree root ({@link #setUnder(String)}), where its
+ * direct children have depth 1.
+ * <p>
+ * Results are ordered by ID and paginated with an ID keyset, so each page is an index range scan
+ * no matter how deep into the result set it is.
+ */
+public class FindQuery {
+
+    /** SQL expression for the absolute depth of an item: the number of separators in its path. */
+    static final String DEPTH_EXPRESSION = "(LENGTH(path) - LENGTH(REPLACE(path, '/', '')))";
+
+    private List<String> fileTypes = List.of();
+    private Long minSize;
+    private Long maxSize;
+    private LocalDateTime createdAfter;
+    private LocalDateTime createdBefore;
+    private LocalDateTime modifiedAfter;
+    private LocalDateTime modifiedBefore;
+    private Integer minDepth;
+    private Integer maxDepth;
+    private String under;
+    private Boolean directory;
+
+    /**
+     * The SQL text and positional parameters of a compiled query.
+     *
+     * @param sql    The SQL with {@code ?} placeholders.
+     * @param params The parameter values, in placeholder order.
+     */
+    public record Compiled(String sql, List<Object> params) {
+    }
+
+    /**
+     * Compiles the predicates into a query for one page of results.
+     *
+     * @param afterId The ID of the last item of the previous page, or 0 for the first page.
+     * @param limit   The page size; one extra row is fetched to detect whether more follow.
+     * @return The compiled SQL and its parameters.
+     */
+    public Compiled compile(int afterId, int limit) {
+        StringBuilder sql = new StringBuilder("SELECT ").append(SqlQueries.ENTITY_COLUMNS)
+                .append(" FROM storage_entities WHERE id > ?");
+        List<Object> params = new ArrayList<>();
+        params.add(afterId);
+
+        boolean filesOnly = !fileTypes.isEmpty() || minSize != null || maxSize != null;
+        if (filesOnly || Boolean.FALSE.equals(directory)) {
+            sql.append(" AND NOT is_directory");
+        } else if (Boolean.TRUE.equals(directory)) {
+            sql.append(" AND is_directory");
+        }
+        if (!fileTypes.isEmpty()) {
+            sql.append(" AND LOWER(file_type) = ANY(?)");
+            params.add(fileTypes.toArray(new String[0]));
+        }
+        if (minSize != null) {
+            sql.append(" AND file_size >= ?");
+            params.add(minSize);
+        }
+        if (maxSize != null) {
+            sql.append(" AND file_size <= ?");
+            params.add(maxSize);
+        }
+        appendRange(sql, params, "created_at", createdAfter, createdBefore);
+        appendRange(sql, params, "updated_at", modifiedAfter, modifiedBefore);
+
+        int baseDepth = 0;
+        if (under != null) {
+            // Prefix range on the pattern-ops index; '0' is the character right after '/'
+            sql.append(" AND path ~>=~ ? AND path ~<~ ?");
+            params.add(under + "/");
+            params.add(under + "0");
+            baseDepth = depthOf(under);
+        }
+        if (minDepth != null) {
+            sql.append(" AND ").append(DEPTH_EXPRESSION).append(" >= ?");
+            params.add(baseDepth + minDepth);
+        }
+        if (maxDepth != null) {
+            sql.append(" AND ").append(DEPTH_EXPRESSION).append(" <= ?");
+            params.add(baseDepth + maxDepth);
+        }
+
+        sql.append(" ORDER BY id LIMIT ?");
+        params.add(limit + 1);
+        return new Compiled(sql.toString(), params);
+    }
+
+    /**
+     * Returns the depth of a logical path, counting the root as depth 0.
+     *
+     * @param path The logical path.
+     * @return The number of separators in the path.
+     */
+    public static int depthOf(String path) {
+        int depth = 0;
+        for (int i = 0; i < path.length(); i++) {
+            if (path.charAt(i) == '/') depth++;
+        }
+        return depth;
+    }
+
+    private static void appendRange(StringBuilder sql, List<Object> params, String column,
+                                    LocalDateTime from, LocalDateTime to) {
+        if (from != null) {
+            sql.append(" AND ").append(column).append(" >= ?");
+            params.add(from);
+        }
+        if (to != null) {
+            sql.append(" AND ").append(column).append(" < ?");
+            params.add(to);
+        }
+    }
+
+    /**
+     * Restricts results to the given file types (extensions, case-insensitive).
+     *
+     * @param fileTypes The accepted types, or an empty list for any type.
+     */
+    public void setFileTypes(List<String> fileTypes) {
+        this.fileTypes = fileTypes.stream().map(t -> t.toLowerCase(Locale.ROOT)).toList();
+    }
+
+    /**
+     * Sets the inclusive minimum file size in bytes.
+     *
+     * @param minSize The minimum size, or {@code null} for no bound.
+     */
+    public void setMinSize(Long minSize) {
+        this.minSize = minSize;
+    }
+
+    /**
+     * Sets the inclusive maximum file size in bytes.
+     *
+     * @param maxSize The maximum size, or {@code null} for no bound.
+     */
+    public void setMaxSize(Long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Sets the inclusive lower bound of the creation time.
+     *
+     * @param createdAfter The bound, or {@code null} for none.
+     */
+    public void setCreatedAfter(LocalDateTime createdAfter) {
+        this.createdAfter = createdAfter;
+    }
+
+    /**
+     * Sets the exclusive upper bound of the creation time.
+     *
+     * @param createdBefore The bound, or {@code null} for none.
+     */
+    public void setCreatedBefore(LocalDateTime createdBefore) {
+        this.createdBefore = createdBefore;
+    }
+
+    /**
+     * Sets the inclusive lower bound of the last modification time.
+     *
+     * @param modifiedAfter The bound, or {@code null} for none.
+     */
+    public void setModifiedAfter(LocalDateTime modifiedAfter) {
+        this.modifiedAfter = modifiedAfter;
+    }
+
+    /**
+     * Sets the exclusive upper bound of the last modification time.
+     *
+     * @param modifiedBefore The bound, or {@code null} for none.
+     */
+    public void setModifiedBefore(LocalDateTime modifiedBefore) {
+        this.modifiedBefore = modifiedBefore;
+    }
+
+    /**
+     * Sets the minimum depth below the subtree root.
+     *
+     * @param minDepth The minimum depth, or {@code null} for none.
+     */
+    public void setMinDepth(Integer minDepth) {
+        this.minDepth = minDepth;
+    }
+
+    /**
+     * Sets the maximum depth below the subtree root.
+     *
+     * @param maxDepth The maximum depth, or {@code null} for none.
+     */
+    public void setMaxDepth(Integer maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Restricts results to the subtree below a logical path. Leading and trailing slashes
+     * are ignored, so "/root/reports/" and "root/reports" are the same subtree.
+     *
+     * @param under The subtree root path, or {@code null} for the whole drive.
+     */
+    public void setUnder(String under) {
+        if (under == null) {
+            this.under = null;
+            return;
+        }
+        String trimmed = under.strip();
+        int start = 0;
+        int end = trimmed.length();
+        while (start < end && trimmed.charAt(start) == '/') start++;
+        while (end > start && trimmed.charAt(end - 1) == '/') end--;
+        this.under = trimmed.substring(start, end);
+    }
+
+    /**
+     * Restricts results to directories or to files.
+     *
+     * @param directory {@code true} for directories only, {@code false} for files only,
+     *                  or {@code null} for both.
+     */
+    public void setDirectory(Boolean directory) {
+        this.directory = directory;
+    }
+}
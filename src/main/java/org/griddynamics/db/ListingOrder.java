@@ -0,0 +1,100 @@
+package org.griddynamics.db;
+
+import org.griddynamics.domain.Directory;
+import org.griddynamics.domain.File;
+import org.griddynamics.domain.StorageEntity;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+import static org.griddynamics.db.SqlQueries.ENTITY_COLUMNS;
+import static org.griddynamics.db.SqlQueries.LIST_CHILDREN_FIRST;
+import static org.griddynamics.db.SqlQueries.LIST_CHILDREN_FROM;
+
+/**
+ * Sort orders for folder listings, each paired with a (parent_id, key, id) index so that every
+ * page, forward or backward, is a bounded index range scan.
+ */
+public enum ListingOrder {
+    /** By name, in byte order (the "C" collation) whatever the database's locale. */
+    NAME("name COLLATE \"C\"", false),
+    /** Largest first; directories sort by the total size of their contents. */
+    SIZE("COALESCE(file_size, total_bytes)", true),
+    /** Most recently modified first. */
+    DATE("updated_at", true);
+
+    private final boolean descending;
+    private final String firstPage;
+    private final String nextPage;
+    private final String previousPage;
+
+    ListingOrder(String key, boolean descending) {
+        this.descending = descending;
+        String forward = descending ? "DESC" : "ASC";
+        String backward = descending ? "ASC" : "DESC";
+        this.firstPage = LIST_CHILDREN_FIRST.formatted(ENTITY_COLUMNS, key, forward);
+        this.nextPage = LIST_CHILDREN_FROM.formatted(ENTITY_COLUMNS, key, descending ? "<" : ">", forward);
+        this.previousPage = LIST_CHILDREN_FROM.formatted(ENTITY_COLUMNS, key, descending ? ">" : "<", backward);
+    }
+
+    /**
+     * Returns the query for the first page in this order.
+     *
+     * @return SQL taking the parent ID and the limit.
+     */
+    public String firstPageSql() {
+        return firstPage;
+    }
+
+    /**
+     * Returns the query for the items following a cursor, in listing order.
+     *
+     * @return SQL taking the parent ID, the cursor (see {@link #bindCursor}) and the limit.
+     */
+    public String nextPageSql() {
+        return nextPage;
+    }
+
+    /**
+     * Returns the query for the items preceding a cursor, nearest first (reverse listing order).
+     *
+     * @return SQL taking the parent ID, the cursor (see {@link #bindCursor}) and the limit.
+     */
+    public String previousPageSql() {
+        return previousPage;
+    }
+
+    /**
+     * Whether larger keys come first.
+     *
+     * @return {@code true} for descending orders.
+     */
+    public boolean isDescending() {
+        return descending;
+    }
+
+    /**
+     * Binds an item's sort key and ID as the keyset cursor.
+     *
+     * @param stmt   The statement from {@link #nextPageSql()} or {@link #previousPageSql()}.
+     * @param index  The index of the sort key parameter; the ID goes right after it.
+     * @param cursor The item the page starts after (or before).
+     * @throws SQLException If binding fails.
+     */
+    public void bindCursor(PreparedStatement stmt, int index, StorageEntity cursor) throws SQLException {
+        switch (this) {
+            case NAME -> stmt.setString(index, cursor.getName());
+            case SIZE -> stmt.setLong(index, sizeOf(cursor));
+            case DATE -> stmt.setTimestamp(index, Timestamp.valueOf(cursor.getUpdatedAt()));
+        }
+        stmt.setInt(index + 1, cursor.getId());
+    }
+
+    private static long sizeOf(StorageEntity entity) {
+        if (entity instanceof File file) {
+            return file.getFileSize();
+        }
+        return ((Directory) entity).getTotalBytes();
+    }
+}
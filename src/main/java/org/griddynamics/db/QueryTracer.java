@@ -0,0 +1,327 @@
+package org.griddynamics.db;
+
+import org.griddynamics.metrics.QueryEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Traces the SQL statements run through a data source or connection.
+ * <p>
+ * Each statement is recorded with an ID, its duration and its row count. The ID is the name
+ * of its {@link SqlQueries} constant, or the start of its text for SQL built at run time. The
+ * duration covers the execute call and the time spent fetching rows, so a query streamed row
+ * by row is charged for its whole read. Statements slower than the threshold are logged at WARN
+ * by the {@code org.griddynamics.db.slow} logger. Between {@link #begin()} and {@link #end()},
+ * the statements a thread runs are also added up into a {@link Summary}, so a command that runs
+ * one query per item (an N+1 pattern) shows up as a high count of one ID. Each statement is
+ * also a JFR {@link QueryEvent}, recorded only when a recording enables it.
+ * <p>
+ * With tracing off, the tracer only emits the JFR events: a statement is timed only while a
+ * recording enables them, and otherwise goes straight to the driver.
+ */
+public class QueryTracer {
+
+    private static final Logger slowLog = LoggerFactory.getLogger("org.griddynamics.db.slow");
+
+    /** Characters of unnamed SQL kept as its ID. */
+    private static final int ID_LENGTH = 60;
+
+    private static final Map<String, String> NAMES = constantNames();
+
+    private final long slowNanos;
+    private final boolean tracing;
+    private final ThreadLocal<Totals> current = new ThreadLocal<>();
+
+    /**
+     * What one command ran.
+     *
+     * @param queries The number of statements.
+     * @param nanos   The time spent in them.
+     * @param rows    The rows they returned or changed.
+     * @param byId    The number of statements per ID.
+     */
+    public record Summary(int queries, long nanos, long rows, Map<String, Integer> byId) {
+
+        /** The summary of a command that ran no SQL. */
+        public static final Summary EMPTY = new Summary(0, 0, 0, Map.of());
+
+        /**
+         * Formats a one-line summary naming the statements run more than once, most frequent first.
+         *
+         * @return e.g. "7 queries, 3.12 ms, 42 rows (UPDATE_FILE_PATHS x5)"
+         */
+        public String format() {
+            String repeated = byId.entrySet().stream()
+                    .filter(e -> e.getValue() > 1)
+                    .sorted(Map.Entry.<String, Integer>comparingByValue(Comparator.reverseOrder()))
+                    .map(e -> e.getKey() + " x" + e.getValue())
+                    .collect(Collectors.joining(", "));
+            return String.format(Locale.ROOT, "%d %s, %.2f ms, %d rows%s", queries, queries == 1 ? "query" : "queries",
+                    nanos / 1e6, rows, repeated.isEmpty() ? "" : " (" + repeated + ")");
+        }
+    }
+
+    /** Running totals of the current thread's command. */
+    private static final class Totals {
+        private int queries;
+        private long nanos;
+        private long rows;
+        private final Map<String, Integer> byId = new HashMap<>();
+    }
+
+    /**
+     * Creates a tracer.
+     *
+     * @param slowMillis The duration from which a statement is logged as slow; 0 or less logs none.
+     */
+    public QueryTracer(long slowMillis) {
+        this(slowMillis, true);
+    }
+
+    /**
+     * Creates a tracer that may emit only the JFR events.
+     *
+     * @param slowMillis The duration from which a statement is logged as slow; 0 or less logs none.
+     * @param tracing    Whether statements are added up and slow ones logged.
+     */
+    public QueryTracer(long slowMillis, boolean tracing) {
+        this.slowNanos = slowMillis > 0 ? slowMillis * 1_000_000 : Long.MAX_VALUE;
+        this.tracing = tracing;
+    }
+
+    /**
+     * Starts adding up the statements the current thread runs, replacing any unfinished command.
+     * Does nothing with tracing off, so {@link #end()} returns {@link Summary#EMPTY}.
+     */
+    public void begin() {
+        if (tracing) current.set(new Totals());
+    }
+
+    /**
+     * Stops adding up and returns what the current thread ran since {@link #begin()}.
+     *
+     * @return The summary, or {@link Summary#EMPTY} if no command was begun.
+     */
+    public Summary end() {
+        Totals totals = current.get();
+        current.remove();
+        if (totals == null) return Summary.EMPTY;
+        return new Summary(totals.queries, totals.nanos, totals.rows, Map.copyOf(totals.byId));
+    }
+
+    /**
+     * Wraps a data source so that the connections it hands out are traced. A closeable data
+     * source, such as a connection pool, stays closeable through the wrapper, so the container
+     * still shuts it down.
+     *
+     * @param dataSource The data source.
+     * @return The tracing data source.
+     */
+    public DataSource wrap(DataSource dataSource) {
+        Handler handler = (target, method, args) -> {
+            Object result = invoke(target, method, args);
+            return result instanceof Connection connection ? wrap(connection) : result;
+        };
+        return dataSource instanceof Closeable
+                ? proxy(DataSource.class, dataSource, handler, Closeable.class)
+                : proxy(DataSource.class, dataSource, handler);
+    }
+
+    /**
+     * Wraps a connection so that its statements are traced.
+     *
+     * @param connection The connection.
+     * @return The tracing connection.
+     */
+    public Connection wrap(Connection connection) {
+        return proxy(Connection.class, connection, (target, method, args) -> {
+            Object result = invoke(target, method, args);
+            if (result instanceof CallableStatement call) {
+                return proxy(CallableStatement.class, call, new StatementHandler(sqlId((String) args[0])));
+            } else if (result instanceof PreparedStatement prepared) {
+                return proxy(PreparedStatement.class, prepared, new StatementHandler(sqlId((String) args[0])));
+            } else if (result instanceof Statement statement) {
+                return proxy(Statement.class, statement, new StatementHandler(null));
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Records one statement.
+     *
+     * @param id    The statement ID.
+     * @param nanos The time it took.
+     * @param rows  The rows it returned or changed.
+     */
+    void record(String id, long nanos, long rows) {
+        Totals totals = current.get();
+        if (totals != null) {
+            totals.queries++;
+            totals.nanos += nanos;
+            totals.rows += rows;
+            totals.byId.merge(id, 1, Integer::sum);
+        }
+        if (nanos >= slowNanos) {
+            slowLog.warn("Slow query {} took {} ms, {} rows", id, String.format(Locale.ROOT, "%.1f", nanos / 1e6), rows);
+        }
+    }
+
+    /**
+     * Returns the ID of a statement: its constant name, or the start of its text.
+     *
+     * @param sql The SQL text.
+     * @return The ID.
+     */
+    static String sqlId(String sql) {
+        String name = NAMES.get(sql);
+        if (name != null) return name;
+        String flat = sql.strip().replaceAll("\\s+", " ");
+        return flat.length() <= ID_LENGTH ? flat : flat.substring(0, ID_LENGTH) + "...";
+    }
+
+    private static Map<String, String> constantNames() {
+        Map<String, String> names = new HashMap<>();
+        for (Field field : SqlQueries.class.getFields()) {
+            if (Modifier.isStatic(field.getModifiers()) && field.getType() == String.class) {
+                try {
+                    names.putIfAbsent((String) field.get(null), field.getName());
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException("Cannot read " + field.getName(), e);
+                }
+            }
+        }
+        return names;
+    }
+
+    /** Times the executions of one statement; a query stays open until its rows are read. */
+    private final class StatementHandler implements Handler, TracedResultSet.Listener {
+        private final String preparedId;
+        private String openId;
+        private long openNanos;
+        private long openRows;
+        private QueryEvent openEvent;
+
+        StatementHandler(String preparedId) {
+            this.preparedId = preparedId;
+        }
+
+        @Override
+        public Object handle(Object target, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (!name.startsWith("execute")) {
+                if (name.equals("close")) {
+                    flush();
+                } else if (name.equals("getResultSet")) {
+                    Object result = invoke(target, method, args);
+                    return result == null || openId == null ? result : new TracedResultSet((ResultSet) result, this);
+                }
+                return invoke(target, method, args);
+            }
+            flush();
+            QueryEvent event = new QueryEvent();
+            if (!tracing && !event.isEnabled()) {
+                return invoke(target, method, args);
+            }
+            String id = preparedId != null ? preparedId
+                    : args != null && args.length > 0 && args[0] instanceof String sql ? sqlId(sql) : "batch";
+            event.begin();
+            long started = System.nanoTime();
+            Object result = invoke(target, method, args);
+            long nanos = System.nanoTime() - started;
+            if (result instanceof ResultSet rows) {
+                openId = id;
+                openNanos = nanos;
+                openRows = 0;
+                openEvent = event.isEnabled() ? event : null;
+                return new TracedResultSet(rows, this);
+            }
+            long count = rowCount(result);
+            if (tracing) record(id, nanos, count);
+            event.complete(id, count);
+            return result;
+        }
+
+        @Override
+        public void fetched(long nanos, boolean row) {
+            openNanos += nanos;
+            if (row) openRows++;
+        }
+
+        @Override
+        public void closed() {
+            flush();
+        }
+
+        /** Records the open query, once its rows are read or it is closed. */
+        void flush() {
+            if (openId != null) {
+                if (tracing) record(openId, openNanos, openRows);
+                if (openEvent != null) {
+                    openEvent.complete(openId, openRows);
+                    openEvent = null;
+                }
+                openId = null;
+            }
+        }
+
+        private static long rowCount(Object result) {
+            if (result instanceof Integer count) return Math.max(0, count);
+            if (result instanceof Long count) return Math.max(0, count);
+            if (result instanceof int[] counts) {
+                long total = 0;
+                for (int count : counts) total += Math.max(0, count);
+                return total;
+            }
+            return 0;
+        }
+    }
+
+    private interface Handler {
+        Object handle(Object target, Method method, Object[] args) throws Throwable;
+    }
+
+    private static <T> T proxy(Class<T> type, T target, Handler handler, Class<?>... also) {
+        InvocationHandler invocation = (proxy, method, args) -> switch (method.getName()) {
+            case "equals" -> proxy == args[0];
+            case "hashCode" -> System.identityHashCode(proxy);
+            case "toString" -> "Traced " + target;
+            default -> handler.handle(target, method, args);
+        };
+        return type.cast(Proxy.newProxyInstance(QueryTracer.class.getClassLoader(), interfaces(type, also), invocation));
+    }
+
+    private static Class<?>[] interfaces(Class<?> type, Class<?>[] also) {
+        Class<?>[] all = new Class<?>[also.length + 1];
+        all[0] = type;
+        System.arraycopy(also, 0, all, 1, also.length);
+        return all;
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -7,12 +7,28 @@ package org.griddynamics.db;
 public class SqlQueries {
 
     /**
-     * Inserts a new directory into the database.
+     * Columns read by multi-row queries, in the order {@link EntityRowMapper} reads them by index.
+     * Leaves out storage_path, which listings never need.
+     */
+    public static final String ENTITY_COLUMNS =
+            "id, name, parent_id, is_directory, file_type, file_size, path, created_at, updated_at, "
+            + "child_count, file_count, total_bytes";
+
+    /**
+     * Inserts a new directory into the database and bumps the parent's child count.
      */
     public static final String INSERT_DIRECTORY = """
-    INSERT INTO storage_entities (name, parent_id, is_directory, path, created_at, updated_at)
-    VALUES (?, ?, TRUE, ?, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)
-    RETURNING id, name, parent_id, is_directory, path, created_at, updated_at
+    WITH inserted AS (
+        INSERT INTO storage_entities (name, parent_id, is_directory, path, created_at, updated_at)
+        VALUES (?, ?, TRUE, ?, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)
+        RETURNING id, name, parent_id, is_directory, path, created_at, updated_at,
+                  child_count, file_count, total_bytes, digest
+    ),
+    rollups AS (
+        UPDATE storage_entities s SET child_count = s.child_count + 1
+        FROM inserted i WHERE s.id = i.parent_id
+    )
+    SELECT * FROM inserted
 """;
 
 
@@ -24,23 +40,164 @@ public class SqlQueries {
     """;
 
     /**
-     * Inserts a new file into the database along with metadata and logical/storage paths.
+     * Inserts a new file into the database along with metadata and logical/storage paths,
+     * adding it to the rollups of every ancestor directory.
      */
     public static final String INSERT_FILE = """
-        INSERT INTO storage_entities (
-            name, parent_id, is_directory, file_type, file_size, storage_path, path, created_at, updated_at
+        WITH RECURSIVE inserted AS (
+            INSERT INTO storage_entities (
+                name, parent_id, is_directory, file_type, file_size, storage_path, path, created_at, updated_at
+            )
+            VALUES (?, ?, FALSE, ?, ?, ?, ?, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)
+            RETURNING id, parent_id, file_size
+        ),
+        ancestors AS (
+            SELECT s.id, s.parent_id FROM storage_entities s JOIN inserted i ON s.id = i.parent_id
+            UNION ALL
+            SELECT s.id, s.parent_id FROM storage_entities s JOIN ancestors a ON s.id = a.parent_id
+        ),
+        rollups AS (
+            UPDATE storage_entities s
+            SET child_count = s.child_count + CASE WHEN s.id = i.parent_id THEN 1 ELSE 0 END,
+                file_count = s.file_count + 1,
+                total_bytes = s.total_bytes + i.file_size
+            FROM inserted i
+            WHERE s.id IN (SELECT id FROM ancestors)
         )
-        VALUES (?, ?, FALSE, ?, ?, ?, ?, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)
-        RETURNING id
+        SELECT id FROM inserted
     """;
 
     /**
-     * Deletes an item (file or directory) by ID.
+     * Deletes an item (file or directory) by ID and subtracts it from the rollups of every
+     * ancestor directory. Descendants of a directory are removed by the cascade. Returns the ID
+     * of the deleted item, or no row if there was none; the update count would include the
+     * ancestors.
      */
     public static final String DELETE_ITEM = """
-        DELETE FROM storage_entities WHERE id = ?
+        WITH RECURSIVE removed AS (
+            DELETE FROM storage_entities WHERE id = ?
+            RETURNING id, parent_id,
+                      CASE WHEN is_directory THEN file_count ELSE 1 END AS files,
+                      CASE WHEN is_directory THEN total_bytes ELSE file_size END AS bytes
+        ),
+        ancestors AS (
+            SELECT s.id, s.parent_id FROM storage_entities s JOIN removed r ON s.id = r.parent_id
+            UNION ALL
+            SELECT s.id, s.parent_id FROM storage_entities s JOIN ancestors a ON s.id = a.parent_id
+        ),
+        rollups AS (
+            UPDATE storage_entities s
+            SET child_count = s.child_count - CASE WHEN s.id = r.parent_id THEN 1 ELSE 0 END,
+                file_count = s.file_count - r.files,
+                total_bytes = s.total_bytes - r.bytes
+            FROM removed r
+            WHERE s.id IN (SELECT id FROM ancestors)
+        )
+        SELECT id FROM removed
+    """;
+
+    /**
+     * Applies a change to one Merkle entry of a directory and carries it up to the root: each
+     * ancestor swaps the entry of its changed child for the new one. XOR makes adding and removing
+     * an entry the same operation. The chain, starting at the item given by target's id, is locked
+     * in ID order and read from the locked rows, so concurrent changes under a shared ancestor
+     * apply one after the other instead of overwriting each other. The lock is the one plain
+     * updates take, so it does not conflict with the key-share locks of inserted children.
+     * Filled in with target's extra columns, the seed (the directory to change and the XOR delta
+     * of its entry) and any extra CTE.
+     */
+    private static final String DIGEST_CHAIN = """
+        WITH RECURSIVE target AS (
+            SELECT CAST(? AS INTEGER) AS id%s
+        ),
+        ancestors AS (
+            SELECT s.id, s.parent_id FROM storage_entities s JOIN target t ON s.id = t.id
+            UNION ALL
+            SELECT s.id, s.parent_id FROM storage_entities s JOIN ancestors a ON s.id = a.parent_id
+        ),
+        locked AS (
+            SELECT id, parent_id, name, is_directory, file_size, content_hash, digest
+            FROM storage_entities
+            WHERE id IN (SELECT id FROM ancestors)
+            ORDER BY id
+            FOR NO KEY UPDATE
+        ),
+        seed AS (
+            %s
+        ),
+        chain AS (
+            SELECT p.id, p.parent_id, p.name, p.digest AS old_digest, p.digest # d.delta AS new_digest
+            FROM locked p JOIN seed d ON p.id = d.parent_id
+            UNION ALL
+            SELECT p.id, p.parent_id, p.name, p.digest,
+                   p.digest # merkle_entry(c.name, TRUE, NULL, NULL, c.old_digest)
+                            # merkle_entry(c.name, TRUE, NULL, NULL, c.new_digest)
+            FROM locked p JOIN chain c ON p.id = c.parent_id
+        )%s
+        UPDATE storage_entities s
+        SET digest = c.new_digest
+        FROM chain c
+        WHERE s.id = c.id
     """;
 
+    /**
+     * Toggles an existing item's Merkle entry in the digest of its parent, so a change is applied
+     * as toggle, modify, toggle.
+     */
+    public static final String TOGGLE_DIGEST = DIGEST_CHAIN.formatted("", """
+            SELECT e.parent_id, merkle_entry(e.name, e.is_directory, e.file_size, e.content_hash, e.digest) AS delta
+                FROM locked e JOIN target t ON e.id = t.id""", "");
+
+    /**
+     * Adds the entry of an item about to be inserted, empty and unhashed, to the digest of its
+     * parent (parent ID, name, is_directory, file size). Run before the insert in the same
+     * transaction: it locks the chain in ID order, before the insert's rollup update would lock
+     * it bottom-up and deadlock against a concurrent change.
+     */
+    public static final String ADD_DIGEST_ENTRY = DIGEST_CHAIN.formatted("""
+            , CAST(? AS VARCHAR) AS name, CAST(? AS BOOLEAN) AS is_directory, CAST(? AS BIGINT) AS size""", """
+            SELECT t.id AS parent_id, merkle_entry(t.name, t.is_directory, t.size, NULL, B'0'::BIT(256)) AS delta
+                FROM target t""", "");
+
+    /**
+     * Records the SHA-256 of a stored file's content (file ID, hash) and swaps the file's entry in
+     * its parent's digest for the hashed one, in one statement.
+     */
+    public static final String UPDATE_CONTENT_HASH = DIGEST_CHAIN.formatted(", CAST(? AS BYTEA) AS hash", """
+            SELECT e.parent_id, merkle_entry(e.name, FALSE, e.file_size, e.content_hash, NULL)
+                                # merkle_entry(e.name, FALSE, e.file_size, t.hash, NULL) AS delta
+                FROM locked e JOIN target t ON e.id = t.id""", """
+            ,
+            hashed AS (
+                UPDATE storage_entities f SET content_hash = t.hash FROM target t WHERE f.id = t.id
+            )""");
+
+    /**
+     * Locks two items and all their ancestors in ID order, the order {@link #TOGGLE_DIGEST} locks in.
+     * Taken before a move, whose rollup update would otherwise lock the new parent's chain
+     * bottom-up and deadlock against a concurrent change.
+     */
+    public static final String LOCK_ANCESTORS = """
+        WITH RECURSIVE ancestors AS (
+            SELECT id, parent_id FROM storage_entities WHERE id IN (?, ?)
+            UNION ALL
+            SELECT s.id, s.parent_id FROM storage_entities s JOIN ancestors a ON s.id = a.parent_id
+        )
+        SELECT id FROM storage_entities
+        WHERE id IN (SELECT id FROM ancestors)
+        ORDER BY id
+        FOR NO KEY UPDATE
+    """;
+
+    /**
+     * Retrieves the direct children of a directory with their content hashes and digests,
+     * as {@link #ENTITY_COLUMNS} followed by content_hash and digest.
+     */
+    public static final String GET_CHILDREN_WITH_DIGESTS = """
+        SELECT %s, content_hash, digest FROM storage_entities
+        WHERE parent_id = ?
+    """.formatted(ENTITY_COLUMNS);
+
     /**
      * Selects the root directory (with no parent and named 'root').
      */
@@ -60,26 +217,79 @@ public class SqlQueries {
     """;
 
     /**
-     * Moves an item to a new parent directory and updates its logical path.
+     * Moves an item to a new parent directory and updates its logical path. The item's
+     * rollup contribution is taken off the old ancestor chain and added to the new one;
+     * ancestors shared by both chains net out to zero.
      */
     public static final String MOVE_ITEM = """
-        UPDATE storage_entities SET parent_id = ?, path = ?, updated_at = CURRENT_TIMESTAMP WHERE id = ?
+        WITH RECURSIVE target AS (
+            SELECT CAST(? AS INTEGER) AS new_parent_id, CAST(? AS VARCHAR) AS new_path, CAST(? AS INTEGER) AS id
+        ),
+        moved AS (
+            SELECT e.id, e.parent_id AS old_parent_id, t.new_parent_id, t.new_path,
+                   CASE WHEN e.is_directory THEN e.file_count ELSE 1 END AS files,
+                   CASE WHEN e.is_directory THEN e.total_bytes ELSE e.file_size END AS bytes
+            FROM storage_entities e JOIN target t ON e.id = t.id
+        ),
+        old_ancestors AS (
+            SELECT s.id, s.parent_id FROM storage_entities s JOIN moved m ON s.id = m.old_parent_id
+            UNION ALL
+            SELECT s.id, s.parent_id FROM storage_entities s JOIN old_ancestors a ON s.id = a.parent_id
+        ),
+        new_ancestors AS (
+            SELECT s.id, s.parent_id FROM storage_entities s JOIN moved m ON s.id = m.new_parent_id
+            UNION ALL
+            SELECT s.id, s.parent_id FROM storage_entities s JOIN new_ancestors a ON s.id = a.parent_id
+        ),
+        rollups AS (
+            UPDATE storage_entities s
+            SET child_count = s.child_count
+                    + CASE WHEN s.id = m.new_parent_id THEN 1 ELSE 0 END
+                    - CASE WHEN s.id = m.old_parent_id THEN 1 ELSE 0 END,
+                file_count = s.file_count
+                    + CASE WHEN s.id IN (SELECT id FROM new_ancestors) THEN m.files ELSE 0 END
+                    - CASE WHEN s.id IN (SELECT id FROM old_ancestors) THEN m.files ELSE 0 END,
+                total_bytes = s.total_bytes
+                    + CASE WHEN s.id IN (SELECT id FROM new_ancestors) THEN m.bytes ELSE 0 END
+                    - CASE WHEN s.id IN (SELECT id FROM old_ancestors) THEN m.bytes ELSE 0 END
+            FROM moved m
+            WHERE s.id IN (SELECT id FROM old_ancestors UNION SELECT id FROM new_ancestors)
+        )
+        UPDATE storage_entities s
+        SET parent_id = m.new_parent_id, path = m.new_path, updated_at = CURRENT_TIMESTAMP
+        FROM moved m
+        WHERE s.id = m.id
     """;
 
     /**
      * Retrieves all items (files and directories) directly under a parent directory.
      */
     public static final String GET_CONTENTS_BY_PARENT_ID = """
-        SELECT * FROM storage_entities WHERE parent_id = ?
-    """;
+        SELECT %s FROM storage_entities WHERE parent_id = ?
+    """.formatted(ENTITY_COLUMNS);
 
     /**
-     * Performs a case-insensitive search for items whose names match a pattern.
+     * Performs a case-insensitive search for items whose names match a pattern. Names sort in
+     * byte order (the "C" collation), whatever the database's locale.
      */
     public static final String SEARCH_ITEMS = """
-        SELECT * FROM storage_entities
-        WHERE LOWER(name) LIKE LOWER(?) ORDER BY is_directory DESC, name ASC
-    """;
+        SELECT %s FROM storage_entities
+        WHERE LOWER(name) LIKE LOWER(?) ORDER BY is_directory DESC, name COLLATE "C" ASC
+    """.formatted(ENTITY_COLUMNS);
+
+    /**
+     * Returns one page of name matches in (is_directory DESC, name, id) order, starting after the
+     * keyset cursor (is_directory, name, id). Names compare in byte order (the "C" collation), as
+     * in the in-memory backend. The pattern is matched against the trigram index on LOWER(name)
+     * and uses a backslash as its escape character.
+     */
+    public static final String SEARCH_ITEMS_PAGE = """
+        SELECT %s FROM storage_entities
+        WHERE LOWER(name) LIKE LOWER(?) ESCAPE '\\'
+          AND (is_directory < ? OR (is_directory = ? AND (name COLLATE "C", id) > (?, ?)))
+        ORDER BY is_directory DESC, name COLLATE "C" ASC, id ASC
+        LIMIT ?
+    """.formatted(ENTITY_COLUMNS);
 
     /**
      * Updates the storage path of a file on disk.
@@ -99,37 +309,38 @@ public class SqlQueries {
     """;
 
     /**
-     * Retrieves all descendant items whose path begins with a given prefix (used for recursive updates).
+     * Retrieves a file or directory by its logical path, served by the unique path index.
      */
-    public static final String SELECT_DESCENDANTS = """
-        SELECT id, path FROM storage_entities 
-        WHERE path LIKE ?
+    public static final String GET_ITEM_BY_PATH = """
+        SELECT * FROM storage_entities WHERE path = ?
     """;
 
     /**
-     * Updates the logical path of an item by ID.
+     * Rewrites the path prefix of everything below a renamed or moved directory in one statement.
+     * Parameters: the new directory path, the length of the old one plus one, then the old path
+     * followed by '/' and by '0', the range that holds exactly its descendants.
      */
-    public static final String UPDATE_PATH = """
-        UPDATE storage_entities 
-        SET path = ? 
-        WHERE id = ?
+    public static final String UPDATE_DESCENDANT_PATHS = """
+        UPDATE storage_entities
+        SET path = ? || substr(path, ?)
+        WHERE path ~>=~ ? AND path ~<~ ?
     """;
 
     /**
      * Retrieves direct children of a given directory.
      */
     public static final String GET_CHILDREN = """
-        SELECT * FROM storage_entities 
+        SELECT %s FROM storage_entities 
         WHERE parent_id = ?
-    """;
+    """.formatted(ENTITY_COLUMNS);
 
     /**
      * Retrieves all directories (used for move/selection logic).
      */
     public static final String GET_ALL_DIRECTORIES = """
-        SELECT * FROM storage_entities 
+        SELECT %s FROM storage_entities 
         WHERE is_directory = TRUE
-    """;
+    """.formatted(ENTITY_COLUMNS);
 
     /**
      * Retrieves all immediate subdirectory IDs of a given directory (used to compute invalid destinations).
@@ -138,4 +349,247 @@ public class SqlQueries {
         SELECT id FROM storage_entities 
         WHERE parent_id = ? AND is_directory = TRUE
     """;
+
+    /**
+     * Streams the id, name and type of every item (used to build the in-memory name index).
+     */
+    public static final String SELECT_ALL_NAMES = """
+        SELECT id, name, is_directory FROM storage_entities
+    """;
+
+    /**
+     * Streams every item in ID order with the columns of a metadata snapshot.
+     */
+    public static final String SELECT_SNAPSHOT_ROWS = """
+        SELECT id, parent_id, is_directory, name, file_type, file_size, file_count, total_bytes,
+               created_at, updated_at
+        FROM storage_entities
+        ORDER BY id
+    """;
+
+    /**
+     * Retrieves every item, parents before their children, as {@link #ENTITY_COLUMNS} followed by
+     * content_hash and digest. Used to load the write-behind view.
+     */
+    public static final String SELECT_ITEMS_PARENTS_FIRST = """
+        SELECT %s, content_hash, digest FROM storage_entities
+        ORDER BY array_length(string_to_array(path, '/'), 1), id
+    """.formatted(ENTITY_COLUMNS);
+
+    /**
+     * Inserts a directory replayed from the journal, with the ID and creation time it was given
+     * locally, and bumps the parent's child count. Same parameters as {@link #INSERT_DIRECTORY},
+     * then the ID and the time.
+     */
+    public static final String INSERT_DIRECTORY_WITH_ID = """
+    WITH inserted AS (
+        INSERT INTO storage_entities (name, parent_id, is_directory, path, id, created_at, updated_at)
+        VALUES (?, ?, TRUE, ?, ?, ?, ?)
+        RETURNING id, parent_id
+    ),
+    rollups AS (
+        UPDATE storage_entities s SET child_count = s.child_count + 1
+        FROM inserted i WHERE s.id = i.parent_id
+    )
+    SELECT id FROM inserted
+""";
+
+    /**
+     * Inserts a file replayed from the journal, with its ID, storage path and creation time, and
+     * updates the rollups of its ancestors. Same parameters as {@link #INSERT_FILE}, then the ID
+     * and the time.
+     */
+    public static final String INSERT_FILE_WITH_ID = """
+        WITH RECURSIVE inserted AS (
+            INSERT INTO storage_entities (
+                name, parent_id, is_directory, file_type, file_size, storage_path, path, id, created_at, updated_at
+            )
+            VALUES (?, ?, FALSE, ?, ?, ?, ?, ?, ?, ?)
+            RETURNING id, parent_id, file_size
+        ),
+        ancestors AS (
+            SELECT s.id, s.parent_id FROM storage_entities s JOIN inserted i ON s.id = i.parent_id
+            UNION ALL
+            SELECT s.id, s.parent_id FROM storage_entities s JOIN ancestors a ON s.id = a.parent_id
+        ),
+        rollups AS (
+            UPDATE storage_entities s
+            SET child_count = s.child_count + CASE WHEN s.id = i.parent_id THEN 1 ELSE 0 END,
+                file_count = s.file_count + 1,
+                total_bytes = s.total_bytes + i.file_size
+            FROM inserted i
+            WHERE s.id IN (SELECT id FROM ancestors)
+        )
+        SELECT id FROM inserted
+    """;
+
+    /**
+     * Creates the replay position of a journal if it has none yet.
+     */
+    public static final String INIT_JOURNAL_SEQ = """
+        INSERT INTO journal_replay (journal, applied_seq) VALUES (?, 0)
+        ON CONFLICT (journal) DO NOTHING
+    """;
+
+    /**
+     * Retrieves the last record of a journal applied to the database, locking it until the
+     * replay transaction ends so two replays of the same journal cannot interleave.
+     */
+    public static final String SELECT_JOURNAL_SEQ_FOR_UPDATE = """
+        SELECT applied_seq FROM journal_replay WHERE journal = ? FOR UPDATE
+    """;
+
+    /**
+     * Retrieves the last record of a journal applied to the database.
+     */
+    public static final String SELECT_JOURNAL_SEQ = """
+        SELECT applied_seq FROM journal_replay WHERE journal = ?
+    """;
+
+    /**
+     * Records the last record of a journal applied to the database (sequence number, journal).
+     */
+    public static final String SAVE_JOURNAL_SEQ = """
+        UPDATE journal_replay SET applied_seq = ? WHERE journal = ?
+    """;
+
+    /**
+     * Moves the ID sequence past the IDs inserted explicitly by a replay, so IDs the database
+     * hands out later do not collide with them.
+     */
+    public static final String ADVANCE_ID_SEQUENCE = """
+        SELECT setval(pg_get_serial_sequence('storage_entities', 'id'),
+                      GREATEST((SELECT COALESCE(MAX(id), 1) FROM storage_entities),
+                               (SELECT last_value FROM storage_entities_id_seq)))
+    """;
+
+    /**
+     * Retrieves all items whose IDs are in the given array.
+     */
+    public static final String GET_ITEMS_BY_IDS = """
+        SELECT %s FROM storage_entities WHERE id = ANY(?)
+    """.formatted(ENTITY_COLUMNS);
+
+    /**
+     * Retrieves the IDs of an item and everything below it.
+     */
+    public static final String GET_SUBTREE_IDS = """
+        WITH RECURSIVE subtree AS (
+            SELECT id FROM storage_entities WHERE id = ?
+            UNION ALL
+            SELECT s.id FROM storage_entities s JOIN subtree t ON s.parent_id = t.id
+        )
+        SELECT id FROM subtree
+    """;
+
+    /**
+     * Stores the extracted text of a file, replacing any earlier text. Writes nothing if the
+     * file was deleted before indexing finished.
+     */
+    public static final String UPSERT_FILE_CONTENT = """
+        INSERT INTO file_contents (file_id, content_text)
+        SELECT id, ? FROM storage_entities WHERE id = ?
+        ON CONFLICT (file_id) DO UPDATE SET content_text = EXCLUDED.content_text
+    """;
+
+    /**
+     * Full-text search over extracted file contents, best matches first. Highlighted snippets
+     * are only built for the rows that survive the limit.
+     */
+    public static final String SEARCH_CONTENT = """
+        SELECT m.id, m.name, m.parent_id, m.file_type, m.file_size, m.path, m.created_at, m.updated_at,
+               m.content_hash, m.rank,
+               ts_headline('english', m.content_text, m.query,
+                           'MaxFragments=2, MinWords=5, MaxWords=20, StartSel=[, StopSel=]') AS snippet
+        FROM (
+            SELECT e.id, e.name, e.parent_id, e.file_type, e.file_size, e.path, e.created_at, e.updated_at,
+                   e.content_hash, c.content_text, q.query, ts_rank(c.content_tsv, q.query) AS rank
+            FROM file_contents c
+            JOIN storage_entities e ON e.id = c.file_id
+            CROSS JOIN websearch_to_tsquery('english', ?) AS q(query)
+            WHERE c.content_tsv @@ q.query
+            ORDER BY rank DESC, e.id
+            LIMIT ?
+        ) m
+        ORDER BY m.rank DESC, m.id
+    """;
+
+    /**
+     * Largest files in a subtree, given as a path prefix range. Walks the file_size index
+     * largest-first and stops after the limit.
+     */
+    public static final String USAGE_LARGEST_FILES = """
+        SELECT %s FROM storage_entities
+        WHERE NOT is_directory AND path ~>=~ ? AND path ~<~ ?
+        ORDER BY file_size DESC, id
+        LIMIT ?
+    """.formatted(ENTITY_COLUMNS);
+
+    /** Directories in a subtree holding the most bytes, read from the maintained rollups. */
+    public static final String USAGE_LARGEST_FOLDERS = """
+        SELECT %s FROM storage_entities
+        WHERE is_directory AND path ~>=~ ? AND path ~<~ ?
+        ORDER BY total_bytes DESC, id
+        LIMIT ?
+    """.formatted(ENTITY_COLUMNS);
+
+    /** File count and bytes per lower-cased file type in a subtree. */
+    public static final String USAGE_BY_TYPE = """
+        SELECT LOWER(COALESCE(file_type, '')) AS file_type, COUNT(*) AS files, SUM(file_size) AS bytes
+        FROM storage_entities
+        WHERE NOT is_directory AND path ~>=~ ? AND path ~<~ ?
+        GROUP BY 1
+        ORDER BY bytes DESC, file_type
+    """;
+
+    /**
+     * File count and bytes per size bucket in a subtree, where a bucket is the bit length of
+     * the size (0 for empty files).
+     */
+    public static final String USAGE_SIZE_HISTOGRAM = """
+        SELECT CASE WHEN file_size = 0 THEN 0
+                    ELSE 65 - POSITION('1' IN file_size::BIT(64)::TEXT) END AS bit_length,
+               COUNT(*) AS files, SUM(file_size) AS bytes
+        FROM storage_entities
+        WHERE NOT is_directory AND path ~>=~ ? AND path ~<~ ?
+        GROUP BY 1
+        ORDER BY 1
+    """;
+
+    /**
+     * Non-empty files sharing their size with at least one other file: the first stage of
+     * duplicate detection, answered from metadata alone. Ordered so equal sizes are adjacent.
+     */
+    public static final String DUPLICATE_SIZE_CANDIDATES = """
+        SELECT %1$s FROM (
+            SELECT %1$s, COUNT(*) OVER (PARTITION BY file_size) AS same_size
+            FROM storage_entities
+            WHERE NOT is_directory AND file_size > 0
+        ) s
+        WHERE same_size > 1
+        ORDER BY file_size DESC, id
+    """.formatted(ENTITY_COLUMNS);
+
+    /**
+     * Template for the first page of a folder listing. Formatted by {@link ListingOrder} with
+     * the columns, the sort key expression and the direction; parameters are the parent ID and the limit.
+     */
+    static final String LIST_CHILDREN_FIRST = """
+        SELECT %1$s FROM storage_entities
+        WHERE parent_id = ?
+        ORDER BY %2$s %3$s, id %3$s
+        LIMIT ?
+    """;
+
+    /**
+     * Template for a folder listing page starting past a cursor. Formatted by {@link ListingOrder}
+     * with the columns, the sort key expression, the comparison and the direction; parameters are the parent ID,
+     * the cursor's sort key and ID, and the limit.
+     */
+    static final String LIST_CHILDREN_FROM = """
+        SELECT %1$s FROM storage_entities
+        WHERE parent_id = ? AND (%2$s, id) %3$s (?, ?)
+        ORDER BY %2$s %4$s, id %4$s
+        LIMIT ?
+    """;
 }
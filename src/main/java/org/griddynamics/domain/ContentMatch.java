@@ -0,0 +1,11 @@
+package org.griddynamics.domain;
+
+/**
+ * A file found by full-text content search.
+ *
+ * @param file    The matching file.
+ * @param rank    The relevance rank; higher is better.
+ * @param snippet A highlighted excerpt of the matching text, with hits wrapped in brackets.
+ */
+public record ContentMatch(File file, double rank, String snippet) {
+}
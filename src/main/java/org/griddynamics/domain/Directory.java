@@ -12,11 +12,23 @@ import java.util.List;
  */
 public class Directory extends StorageEntity {
 
-    /** List of files contained in this directory (used for display or caching purposes). */
-    final List<File> files = new ArrayList<>();
+    /** List of files contained in this directory (used for display or caching purposes); created on first use. */
+    private List<File> files;
 
-    /** List of subdirectories contained within this directory. */
-    final List<Directory> subDirectories = new ArrayList<>();
+    /** List of subdirectories contained within this directory; created on first use. */
+    private List<Directory> subDirectories;
+
+    /** Number of direct children (files and subdirectories), maintained by the database. */
+    private int childCount;
+
+    /** Number of files anywhere below this directory, maintained by the database. */
+    private long fileCount;
+
+    /** Total size in bytes of all files below this directory, maintained by the database. */
+    private long totalBytes;
+
+    /** Merkle digest of the whole subtree as 64 hex digits, maintained by the database. */
+    private String digest;
 
     /**
      * Generates a formatted string containing detailed information about the directory.
@@ -36,10 +48,124 @@ public class Directory extends StorageEntity {
                 """,
                 name,
                 path,
-                createdAt,
-                updatedAt,
+                getCreatedAt(),
+                getUpdatedAt(),
                 totalContent,
                 totalContent <= 1 ? "" : "s"
         );
     }
+
+    /**
+     * Generates the directory details from the stored rollups, without touching the children.
+     *
+     * @return A formatted string with the directory's metadata, direct item count,
+     *         and the recursive file count and size.
+     */
+    public String getDetails() {
+        return getDetails(childCount) + String.format("""
+                    Files (recursive): %d
+                    Size (recursive): %d bytes
+                """,
+                fileCount,
+                totalBytes
+        );
+    }
+
+    /**
+     * Gets the cached files of this directory. Listings do not fill it, so it is only
+     * allocated when a caller actually uses it.
+     *
+     * @return The mutable list of files.
+     */
+    public List<File> getFiles() {
+        if (files == null) {
+            files = new ArrayList<>();
+        }
+        return files;
+    }
+
+    /**
+     * Gets the cached subdirectories of this directory, allocated on first use.
+     *
+     * @return The mutable list of subdirectories.
+     */
+    public List<Directory> getSubDirectories() {
+        if (subDirectories == null) {
+            subDirectories = new ArrayList<>();
+        }
+        return subDirectories;
+    }
+
+    /**
+     * Gets the number of direct children.
+     *
+     * @return The direct child count.
+     */
+    public int getChildCount() {
+        return childCount;
+    }
+
+    /**
+     * Gets the number of files in the whole subtree.
+     *
+     * @return The recursive file count.
+     */
+    public long getFileCount() {
+        return fileCount;
+    }
+
+    /**
+     * Gets the total size of all files in the whole subtree.
+     *
+     * @return The recursive size in bytes.
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Sets the number of direct children.
+     *
+     * @param childCount The direct child count.
+     */
+    public void setChildCount(int childCount) {
+        this.childCount = childCount;
+    }
+
+    /**
+     * Sets the number of files in the whole subtree.
+     *
+     * @param fileCount The recursive file count.
+     */
+    public void setFileCount(long fileCount) {
+        this.fileCount = fileCount;
+    }
+
+    /**
+     * Sets the total size of all files in the whole subtree.
+     *
+     * @param totalBytes The recursive size in bytes.
+     */
+    public void setTotalBytes(long totalBytes) {
+        this.totalBytes = totalBytes;
+    }
+
+    /**
+     * Gets the Merkle digest of the subtree: equal digests mean equal names, sizes and contents
+     * below two directories, whatever the directories themselves are called.
+     *
+     * @return The digest as 64 hex digits, or {@code null} if it was not read.
+     */
+    public String getDigest() {
+        return digest;
+    }
+
+    /**
+     * Sets the Merkle digest of the subtree.
+     *
+     * @param digest The digest as 64 hex digits.
+     */
+    public void setDigest(String digest) {
+        this.digest = digest;
+    }
 }
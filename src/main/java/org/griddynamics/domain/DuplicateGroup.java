@@ -0,0 +1,22 @@
+package org.griddynamics.domain;
+
+import java.util.List;
+
+/**
+ * Files with identical content.
+ *
+ * @param fileSize The size of each copy in bytes.
+ * @param sha256   The hex SHA-256 of the shared content.
+ * @param files    The copies, in ID order; the first is the oldest upload.
+ */
+public record DuplicateGroup(long fileSize, String sha256, List<File> files) {
+
+    /**
+     * Returns the bytes freed by keeping one copy and deleting the rest.
+     *
+     * @return The reclaimable size in bytes.
+     */
+    public long reclaimableBytes() {
+        return fileSize * (files.size() - 1);
+    }
+}
@@ -0,0 +1,82 @@
+package org.griddynamics.domain;
+
+/**
+ * Writes files and directories as compact JSON objects for machine-readable output:
+ * {@code {"id":3,"name":"a.pdf","type":"file","path":"root/a.pdf","size":5000,"updatedAt":"..."}}.
+ * The size of a directory is the total size of the files below it.
+ */
+public final class EntityJson {
+
+    private EntityJson() {
+    }
+
+    /**
+     * Formats one entity.
+     *
+     * @param item The file or directory.
+     * @return The JSON object.
+     */
+    public static String toJson(StorageEntity item) {
+        StringBuilder out = new StringBuilder(128);
+        append(item, out);
+        return out.toString();
+    }
+
+    /**
+     * Appends one entity as a JSON object.
+     *
+     * @param item The file or directory.
+     * @param out  The buffer to append to.
+     */
+    public static void append(StorageEntity item, StringBuilder out) {
+        out.append("{\"id\":").append(item.getId()).append(",\"name\":");
+        appendString(item.getName(), out);
+        out.append(",\"type\":\"").append(item instanceof Directory ? "directory" : "file").append("\",\"path\":");
+        appendString(item.getPath(), out);
+        out.append(",\"size\":").append(size(item)).append(",\"updatedAt\":");
+        appendString(item.getUpdatedAt() == null ? null : item.getUpdatedAt().toString(), out);
+        out.append('}');
+    }
+
+    /**
+     * Appends a JSON string literal, or {@code null}.
+     *
+     * @param value The string, may be {@code null}.
+     * @param out   The buffer to append to.
+     */
+    public static void appendString(String value, StringBuilder out) {
+        if (value == null) {
+            out.append("null");
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+                }
+            }
+        }
+        out.append('"');
+    }
+
+    /**
+     * Returns the size of a file, or the total size of the files below a directory.
+     *
+     * @param item The file or directory.
+     * @return The size in bytes.
+     */
+    public static long size(StorageEntity item) {
+        return item instanceof File file ? file.getFileSize() : ((Directory) item).getTotalBytes();
+    }
+}
@@ -9,6 +9,18 @@ package org.griddynamics.domain;
 public class File extends StorageEntity {
     private String fileType;
     private long fileSize;
+    private String contentHash;
+
+    /**
+     * Extracts the extension of a file name.
+     *
+     * @param fileName The name of the file.
+     * @return The extension without the dot, or an empty string if there is none.
+     */
+    public static String extensionOf(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return (dot == -1) ? "" : fileName.substring(dot + 1);
+    }
 
     /**
      * Returns a formatted string with details specific to a file.
@@ -27,8 +39,8 @@ public class File extends StorageEntity {
             """,
                 name,
                 path,
-                createdAt,
-                updatedAt,
+                getCreatedAt(),
+                getUpdatedAt(),
                 fileSize,
                 fileType
         );
@@ -69,4 +81,22 @@ public class File extends StorageEntity {
     public void setFileType(String fileType) {
         this.fileType = fileType;
     }
+
+    /**
+     * Gets the SHA-256 of the stored content.
+     *
+     * @return The hash as 64 hex digits, or {@code null} if it is unknown or was not read.
+     */
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * Sets the SHA-256 of the stored content.
+     *
+     * @param contentHash The hash as 64 hex digits.
+     */
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
 }
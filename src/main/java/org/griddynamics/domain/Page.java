@@ -0,0 +1,40 @@
+package org.griddynamics.domain;
+
+import java.util.List;
+
+/**
+ * One page of a keyset-paginated result.
+ * <p>
+ * The last item of a page is the cursor for the next one: callers pass it back as the
+ * {@code after} argument of the query that produced the page.
+ *
+ * @param items   The items on this page, in query order.
+ * @param hasMore Whether at least one more item follows this page.
+ * @param <T>     The item type.
+ */
+public record Page<T>(List<T> items, boolean hasMore) {
+
+    /**
+     * Returns the last item on this page, used as the cursor for the next page.
+     *
+     * @return The last item, or {@code null} if the page is empty.
+     */
+    public T last() {
+        return items.isEmpty() ? null : items.get(items.size() - 1);
+    }
+
+    /**
+     * Builds a page from a result fetched with one extra row beyond the limit.
+     *
+     * @param rows  The fetched rows, at most {@code limit + 1} of them.
+     * @param limit The requested page size.
+     * @param <T>   The item type.
+     * @return The page holding at most {@code limit} items.
+     */
+    public static <T> Page<T> of(List<T> rows, int limit) {
+        if (rows.size() > limit) {
+            return new Page<>(List.copyOf(rows.subList(0, limit)), true);
+        }
+        return new Page<>(List.copyOf(rows), false);
+    }
+}
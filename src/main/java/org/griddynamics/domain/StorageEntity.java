@@ -1,12 +1,18 @@
 package org.griddynamics.domain;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 
 /**
  * Abstract base class for both files and directories in the file storage system.
  * Contains common attributes and behavior shared by all storage entities.
  */
 public abstract class StorageEntity {
+
+    /** Marks a timestamp that has no raw value waiting to be converted. */
+    public static final long NO_TIME = Long.MIN_VALUE;
+
     protected int id;
     protected String name;
     protected int parentId;
@@ -14,6 +20,12 @@ public abstract class StorageEntity {
     protected LocalDateTime updatedAt;
     protected String path;
 
+    /**
+     * Timestamps as read from the database, in microseconds since the epoch, converted to
+     * {@link LocalDateTime} on first access; {@link #NO_TIME} once converted or if never set.
+     */
+    private long createdAtMicros = NO_TIME;
+    private long updatedAtMicros = NO_TIME;
 
     // Getters
     public int getId() {
@@ -29,10 +41,18 @@ public abstract class StorageEntity {
     }
 
     public LocalDateTime getCreatedAt() {
+        if (createdAtMicros != NO_TIME) {
+            createdAt = toLocalDateTime(createdAtMicros);
+            createdAtMicros = NO_TIME;
+        }
         return createdAt;
     }
 
     public LocalDateTime getUpdatedAt() {
+        if (updatedAtMicros != NO_TIME) {
+            updatedAt = toLocalDateTime(updatedAtMicros);
+            updatedAtMicros = NO_TIME;
+        }
         return updatedAt;
     }
 
@@ -55,13 +75,34 @@ public abstract class StorageEntity {
 
     public void setCreatedAt(LocalDateTime createdAt) {
         this.createdAt = createdAt;
+        this.createdAtMicros = NO_TIME;
     }
 
     public void setUpdatedAt(LocalDateTime updatedAt) {
         this.updatedAt = updatedAt;
+        this.updatedAtMicros = NO_TIME;
+    }
+
+    /**
+     * Sets both timestamps from raw database values without converting them; bulk listings
+     * rarely read them, so the conversion to local time is deferred to the first getter call.
+     *
+     * @param createdAtMicros The creation time in microseconds since the epoch, or {@link #NO_TIME}.
+     * @param updatedAtMicros The last modification time, likewise.
+     */
+    public void setTimestampMicros(long createdAtMicros, long updatedAtMicros) {
+        this.createdAt = null;
+        this.updatedAt = null;
+        this.createdAtMicros = createdAtMicros;
+        this.updatedAtMicros = updatedAtMicros;
     }
 
     public void setPath(String path) {
         this.path = path;
     }
+
+    private static LocalDateTime toLocalDateTime(long micros) {
+        Instant instant = Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000), Math.floorMod(micros, 1_000_000) * 1_000);
+        return LocalDateTime.ofInstant(instant, ZoneId.systemDefault());
+    }
 }
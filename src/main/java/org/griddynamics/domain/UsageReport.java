@@ -0,0 +1,57 @@
+package org.griddynamics.domain;
+
+import java.util.List;
+
+/**
+ * Storage usage of a directory subtree.
+ *
+ * @param scope          The directory the report covers, with its recursive rollups.
+ * @param largestFiles   The largest files in the subtree, biggest first.
+ * @param largestFolders The directories below the scope holding the most bytes, biggest first.
+ * @param byType         File count and bytes per file type, most bytes first.
+ * @param histogram      File count and bytes per power-of-two size bucket, smallest first.
+ */
+public record UsageReport(Directory scope,
+                          List<File> largestFiles,
+                          List<Directory> largestFolders,
+                          List<TypeUsage> byType,
+                          List<SizeBucket> histogram) {
+
+    /**
+     * Usage of one file type.
+     *
+     * @param fileType The lower-cased file type, empty for files without an extension.
+     * @param files    The number of files.
+     * @param bytes    The total size in bytes.
+     */
+    public record TypeUsage(String fileType, long files, long bytes) {
+    }
+
+    /**
+     * Usage of files whose size lies in {@code [lowerBound, upperBound)}.
+     *
+     * @param lowerBound The smallest size in the bucket, in bytes.
+     * @param upperBound The first size past the bucket, in bytes.
+     * @param files      The number of files.
+     * @param bytes      The total size in bytes.
+     */
+    public record SizeBucket(long lowerBound, long upperBound, long files, long bytes) {
+
+        /**
+         * Returns the bucket for files of a given bit length: bucket 0 holds empty files and
+         * bucket {@code n} holds sizes from {@code 2^(n-1)} up to, but excluding, {@code 2^n}.
+         *
+         * @param bitLength The bit length of the sizes in the bucket.
+         * @param files     The number of files.
+         * @param bytes     The total size in bytes.
+         * @return The bucket.
+         */
+        public static SizeBucket ofBitLength(int bitLength, long files, long bytes) {
+            if (bitLength == 0) {
+                return new SizeBucket(0, 1, files, bytes);
+            }
+            long upper = bitLength >= 63 ? Long.MAX_VALUE : 1L << bitLength;
+            return new SizeBucket(1L << (bitLength - 1), upper, files, bytes);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package org.griddynamics.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The content of one file moving into or out of the blob store. Off unless the recording's
+ * settings enable it, as {@code jfr/drive.jfc} does.
+ */
+@Name("org.griddynamics.BlobTransfer")
+@Label("Drive Blob Transfer")
+@Category({"Drive", "Storage"})
+@Description("File content written to or read from the blob store")
+@StackTrace(false)
+@Enabled(false)
+public class BlobTransferEvent extends jdk.jfr.Event {
+
+    /** Value of {@link #direction} for uploads. */
+    public static final String WRITE = "write";
+
+    /** Value of {@link #direction} for downloads and copies. */
+    public static final String READ = "read";
+
+    @Label("File ID")
+    public int fileId;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+
+    @Label("Direction")
+    @Description("write or read")
+    public String direction;
+
+    /**
+     * Ends the transfer and commits it, if a recording enables this event.
+     *
+     * @param fileId    The ID of the file.
+     * @param bytes     The number of bytes moved.
+     * @param direction {@link #WRITE} or {@link #READ}.
+     */
+    public void complete(int fileId, long bytes, String direction) {
+        end();
+        if (shouldCommit()) {
+            this.fileId = fileId;
+            this.bytes = bytes;
+            this.direction = direction;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package org.griddynamics.metrics;
+
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.micrometer.jmx.JmxConfig;
+import io.micrometer.jmx.JmxMeterRegistry;
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.griddynamics.domain.Page;
+import org.springframework.aop.framework.ProxyFactory;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timings, result sizes, error counts and blob traffic of the drive, published to Prometheus
+ * (see {@link #scrape()}) and, optionally, to JMX under the {@code metrics} domain.
+ * <p>
+ * Services are instrumented without touching their code: {@link #instrument(Object, String)}
+ * wraps one in a class-based proxy that times every public operation as
+ * {@code drive.operation{component, operation, outcome}} with p50 and p99 over a sliding
+ * window (Prometheus summaries, so the quantiles are read directly rather than derived from
+ * buckets), and records the number of rows in list and page results as
+ * {@code drive.operation.rows}. The meters of a method are looked up once and cached, so the
+ * cost per call is a map lookup and a timer update, small next to the database round trip
+ * of any operation. Setters and interactive operations, which wait for the user, are not timed.
+ * Each timed call is also a JFR {@link OperationEvent}, recorded only when a recording enables it.
+ */
+public class DriveMetrics implements AutoCloseable {
+
+    private final CompositeMeterRegistry registry = new CompositeMeterRegistry();
+    private final PrometheusMeterRegistry prometheus = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+    private final JmxMeterRegistry jmx;
+    private final Counter blobBytesRead;
+    private final Counter blobBytesWritten;
+
+    /** The meters of one instrumented method, or {@link #UNTIMED}; rows is {@code null} unless it returns rows. */
+    private record Meters(Timer success, Timer error, DistributionSummary rows) {
+    }
+
+    private static final Meters UNTIMED = new Meters(null, null, null);
+
+    /**
+     * Creates the registries.
+     *
+     * @param jmxEnabled Whether to publish the meters as MBeans too.
+     */
+    public DriveMetrics(boolean jmxEnabled) {
+        registry.add(prometheus);
+        if (jmxEnabled) {
+            jmx = new JmxMeterRegistry(JmxConfig.DEFAULT, Clock.SYSTEM);
+            registry.add(jmx);
+        } else {
+            jmx = null;
+        }
+        blobBytesRead = blobCounter("read");
+        blobBytesWritten = blobCounter("written");
+    }
+
+    private Counter blobCounter(String direction) {
+        return Counter.builder("drive.blob.bytes")
+                .description("Bytes moved between the blob store and clients")
+                .baseUnit("bytes")
+                .tag("direction", direction)
+                .register(registry);
+    }
+
+    /**
+     * Returns the registry meters are registered in, e.g. for the connection pool.
+     *
+     * @return The registry publishing to every enabled backend.
+     */
+    public MeterRegistry registry() {
+        return registry;
+    }
+
+    /**
+     * Renders every meter in the Prometheus text format.
+     *
+     * @return The exposition text.
+     */
+    public String scrape() {
+        return prometheus.scrape();
+    }
+
+    /**
+     * Counts bytes read from the blob store.
+     *
+     * @param bytes The number of bytes.
+     */
+    public void blobRead(long bytes) {
+        blobBytesRead.increment(bytes);
+    }
+
+    /**
+     * Counts bytes written to the blob store.
+     *
+     * @param bytes The number of bytes.
+     */
+    public void blobWritten(long bytes) {
+        blobBytesWritten.increment(bytes);
+    }
+
+    /**
+     * Wraps a service so that its public operations are timed. A returned object of the same
+     * class, such as the result of {@code DatabaseService.withConnection}, is wrapped too.
+     *
+     * @param target    The service.
+     * @param component The value of the {@code component} tag, e.g. "db".
+     * @param <T>       The service class; it must not be final.
+     * @return A proxy that delegates to the service.
+     */
+    public <T> T instrument(T target, String component) {
+        return wrap(target, new OperationTimer(component));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T wrap(T target, OperationTimer timer) {
+        ProxyFactory factory = new ProxyFactory(target);
+        factory.setProxyTargetClass(true);
+        factory.addAdvice(timer);
+        return (T) factory.getProxy(target.getClass().getClassLoader());
+    }
+
+    @Override
+    public void close() {
+        if (jmx != null) {
+            jmx.close();
+        }
+        prometheus.close();
+        registry.close();
+    }
+
+    /** Times the calls of one instrumented service. */
+    private final class OperationTimer implements MethodInterceptor {
+        private final String component;
+        private final ConcurrentMap<Method, Meters> meters = new ConcurrentHashMap<>();
+
+        OperationTimer(String component) {
+            this.component = component;
+        }
+
+        @Override
+        public Object invoke(MethodInvocation invocation) throws Throwable {
+            Method method = invocation.getMethod();
+            Meters timed = meters.get(method);
+            if (timed == null) {
+                timed = meters.computeIfAbsent(method, this::metersOf);
+            }
+            if (timed == UNTIMED) {
+                return invocation.proceed();
+            }
+            OperationEvent event = new OperationEvent();
+            event.begin();
+            long started = System.nanoTime();
+            Object result;
+            try {
+                result = invocation.proceed();
+            } catch (Throwable e) {
+                timed.error().record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                event.complete(component, method.getName(), true);
+                throw e;
+            }
+            timed.success().record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            event.complete(component, method.getName(), false);
+            if (timed.rows() != null) {
+                if (result instanceof Collection<?> rows) {
+                    timed.rows().record(rows.size());
+                } else if (result instanceof Page<?> page) {
+                    timed.rows().record(page.items().size());
+                }
+            } else if (result != null && result.getClass() == invocation.getThis().getClass()) {
+                return wrap(result, this);
+            }
+            return result;
+        }
+
+        private Meters metersOf(Method method) {
+            if (!Modifier.isPublic(method.getModifiers()) || method.getDeclaringClass() == Object.class
+                    || method.getName().startsWith("set")
+                    || Arrays.asList(method.getParameterTypes()).contains(Scanner.class)) {
+                return UNTIMED;
+            }
+            Class<?> returned = method.getReturnType();
+            DistributionSummary rows = Collection.class.isAssignableFrom(returned) || returned == Page.class
+                    ? DistributionSummary.builder("drive.operation.rows")
+                            .description("Rows returned by a drive operation")
+                            .tags("component", component, "operation", method.getName())
+                            .publishPercentiles(0.5, 0.99)
+                            .register(registry)
+                    : null;
+            return new Meters(timer(method, "success"), timer(method, "error"), rows);
+        }
+
+        private Timer timer(Method method, String outcome) {
+            return Timer.builder("drive.operation")
+                    .description("Latency of a drive operation")
+                    .tags("component", component, "operation", method.getName(), "outcome", outcome)
+                    .publishPercentiles(0.5, 0.99)
+                    .register(registry);
+        }
+    }
+}
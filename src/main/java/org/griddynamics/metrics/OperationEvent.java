@@ -0,0 +1,46 @@
+package org.griddynamics.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * One call of a public operation of a service instrumented by {@link DriveMetrics}; the queries
+ * and blob transfers it causes are nested in it on the same thread. Off unless the recording's
+ * settings enable it, as {@code jfr/drive.jfc} does.
+ */
+@Name("org.griddynamics.Operation")
+@Label("Drive Operation")
+@Category("Drive")
+@Description("A database or storage operation of the drive")
+@Enabled(false)
+public class OperationEvent extends jdk.jfr.Event {
+
+    @Label("Component")
+    public String component;
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Failed")
+    public boolean failed;
+
+    /**
+     * Ends the call and commits it, if a recording enables this event.
+     *
+     * @param component The instrumented component.
+     * @param operation The method called.
+     * @param failed    Whether it threw.
+     */
+    public void complete(String component, String operation, boolean failed) {
+        end();
+        if (shouldCommit()) {
+            this.component = component;
+            this.operation = operation;
+            this.failed = failed;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package org.griddynamics.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A SQL statement, from its execution to its last row read, as seen by
+ * {@link org.griddynamics.db.QueryTracer}. Off unless the recording's settings enable it, as
+ * {@code jfr/drive.jfc} does.
+ */
+@Name("org.griddynamics.Query")
+@Label("Drive Query")
+@Category({"Drive", "Database"})
+@Description("A SQL statement run by the drive, including the time spent reading its rows")
+@StackTrace(false)
+@Enabled(false)
+public class QueryEvent extends jdk.jfr.Event {
+
+    @Label("SQL ID")
+    @Description("Name of the SqlQueries constant, or the start of the statement text")
+    public String sqlId;
+
+    @Label("Rows")
+    @Description("Rows returned or changed")
+    public long rows;
+
+    /**
+     * Ends the statement and commits it, if a recording enables this event.
+     *
+     * @param sqlId The statement ID.
+     * @param rows  The rows it returned or changed.
+     */
+    public void complete(String sqlId, long rows) {
+        end();
+        if (shouldCommit()) {
+            this.sqlId = sqlId;
+            this.rows = rows;
+            commit();
+        }
+    }
+}
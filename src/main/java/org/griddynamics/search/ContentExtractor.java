@@ -0,0 +1,31 @@
+package org.griddynamics.search;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Extracts searchable plain text from a stored file.
+ * <p>
+ * Implementations are registered with the {@link ContentIndexer}; the first extractor that
+ * supports a file's type is used.
+ */
+public interface ContentExtractor {
+
+    /**
+     * Checks whether this extractor handles the given file type.
+     *
+     * @param fileType The file extension without the dot (e.g. "txt", "html").
+     * @return {@code true} if this extractor can read the file.
+     */
+    boolean supports(String fileType);
+
+    /**
+     * Reads the file and returns its text content.
+     *
+     * @param file     The stored file on disk.
+     * @param maxChars The maximum number of characters to return.
+     * @return The extracted text, at most {@code maxChars} long.
+     * @throws IOException If the file cannot be read.
+     */
+    String extract(Path file, int maxChars) throws IOException;
+}
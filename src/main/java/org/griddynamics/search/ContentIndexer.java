@@ -0,0 +1,126 @@
+package org.griddynamics.search;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.griddynamics.db.SqlQueries.UPSERT_FILE_CONTENT;
+
+/**
+ * Extracts text from uploaded files in the background and stores it for full-text search.
+ * <p>
+ * Uploads only enqueue work here, so they never wait for extraction. A single worker thread
+ * drains the queue over its own JDBC connection, which keeps it off the connection used by
+ * the interactive CLI.
+ */
+public class ContentIndexer implements AutoCloseable {
+
+    /** Maximum number of characters indexed per file; PostgreSQL caps a tsvector at 1 MB. */
+    static final int MAX_CHARS = 256 * 1024;
+
+    private static final Logger log = LoggerFactory.getLogger(ContentIndexer.class);
+
+    private final DataSource dataSource;
+    private final List<ContentExtractor> extractors;
+    private final ExecutorService executor;
+
+    /** Connection used only by the worker thread; opened on first use. */
+    private Connection connection;
+
+    /**
+     * Creates an indexer that writes through connections from the given data source.
+     *
+     * @param dataSource The data source for the worker's connection.
+     * @param extractors The extractors to try, in order.
+     */
+    public ContentIndexer(DataSource dataSource, List<ContentExtractor> extractors) {
+        this.dataSource = dataSource;
+        this.extractors = List.copyOf(extractors);
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "content-indexer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Checks whether any registered extractor handles the given file type.
+     *
+     * @param fileType The file extension without the dot.
+     * @return {@code true} if files of this type are indexed.
+     */
+    public boolean supports(String fileType) {
+        return extractorFor(fileType) != null;
+    }
+
+    /**
+     * Queues a stored file for indexing. Unsupported types are skipped.
+     *
+     * @param fileId   The ID of the file.
+     * @param fileType The file extension without the dot.
+     * @param blob     The stored file on disk.
+     * @return A future that completes once the file has been indexed or skipped.
+     */
+    public Future<?> submit(int fileId, String fileType, Path blob) {
+        ContentExtractor extractor = extractorFor(fileType);
+        if (extractor == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return executor.submit(() -> index(fileId, extractor, blob));
+    }
+
+    /**
+     * Stops accepting work and waits briefly for queued files to finish.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            if (connection != null) connection.close();
+        } catch (SQLException e) {
+            log.warn("Failed to close content indexer connection", e);
+        }
+    }
+
+    private ContentExtractor extractorFor(String fileType) {
+        for (ContentExtractor extractor : extractors) {
+            if (extractor.supports(fileType)) {
+                return extractor;
+            }
+        }
+        return null;
+    }
+
+    private void index(int fileId, ContentExtractor extractor, Path blob) {
+        try {
+            // PostgreSQL text values cannot contain NUL characters
+            String text = extractor.extract(blob, MAX_CHARS).replace('\u0000', ' ');
+            if (connection == null || connection.isClosed()) {
+                connection = dataSource.getConnection();
+            }
+            try (PreparedStatement stmt = connection.prepareStatement(UPSERT_FILE_CONTENT)) {
+                stmt.setString(1, text);
+                stmt.setInt(2, fileId);
+                stmt.executeUpdate();
+            }
+        } catch (Exception e) {
+            log.warn("Failed to index content of file {}", fileId, e);
+        }
+    }
+}
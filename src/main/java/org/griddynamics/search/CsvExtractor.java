@@ -0,0 +1,39 @@
+package org.griddynamics.search;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Extracts the cell values of CSV and TSV files as space-separated words, one line per row.
+ */
+public class CsvExtractor implements ContentExtractor {
+
+    @Override
+    public boolean supports(String fileType) {
+        if (fileType == null) return false;
+        String type = fileType.toLowerCase(Locale.ROOT);
+        return type.equals("csv") || type.equals("tsv");
+    }
+
+    @Override
+    public String extract(Path file, int maxChars) throws IOException {
+        String raw = PlainTextExtractor.readText(file, maxChars);
+        StringBuilder text = new StringBuilder(raw.length());
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            switch (c) {
+                case ',', ';', '\t' -> text.append(' ');
+                case '"' -> {
+                    // Escaped quotes ("") inside a quoted cell become a single quote
+                    if (i + 1 < raw.length() && raw.charAt(i + 1) == '"') {
+                        text.append('"');
+                        i++;
+                    }
+                }
+                default -> text.append(c);
+            }
+        }
+        return text.toString();
+    }
+}
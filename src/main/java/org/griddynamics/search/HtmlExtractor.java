@@ -0,0 +1,40 @@
+package org.griddynamics.search;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts the visible text of HTML files: scripts, styles, comments and tags are dropped
+ * and the common character entities are decoded.
+ */
+public class HtmlExtractor implements ContentExtractor {
+
+    private static final Pattern INVISIBLE = Pattern.compile(
+            "(?is)<script\\b.*?</script>|<style\\b.*?</style>|<!--.*?-->");
+    private static final Pattern TAG = Pattern.compile("<[^>]*>");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    @Override
+    public boolean supports(String fileType) {
+        if (fileType == null) return false;
+        String type = fileType.toLowerCase(Locale.ROOT);
+        return type.equals("html") || type.equals("htm");
+    }
+
+    @Override
+    public String extract(Path file, int maxChars) throws IOException {
+        // Markup is dropped, so read more than maxChars to still fill the budget with text
+        String html = PlainTextExtractor.readText(file, maxChars * 2);
+        String text = TAG.matcher(INVISIBLE.matcher(html).replaceAll(" ")).replaceAll(" ");
+        text = text.replace("&nbsp;", " ")
+                .replace("&lt;", "<")
+                .replace("&gt;", ">")
+                .replace("&quot;", "\"")
+                .replace("&#39;", "'")
+                .replace("&amp;", "&");
+        text = WHITESPACE.matcher(text).replaceAll(" ").strip();
+        return text.length() > maxChars ? text.substring(0, maxChars) : text;
+    }
+}
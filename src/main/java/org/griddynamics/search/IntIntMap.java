@@ -0,0 +1,143 @@
+package org.griddynamics.search;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from non-negative int keys to int values.
+ * <p>
+ * Used to map entity ids to index slots and to accumulate trigram overlap counts without
+ * allocating an {@code Integer} per entry. Negative keys are not supported.
+ */
+final class IntIntMap {
+    private static final int FREE = -1;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+
+    IntIntMap() {
+        this(16);
+    }
+
+    IntIntMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(4, expected * 2 - 1)) << 1;
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, FREE);
+    }
+
+    /**
+     * Returns the value for a key.
+     *
+     * @param key          The key to look up.
+     * @param defaultValue The value returned when the key is absent.
+     * @return The mapped value, or {@code defaultValue}.
+     */
+    int get(int key, int defaultValue) {
+        int slot = find(key);
+        return keys[slot] == key ? values[slot] : defaultValue;
+    }
+
+    /**
+     * Associates a value with a key, replacing any previous value.
+     *
+     * @param key   The key.
+     * @param value The value.
+     */
+    void put(int key, int value) {
+        int slot = find(key);
+        if (keys[slot] != key) {
+            keys[slot] = key;
+            if (++size * 2 > keys.length) {
+                values[slot] = value;
+                rehash();
+                return;
+            }
+        }
+        values[slot] = value;
+    }
+
+    /**
+     * Adds a delta to the value for a key, starting from zero when absent.
+     *
+     * @param key   The key.
+     * @param delta The amount to add.
+     * @return The updated value.
+     */
+    int increment(int key, int delta) {
+        int updated = get(key, 0) + delta;
+        put(key, updated);
+        return updated;
+    }
+
+    /**
+     * Removes a key.
+     *
+     * @param key The key to remove.
+     */
+    void remove(int key) {
+        int slot = find(key);
+        if (keys[slot] != key) {
+            return;
+        }
+        keys[slot] = FREE;
+        size--;
+        // Re-insert the rest of the probe cluster so lookups never stop at the new hole
+        int mask = keys.length - 1;
+        for (int i = (slot + 1) & mask; keys[i] != FREE; i = (i + 1) & mask) {
+            int k = keys[i];
+            int v = values[i];
+            keys[i] = FREE;
+            size--;
+            put(k, v);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the keys currently in the map, in no particular order.
+     *
+     * @return A new array of keys.
+     */
+    int[] keys() {
+        int[] result = new int[size];
+        int n = 0;
+        for (int key : keys) {
+            if (key != FREE) {
+                result[n++] = key;
+            }
+        }
+        return result;
+    }
+
+    private int find(int key) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != FREE && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        Arrays.fill(keys, FREE);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
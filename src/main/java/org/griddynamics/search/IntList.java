@@ -0,0 +1,57 @@
+package org.griddynamics.search;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive ints, used for posting lists so that indexing a name does not
+ * box every slot number, and for the child lists of the in-memory metadata repository.
+ */
+public final class IntList {
+    private int[] values;
+    private int size;
+
+    public IntList() {
+        this(4);
+    }
+
+    public IntList(int capacity) {
+        this.values = new int[Math.max(1, capacity)];
+    }
+
+    /**
+     * Appends a value, growing the backing array when needed.
+     *
+     * @param value The value to append.
+     */
+    public void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size + (size >> 1) + 1);
+        }
+        values[size++] = value;
+    }
+
+    /**
+     * Removes the first occurrence of a value, shifting the later ones down.
+     *
+     * @param value The value to remove.
+     * @return Whether it was found.
+     */
+    public boolean removeValue(int value) {
+        for (int i = 0; i < size; i++) {
+            if (values[i] == value) {
+                System.arraycopy(values, i + 1, values, i, size - i - 1);
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int get(int index) {
+        return values[index];
+    }
+
+    public int size() {
+        return size;
+    }
+}
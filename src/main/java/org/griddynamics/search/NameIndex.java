@@ -0,0 +1,352 @@
+package org.griddynamics.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-process trigram index over entity names for type-ahead search.
+ * <p>
+ * Every indexed name occupies a slot; posting lists map each trigram of the lower-cased name to
+ * the slots containing it. Names are padded with two start markers and one end marker, so a
+ * one- or two-character prefix still has a trigram to look up. Slots are append-only: removing
+ * or renaming an entity leaves a dead slot behind, and the index compacts itself once half of
+ * the slots are dead.
+ * <p>
+ * The index is safe for concurrent use; searches share a read lock and updates take a write lock.
+ */
+public class NameIndex {
+
+    /** Minimum trigram similarity for a fuzzy match to be returned. */
+    static final double FUZZY_THRESHOLD = 0.3;
+
+    private static final char START = '\u0001';
+    private static final char END = '\u0002';
+
+    private static final double EXACT_SCORE = 4;
+    private static final double PREFIX_SCORE = 3;
+    private static final double SUBSTRING_SCORE = 2;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private int[] slotIds = new int[1024];
+    private String[] slotNames = new String[1024];
+    private String[] slotKeys = new String[1024];
+    private boolean[] slotDirectory = new boolean[1024];
+    private int slotCount;
+    private int deadSlots;
+
+    private IntIntMap slotById = new IntIntMap(1024);
+    private Map<Long, IntList> postings = new HashMap<>();
+
+    /**
+     * A ranked search hit.
+     *
+     * @param id        The entity ID.
+     * @param name      The entity name as stored.
+     * @param directory Whether the entity is a directory.
+     * @param score     The relevance: 4 exact, 3 prefix, 2 substring, below 1 fuzzy similarity.
+     */
+    public record Match(int id, String name, boolean directory, double score) {
+    }
+
+    /**
+     * Adds an entity to the index, replacing any earlier entry with the same ID.
+     *
+     * @param id        The entity ID.
+     * @param name      The entity name.
+     * @param directory Whether the entity is a directory.
+     */
+    public void add(int id, String name, boolean directory) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+            insertLocked(id, name, directory);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Updates the name of an indexed entity. Unknown IDs are ignored.
+     *
+     * @param id      The entity ID.
+     * @param newName The new name.
+     */
+    public void rename(int id, String newName) {
+        lock.writeLock().lock();
+        try {
+            int slot = slotById.get(id, -1);
+            if (slot < 0) {
+                return;
+            }
+            boolean directory = slotDirectory[slot];
+            removeLocked(id);
+            insertLocked(id, newName, directory);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes an entity from the index. Unknown IDs are ignored.
+     *
+     * @param id The entity ID.
+     */
+    public void remove(int id) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of slots in use, live or dead.
+     *
+     * @return The slot count.
+     */
+    int slotCount() {
+        lock.readLock().lock();
+        try {
+            return slotCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of live entries.
+     *
+     * @return The entry count.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return slotById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds names matching the query, ranked exact, prefix, substring, then fuzzy.
+     * Ties are broken by shorter name, directories first, then name.
+     *
+     * @param query The text typed so far.
+     * @param limit The maximum number of matches to return.
+     * @return The best matches, most relevant first.
+     */
+    public List<Match> search(String query, int limit) {
+        String key = query.toLowerCase(Locale.ROOT);
+        List<Match> matches = new ArrayList<>();
+        if (key.isEmpty() || limit <= 0) {
+            return matches;
+        }
+        lock.readLock().lock();
+        try {
+            IntIntMap seen = new IntIntMap();
+            collectPrefixAndSubstring(key, matches, seen);
+            if (matches.size() < limit) {
+                collectFuzzy(key, matches, seen);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        matches.sort(Comparator.comparingDouble(Match::score).reversed()
+                .thenComparingInt(m -> m.name().length())
+                .thenComparing(m -> !m.directory())
+                .thenComparing(Match::name));
+        return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+    }
+
+    private void collectPrefixAndSubstring(String key, List<Match> matches, IntIntMap seen) {
+        IntList candidates;
+        if (key.length() >= 3) {
+            candidates = intersect(trigrams(key, false));
+        } else {
+            // Too short for an unanchored trigram: look up prefixes through the padded start
+            candidates = intersect(trigrams(START + "" + START + key, false));
+        }
+        for (int i = 0; i < candidates.size(); i++) {
+            int slot = candidates.get(i);
+            String name = slotKeys[slot];
+            double score;
+            if (name.equals(key)) {
+                score = EXACT_SCORE;
+            } else if (name.startsWith(key)) {
+                score = PREFIX_SCORE;
+            } else if (name.contains(key)) {
+                score = SUBSTRING_SCORE;
+            } else {
+                continue;
+            }
+            seen.put(slot, 1);
+            matches.add(toMatch(slot, score));
+        }
+    }
+
+    private void collectFuzzy(String key, List<Match> matches, IntIntMap seen) {
+        long[] queryGrams = trigrams(key, true);
+        IntIntMap overlap = new IntIntMap();
+        for (long gram : queryGrams) {
+            IntList posting = postings.get(gram);
+            if (posting == null) {
+                continue;
+            }
+            for (int i = 0; i < posting.size(); i++) {
+                int slot = posting.get(i);
+                if (slotKeys[slot] != null && seen.get(slot, 0) == 0) {
+                    overlap.increment(slot, 1);
+                }
+            }
+        }
+        for (int slot : overlap.keys()) {
+            // Dice coefficient over padded trigram sets; a padded name of length n has n + 1 trigrams
+            int nameGrams = slotKeys[slot].length() + 1;
+            double similarity = 2.0 * overlap.get(slot, 0) / (queryGrams.length + nameGrams);
+            if (similarity >= FUZZY_THRESHOLD) {
+                matches.add(toMatch(slot, similarity));
+            }
+        }
+    }
+
+    private Match toMatch(int slot, double score) {
+        return new Match(slotIds[slot], slotNames[slot], slotDirectory[slot], score);
+    }
+
+    /**
+     * Intersects the posting lists of the given trigrams. Posting lists are sorted by slot
+     * because slots are only ever appended, so a linear merge is enough.
+     */
+    private IntList intersect(long[] grams) {
+        IntList result = null;
+        for (long gram : grams) {
+            IntList posting = postings.get(gram);
+            if (posting == null) {
+                return new IntList();
+            }
+            result = result == null ? liveCopy(posting) : merge(result, posting);
+            if (result.size() == 0) {
+                return result;
+            }
+        }
+        return result == null ? new IntList() : result;
+    }
+
+    private IntList liveCopy(IntList posting) {
+        IntList copy = new IntList(posting.size());
+        for (int i = 0; i < posting.size(); i++) {
+            if (slotKeys[posting.get(i)] != null) {
+                copy.add(posting.get(i));
+            }
+        }
+        return copy;
+    }
+
+    private static IntList merge(IntList a, IntList b) {
+        IntList out = new IntList(Math.min(a.size(), b.size()));
+        int i = 0;
+        int j = 0;
+        while (i < a.size() && j < b.size()) {
+            int x = a.get(i);
+            int y = b.get(j);
+            if (x == y) {
+                out.add(x);
+                i++;
+                j++;
+            } else if (x < y) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return out;
+    }
+
+    private void insertLocked(int id, String name, boolean directory) {
+        if (slotCount == slotIds.length) {
+            int capacity = slotCount * 2;
+            slotIds = Arrays.copyOf(slotIds, capacity);
+            slotNames = Arrays.copyOf(slotNames, capacity);
+            slotKeys = Arrays.copyOf(slotKeys, capacity);
+            slotDirectory = Arrays.copyOf(slotDirectory, capacity);
+        }
+        int slot = slotCount++;
+        String key = name.toLowerCase(Locale.ROOT);
+        slotIds[slot] = id;
+        slotNames[slot] = name;
+        slotKeys[slot] = key;
+        slotDirectory[slot] = directory;
+        slotById.put(id, slot);
+        for (long gram : trigrams(key, true)) {
+            postings.computeIfAbsent(gram, g -> new IntList()).add(slot);
+        }
+    }
+
+    private void removeLocked(int id) {
+        int slot = slotById.get(id, -1);
+        if (slot < 0) {
+            return;
+        }
+        slotById.remove(id);
+        slotNames[slot] = null;
+        slotKeys[slot] = null;
+        deadSlots++;
+        // add and rename free a slot too, so the check lives here rather than in remove
+        if (deadSlots > 1024 && deadSlots * 2 > slotCount) {
+            compactLocked();
+        }
+    }
+
+    private void compactLocked() {
+        int[] ids = slotIds;
+        String[] names = slotNames;
+        boolean[] directory = slotDirectory;
+        int count = slotCount;
+        slotCount = 0;
+        deadSlots = 0;
+        slotById = new IntIntMap(count);
+        postings = new HashMap<>();
+        for (int slot = 0; slot < count; slot++) {
+            if (names[slot] != null) {
+                insertLocked(ids[slot], names[slot], directory[slot]);
+            }
+        }
+        for (int slot = slotCount; slot < count; slot++) {
+            slotNames[slot] = null;
+            slotKeys[slot] = null;
+        }
+    }
+
+    /**
+     * Returns the distinct trigrams of a lower-cased string, each packed into a long.
+     *
+     * @param key    The lower-cased text.
+     * @param padded Whether to add the start and end markers used for indexed names.
+     * @return The distinct trigram codes.
+     */
+    static long[] trigrams(String key, boolean padded) {
+        String text = padded ? START + "" + START + key + END : key;
+        int count = Math.max(0, text.length() - 2);
+        long[] grams = new long[count];
+        int distinct = 0;
+        outer:
+        for (int i = 0; i < count; i++) {
+            long gram = ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+            for (int j = 0; j < distinct; j++) {
+                if (grams[j] == gram) {
+                    continue outer;
+                }
+            }
+            grams[distinct++] = gram;
+        }
+        return distinct == count ? grams : Arrays.copyOf(grams, distinct);
+    }
+}
@@ -0,0 +1,43 @@
+package org.griddynamics.search;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Extracts text from plain-text files by reading them as UTF-8.
+ */
+public class PlainTextExtractor implements ContentExtractor {
+
+    private static final Set<String> TYPES = Set.of("txt", "md", "log", "json", "xml", "yaml", "yml");
+
+    @Override
+    public boolean supports(String fileType) {
+        return fileType != null && TYPES.contains(fileType.toLowerCase(Locale.ROOT));
+    }
+
+    @Override
+    public String extract(Path file, int maxChars) throws IOException {
+        return readText(file, maxChars);
+    }
+
+    /**
+     * Reads the beginning of a file as UTF-8, replacing malformed bytes.
+     *
+     * @param file     The file to read.
+     * @param maxChars The maximum number of characters to return.
+     * @return The decoded text.
+     * @throws IOException If the file cannot be read.
+     */
+    static String readText(Path file, int maxChars) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            // UTF-8 needs at most four bytes per character
+            String text = new String(in.readNBytes(maxChars * 4), StandardCharsets.UTF_8);
+            return text.length() > maxChars ? text.substring(0, maxChars) : text;
+        }
+    }
+}
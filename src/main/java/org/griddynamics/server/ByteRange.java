@@ -0,0 +1,62 @@
+package org.griddynamics.server;
+
+/**
+ * An inclusive byte range of a download, parsed from a single-range {@code Range} header.
+ *
+ * @param start The first byte.
+ * @param end   The last byte.
+ */
+public record ByteRange(long start, long end) {
+
+    /** Returned for a well-formed range that lies outside the file; answered with 416. */
+    public static final ByteRange UNSATISFIABLE = new ByteRange(-1, -1);
+
+    /**
+     * Parses {@code bytes=a-b}, {@code bytes=a-} and {@code bytes=-n}.
+     *
+     * @param header The Range header, may be {@code null}.
+     * @param size   The file size.
+     * @return The range clamped to the file, {@link #UNSATISFIABLE}, or {@code null} when there is
+     *         no header or it is malformed or asks for several ranges, in which case the whole file
+     *         is sent.
+     */
+    public static ByteRange parse(String header, long size) {
+        if (header == null || !header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+            return null;
+        }
+        String spec = header.substring("bytes=".length()).strip();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            String first = spec.substring(0, dash).strip();
+            String last = spec.substring(dash + 1).strip();
+            if (first.isEmpty()) {
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0 || size == 0) return UNSATISFIABLE;
+                return new ByteRange(Math.max(0, size - suffix), size - 1);
+            }
+            long start = Long.parseLong(first);
+            if (start >= size) {
+                return UNSATISFIABLE;
+            }
+            long end = last.isEmpty() ? size - 1 : Long.parseLong(last);
+            if (start < 0 || end < start) {
+                return null;
+            }
+            return new ByteRange(start, Math.min(end, size - 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the number of bytes in the range.
+     *
+     * @return The length.
+     */
+    public long length() {
+        return end - start + 1;
+    }
+}
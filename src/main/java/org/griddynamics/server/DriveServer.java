@@ -0,0 +1,561 @@
+package org.griddynamics.server;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.griddynamics.db.ListingOrder;
+import org.griddynamics.domain.Directory;
+import org.griddynamics.domain.EntityJson;
+import org.griddynamics.domain.File;
+import org.griddynamics.domain.StorageEntity;
+import org.griddynamics.metrics.BlobTransferEvent;
+import org.griddynamics.metrics.DriveMetrics;
+import org.griddynamics.service.DatabaseService;
+import org.griddynamics.service.StorageService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLConnection;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+/**
+ * HTTP API over the drive, started in the {@code server} profile. Paths are logical paths such
+ * as {@code root/reports/q3.pdf}:
+ * <pre>
+ *   GET    /api/items/{path}               metadata of a file or directory
+ *   DELETE /api/items/{path}               deletes a file or directory
+ *   GET    /api/list/{path}?order=name     children of a directory, streamed as a JSON array
+ *   POST   /api/dirs/{path}                creates a directory
+ *   POST   /api/move/{path}?to={folder}    moves an item into another directory
+ *   PUT    /api/files/{path}               uploads a file; needs Content-Length
+ *   GET    /api/files/{path}               downloads a file, honouring If-None-Match and Range
+ *   HEAD   /api/files/{path}               download headers only
+ *   GET    /metrics                        meters in the Prometheus text format, if metrics are set
+ * </pre>
+ * Every request runs on its own virtual thread. Request and response bodies are streamed
+ * between the socket and the blob store, never held in memory. A request borrows a pooled
+ * connection only for its metadata work, so a slow download does not tie up a connection.
+ * Requests beyond {@code maxConcurrentRequests}, and uploads or downloads beyond
+ * {@code maxConcurrentTransfers}, are refused with 503 and Retry-After instead of queueing.
+ */
+public class DriveServer {
+
+    private static final Logger log = LoggerFactory.getLogger(DriveServer.class);
+
+    private static final String JSON = "application/json; charset=utf-8";
+
+    private static final String PROMETHEUS_TEXT = "text/plain; version=0.0.4; charset=utf-8";
+
+    /** Seconds that in-flight exchanges get to finish when the server stops. */
+    private static final int STOP_DELAY_SECONDS = 2;
+
+    private final DataSource dataSource;
+    private final DatabaseService dbService;
+    private final StorageService storageService;
+    private final int port;
+    private final Semaphore requests;
+    private final Semaphore transfers;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private HttpServer server;
+    private ExecutorService executor;
+    private DriveMetrics metrics;
+
+    /**
+     * Creates a server; call {@link #start()} to listen.
+     *
+     * @param dataSource             The source of per-request connections.
+     * @param dbService              The service whose indexes and caches requests share.
+     * @param storageService         The blob store.
+     * @param port                   The port, or 0 for any free port.
+     * @param maxConcurrentRequests  The number of requests handled at once.
+     * @param maxConcurrentTransfers The number of uploads and downloads streaming at once.
+     */
+    public DriveServer(DataSource dataSource, DatabaseService dbService, StorageService storageService,
+                       int port, int maxConcurrentRequests, int maxConcurrentTransfers) {
+        this.dataSource = dataSource;
+        this.dbService = dbService;
+        this.storageService = storageService;
+        this.port = port;
+        this.requests = new Semaphore(maxConcurrentRequests);
+        this.transfers = new Semaphore(maxConcurrentTransfers);
+    }
+
+    /**
+     * Serves the meters at {@code /metrics} and counts downloaded bytes. Call before {@link #start()}.
+     *
+     * @param metrics The metrics, or {@code null} for none.
+     */
+    public void setMetrics(DriveMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /** An error answered with a status code and a JSON message. */
+    static final class ApiException extends RuntimeException {
+        private final int status;
+
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private interface Route {
+        void handle(HttpExchange exchange, String path) throws IOException;
+    }
+
+    private interface DbWork<T> {
+        T apply(DatabaseService db);
+    }
+
+    /**
+     * Binds the port and starts serving on virtual threads.
+     *
+     * @throws IOException If the port cannot be bound.
+     */
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/api/items/", exchange -> serve(exchange, this::items));
+        server.createContext("/api/list/", exchange -> serve(exchange, this::list));
+        server.createContext("/api/dirs/", exchange -> serve(exchange, this::dirs));
+        server.createContext("/api/move/", exchange -> serve(exchange, this::move));
+        server.createContext("/api/files/", exchange -> serve(exchange, this::files));
+        if (metrics != null) {
+            server.createContext("/metrics", this::metrics);
+        }
+        server.start();
+        log.info("Serving the drive on port {}", getPort());
+    }
+
+    /**
+     * Stops accepting requests, gives in-flight ones a moment to finish and releases
+     * {@link #awaitShutdown()}.
+     */
+    public void stop() {
+        if (server != null) {
+            server.stop(STOP_DELAY_SECONDS);
+            executor.shutdown();
+        }
+        stopped.countDown();
+    }
+
+    /**
+     * Blocks until the server is stopped.
+     *
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public void awaitShutdown() throws InterruptedException {
+        stopped.await();
+    }
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return The bound port.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void serve(HttpExchange exchange, Route route) {
+        if (!requests.tryAcquire()) {
+            sendError(exchange, 503, "Too many concurrent requests");
+            exchange.close();
+            return;
+        }
+        try {
+            String context = exchange.getHttpContext().getPath();
+            route.handle(exchange, logicalPath(exchange.getRequestURI().getPath().substring(context.length())));
+        } catch (ApiException e) {
+            sendError(exchange, e.status, e.getMessage());
+        } catch (RuntimeException e) {
+            if (DatabaseService.isPathTaken(e)) {
+                sendError(exchange, 409, "Already exists");
+            } else {
+                log.warn("Request {} {} failed", exchange.getRequestMethod(), exchange.getRequestURI(), e);
+                sendError(exchange, 500, "Internal error");
+            }
+        } catch (IOException e) {
+            log.debug("Client went away during {} {}", exchange.getRequestMethod(), exchange.getRequestURI(), e);
+        } finally {
+            exchange.close();
+            requests.release();
+        }
+    }
+
+    private void items(HttpExchange exchange, String path) throws IOException {
+        switch (exchange.getRequestMethod()) {
+            case "GET" -> sendJson(exchange, 200, EntityJson.toJson(withDb(db -> existing(db, path))));
+            case "DELETE" -> {
+                withDb(db -> {
+                    StorageEntity item = existing(db, path);
+                    if (item instanceof File file) {
+                        db.deleteFile(file, storageService);
+                    } else if (parentOf(path) == null) {
+                        throw new ApiException(409, "Cannot delete the root directory");
+                    } else {
+                        db.deleteDirectory(item.getId());
+                    }
+                    return item;
+                });
+                exchange.sendResponseHeaders(204, -1);
+            }
+            default -> throw methodNotAllowed(exchange, "GET, DELETE");
+        }
+    }
+
+    private void list(HttpExchange exchange, String path) throws IOException {
+        if (!exchange.getRequestMethod().equals("GET")) {
+            throw methodNotAllowed(exchange, "GET");
+        }
+        ListingOrder order;
+        try {
+            String requested = queryParameter(exchange, "order");
+            order = requested == null ? ListingOrder.NAME : ListingOrder.valueOf(requested.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(400, "order must be name, size or date");
+        }
+        try (Connection connection = dataSource.getConnection()) {
+            DatabaseService db = dbService.withConnection(connection);
+            if (!(existing(db, path) instanceof Directory dir)) {
+                throw new ApiException(400, "Not a directory: " + path);
+            }
+            exchange.getResponseHeaders().set("Content-Type", JSON);
+            exchange.sendResponseHeaders(200, 0);
+            try (Stream<StorageEntity> children = db.streamChildren(dir.getId(), order);
+                 Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8))) {
+                StringBuilder item = new StringBuilder(256);
+                out.write('[');
+                for (Iterator<StorageEntity> it = children.iterator(); it.hasNext(); ) {
+                    EntityJson.append(it.next(), item);
+                    if (it.hasNext()) item.append(',');
+                    out.append(item);
+                    item.setLength(0);
+                }
+                out.write(']');
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to get a connection", e);
+        }
+    }
+
+    private void dirs(HttpExchange exchange, String path) throws IOException {
+        if (!exchange.getRequestMethod().equals("POST")) {
+            throw methodNotAllowed(exchange, "POST");
+        }
+        String parent = parentOf(path);
+        if (parent == null) {
+            throw new ApiException(409, "Already exists");
+        }
+        StorageEntity created = withDb(db -> {
+            Directory dir = new Directory();
+            dir.setName(nameOf(path));
+            dir.setParentId(directoryId(db, parent));
+            dir.setPath(path);
+            db.saveDirectory(dir);
+            return db.resolvePath(path);
+        });
+        sendJson(exchange, 201, EntityJson.toJson(created));
+    }
+
+    private void move(HttpExchange exchange, String path) throws IOException {
+        if (!exchange.getRequestMethod().equals("POST")) {
+            throw methodNotAllowed(exchange, "POST");
+        }
+        String to = queryParameter(exchange, "to");
+        if (to == null) {
+            throw new ApiException(400, "Missing parameter: to");
+        }
+        String folder = logicalPath(to);
+        StorageEntity moved = withDb(db -> {
+            StorageEntity item = existing(db, path);
+            if (item instanceof Directory && (folder.equals(path) || folder.startsWith(path + "/"))) {
+                throw new ApiException(409, "Cannot move " + path + " into itself");
+            }
+            db.move(item.getId(), directoryId(db, folder), folder + "/" + item.getName());
+            return db.resolvePath(folder + "/" + item.getName());
+        });
+        sendJson(exchange, 200, EntityJson.toJson(moved));
+    }
+
+    /** Answers scrapes outside the request limit, so a busy server can still be observed. */
+    private void metrics(HttpExchange exchange) {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                sendError(exchange, 405, "Method not allowed");
+                return;
+            }
+            byte[] bytes = metrics.scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", PROMETHEUS_TEXT);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } catch (IOException e) {
+            log.debug("Client went away during a metrics scrape", e);
+        }
+    }
+
+    private void files(HttpExchange exchange, String path) throws IOException {
+        switch (exchange.getRequestMethod()) {
+            case "PUT" -> upload(exchange, path);
+            case "GET", "HEAD" -> download(exchange, path);
+            default -> throw methodNotAllowed(exchange, "GET, HEAD, PUT");
+        }
+    }
+
+    private void upload(HttpExchange exchange, String path) throws IOException {
+        String length = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (length == null) {
+            throw new ApiException(411, "Content-Length is required");
+        }
+        long size = contentLength(length);
+        String parent = parentOf(path);
+        if (parent == null) {
+            throw new ApiException(409, "Already exists");
+        }
+        String name = nameOf(path);
+        acquireTransfer();
+        try {
+            // The row is inserted and completed on two short connections; none is held while the body streams in
+            File saved = withDb(db -> {
+                File file = new File();
+                file.setName(name);
+                file.setParentId(directoryId(db, parent));
+                file.setFileType(File.extensionOf(name));
+                file.setFileSize(size);
+                file.setPath(path);
+                db.insertFile(file, storageService);
+                return file;
+            });
+            try {
+                byte[] contentHash = storageService.saveFileToDisk(saved.getId(), exchange.getRequestBody(), saved.getFileType());
+                withDb(db -> {
+                    db.completeFile(saved, contentHash, storageService);
+                    return null;
+                });
+            } catch (Exception e) {
+                // Without its content the row is an orphan, and would turn a retry into a duplicate path
+                try {
+                    withDb(db -> {
+                        db.deleteFile(saved, storageService);
+                        return null;
+                    });
+                } catch (RuntimeException cleanup) {
+                    e.addSuppressed(cleanup);
+                }
+                throw new RuntimeException("Failed to save file", e);
+            }
+            exchange.getResponseHeaders().set("ETag", etag(saved.getId(), saved.getFileSize()));
+            sendJson(exchange, 201, EntityJson.toJson(saved));
+        } finally {
+            transfers.release();
+        }
+    }
+
+    private static long contentLength(String header) {
+        try {
+            long length = Long.parseLong(header.trim());
+            if (length >= 0) return length;
+        } catch (NumberFormatException e) {
+            // Reported below, like a negative length
+        }
+        throw new ApiException(400, "Invalid Content-Length: " + header);
+    }
+
+    private void download(HttpExchange exchange, String path) throws IOException {
+        File file = withDb(db -> existing(db, path) instanceof File f ? f : null);
+        if (file == null) {
+            throw new ApiException(400, "Not a file: " + path);
+        }
+        Path blob = storageService.resolveBlob(file.getId(), file.getFileType());
+        long size;
+        try {
+            size = Files.size(blob);
+        } catch (NoSuchFileException e) {
+            throw new ApiException(404, "Stored content is missing");
+        }
+
+        // Blobs are written once per ID and never modified, so ID and size identify the content
+        String etag = etag(file.getId(), size);
+        Headers request = exchange.getRequestHeaders();
+        Headers response = exchange.getResponseHeaders();
+        response.set("ETag", etag);
+        response.set("Accept-Ranges", "bytes");
+        if (matches(request.getFirst("If-None-Match"), etag)) {
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+        String ifRange = request.getFirst("If-Range");
+        ByteRange range = ifRange == null || ifRange.equals(etag) ? ByteRange.parse(request.getFirst("Range"), size) : null;
+        if (range == ByteRange.UNSATISFIABLE) {
+            response.set("Content-Range", "bytes */" + size);
+            throw new ApiException(416, "Range not satisfiable");
+        }
+        long start = range == null ? 0 : range.start();
+        long length = range == null ? size : range.length();
+        int status = range == null ? 200 : 206;
+        if (range != null) {
+            response.set("Content-Range", "bytes " + range.start() + "-" + range.end() + "/" + size);
+        }
+        String contentType = URLConnection.guessContentTypeFromName(file.getName());
+        response.set("Content-Type", contentType != null ? contentType : "application/octet-stream");
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            response.set("Content-Length", Long.toString(length));
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+
+        acquireTransfer();
+        BlobTransferEvent event = new BlobTransferEvent();
+        event.begin();
+        try (FileChannel channel = FileChannel.open(blob, StandardOpenOption.READ)) {
+            exchange.sendResponseHeaders(status, length == 0 ? -1 : length);
+            WritableByteChannel out = Channels.newChannel(exchange.getResponseBody());
+            long position = start;
+            long remaining = length;
+            while (remaining > 0) {
+                long sent = channel.transferTo(position, remaining, out);
+                if (sent <= 0) break;
+                position += sent;
+                remaining -= sent;
+            }
+            if (metrics != null) metrics.blobRead(length - remaining);
+            event.complete(file.getId(), length - remaining, BlobTransferEvent.READ);
+        } finally {
+            transfers.release();
+        }
+    }
+
+    /** Runs metadata work on a pooled connection held only for its duration. */
+    private <T> T withDb(DbWork<T> work) {
+        try (Connection connection = dataSource.getConnection()) {
+            return work.apply(dbService.withConnection(connection));
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to get a connection", e);
+        }
+    }
+
+    private void acquireTransfer() {
+        if (!transfers.tryAcquire()) {
+            throw new ApiException(503, "Too many concurrent transfers");
+        }
+    }
+
+    private static StorageEntity existing(DatabaseService db, String path) {
+        StorageEntity item = db.resolvePath(path);
+        if (item == null) {
+            throw new ApiException(404, "No such file or directory: " + path);
+        }
+        return item;
+    }
+
+    private static int directoryId(DatabaseService db, String path) {
+        Integer id = db.resolveDirectoryId(path);
+        if (id == null) {
+            throw new ApiException(404, "No such directory: " + path);
+        }
+        return id;
+    }
+
+    /** Turns a path from a URL, with or without a leading '/', into a logical path. */
+    private static String logicalPath(String raw) {
+        String path = DatabaseService.normalizePath("root", raw.startsWith("/") ? raw : "/" + raw);
+        if (path == null) {
+            throw new ApiException(400, "Invalid path: " + raw);
+        }
+        return path;
+    }
+
+    private static String parentOf(String path) {
+        int slash = path.lastIndexOf('/');
+        return slash < 0 ? null : path.substring(0, slash);
+    }
+
+    private static String nameOf(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    static String etag(int fileId, long size) {
+        return "\"" + fileId + "-" + size + "\"";
+    }
+
+    /** Tells whether an If-None-Match header matches the entity tag (weak comparison). */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.strip();
+            if (tag.startsWith("W/")) tag = tag.substring(2);
+            if (tag.equals("*") || tag.equals(etag)) return true;
+        }
+        return false;
+    }
+
+    private static String queryParameter(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) return null;
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            if (key.equals(name)) {
+                return eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    private static ApiException methodNotAllowed(HttpExchange exchange, String allowed) {
+        exchange.getResponseHeaders().set("Allow", allowed);
+        return new ApiException(405, "Method not allowed");
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", JSON);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /** Sends an error, unless the response has already started. */
+    private static void sendError(HttpExchange exchange, int status, String message) {
+        if (exchange.getResponseCode() != -1) return;
+        StringBuilder body = new StringBuilder("{\"error\":");
+        EntityJson.appendString(message, body);
+        body.append('}');
+        if (status == 503) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+        }
+        try {
+            sendJson(exchange, status, body.toString());
+        } catch (IOException e) {
+            log.debug("Could not send error {} to client", status, e);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package org.griddynamics.service;
+
+import org.griddynamics.db.FindQuery;
+import org.griddynamics.domain.Directory;
+import org.griddynamics.domain.File;
+import org.griddynamics.domain.Page;
+import org.griddynamics.domain.StorageEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Downloads a selection of files and folders to a local directory, mirroring each selected
+ * folder's whole subtree.
+ * <p>
+ * The download is planned before anything is copied: subtrees are read page by page, local
+ * folders are created, and every file gets its target name from one scan of its local folder
+ * (see {@link LocalNames}). The copies then run on a fixed pool, largest first, through
+ * {@link StorageService#copyBlob(File, Path)}.
+ */
+public class BulkDownloader {
+
+    /** Items fetched per query while reading a subtree. */
+    static final int PAGE_SIZE = 1000;
+
+    private static final Logger log = LoggerFactory.getLogger(BulkDownloader.class);
+
+    private final DatabaseService dbService;
+    private final StorageService storageService;
+    private final int threads;
+
+    /**
+     * How far a download has got; reported after every copied file.
+     *
+     * @param files      The number of files done, copied or failed.
+     * @param totalFiles The number of files to copy.
+     * @param bytes      The number of bytes copied.
+     * @param totalBytes The number of bytes to copy, according to the metadata.
+     */
+    public record Progress(int files, int totalFiles, long bytes, long totalBytes) {
+    }
+
+    /**
+     * The outcome of a download.
+     *
+     * @param files        The number of files copied.
+     * @param directories  The number of local folders created or reused.
+     * @param bytes        The number of bytes copied.
+     * @param failures     One "path: reason" line per file that could not be copied.
+     * @param elapsedNanos The wall-clock time of the whole download.
+     */
+    public record Result(int files, int directories, long bytes, List<String> failures, long elapsedNanos) {
+
+        /**
+         * Returns the copy throughput.
+         *
+         * @return Bytes copied per second of wall-clock time.
+         */
+        public double bytesPerSecond() {
+            return elapsedNanos == 0 ? 0 : bytes * 1_000_000_000.0 / elapsedNanos;
+        }
+    }
+
+    private record Copy(File file, Path target) {
+    }
+
+    /**
+     * Creates a downloader.
+     *
+     * @param dbService      The metadata source.
+     * @param storageService The blob store.
+     * @param threads        The number of files copied at once.
+     */
+    public BulkDownloader(DatabaseService dbService, StorageService storageService, int threads) {
+        this.dbService = dbService;
+        this.storageService = storageService;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Downloads files and folder subtrees into a local directory, which is created if needed.
+     *
+     * @param selection   The files and folders to download.
+     * @param destination The local directory.
+     * @param progress    Called on the calling thread after each file.
+     * @return What was copied and what failed.
+     * @throws IOException If the local folders cannot be created or listed.
+     */
+    public Result download(List<StorageEntity> selection, Path destination, Consumer<Progress> progress) throws IOException {
+        long started = System.nanoTime();
+        Files.createDirectories(destination);
+        Map<Path, LocalNames> names = new HashMap<>();
+        List<Copy> copies = new ArrayList<>();
+        int directories = 0;
+        for (StorageEntity item : selection) {
+            if (item instanceof File file) {
+                copies.add(new Copy(file, namesIn(names, destination).file(StorageService.downloadName(file))));
+            } else {
+                directories += planTree((Directory) item, destination, names, copies);
+            }
+        }
+
+        copies.sort(Comparator.comparingLong((Copy copy) -> copy.file().getFileSize()).reversed());
+        long totalBytes = copies.stream().mapToLong(copy -> copy.file().getFileSize()).sum();
+        List<String> failures = new ArrayList<>();
+        int copied = 0;
+        long bytes = 0;
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            CompletionService<Long> completions = new ExecutorCompletionService<>(pool);
+            for (Copy copy : copies) {
+                completions.submit(() -> copy(copy));
+            }
+            for (int done = 1; done <= copies.size(); done++) {
+                try {
+                    bytes += completions.take().get();
+                    copied++;
+                } catch (ExecutionException e) {
+                    failures.add(e.getCause().getMessage());
+                }
+                progress.accept(new Progress(done, copies.size(), bytes, totalBytes));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Download interrupted", e);
+        } finally {
+            pool.shutdownNow();
+        }
+        return new Result(copied, directories, bytes, failures, System.nanoTime() - started);
+    }
+
+    /**
+     * Creates the local copy of a folder and its subfolders and plans the copies of its files.
+     *
+     * @return The number of local folders.
+     */
+    private int planTree(Directory root, Path destination, Map<Path, LocalNames> names, List<Copy> copies)
+            throws IOException {
+        FindQuery query = new FindQuery();
+        query.setUnder(root.getPath());
+        List<Directory> subfolders = new ArrayList<>();
+        List<File> files = new ArrayList<>();
+        Page<StorageEntity> page = dbService.find(query, 0, PAGE_SIZE);
+        while (true) {
+            for (StorageEntity item : page.items()) {
+                if (item instanceof Directory dir) subfolders.add(dir);
+                else files.add((File) item);
+            }
+            if (!page.hasMore()) break;
+            page = dbService.find(query, page.last().getId(), PAGE_SIZE);
+        }
+
+        // Parents before children: IDs do not guarantee that once folders have been moved
+        subfolders.sort(Comparator.comparingInt(dir -> FindQuery.depthOf(dir.getPath())));
+        Map<Integer, Path> localDirs = new HashMap<>();
+        localDirs.put(root.getId(), createDirectory(names, destination, root.getName()));
+        for (Directory dir : subfolders) {
+            Path parent = localDirs.get(dir.getParentId());
+            if (parent != null) {
+                localDirs.put(dir.getId(), createDirectory(names, parent, dir.getName()));
+            }
+        }
+        for (File file : files) {
+            Path parent = localDirs.get(file.getParentId());
+            if (parent != null) {
+                copies.add(new Copy(file, namesIn(names, parent).file(StorageService.downloadName(file))));
+            }
+        }
+        return localDirs.size();
+    }
+
+    private static Path createDirectory(Map<Path, LocalNames> names, Path parent, String name) throws IOException {
+        Path dir = namesIn(names, parent).directory(name);
+        Files.createDirectories(dir);
+        return dir;
+    }
+
+    private static LocalNames namesIn(Map<Path, LocalNames> names, Path dir) throws IOException {
+        LocalNames existing = names.get(dir);
+        if (existing == null) {
+            existing = LocalNames.scan(dir);
+            names.put(dir, existing);
+        }
+        return existing;
+    }
+
+    private long copy(Copy copy) throws IOException {
+        try {
+            long bytes = storageService.copyBlob(copy.file(), copy.target());
+            if (copy.file().getUpdatedAt() != null) {
+                Files.setLastModifiedTime(copy.target(),
+                        FileTime.from(copy.file().getUpdatedAt().atZone(ZoneId.systemDefault()).toInstant()));
+            }
+            return bytes;
+        } catch (NoSuchFileException e) {
+            log.warn("Stored blob of file {} is missing; skipping it", copy.file().getId());
+            throw new IOException(copy.file().getPath() + ": stored file not found", e);
+        } catch (IOException e) {
+            log.warn("Could not download file {} to {}", copy.file().getId(), copy.target(), e);
+            throw new IOException(copy.file().getPath() + ": " + e.getMessage(), e);
+        }
+    }
+}
@@ -1,15 +1,28 @@
 package org.griddynamics.service;
 
+import org.griddynamics.db.EntityRowMapper;
+import org.griddynamics.db.FindQuery;
+import org.griddynamics.db.ListingOrder;
+import org.griddynamics.domain.ContentMatch;
 import org.griddynamics.domain.Directory;
 import org.griddynamics.domain.File;
+import org.griddynamics.domain.Page;
 import org.griddynamics.domain.StorageEntity;
+import org.griddynamics.domain.UsageReport;
+import org.griddynamics.search.ContentIndexer;
+import org.griddynamics.search.NameIndex;
+import org.griddynamics.snapshot.SnapshotWriter;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.sql.*;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static org.griddynamics.db.SqlQueries.*;
 
@@ -19,11 +32,25 @@ import static org.griddynamics.db.SqlQueries.*;
  * a PostgreSQL database, and works together with {@link StorageService} to persist file content.
  */
 //@Service
-public class DatabaseService {
+public class DatabaseService implements MetadataRepository {
+
+    /** Rows fetched per round trip when streaming the whole table. */
+    private static final int STREAM_FETCH_SIZE = 10_000;
 
     /** JDBC connection to the PostgreSQL database. */
     private final Connection connection;
 
+    /** Optional in-memory name index kept in sync with every save, rename and delete. */
+    private NameIndex nameIndex;
+
+    /** Optional background indexer that makes uploaded text searchable by content. */
+    private ContentIndexer contentIndexer;
+
+    /** Optional cache of recently resolved directory paths, kept in sync with renames, moves and deletes. */
+    private PathCache pathCache;
+
+    /** Name index and path cache changes held back until the journal replay commits; {@code null} otherwise. */
+    private List<Runnable> cacheUpdates;
 
     /**
      * Constructs a new {@code DatabaseService} with the provided JDBC {@link Connection}.
@@ -40,6 +67,7 @@ public class DatabaseService {
      *
      * @return the root {@link Directory}
      */
+    @Override
     public Directory getRootDirectory() {
         try (PreparedStatement stmt = connection.prepareStatement(SELECT_ROOT_DIRECTORY)) {
             ResultSet rs = stmt.executeQuery();
@@ -56,7 +84,9 @@ public class DatabaseService {
             insertStmt.setString(3, "root");
             ResultSet rs = insertStmt.executeQuery();
             if (rs.next()) {
-                return mapDirectory(rs);
+                Directory root = mapDirectory(rs);
+                if (nameIndex != null) nameIndex.add(root.getId(), root.getName(), true);
+                return root;
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
@@ -70,6 +100,7 @@ public class DatabaseService {
      * @param directoryId the ID of the directory
      * @return the {@link Directory} object, or {@code null} if not found
      */
+    @Override
     public Directory getDirectory(int directoryId) {
         try (PreparedStatement stmt = connection.prepareStatement(GET_ITEM)) {
             stmt.setInt(1, directoryId);
@@ -89,14 +120,16 @@ public class DatabaseService {
      *
      * @param directory the {@link Directory} to save
      */
+    @Override
     public void saveDirectory(Directory directory) {
         try (PreparedStatement stmt = connection.prepareStatement(INSERT_DIRECTORY)) {
             stmt.setString(1, directory.getName());
             stmt.setInt(2, directory.getParentId());
             stmt.setString(3, directory.getPath());
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                directory.setId(rs.getInt("id"));
+            Integer id = insertWithDigest(stmt, directory.getParentId(), directory.getName(), true, null);
+            if (id != null) {
+                directory.setId(id);
+                if (nameIndex != null) nameIndex.add(directory.getId(), directory.getName(), true);
             }
         } catch (SQLException e) {
             throw new RuntimeException("Failed to save directory", e);
@@ -111,7 +144,34 @@ public class DatabaseService {
      * @param fileStream     the input stream of the file content
      * @param storageService the storage service to handle physical file saving
      */
+    @Override
     public void saveFile(File file, InputStream fileStream, StorageService storageService) {
+        insertFile(file, storageService);
+        byte[] contentHash;
+        try {
+            contentHash = storageService.saveFileToDisk(file.getId(), fileStream, file.getFileType());
+        } catch (Exception e) {
+            // Without its content the row is an orphan, and would turn a retry into a duplicate path
+            try {
+                deleteFile(file, storageService);
+            } catch (RuntimeException cleanup) {
+                e.addSuppressed(cleanup);
+            }
+            throw new RuntimeException("Failed to save file", e);
+        }
+        completeFile(file, contentHash, storageService);
+    }
+
+    /**
+     * Inserts the row of a new file whose content is stored separately, setting its ID, logical
+     * path and storage path. The caller writes the blob, without holding this connection if it
+     * likes, then calls {@link #completeFile} or, if the blob could not be written,
+     * {@link #deleteFile}.
+     *
+     * @param file           the {@link File} metadata
+     * @param storageService the storage service the blob goes to
+     */
+    public void insertFile(File file, StorageService storageService) {
         try {
             String parentPath = getPathById(file.getParentId());
             if (parentPath == null) {
@@ -129,26 +189,53 @@ public class DatabaseService {
                 stmt.setString(5, "TEMP");
                 stmt.setString(6, file.getPath());
 
-                ResultSet rs = stmt.executeQuery();
-                if (rs.next()) {
-                    int fileId = rs.getInt("id");
-                    file.setId(fileId);
-                    String storagePath = storageService.getStorageFolder() + "/" + fileId + "." + file.getFileType();
-                    updateFilePaths(fileId, storagePath);
-                    storageService.saveFileToDisk(fileId, fileStream, file.getFileType());
+                Integer id = insertWithDigest(stmt, file.getParentId(), file.getName(), false, file.getFileSize());
+                if (id == null) {
+                    throw new RuntimeException("File was not inserted");
                 }
+                int fileId = id;
+                file.setId(fileId);
+                if (nameIndex != null) nameIndex.add(fileId, file.getName(), false);
+                updateFilePaths(fileId, storagePath(file, storageService));
             }
         } catch (Exception e) {
             throw new RuntimeException("Failed to save file", e);
         }
     }
 
+    /**
+     * Records the content hash of a file inserted by {@link #insertFile} once its blob is
+     * written, and queues the blob for content indexing.
+     *
+     * @param file           the inserted file
+     * @param contentHash    the SHA-256 of the blob, or {@code null} if it was not computed
+     * @param storageService the storage service holding the blob
+     */
+    public void completeFile(File file, byte[] contentHash, StorageService storageService) {
+        try {
+            if (contentHash != null) {
+                updateContentHash(file.getId(), contentHash);
+                file.setContentHash(EntityRowMapper.hashHex(contentHash));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to save file", e);
+        }
+        if (contentIndexer != null) {
+            contentIndexer.submit(file.getId(), file.getFileType(), Paths.get(storagePath(file, storageService)));
+        }
+    }
+
+    private static String storagePath(File file, StorageService storageService) {
+        return storageService.getStorageFolder() + "/" + file.getId() + "." + file.getFileType();
+    }
+
     /**
      * Retrieves a file by its ID.
      *
      * @param fileId the ID of the file
      * @return the {@link File}, or {@code null} if not found
      */
+    @Override
     public File getFile(int fileId) {
         try (PreparedStatement stmt = connection.prepareStatement(GET_ITEM)) {
             stmt.setInt(1, fileId);
@@ -170,10 +257,11 @@ public class DatabaseService {
      * @param file           the file to delete
      * @param storageService the storage service to handle physical file deletion
      */
+    @Override
     public void deleteFile(File file, StorageService storageService) {
-        try (PreparedStatement stmt = connection.prepareStatement(DELETE_ITEM)) {
-            stmt.setInt(1, file.getId());
-            stmt.executeUpdate();
+        try {
+            if (deleteItem(file.getId()) && nameIndex != null) nameIndex.remove(file.getId());
+            evictCachedPaths(file.getPath());
             String storageFilePath = storageService.getStorageFolder() + "/" + file.getId() + "." + file.getFileType();
             Files.deleteIfExists(Paths.get(storageFilePath));
             storageService.deleteFileFromDisk(file.getId(), file.getFileType());
@@ -187,10 +275,19 @@ public class DatabaseService {
      *
      * @param directoryId the ID of the directory to delete
      */
+    @Override
     public void deleteDirectory(int directoryId) {
-        try (PreparedStatement stmt = connection.prepareStatement(DELETE_ITEM)) {
-            stmt.setInt(1, directoryId);
-            stmt.executeUpdate();
+        try {
+            // The cascade removes descendants server-side, so collect their IDs first for the index
+            List<Integer> removedIds = nameIndex != null ? getSubtreeIds(directoryId) : List.of();
+            String removedPath = pathCache != null ? getPathById(directoryId) : null;
+            if (!deleteItem(directoryId)) return;
+            updateCaches(() -> {
+                evictCachedPaths(removedPath);
+                for (int removedId : removedIds) {
+                    nameIndex.remove(removedId);
+                }
+            });
         } catch (SQLException e) {
             throw new RuntimeException("Failed to delete directory", e);
         }
@@ -202,6 +299,7 @@ public class DatabaseService {
      * @param id      the ID of the file or directory
      * @param newName the new name
      */
+    @Override
     public void rename(int id, String newName,boolean isDirectory) {
         try {
             String currentPath = null;
@@ -219,15 +317,28 @@ public class DatabaseService {
 
             String parentPath = getPathById(parentId);
             String newPath = (parentPath != null ? parentPath : "") + "/" + newName;
+            String oldPath = currentPath;
 
-            try (PreparedStatement stmt = connection.prepareStatement(RENAME_ITEM)) {
-                stmt.setString(1, newName);
-                stmt.setString(2, newPath);
-                stmt.setInt(3, id);
-                stmt.executeUpdate();
-            }
+            // The item and its descendants change paths together, or not at all
+            inTransaction(() -> {
+                toggleDigest(id);
+                try (PreparedStatement stmt = connection.prepareStatement(RENAME_ITEM)) {
+                    stmt.setString(1, newName);
+                    stmt.setString(2, newPath);
+                    stmt.setInt(3, id);
+                    stmt.executeUpdate();
+                }
+                toggleDigest(id);
+                if (oldPath != null) {
+                    updateDescendantPaths(oldPath, newPath);
+                }
+                return null;
+            });
 
-            updateDescendantPaths(currentPath, newPath);
+            updateCaches(() -> {
+                if (nameIndex != null) nameIndex.rename(id, newName);
+                evictCachedPaths(oldPath);
+            });
 
         } catch (SQLException e) {
             throw new RuntimeException("Failed to rename item", e);
@@ -235,23 +346,106 @@ public class DatabaseService {
     }
 
     /**
-     * Moves a file or directory to a new parent directory and updates its path.
+     * Moves a file or directory to a new parent directory and updates its path and the paths
+     * of all its descendants.
      *
      * @param id          the ID of the item to move
      * @param newParentId the ID of the new parent directory
      * @param newPath     the updated logical path
      */
+    @Override
     public void move(int id, int newParentId, String newPath) {
-        try (PreparedStatement stmt = connection.prepareStatement(MOVE_ITEM)) {
-            stmt.setInt(1, newParentId);
-            stmt.setString(2, newPath);
-            stmt.setInt(3, id);
-            stmt.executeUpdate();
+        try {
+            String oldPath = getPathById(id);
+            inTransaction(() -> {
+                // Out of the old parent's digest chain, into the new one's
+                lockAncestors(id, newParentId);
+                toggleDigest(id);
+                try (PreparedStatement stmt = connection.prepareStatement(MOVE_ITEM)) {
+                    stmt.setInt(1, newParentId);
+                    stmt.setString(2, newPath);
+                    stmt.setInt(3, id);
+                    stmt.executeUpdate();
+                }
+                toggleDigest(id);
+                if (oldPath != null) {
+                    updateDescendantPaths(oldPath, newPath);
+                }
+                return null;
+            });
+            updateCaches(() -> evictCachedPaths(oldPath));
         } catch (SQLException e) {
             throw new RuntimeException("Failed to move item", e);
         }
     }
 
+    /**
+     * Retrieves a file or directory by its logical path in a single lookup on the unique path index.
+     * Resolved directories are remembered in the path cache, if one is set.
+     *
+     * @param path the normalized logical path, e.g. "root/projects/2024"
+     * @return the {@link Directory} or {@link File}, or {@code null} if nothing has that path
+     * @see #normalizePath(String, String)
+     */
+    @Override
+    public StorageEntity resolvePath(String path) {
+        try (PreparedStatement stmt = connection.prepareStatement(GET_ITEM_BY_PATH)) {
+            stmt.setString(1, path);
+            ResultSet rs = stmt.executeQuery();
+            if (rs.next()) {
+                if (rs.getBoolean("is_directory")) {
+                    Directory dir = mapDirectory(rs);
+                    if (pathCache != null) pathCache.put(path, dir.getId());
+                    return dir;
+                }
+                return mapFile(rs);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to resolve path", e);
+        }
+        return null;
+    }
+
+    /**
+     * Retrieves the ID of the directory at a logical path, answering from the path cache
+     * without a query when the path was resolved recently.
+     *
+     * @param path the normalized logical path
+     * @return the directory ID, or {@code null} if no directory has that path
+     */
+    @Override
+    public Integer resolveDirectoryId(String path) {
+        Integer cached = pathCache != null ? pathCache.get(path) : null;
+        if (cached != null) {
+            return cached;
+        }
+        return resolvePath(path) instanceof Directory dir ? dir.getId() : null;
+    }
+
+    /**
+     * Creates a service over another connection that shares this service's name index, content
+     * indexer and path cache, so that work can run on several connections at once.
+     *
+     * @param other the connection for the new service
+     * @return a service using {@code other}
+     */
+    public DatabaseService withConnection(Connection other) {
+        DatabaseService service = new DatabaseService(other);
+        service.nameIndex = nameIndex;
+        service.contentIndexer = contentIndexer;
+        service.pathCache = pathCache;
+        return service;
+    }
+
+    /**
+     * Sets the cache used to resolve recently seen directory paths without a query.
+     *
+     * @param pathCache the cache, or {@code null} to disable caching
+     */
+    public void setPathCache(PathCache pathCache) {
+        this.pathCache = pathCache;
+    }
+
 
     /**
      * Retrieves all contents (files and directories) of a given directory.
@@ -259,17 +453,14 @@ public class DatabaseService {
      * @param directoryId the parent directory ID
      * @return a list of {@link StorageEntity} objects
      */
+    @Override
     public List<StorageEntity> getDirectoryContents(int directoryId) {
         List<StorageEntity> contents = new ArrayList<>();
         try (PreparedStatement stmt = connection.prepareStatement(GET_CONTENTS_BY_PARENT_ID)) {
             stmt.setInt(1, directoryId);
             ResultSet rs = stmt.executeQuery();
             while (rs.next()) {
-                if (rs.getBoolean("is_directory")) {
-                    contents.add(mapDirectory(rs));
-                } else {
-                    contents.add(mapFile(rs));
-                }
+                contents.add(EntityRowMapper.map(rs));
             }
         } catch (SQLException e) {
             throw new RuntimeException("Failed to get directory contents", e);
@@ -283,17 +474,14 @@ public class DatabaseService {
      * @param query the search keyword
      * @return a list of matched {@link StorageEntity} results
      */
+    @Override
     public List<StorageEntity> searchFilesAndDirectories(String query) {
         List<StorageEntity> results = new ArrayList<>();
         try (PreparedStatement stmt = connection.prepareStatement(SEARCH_ITEMS)) {
             stmt.setString(1, "%" + query + "%");
             ResultSet rs = stmt.executeQuery();
             while (rs.next()) {
-                if (rs.getBoolean("is_directory")) {
-                    results.add(mapDirectory(rs));
-                } else {
-                    results.add(mapFile(rs));
-                }
+                results.add(EntityRowMapper.map(rs));
             }
         } catch (SQLException e) {
             throw new RuntimeException("Failed to search items", e);
@@ -301,23 +489,493 @@ public class DatabaseService {
         return results;
     }
 
+    /**
+     * Retrieves one page of files and directories whose names contain the query, directories first
+     * and then by name. Wildcards in the query are matched literally.
+     *
+     * @param query the search keyword
+     * @param after the last item of the previous page, or {@code null} for the first page
+     * @param limit the maximum number of items on the page
+     * @return the requested {@link Page} of matches
+     */
+    @Override
+    public Page<StorageEntity> searchFilesAndDirectories(String query, StorageEntity after, int limit) {
+        List<StorageEntity> results = new ArrayList<>();
+        try (PreparedStatement stmt = connection.prepareStatement(SEARCH_ITEMS_PAGE)) {
+            boolean afterDirectory = after == null || after instanceof Directory;
+            stmt.setString(1, "%" + escapeLikePattern(query) + "%");
+            stmt.setBoolean(2, afterDirectory);
+            stmt.setBoolean(3, afterDirectory);
+            stmt.setString(4, after == null ? "" : after.getName());
+            stmt.setInt(5, after == null ? 0 : after.getId());
+            stmt.setInt(6, limit + 1);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                results.add(EntityRowMapper.map(rs));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to search items", e);
+        }
+        return Page.of(results, limit);
+    }
+
+    /**
+     * Runs a find query and returns one page of results in ID order.
+     * All predicates are evaluated by the database in a single statement.
+     *
+     * @param query   The find predicates.
+     * @param afterId The ID of the last item of the previous page, or 0 for the first page.
+     * @param limit   The maximum number of items in the page.
+     * @return The page of matching files and directories.
+     */
+    public Page<StorageEntity> find(FindQuery query, int afterId, int limit) {
+        FindQuery.Compiled compiled = query.compile(afterId, limit);
+        List<StorageEntity> results = new ArrayList<>();
+        try (PreparedStatement stmt = connection.prepareStatement(compiled.sql())) {
+            List<Object> params = compiled.params();
+            for (int i = 0; i < params.size(); i++) {
+                bind(stmt, i + 1, params.get(i));
+            }
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                results.add(EntityRowMapper.map(rs));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to find items", e);
+        }
+        return Page.of(results, limit);
+    }
+
+    /**
+     * Builds a storage usage report for a directory subtree. Every part of the report is a
+     * LIMIT or GROUP BY query evaluated in the database; totals come from the directory rollups,
+     * read again here so they match the rest of the report even if the caller's copy is stale.
+     *
+     * @param directory The directory whose subtree is reported.
+     * @param topK      The number of largest files and folders to include.
+     * @return The usage report.
+     */
+    public UsageReport getUsageReport(Directory directory, int topK) {
+        Directory scope = getDirectory(directory.getId());
+        if (scope == null) {
+            throw new RuntimeException("Directory not found: " + directory.getPath());
+        }
+        try {
+            List<File> largestFiles = new ArrayList<>();
+            try (PreparedStatement stmt = connection.prepareStatement(USAGE_LARGEST_FILES)) {
+                bindSubtree(stmt, scope.getPath());
+                stmt.setInt(3, topK);
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    largestFiles.add(EntityRowMapper.mapFile(rs));
+                }
+            }
+
+            List<Directory> largestFolders = new ArrayList<>();
+            try (PreparedStatement stmt = connection.prepareStatement(USAGE_LARGEST_FOLDERS)) {
+                bindSubtree(stmt, scope.getPath());
+                stmt.setInt(3, topK);
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    largestFolders.add(EntityRowMapper.mapDirectory(rs));
+                }
+            }
+
+            List<UsageReport.TypeUsage> byType = new ArrayList<>();
+            try (PreparedStatement stmt = connection.prepareStatement(USAGE_BY_TYPE)) {
+                bindSubtree(stmt, scope.getPath());
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    byType.add(new UsageReport.TypeUsage(rs.getString("file_type"),
+                            rs.getLong("files"), rs.getLong("bytes")));
+                }
+            }
+
+            List<UsageReport.SizeBucket> histogram = new ArrayList<>();
+            try (PreparedStatement stmt = connection.prepareStatement(USAGE_SIZE_HISTOGRAM)) {
+                bindSubtree(stmt, scope.getPath());
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    histogram.add(UsageReport.SizeBucket.ofBitLength(rs.getInt("bit_length"),
+                            rs.getLong("files"), rs.getLong("bytes")));
+                }
+            }
+            return new UsageReport(scope, largestFiles, largestFolders, byType, histogram);
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to build usage report", e);
+        }
+    }
+
+    /**
+     * Returns the non-empty files whose size is shared by at least one other file,
+     * ordered by size (largest first) and then by ID.
+     *
+     * @return The candidates for duplicate detection.
+     */
+    public List<File> getDuplicateSizeCandidates() {
+        List<File> files = new ArrayList<>();
+        try (PreparedStatement stmt = connection.prepareStatement(DUPLICATE_SIZE_CANDIDATES)) {
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                files.add(EntityRowMapper.mapFile(rs));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to load duplicate candidates", e);
+        }
+        return files;
+    }
+
+    /**
+     * Builds the given name index from one streaming scan of all items and keeps it in sync
+     * with every later save, rename and delete made through this service.
+     *
+     * @param index an empty {@link NameIndex} to populate
+     */
+    public void enableNameIndex(NameIndex index) {
+        try {
+            boolean autoCommit = connection.getAutoCommit();
+            // PostgreSQL only honours the fetch size (cursor mode) inside a transaction
+            connection.setAutoCommit(false);
+            try (PreparedStatement stmt = connection.prepareStatement(SELECT_ALL_NAMES)) {
+                stmt.setFetchSize(STREAM_FETCH_SIZE);
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    index.add(rs.getInt("id"), rs.getString("name"), rs.getBoolean("is_directory"));
+                }
+            } finally {
+                connection.commit();
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to build name index", e);
+        }
+        this.nameIndex = index;
+    }
+
+    /**
+     * Streams every item, in ID order, into a snapshot for offline browsing.
+     *
+     * @param writer the {@link SnapshotWriter} that receives the rows
+     * @return the number of items exported
+     */
+    public int exportSnapshot(SnapshotWriter writer) {
+        try {
+            boolean autoCommit = connection.getAutoCommit();
+            // PostgreSQL only honours the fetch size (cursor mode) inside a transaction
+            connection.setAutoCommit(false);
+            try (PreparedStatement stmt = connection.prepareStatement(SELECT_SNAPSHOT_ROWS)) {
+                stmt.setFetchSize(STREAM_FETCH_SIZE);
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    boolean isDirectory = rs.getBoolean("is_directory");
+                    writer.add(rs.getInt("id"), rs.getInt("parent_id"), isDirectory, rs.getString("name"),
+                            rs.getString("file_type"),
+                            isDirectory ? rs.getLong("total_bytes") : rs.getLong("file_size"),
+                            isDirectory ? rs.getLong("file_count") : 0,
+                            EntityRowMapper.toLocalDateTime(rs.getTimestamp("created_at")),
+                            EntityRowMapper.toLocalDateTime(rs.getTimestamp("updated_at")));
+                }
+            } finally {
+                connection.commit();
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to export snapshot", e);
+        }
+        return writer.size();
+    }
+
+    /**
+     * Streams every item, parents first, into an in-memory view, with content hashes.
+     *
+     * @param view the {@link InMemoryMetadataRepository} to fill
+     * @return the number of items loaded
+     */
+    public int loadInto(InMemoryMetadataRepository view) {
+        int count = 0;
+        try {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (PreparedStatement stmt = connection.prepareStatement(SELECT_ITEMS_PARENTS_FIRST)) {
+                stmt.setFetchSize(STREAM_FETCH_SIZE);
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    view.restore(EntityRowMapper.mapWithDigests(rs));
+                    count++;
+                }
+            } finally {
+                connection.commit();
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to load metadata", e);
+        }
+        return count;
+    }
+
+    /**
+     * Retrieves the last record of a journal applied by {@link #replayJournal(String, List)}.
+     *
+     * @param journal the name of the journal
+     * @return its sequence number, or 0 if nothing was replayed yet
+     */
+    public long getAppliedJournalSeq(String journal) {
+        try (PreparedStatement stmt = connection.prepareStatement(SELECT_JOURNAL_SEQ)) {
+            stmt.setString(1, journal);
+            ResultSet rs = stmt.executeQuery();
+            return rs.next() ? rs.getLong(1) : 0;
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to read journal position", e);
+        }
+    }
+
+    /**
+     * Applies journal records in one transaction, together with the new replay position. Records
+     * at or below the position already stored are skipped, so a batch that was committed before a
+     * crash but not yet checkpointed in the journal can be replayed again safely. The name index
+     * and path cache see the changes only once they commit; a rolled back batch leaves them as
+     * they were.
+     *
+     * @param journal the name of the journal
+     * @param records the records, in sequence order
+     * @return the number of records applied
+     */
+    public int replayJournal(String journal, List<JournalRecord> records) {
+        List<JournalRecord> applied = new ArrayList<>();
+        List<Runnable> committed = new ArrayList<>();
+        try {
+            connection.setAutoCommit(false);
+            cacheUpdates = committed;
+            try {
+                try (PreparedStatement stmt = connection.prepareStatement(INIT_JOURNAL_SEQ)) {
+                    stmt.setString(1, journal);
+                    stmt.executeUpdate();
+                }
+                long appliedSeq;
+                try (PreparedStatement stmt = connection.prepareStatement(SELECT_JOURNAL_SEQ_FOR_UPDATE)) {
+                    stmt.setString(1, journal);
+                    ResultSet rs = stmt.executeQuery();
+                    rs.next();
+                    appliedSeq = rs.getLong(1);
+                }
+                for (JournalRecord record : records) {
+                    if (record.seq() <= appliedSeq) continue;
+                    apply(record);
+                    applied.add(record);
+                    appliedSeq = record.seq();
+                }
+                try (PreparedStatement stmt = connection.prepareStatement(SAVE_JOURNAL_SEQ)) {
+                    stmt.setLong(1, appliedSeq);
+                    stmt.setString(2, journal);
+                    stmt.executeUpdate();
+                }
+                try (PreparedStatement stmt = connection.prepareStatement(ADVANCE_ID_SEQUENCE)) {
+                    stmt.executeQuery();
+                }
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                cacheUpdates = null;
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException | RuntimeException e) {
+            throw new RuntimeException("Failed to replay journal", e);
+        }
+        committed.forEach(Runnable::run);
+        if (contentIndexer != null) {
+            for (JournalRecord record : applied) {
+                if (record.op() == JournalRecord.Op.CREATE && !record.directory()) {
+                    contentIndexer.submit(record.id(), record.fileType(), Paths.get(record.storagePath()));
+                }
+            }
+        }
+        return applied.size();
+    }
+
+    /**
+     * Moves a journal's replay position past a record without applying it, for a record the
+     * database rejects every time.
+     *
+     * @param journal the name of the journal
+     * @param seq     the sequence number of the record
+     */
+    public void skipJournalRecord(String journal, long seq) {
+        try {
+            inTransaction(() -> {
+                try (PreparedStatement stmt = connection.prepareStatement(INIT_JOURNAL_SEQ)) {
+                    stmt.setString(1, journal);
+                    stmt.executeUpdate();
+                }
+                try (PreparedStatement stmt = connection.prepareStatement(SAVE_JOURNAL_SEQ)) {
+                    stmt.setLong(1, seq);
+                    stmt.setString(2, journal);
+                    stmt.executeUpdate();
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to skip journal record", e);
+        }
+    }
+
+    /**
+     * Applies one journal record inside the replay transaction.
+     *
+     * @param record the record
+     * @throws SQLException if a database error occurs
+     */
+    private void apply(JournalRecord record) throws SQLException {
+        switch (record.op()) {
+            case CREATE -> {
+                Timestamp time = Timestamp.valueOf(record.time() != null ? record.time() : LocalDateTime.now());
+                if (record.directory()) {
+                    try (PreparedStatement stmt = connection.prepareStatement(INSERT_DIRECTORY_WITH_ID)) {
+                        stmt.setString(1, record.name());
+                        stmt.setInt(2, record.parentId());
+                        stmt.setString(3, record.path());
+                        stmt.setInt(4, record.id());
+                        stmt.setTimestamp(5, time);
+                        stmt.setTimestamp(6, time);
+                        insertWithDigest(stmt, record.parentId(), record.name(), true, null);
+                    }
+                } else {
+                    try (PreparedStatement stmt = connection.prepareStatement(INSERT_FILE_WITH_ID)) {
+                        stmt.setString(1, record.name());
+                        stmt.setInt(2, record.parentId());
+                        stmt.setString(3, record.fileType());
+                        stmt.setLong(4, record.fileSize());
+                        stmt.setString(5, record.storagePath());
+                        stmt.setString(6, record.path());
+                        stmt.setInt(7, record.id());
+                        stmt.setTimestamp(8, time);
+                        stmt.setTimestamp(9, time);
+                        insertWithDigest(stmt, record.parentId(), record.name(), false, record.fileSize());
+                    }
+                    if (record.contentHash() != null) {
+                        updateContentHash(record.id(), HexFormat.of().parseHex(record.contentHash()));
+                    }
+                }
+                if (nameIndex != null) updateCaches(() -> nameIndex.add(record.id(), record.name(), record.directory()));
+            }
+            case DELETE -> {
+                if (record.directory()) {
+                    deleteDirectory(record.id());
+                } else {
+                    String path = getPathById(record.id());
+                    deleteItem(record.id());
+                    updateCaches(() -> {
+                        evictCachedPaths(path);
+                        if (nameIndex != null) nameIndex.remove(record.id());
+                    });
+                }
+            }
+            case RENAME -> rename(record.id(), record.name(), record.directory());
+            case MOVE -> move(record.id(), record.parentId(), record.path());
+        }
+    }
+
+    /**
+     * Returns the in-memory name index, if one was enabled.
+     *
+     * @return the {@link NameIndex}, or {@code null} when searches go to the database
+     */
+    public NameIndex getNameIndex() {
+        return nameIndex;
+    }
+
+    /**
+     * Searches names through the in-memory index with prefix, substring and fuzzy matching,
+     * most relevant first. Requires {@link #enableNameIndex(NameIndex)}.
+     *
+     * @param query the search keyword
+     * @param limit the maximum number of results
+     * @return the ranked matches
+     */
+    public List<StorageEntity> searchByRelevance(String query, int limit) {
+        if (nameIndex == null) {
+            throw new IllegalStateException("Name index is not enabled");
+        }
+        List<NameIndex.Match> matches = nameIndex.search(query, limit);
+        return getItemsByIds(matches.stream().mapToInt(NameIndex.Match::id).toArray());
+    }
+
+    /**
+     * Sets the indexer that extracts text from files after they are saved to disk.
+     *
+     * @param contentIndexer the {@link ContentIndexer}, or {@code null} to stop indexing
+     */
+    public void setContentIndexer(ContentIndexer contentIndexer) {
+        this.contentIndexer = contentIndexer;
+    }
+
+    /**
+     * Searches the extracted text of uploaded files, best matches first. The query accepts web
+     * search syntax: quoted phrases, {@code or} and {@code -excluded} words.
+     *
+     * @param query the words to look for
+     * @param limit the maximum number of results
+     * @return the ranked matches with highlighted snippets
+     */
+    public List<ContentMatch> searchContent(String query, int limit) {
+        List<ContentMatch> matches = new ArrayList<>();
+        try (PreparedStatement stmt = connection.prepareStatement(SEARCH_CONTENT)) {
+            stmt.setString(1, query);
+            stmt.setInt(2, limit);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                matches.add(new ContentMatch(mapFile(rs), rs.getDouble("rank"), rs.getString("snippet")));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to search file contents", e);
+        }
+        return matches;
+    }
+
+    /**
+     * Retrieves items by ID in one query, returned in the order of the given IDs.
+     * IDs that no longer exist are skipped.
+     *
+     * @param ids the item IDs
+     * @return the items found
+     */
+    @Override
+    public List<StorageEntity> getItemsByIds(int[] ids) {
+        if (ids.length == 0) return new ArrayList<>();
+        Map<Integer, StorageEntity> byId = new HashMap<>();
+        try (PreparedStatement stmt = connection.prepareStatement(GET_ITEMS_BY_IDS)) {
+            stmt.setArray(1, connection.createArrayOf("integer", Arrays.stream(ids).boxed().toArray()));
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                StorageEntity item = EntityRowMapper.map(rs);
+                byId.put(item.getId(), item);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to get items", e);
+        }
+        List<StorageEntity> items = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            StorageEntity item = byId.get(id);
+            if (item != null) items.add(item);
+        }
+        return items;
+    }
+
     /**
      * Retrieves the immediate children of a given parent directory.
      *
      * @param parentId the parent directory ID
      * @return a list of {@link StorageEntity} objects
      */
+    @Override
     public List<StorageEntity> getChildren(int parentId) {
         List<StorageEntity> children = new ArrayList<>();
         try (PreparedStatement stmt = connection.prepareStatement(GET_CHILDREN)) {
             stmt.setInt(1, parentId);
             ResultSet rs = stmt.executeQuery();
             while (rs.next()) {
-                if (rs.getBoolean("is_directory")) {
-                    children.add(mapDirectory(rs));
-                } else {
-                    children.add(mapFile(rs));
-                }
+                children.add(EntityRowMapper.map(rs));
             }
         } catch (SQLException e) {
             throw new RuntimeException("Failed to fetch children", e);
@@ -325,17 +983,154 @@ public class DatabaseService {
         return children;
     }
 
+    /**
+     * Retrieves the direct children of a directory with the content hashes of files and the
+     * Merkle digests of subdirectories, for comparing trees.
+     *
+     * @param parentId the ID of the parent directory
+     * @return the children, in no particular order
+     */
+    public List<StorageEntity> getChildrenWithDigests(int parentId) {
+        List<StorageEntity> children = new ArrayList<>();
+        try (PreparedStatement stmt = connection.prepareStatement(GET_CHILDREN_WITH_DIGESTS)) {
+            stmt.setInt(1, parentId);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                children.add(EntityRowMapper.mapWithDigests(rs));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to get children with digests", e);
+        }
+        return children;
+    }
+
+    /**
+     * Returns one page of a folder listing, starting after a cursor.
+     *
+     * @param parentId The ID of the folder.
+     * @param order    The sort order.
+     * @param after    The last item of the previous page, or {@code null} for the first page.
+     * @param limit    The maximum number of items in the page.
+     * @return The page in listing order; {@code hasMore} tells whether items follow it.
+     */
+    public Page<StorageEntity> listChildren(int parentId, ListingOrder order, StorageEntity after, int limit) {
+        String sql = after == null ? order.firstPageSql() : order.nextPageSql();
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            return Page.of(fetchListingPage(stmt, parentId, order, after, limit), limit);
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to list directory", e);
+        }
+    }
+
+    /**
+     * Returns the page of a folder listing that ends right before a cursor.
+     *
+     * @param parentId The ID of the folder.
+     * @param order    The sort order.
+     * @param before   The first item of the current page.
+     * @param limit    The maximum number of items in the page.
+     * @return The page in listing order; {@code hasMore} tells whether items precede it.
+     */
+    public Page<StorageEntity> listChildrenBefore(int parentId, ListingOrder order, StorageEntity before, int limit) {
+        try (PreparedStatement stmt = connection.prepareStatement(order.previousPageSql())) {
+            List<StorageEntity> rows = fetchListingPage(stmt, parentId, order, before, limit);
+            Page<StorageEntity> nearestFirst = Page.of(rows, limit);
+            List<StorageEntity> items = new ArrayList<>(nearestFirst.items());
+            Collections.reverse(items);
+            return new Page<>(List.copyOf(items), nearestFirst.hasMore());
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to list directory", e);
+        }
+    }
+
+    private List<StorageEntity> fetchListingPage(PreparedStatement stmt, int parentId, ListingOrder order,
+                                                 StorageEntity cursor, int limit) throws SQLException {
+        stmt.setInt(1, parentId);
+        int next = 2;
+        if (cursor != null) {
+            order.bindCursor(stmt, next, cursor);
+            next += 2;
+        }
+        stmt.setInt(next, limit + 1);
+        List<StorageEntity> rows = new ArrayList<>();
+        ResultSet rs = stmt.executeQuery();
+        while (rs.next()) {
+            rows.add(EntityRowMapper.map(rs));
+        }
+        return rows;
+    }
+
+    /**
+     * Streams every child of a folder in listing order without holding them all in memory.
+     * Rows are read through a server-side cursor, {@value #STREAM_FETCH_SIZE} at a time.
+     * <p>
+     * The stream keeps a transaction open on the shared connection; close it (for example
+     * with try-with-resources) as soon as it is consumed.
+     *
+     * @param parentId The ID of the folder.
+     * @param order    The sort order.
+     * @return A stream of the folder's children that must be closed.
+     */
+    public Stream<StorageEntity> streamChildren(int parentId, ListingOrder order) {
+        try {
+            boolean autoCommit = connection.getAutoCommit();
+            // PostgreSQL only honours the fetch size (cursor mode) inside a transaction
+            connection.setAutoCommit(false);
+            PreparedStatement stmt = connection.prepareStatement(order.firstPageSql());
+            ResultSet rs;
+            try {
+                stmt.setFetchSize(STREAM_FETCH_SIZE);
+                stmt.setInt(1, parentId);
+                stmt.setInt(2, Integer.MAX_VALUE);
+                rs = stmt.executeQuery();
+            } catch (SQLException e) {
+                stmt.close();
+                connection.rollback();
+                connection.setAutoCommit(autoCommit);
+                throw e;
+            }
+
+            Spliterator<StorageEntity> rows = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE,
+                    Spliterator.ORDERED | Spliterator.NONNULL) {
+                @Override
+                public boolean tryAdvance(Consumer<? super StorageEntity> action) {
+                    try {
+                        if (!rs.next()) {
+                            return false;
+                        }
+                        action.accept(EntityRowMapper.map(rs));
+                        return true;
+                    } catch (SQLException e) {
+                        throw new RuntimeException("Failed to stream directory", e);
+                    }
+                }
+            };
+            return StreamSupport.stream(rows, false).onClose(() -> {
+                try {
+                    stmt.close();
+                    connection.commit();
+                    connection.setAutoCommit(autoCommit);
+                } catch (SQLException e) {
+                    throw new RuntimeException("Failed to close directory stream", e);
+                }
+            });
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to stream directory", e);
+        }
+    }
+
     /**
      * Retrieves all directories stored in the database.
      *
      * @return a list of {@link Directory} objects
      */
+    @Override
     public List<Directory> getAllDirectories() {
         List<Directory> directories = new ArrayList<>();
         try (PreparedStatement stmt = connection.prepareStatement(GET_ALL_DIRECTORIES)) {
             ResultSet rs = stmt.executeQuery();
             while (rs.next()) {
-                directories.add(mapDirectory(rs));
+                directories.add(EntityRowMapper.mapDirectory(rs));
             }
         } catch (SQLException e) {
             throw new RuntimeException("Failed to fetch directories", e);
@@ -349,6 +1144,7 @@ public class DatabaseService {
      * @param dirId the starting directory ID
      * @return a set of all descendant directory IDs
      */
+    @Override
     public Set<Integer> getAllDescendantDirectoryIds(int dirId) {
         Set<Integer> descendants = new HashSet<>();
         Queue<Integer> queue = new LinkedList<>();
@@ -374,6 +1170,147 @@ public class DatabaseService {
         return descendants;
     }
 
+    /**
+     * Retrieves the IDs of an item and all of its descendants.
+     *
+     * @param id the ID of the subtree root
+     * @return the subtree IDs, including {@code id} itself
+     * @throws SQLException if a database error occurs
+     */
+    List<Integer> getSubtreeIds(int id) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        try (PreparedStatement stmt = connection.prepareStatement(GET_SUBTREE_IDS)) {
+            stmt.setInt(1, id);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                ids.add(rs.getInt("id"));
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Adds the entry of a new item to the digests of its ancestors, see
+     * {@link org.griddynamics.db.SqlQueries#ADD_DIGEST_ENTRY}, then runs its {@code INSERT_FILE} or
+     * {@code INSERT_DIRECTORY} statement, in one transaction.
+     *
+     * @param stmt        the prepared insert, with its parameters bound
+     * @param parentId    the ID of the parent directory
+     * @param name        the name of the new item
+     * @param isDirectory whether the new item is a directory
+     * @param size        the file size, or {@code null} for a directory
+     * @return the new ID, or {@code null} if nothing was inserted
+     * @throws SQLException if a database error occurs
+     */
+    private Integer insertWithDigest(PreparedStatement stmt, int parentId, String name, boolean isDirectory, Long size)
+            throws SQLException {
+        return inTransaction(() -> {
+            try (PreparedStatement add = connection.prepareStatement(ADD_DIGEST_ENTRY)) {
+                add.setInt(1, parentId);
+                add.setString(2, name);
+                add.setBoolean(3, isDirectory);
+                add.setObject(4, size, Types.BIGINT);
+                add.executeUpdate();
+            }
+            ResultSet rs = stmt.executeQuery();
+            return rs.next() ? rs.getInt("id") : null;
+        });
+    }
+
+    /**
+     * Deletes an item, and with a directory its whole subtree, after toggling it out of the
+     * digests of its ancestors, in one transaction.
+     *
+     * @param id the ID of the item
+     * @return {@code true} if the item existed and was deleted
+     * @throws SQLException if a database error occurs
+     */
+    private boolean deleteItem(int id) throws SQLException {
+        return inTransaction(() -> {
+            toggleDigest(id);
+            try (PreparedStatement stmt = connection.prepareStatement(DELETE_ITEM)) {
+                stmt.setInt(1, id);
+                ResultSet rs = stmt.executeQuery();
+                return rs.next() && rs.getInt("id") == id;
+            }
+        });
+    }
+
+    /**
+     * Records the content hash of a stored file and updates the digests of its ancestors, in one
+     * statement.
+     *
+     * @param fileId      the ID of the file
+     * @param contentHash the SHA-256 of its content
+     * @throws SQLException if a database error occurs
+     */
+    void updateContentHash(int fileId, byte[] contentHash) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(UPDATE_CONTENT_HASH)) {
+            stmt.setInt(1, fileId);
+            stmt.setBytes(2, contentHash);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Locks the ancestor chains of two items, see {@link org.griddynamics.db.SqlQueries#LOCK_ANCESTORS}.
+     *
+     * @param id      the ID of one item
+     * @param otherId the ID of the other item, or {@code id} again
+     * @throws SQLException if a database error occurs
+     */
+    private void lockAncestors(int id, int otherId) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(LOCK_ANCESTORS)) {
+            stmt.setInt(1, id);
+            stmt.setInt(2, otherId);
+            stmt.executeQuery();
+        }
+    }
+
+    /**
+     * Toggles an item's entry in the digests of its ancestors, see {@link org.griddynamics.db.SqlQueries#TOGGLE_DIGEST}.
+     *
+     * @param id the ID of the item
+     * @throws SQLException if a database error occurs
+     */
+    private void toggleDigest(int id) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(TOGGLE_DIGEST)) {
+            stmt.setInt(1, id);
+            stmt.executeUpdate();
+        }
+    }
+
+    /** Work run by {@link #inTransaction(SqlWork)}. */
+    @FunctionalInterface
+    private interface SqlWork<T> {
+        T run() throws SQLException;
+    }
+
+    /**
+     * Runs statements as one transaction, so a change and the digest updates around it commit
+     * together. Joins the caller's transaction if auto-commit is already off.
+     *
+     * @param work the statements
+     * @return what the work returned
+     * @throws SQLException if a database error occurs; the transaction is rolled back
+     */
+    private <T> T inTransaction(SqlWork<T> work) throws SQLException {
+        if (!connection.getAutoCommit()) {
+            return work.run();
+        }
+        connection.setAutoCommit(false);
+        try {
+            T result = work.run();
+            connection.commit();
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
     /**
      * Updates the physical and logical storage paths for a file.
      *
@@ -408,31 +1345,102 @@ public class DatabaseService {
     }
 
     /**
-     * Recursively updates paths for all descendants when a directory is renamed or moved.
+     * Rewrites the paths of all descendants when a directory is renamed or moved, in a single
+     * set-based update on the path index.
      *
      * @param oldBasePath the old base path
      * @param newBasePath the new base path
      * @throws SQLException if a database error occurs
      */
     void updateDescendantPaths(String oldBasePath, String newBasePath) throws SQLException {
-        try (PreparedStatement stmt = connection.prepareStatement(SELECT_DESCENDANTS)) {
-            stmt.setString(1, oldBasePath + "/%");
-            ResultSet rs = stmt.executeQuery();
-            while (rs.next()) {
-                int childId = rs.getInt("id");
-                String oldChildPath = rs.getString("path");
-                String newChildPath = newBasePath + oldChildPath.substring(oldBasePath.length());
-
-                try (PreparedStatement updateStmt = connection.prepareStatement(UPDATE_PATH)) {
-                    updateStmt.setString(1, newChildPath);
-                    updateStmt.setInt(2, childId);
-                    updateStmt.executeUpdate();
-                }
+        try (PreparedStatement stmt = connection.prepareStatement(UPDATE_DESCENDANT_PATHS)) {
+            stmt.setString(1, newBasePath);
+            stmt.setInt(2, oldBasePath.length() + 1);
+            stmt.setString(3, oldBasePath + "/");
+            stmt.setString(4, oldBasePath + "0");
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Escapes the LIKE wildcards in user input so they match literally.
+     *
+     * @param query the raw search text
+     * @return the text with backslash, percent and underscore escaped
+     */
+    public static String escapeLikePattern(String query) {
+        return query.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    /**
+     * Turns user input into a normalized logical path. Input starting with '/' is absolute
+     * ("/root/a/b"); anything else is relative to the base path. "." and ".." segments and
+     * repeated slashes are resolved.
+     *
+     * @param basePath the logical path of the current directory
+     * @param input    the absolute or relative path typed by the user
+     * @return the normalized path without leading or trailing slashes, or {@code null} if it
+     *         leaves the root or is empty
+     */
+    public static String normalizePath(String basePath, String input) {
+        String trimmed = input.strip();
+        Deque<String> segments = new ArrayDeque<>();
+        if (!trimmed.startsWith("/") && basePath != null) {
+            for (String segment : basePath.split("/")) {
+                if (!segment.isEmpty()) segments.addLast(segment);
             }
         }
+        for (String segment : trimmed.split("/")) {
+            if (segment.isEmpty() || segment.equals(".")) continue;
+            if (segment.equals("..")) {
+                if (segments.size() <= 1) return null;
+                segments.removeLast();
+            } else {
+                segments.addLast(segment);
+            }
+        }
+        return segments.isEmpty() ? null : String.join("/", segments);
     }
+
     /**
-     * Maps a {@link ResultSet} row to a {@link Directory} object.
+     * Tells whether a failure was caused by another item already using the path, i.e. a
+     * unique violation (SQL state 23505) on the path index.
+     *
+     * @param e the failure, usually a {@link RuntimeException} wrapping an {@link SQLException}
+     * @return {@code true} if the path was taken
+     */
+    public static boolean isPathTaken(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException sql && "23505".equals(sql.getSQLState())) return true;
+        }
+        return false;
+    }
+
+    private void evictCachedPaths(String path) {
+        if (pathCache != null && path != null) pathCache.invalidate(path);
+    }
+
+    /** Applies a name index or path cache change now, or once the journal replay commits. */
+    private void updateCaches(Runnable update) {
+        if (cacheUpdates != null) {
+            cacheUpdates.add(update);
+        } else {
+            update.run();
+        }
+    }
+
+    /**
+     * Binds the first two parameters to the path prefix range of everything below a directory;
+     * '0' is the character right after '/'.
+     */
+    private static void bindSubtree(PreparedStatement stmt, String path) throws SQLException {
+        stmt.setString(1, path + "/");
+        stmt.setString(2, path + "0");
+    }
+
+    /**
+     * Maps a {@link ResultSet} row to a {@link Directory} object by column name.
+     * Used for single-row lookups; multi-row queries go through {@link EntityRowMapper}.
      *
      * @param rs the result set positioned at a directory row
      * @return the {@link Directory}
@@ -446,12 +1454,17 @@ public class DatabaseService {
         dir.setParentId(rs.getInt("parent_id"));
         dir.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
         dir.setUpdatedAt(rs.getTimestamp("updated_at").toLocalDateTime());
+        dir.setChildCount(rs.getInt("child_count"));
+        dir.setFileCount(rs.getLong("file_count"));
+        dir.setTotalBytes(rs.getLong("total_bytes"));
+        dir.setDigest(EntityRowMapper.digestHex(rs.getString("digest")));
         return dir;
     }
 
 
     /**
-     * Maps a {@link ResultSet} row to a {@link File} object.
+     * Maps a {@link ResultSet} row to a {@link File} object by column name.
+     * Used for single-row lookups; multi-row queries go through {@link EntityRowMapper}.
      *
      * @param rs the result set positioned at a file row
      * @return the {@link File}
@@ -467,7 +1480,19 @@ public class DatabaseService {
         file.setPath(rs.getString("path"));
         file.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
         file.setUpdatedAt(rs.getTimestamp("updated_at").toLocalDateTime());
+        file.setContentHash(EntityRowMapper.hashHex(rs.getBytes("content_hash")));
         return file;
     }
 
+    /** Binds a {@link FindQuery} parameter, converting times and name lists to their JDBC types. */
+    private void bind(PreparedStatement stmt, int index, Object value) throws SQLException {
+        if (value instanceof LocalDateTime time) {
+            stmt.setTimestamp(index, Timestamp.valueOf(time));
+        } else if (value instanceof String[] values) {
+            stmt.setArray(index, connection.createArrayOf("varchar", values));
+        } else {
+            stmt.setObject(index, value);
+        }
+    }
+
 }
@@ -0,0 +1,245 @@
+package org.griddynamics.service;
+
+import org.griddynamics.domain.DuplicateGroup;
+import org.griddynamics.domain.File;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Finds stored files with identical content in three stages, each run only on the
+ * candidates that survived the previous one:
+ * <ol>
+ *     <li>group by file size, straight from metadata;</li>
+ *     <li>group by a hash of the first and last {@value #SAMPLE_BYTES} bytes of each blob;</li>
+ *     <li>group by the SHA-256 of the full content, hashed in parallel.</li>
+ * </ol>
+ * Files no larger than two samples are fully read in stage 2, so their sample hash is already
+ * the content hash and they skip stage 3.
+ */
+public class DuplicateFinder {
+
+    /** Bytes read from each end of a blob for the sample hash. */
+    static final int SAMPLE_BYTES = 64 * 1024;
+
+    private static final int READ_BUFFER_BYTES = 1024 * 1024;
+
+    private static final Logger log = LoggerFactory.getLogger(DuplicateFinder.class);
+
+    private final DatabaseService dbService;
+    private final StorageService storageService;
+    private final int threads;
+
+    /**
+     * The outcome of a duplicate search.
+     *
+     * @param groups     The duplicate groups, most reclaimable bytes first.
+     * @param candidates The number of files sharing a size with another file.
+     * @param bytesRead  The number of blob bytes read while hashing.
+     */
+    public record Result(List<DuplicateGroup> groups, int candidates, long bytesRead) {
+
+        /**
+         * Returns the bytes freed by keeping one copy of every group.
+         *
+         * @return The total reclaimable size in bytes.
+         */
+        public long reclaimableBytes() {
+            return groups.stream().mapToLong(DuplicateGroup::reclaimableBytes).sum();
+        }
+    }
+
+    /**
+     * Creates a finder.
+     *
+     * @param dbService      The metadata source.
+     * @param storageService The blob store.
+     * @param threads        The number of threads hashing blobs.
+     */
+    public DuplicateFinder(DatabaseService dbService, StorageService storageService, int threads) {
+        this.dbService = dbService;
+        this.storageService = storageService;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Runs all three stages over the whole drive.
+     *
+     * @return The duplicate groups and the amount of work done.
+     */
+    public Result find() {
+        List<File> candidates = dbService.getDuplicateSizeCandidates();
+        List<List<File>> sizeGroups = groupBy(candidates, File::getFileSize);
+        AtomicLong bytesRead = new AtomicLong();
+        List<DuplicateGroup> groups = new ArrayList<>();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<File> sampledFiles = sizeGroups.stream().flatMap(List::stream).toList();
+            Map<File, String> sampleHashes = hashAll(pool, sampledFiles, file -> sampleHash(file, bytesRead));
+
+            List<List<File>> needFullHash = new ArrayList<>();
+            for (List<File> sizeGroup : sizeGroups) {
+                for (List<File> sampleGroup : groupBy(present(sizeGroup, sampleHashes), sampleHashes::get)) {
+                    if (sampleGroup.get(0).getFileSize() <= 2L * SAMPLE_BYTES) {
+                        File first = sampleGroup.get(0);
+                        groups.add(new DuplicateGroup(first.getFileSize(), sampleHashes.get(first), sampleGroup));
+                    } else {
+                        needFullHash.add(sampleGroup);
+                    }
+                }
+            }
+
+            List<File> fullFiles = needFullHash.stream().flatMap(List::stream).toList();
+            Map<File, String> fullHashes = hashAll(pool, fullFiles, file -> fullHash(file, bytesRead));
+            for (List<File> sampleGroup : needFullHash) {
+                for (List<File> contentGroup : groupBy(present(sampleGroup, fullHashes), fullHashes::get)) {
+                    File first = contentGroup.get(0);
+                    groups.add(new DuplicateGroup(first.getFileSize(), fullHashes.get(first), contentGroup));
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        groups.sort(Comparator.comparingLong(DuplicateGroup::reclaimableBytes).reversed()
+                .thenComparing(g -> g.files().get(0).getId()));
+        return new Result(groups, candidates.size(), bytesRead.get());
+    }
+
+    /**
+     * Splits files into groups of at least two sharing the same key, keeping input order.
+     */
+    private static <K> List<List<File>> groupBy(List<File> files, Function<File, K> key) {
+        Map<K, List<File>> byKey = new LinkedHashMap<>();
+        for (File file : files) {
+            byKey.computeIfAbsent(key.apply(file), k -> new ArrayList<>()).add(file);
+        }
+        return byKey.values().stream().filter(group -> group.size() > 1).toList();
+    }
+
+    /** Returns the files of a group that could be hashed. */
+    private static List<File> present(List<File> files, Map<File, String> hashes) {
+        return files.stream().filter(hashes::containsKey).toList();
+    }
+
+    private interface Hasher {
+        String hash(File file) throws IOException;
+    }
+
+    /**
+     * Hashes files on the pool. Files whose blob is missing or unreadable are logged and left out.
+     */
+    private Map<File, String> hashAll(ExecutorService pool, List<File> files, Hasher hasher) {
+        List<Future<String>> futures = new ArrayList<>(files.size());
+        for (File file : files) {
+            futures.add(pool.submit(() -> hasher.hash(file)));
+        }
+        Map<File, String> hashes = new LinkedHashMap<>();
+        for (int i = 0; i < files.size(); i++) {
+            File file = files.get(i);
+            try {
+                hashes.put(file, futures.get(i).get());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof NoSuchFileException) {
+                    log.warn("Stored blob of file {} is missing; skipping it", file.getId());
+                } else {
+                    log.warn("Could not hash file {}; skipping it", file.getId(), e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while hashing files", e);
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * Hashes the first and last {@link #SAMPLE_BYTES} of a blob, or all of it when it is smaller
+     * than two samples. The size is mixed in so blobs that changed on disk do not collide.
+     */
+    String sampleHash(File file, AtomicLong bytesRead) throws IOException {
+        MessageDigest digest = sha256();
+        try (FileChannel channel = open(file)) {
+            long size = channel.size();
+            ByteBuffer buffer = ByteBuffer.allocate(SAMPLE_BYTES);
+            if (size <= 2L * SAMPLE_BYTES) {
+                bytesRead.addAndGet(readAll(channel, digest));
+            } else {
+                bytesRead.addAndGet(readAt(channel, 0, buffer, digest));
+                bytesRead.addAndGet(readAt(channel, size - SAMPLE_BYTES, buffer, digest));
+                digest.update(ByteBuffer.allocate(Long.BYTES).putLong(0, size));
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /** Hashes the full content of a blob with SHA-256. */
+    String fullHash(File file, AtomicLong bytesRead) throws IOException {
+        MessageDigest digest = sha256();
+        try (FileChannel channel = open(file)) {
+            bytesRead.addAndGet(readAll(channel, digest));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private FileChannel open(File file) throws IOException {
+        Path blob = storageService.resolveBlob(file.getId(), file.getFileType());
+        return FileChannel.open(blob, StandardOpenOption.READ);
+    }
+
+    private static long readAt(FileChannel channel, long position, ByteBuffer buffer, MessageDigest digest)
+            throws IOException {
+        buffer.clear();
+        long total = 0;
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + total);
+            if (n < 0) break;
+            total += n;
+        }
+        buffer.flip();
+        digest.update(buffer);
+        return total;
+    }
+
+    private static long readAll(FileChannel channel, MessageDigest digest) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+        long total = 0;
+        int n;
+        while ((n = channel.read(buffer)) >= 0) {
+            buffer.flip();
+            digest.update(buffer);
+            buffer.clear();
+            total += n;
+        }
+        return total;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
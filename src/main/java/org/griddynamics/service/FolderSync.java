@@ -0,0 +1,507 @@
+package org.griddynamics.service;
+
+import org.griddynamics.domain.Directory;
+import org.griddynamics.domain.File;
+import org.griddynamics.domain.StorageEntity;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Two-way sync between a local folder and a drive folder.
+ * <p>
+ * Every file is compared three ways: its local size and modification time, its drive metadata,
+ * and its entry in the {@link SyncState} saved by the previous sync. Only a side that differs from
+ * the saved state has changed, so unchanged files cost a stat and a map lookup and are never read.
+ * <ul>
+ *     <li>changed on one side: copied to the other side, or deleted there if it was deleted;</li>
+ *     <li>changed on both sides: reported as a conflict and left alone;</li>
+ *     <li>present on both sides at the first sync: adopted if the sizes match (and, with hashing,
+ *     the contents), otherwise a conflict.</li>
+ * </ul>
+ * With hashing on, a local file whose modification time changed but whose content did not is
+ * recognised by its SHA-256 and not uploaded again.
+ * <p>
+ * The drive folder is read by its Merkle digests (see {@link Directory#getDigest()}): a folder
+ * whose digest is the one the state recorded after the last sync still holds the files the state
+ * describes, so it is not listed, and the drive side costs queries in proportion to the folders
+ * changed since. The local folder has no such summary, since a folder's modification time does
+ * not change when a file in it is rewritten, so every sync still stats every local file.
+ * <p>
+ * {@link #watch(Consumer)} keeps syncing as local files change, checking only the paths the
+ * file system reported instead of rescanning both trees.
+ */
+public class FolderSync {
+
+    /** Suffix of partially downloaded files; they are renamed into place when complete. */
+    static final String PART_SUFFIX = ".drive-sync-part";
+
+    /** How long the local folder must be quiet before watched changes are synced. */
+    private static final long WATCH_QUIET_MILLIS = 500;
+
+    private final DatabaseService dbService;
+    private final StorageService storageService;
+    private final Path localRoot;
+    private final String driveRoot;
+    private final boolean hash;
+    private final Map<String, Integer> remoteDirectories = new HashMap<>();
+
+    /**
+     * The outcome of one sync.
+     *
+     * @param uploaded      Files copied to the drive.
+     * @param downloaded    Files copied to the local folder.
+     * @param deletedLocal  Local files deleted because they were deleted on the drive.
+     * @param deletedRemote Drive files deleted because they were deleted locally.
+     * @param unchanged     Files already in sync.
+     * @param conflicts     One "path: reason" line per file left alone because both sides changed.
+     * @param failures      One "path: reason" line per file that could not be synced.
+     * @param elapsedNanos  The wall-clock time of the sync.
+     */
+    public record Report(int uploaded, int downloaded, int deletedLocal, int deletedRemote, int unchanged,
+                         List<String> conflicts, List<String> failures, long elapsedNanos) {
+
+        /**
+         * Formats the counts on one line.
+         *
+         * @return The summary.
+         */
+        public String summary() {
+            return String.format("%d uploaded, %d downloaded, %d deleted locally, %d deleted from drive, "
+                            + "%d unchanged, %d conflicts, %d failed in %.1f s",
+                    uploaded, downloaded, deletedLocal, deletedRemote, unchanged,
+                    conflicts.size(), failures.size(), elapsedNanos / 1e9);
+        }
+    }
+
+    private record LocalFile(long size, long modified) {
+    }
+
+    private static final class Tally {
+        int uploaded;
+        int downloaded;
+        int deletedLocal;
+        int deletedRemote;
+        int unchanged;
+        final List<String> conflicts = new ArrayList<>();
+        final List<String> failures = new ArrayList<>();
+
+        Report report(long started) {
+            return new Report(uploaded, downloaded, deletedLocal, deletedRemote, unchanged,
+                    conflicts, failures, System.nanoTime() - started);
+        }
+    }
+
+    /**
+     * Creates a sync between two folders.
+     *
+     * @param dbService      The drive metadata.
+     * @param storageService The drive blob store.
+     * @param localRoot      The local folder.
+     * @param driveRoot      The logical path of the drive folder.
+     * @param hash           Whether to compare content hashes when sizes match but times differ.
+     */
+    public FolderSync(DatabaseService dbService, StorageService storageService,
+                      Path localRoot, String driveRoot, boolean hash) {
+        this.dbService = dbService;
+        this.storageService = storageService;
+        this.localRoot = localRoot;
+        this.driveRoot = driveRoot;
+        this.hash = hash;
+    }
+
+    /**
+     * Syncs the whole folders: the local tree and the drive folders changed since the last sync
+     * are listed, and every file is reconciled.
+     *
+     * @return What was done.
+     * @throws IOException If the local folder or the sync state cannot be read or written.
+     */
+    public Report sync() throws IOException {
+        long started = System.nanoTime();
+        Directory root = checkRoots();
+        SyncState state = SyncState.load(localRoot);
+        Map<String, LocalFile> local = scanLocal(localRoot);
+        Map<String, File> remote = new HashMap<>();
+        Set<String> unchangedFolders = new HashSet<>();
+        scanRemote(root, "", state, remote, unchangedFolders);
+        Set<String> paths = new TreeSet<>(local.keySet());
+        paths.addAll(remote.keySet());
+        paths.addAll(state.paths());
+        Tally tally = new Tally();
+        for (String path : paths) {
+            LocalFile localFile = local.get(path);
+            File remoteFile = remote.get(path);
+            if (remoteFile == null && inFolder(path, unchangedFolders)) {
+                // The drive copy is the one the entry describes; it is only looked up if there is work
+                SyncState.Entry last = state.get(path);
+                if (last != null && localFile != null
+                        && localFile.size() == last.size() && localFile.modified() == last.localModified()) {
+                    tally.unchanged++;
+                    continue;
+                }
+                remoteFile = dbService.resolvePath(driveRoot + "/" + path) instanceof File found ? found : null;
+            }
+            reconcile(path, localFile, remoteFile, state, tally);
+        }
+        if (dbService.resolvePath(driveRoot) instanceof Directory synced) {
+            recordDigests(synced, "", state);
+        }
+        state.save(localRoot);
+        return tally.report(started);
+    }
+
+    /**
+     * Syncs once, then keeps watching the local folder and syncs the files that change until
+     * the thread is interrupted.
+     *
+     * @param onSync Receives the report of every sync.
+     * @throws IOException          If the folder cannot be watched or synced.
+     * @throws InterruptedException When the thread is interrupted.
+     */
+    public void watch(Consumer<Report> onSync) throws IOException, InterruptedException {
+        onSync.accept(sync());
+        SyncState state = SyncState.load(localRoot);
+        try (WatchService watcher = localRoot.getFileSystem().newWatchService()) {
+            Map<WatchKey, Path> keys = new HashMap<>();
+            register(localRoot, watcher, keys);
+            while (true) {
+                WatchKey key = watcher.take();
+                Set<String> changed = new TreeSet<>();
+                boolean overflow = false;
+                // Collect events until the folder has been quiet for a moment, so a burst of writes syncs once
+                while (key != null) {
+                    Path dir = keys.get(key);
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW || dir == null) {
+                            overflow = true;
+                            continue;
+                        }
+                        Path child = dir.resolve((Path) event.context());
+                        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                                && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                            register(child, watcher, keys);
+                            changed.addAll(scanLocal(child).keySet().stream().map(p -> relative(child.resolve(p))).toList());
+                        }
+                        changed.add(relative(child));
+                    }
+                    if (!key.reset()) {
+                        keys.remove(key);
+                    }
+                    key = watcher.poll(WATCH_QUIET_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                if (overflow) {
+                    onSync.accept(sync());
+                    state = SyncState.load(localRoot);
+                } else {
+                    changed.removeIf(FolderSync::isSyncFile);
+                    if (!changed.isEmpty()) {
+                        onSync.accept(syncPaths(changed, state));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reconciles only the given paths, looking each one up on both sides. A path that names a
+     * folder stands for every file recorded below it, which covers folders deleted or renamed
+     * away locally.
+     */
+    Report syncPaths(Collection<String> changed, SyncState state) throws IOException {
+        long started = System.nanoTime();
+        Set<String> paths = new TreeSet<>();
+        for (String path : changed) {
+            paths.add(path);
+            paths.addAll(state.pathsUnder(path));
+        }
+        Tally tally = new Tally();
+        for (String path : paths) {
+            Path file = localRoot.resolve(path);
+            if (Files.isDirectory(file, LinkOption.NOFOLLOW_LINKS)) continue;
+            LocalFile local = null;
+            if (Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)) {
+                local = new LocalFile(Files.size(file), Files.getLastModifiedTime(file).toMillis());
+            }
+            File remote = dbService.resolvePath(driveRoot + "/" + path) instanceof File found ? found : null;
+            reconcile(path, local, remote, state, tally);
+        }
+        state.save(localRoot);
+        return tally.report(started);
+    }
+
+    private void reconcile(String path, LocalFile local, File remote, SyncState state, Tally tally) {
+        SyncState.Entry last = state.get(path);
+        try {
+            if (local == null && remote == null) {
+                state.remove(path);
+                return;
+            }
+            boolean localChanged = last == null || local == null
+                    || local.size() != last.size() || local.modified() != last.localModified();
+            boolean remoteChanged = last == null || remote == null || !matches(last, remote);
+
+            if (local != null && remote != null) {
+                if (last != null && !localChanged && !remoteChanged) {
+                    tally.unchanged++;
+                } else if (last != null && !remoteChanged) {
+                    if (hash && last.sha256() != null && local.size() == last.size()
+                            && last.sha256().equals(sha256(localRoot.resolve(path)))) {
+                        state.put(path, new SyncState.Entry(last.fileId(), last.size(), local.modified(),
+                                last.remoteUpdated(), last.sha256()));
+                        tally.unchanged++;
+                    } else {
+                        upload(path, local, remote, state);
+                        tally.uploaded++;
+                    }
+                } else if (last != null && !localChanged) {
+                    download(path, remote, state);
+                    tally.downloaded++;
+                } else if (local.size() == remote.getFileSize() && (!hash || sameContent(path, remote))) {
+                    state.put(path, new SyncState.Entry(remote.getId(), local.size(), local.modified(),
+                            String.valueOf(remote.getUpdatedAt()), hash ? sha256(localRoot.resolve(path)) : null));
+                    tally.unchanged++;
+                } else {
+                    tally.conflicts.add(path + ": " + (last == null
+                            ? "differs from the drive copy" : "changed locally and on the drive"));
+                }
+            } else if (local != null) {
+                if (last != null && !localChanged) {
+                    Files.deleteIfExists(localRoot.resolve(path));
+                    state.remove(path);
+                    tally.deletedLocal++;
+                } else {
+                    upload(path, local, null, state);
+                    tally.uploaded++;
+                }
+            } else {
+                if (last != null && !remoteChanged) {
+                    dbService.deleteFile(remote, storageService);
+                    state.remove(path);
+                    tally.deletedRemote++;
+                } else {
+                    download(path, remote, state);
+                    tally.downloaded++;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            tally.failures.add(path + ": " + e.getMessage());
+        }
+    }
+
+    private void upload(String path, LocalFile local, File replaced, SyncState state) throws IOException {
+        int slash = path.lastIndexOf('/');
+        String name = path.substring(slash + 1);
+        int parentId = remoteDirectory(slash < 0 ? "" : path.substring(0, slash));
+        if (replaced != null) {
+            dbService.deleteFile(replaced, storageService);
+        }
+        File file = new File();
+        file.setName(name);
+        file.setParentId(parentId);
+        file.setFileType(File.extensionOf(name));
+        file.setFileSize(local.size());
+        file.setPath(driveRoot + "/" + path);
+        Path source = localRoot.resolve(path);
+        try (FileInputStream in = new FileInputStream(source.toFile())) {
+            dbService.saveFile(file, in, storageService);
+        }
+        File saved = dbService.getFile(file.getId());
+        state.put(path, new SyncState.Entry(file.getId(), local.size(), local.modified(),
+                String.valueOf(saved != null ? saved.getUpdatedAt() : null), hash ? sha256(source) : null));
+    }
+
+    private void download(String path, File remote, SyncState state) throws IOException {
+        Path target = localRoot.resolve(path);
+        Files.createDirectories(target.getParent());
+        Path part = target.resolveSibling(target.getFileName() + PART_SUFFIX);
+        Files.deleteIfExists(part);
+        storageService.copyBlob(remote, part);
+        Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        state.put(path, new SyncState.Entry(remote.getId(), remote.getFileSize(),
+                Files.getLastModifiedTime(target).toMillis(), String.valueOf(remote.getUpdatedAt()),
+                hash ? sha256(target) : null));
+    }
+
+    private boolean sameContent(String path, File remote) throws IOException {
+        return sha256(localRoot.resolve(path))
+                .equals(sha256(storageService.resolveBlob(remote.getId(), remote.getFileType())));
+    }
+
+    /** Returns the ID of a drive folder below the synced one, creating missing folders. */
+    private int remoteDirectory(String relative) {
+        Integer id = remoteDirectories.get(relative);
+        if (id != null) return id;
+        String path = relative.isEmpty() ? driveRoot : driveRoot + "/" + relative;
+        id = dbService.resolveDirectoryId(path);
+        if (id == null) {
+            int slash = relative.lastIndexOf('/');
+            Directory dir = new Directory();
+            dir.setName(relative.substring(slash + 1));
+            dir.setParentId(remoteDirectory(slash < 0 ? "" : relative.substring(0, slash)));
+            dir.setPath(path);
+            dbService.saveDirectory(dir);
+            id = dir.getId();
+        }
+        remoteDirectories.put(relative, id);
+        return id;
+    }
+
+    private Directory checkRoots() throws IOException {
+        if (!Files.isDirectory(localRoot)) {
+            throw new IOException("Not a local folder: " + localRoot);
+        }
+        if (!(dbService.resolvePath(driveRoot) instanceof Directory root)) {
+            throw new IOException("Not a drive folder: " + driveRoot);
+        }
+        return root;
+    }
+
+    /**
+     * Lists the files below a drive folder by relative path, skipping the folders whose digest is
+     * the one recorded in the state; those are added to {@code unchanged} instead.
+     */
+    private void scanRemote(Directory folder, String relative, SyncState state,
+                            Map<String, File> files, Set<String> unchanged) {
+        if (folder.getDigest() != null && folder.getDigest().equals(state.getDigest(relative))) {
+            unchanged.add(relative);
+            return;
+        }
+        for (StorageEntity child : dbService.getChildrenWithDigests(folder.getId())) {
+            String path = relative.isEmpty() ? child.getName() : relative + "/" + child.getName();
+            if (child instanceof Directory dir) {
+                scanRemote(dir, path, state, files, unchanged);
+            } else {
+                files.put(path, (File) child);
+            }
+        }
+    }
+
+    /**
+     * Records the digest of every drive folder whose files all match their entries after the sync,
+     * and forgets it for the others, so the next sync lists only folders changed since or left
+     * with work to do. A folder is listed here only if its digest changed; the file count, read
+     * with the digest, catches entries whose drive file is gone.
+     *
+     * @return Whether the folder matched its entries.
+     */
+    private boolean recordDigests(Directory folder, String relative, SyncState state) {
+        String digest = folder.getDigest();
+        if (digest != null && digest.equals(state.getDigest(relative))) return true;
+        boolean matched = digest != null && folder.getFileCount() == state.pathsUnder(relative).size();
+        Set<String> subfolders = new HashSet<>();
+        for (StorageEntity child : dbService.getChildrenWithDigests(folder.getId())) {
+            String path = relative.isEmpty() ? child.getName() : relative + "/" + child.getName();
+            if (child instanceof Directory dir) {
+                subfolders.add(child.getName());
+                matched &= recordDigests(dir, path, state);
+            } else {
+                SyncState.Entry entry = state.get(path);
+                matched &= entry != null && matches(entry, (File) child);
+            }
+        }
+        int prefix = relative.isEmpty() ? 0 : relative.length() + 1;
+        for (String saved : List.copyOf(state.foldersUnder(relative))) {
+            int slash = saved.indexOf('/', prefix);
+            if (!subfolders.contains(slash < 0 ? saved.substring(prefix) : saved.substring(prefix, slash))) {
+                state.removeDigest(saved);
+            }
+        }
+        if (matched) {
+            state.putDigest(relative, digest);
+        } else {
+            state.removeDigest(relative);
+        }
+        return matched;
+    }
+
+    /** Whether a drive file is still the one an entry was recorded for. */
+    private static boolean matches(SyncState.Entry entry, File remote) {
+        return remote.getId() == entry.fileId() && remote.getFileSize() == entry.size()
+                && String.valueOf(remote.getUpdatedAt()).equals(entry.remoteUpdated());
+    }
+
+    /** Whether a relative path lies below one of the given folders, "" being the synced folder. */
+    private static boolean inFolder(String path, Set<String> folders) {
+        if (folders.contains("")) return true;
+        for (int slash = path.indexOf('/'); slash >= 0; slash = path.indexOf('/', slash + 1)) {
+            if (folders.contains(path.substring(0, slash))) return true;
+        }
+        return false;
+    }
+
+    /** Lists the regular files below a local folder by path relative to it. */
+    private static Map<String, LocalFile> scanLocal(Path dir) throws IOException {
+        Map<String, LocalFile> files = new HashMap<>();
+        Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                String relative = dir.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+                if (attrs.isRegularFile() && !isSyncFile(relative)) {
+                    files.put(relative, new LocalFile(attrs.size(), attrs.lastModifiedTime().toMillis()));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return files;
+    }
+
+    private static void register(Path dir, WatchService watcher, Map<WatchKey, Path> keys) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path subdir, BasicFileAttributes attrs) throws IOException {
+                keys.put(subdir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY), subdir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private String relative(Path path) {
+        return localRoot.relativize(path).toString().replace(path.getFileSystem().getSeparator(), "/");
+    }
+
+    private static boolean isSyncFile(String relative) {
+        return relative.equals(SyncState.FILE_NAME) || relative.equals(SyncState.FILE_NAME + ".tmp")
+                || relative.equals(SyncState.LOG_NAME) || relative.endsWith(PART_SUFFIX);
+    }
+
+    private static String sha256(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,546 @@
+package org.griddynamics.service;
+
+import org.griddynamics.db.EntityRowMapper;
+import org.griddynamics.domain.Directory;
+import org.griddynamics.domain.File;
+import org.griddynamics.domain.Page;
+import org.griddynamics.domain.StorageEntity;
+import org.griddynamics.search.IntList;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Metadata repository kept in the JVM, with the semantics of the {@code storage_entities} table.
+ * <p>
+ * Items live in an array indexed by ID, as IDs are handed out in sequence like the table's
+ * {@code SERIAL} column. Three indexes sit next to it: the child IDs of every directory, kept in
+ * {@link IntList}s so they box nothing, the unique logical paths, and every item in search order
+ * (directories first, then by name and ID) for name search and its keyset pages. Names compare by
+ * code point, which is the byte order of their UTF-8 form and so the {@code "C"} collation the
+ * search and listing queries sort by. Deleting a directory removes its subtree, renames and
+ * moves rewrite the paths below the item, and the directory rollups are kept as the SQL keeps
+ * them. Merkle digests are not kept. A read-write lock lets lookups run in parallel; changes
+ * take it exclusively, so every index moves at once. Violations fail with the SQL state
+ * PostgreSQL would report: 23505 for a taken path, 23503 for a missing parent.
+ */
+public class InMemoryMetadataRepository implements MetadataRepository {
+
+    /** The order of the search queries: directories first, then by name and ID. */
+    private static final Comparator<Node> SEARCH_ORDER = Comparator.comparing((Node node) -> !node.directory)
+            .thenComparing(node -> node.name, InMemoryMetadataRepository::compareNames)
+            .thenComparingInt(node -> node.id);
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Node[] nodes = new Node[1024];
+    private int nextId = 1;
+    private final Map<String, Node> byPath = new HashMap<>();
+    private final NavigableSet<Node> byName = new TreeSet<>(SEARCH_ORDER);
+
+    /** One row: a directory, with its children and rollups, or a file. */
+    private static final class Node {
+        final int id;
+        final boolean directory;
+        int parentId;
+        String name;
+        String path;
+        String fileType;
+        long fileSize;
+        String contentHash;
+        LocalDateTime createdAt;
+        LocalDateTime updatedAt;
+        /** The IDs of the children of a directory; {@code null} for a file. */
+        final IntList children;
+        int childCount;
+        long fileCount;
+        long totalBytes;
+
+        Node(int id, boolean directory, int parentId, String name, String path) {
+            this.id = id;
+            this.directory = directory;
+            this.parentId = parentId;
+            this.name = name;
+            this.path = path;
+            this.createdAt = LocalDateTime.now();
+            this.updatedAt = createdAt;
+            this.children = directory ? new IntList() : null;
+        }
+
+        /** Files below the item: its own rollup for a directory, itself for a file. */
+        long files() {
+            return directory ? fileCount : 1;
+        }
+
+        long bytes() {
+            return directory ? totalBytes : fileSize;
+        }
+
+        StorageEntity copy() {
+            if (directory) {
+                Directory dir = new Directory();
+                fill(dir);
+                dir.setChildCount(childCount);
+                dir.setFileCount(fileCount);
+                dir.setTotalBytes(totalBytes);
+                return dir;
+            }
+            File file = new File();
+            fill(file);
+            file.setFileType(fileType);
+            file.setFileSize(fileSize);
+            file.setContentHash(contentHash);
+            return file;
+        }
+
+        private void fill(StorageEntity entity) {
+            entity.setId(id);
+            entity.setName(name);
+            entity.setParentId(parentId);
+            entity.setPath(path);
+            entity.setCreatedAt(createdAt);
+            entity.setUpdatedAt(updatedAt);
+        }
+    }
+
+    @Override
+    public Directory getRootDirectory() {
+        Node root = read(() -> byPath.get("root"));
+        if (root != null) return (Directory) read(root::copy);
+        return (Directory) write(() -> {
+            Node existing = byPath.get("root");
+            return (existing != null ? existing : add(new Node(nextId++, true, 0, "root", "root"))).copy();
+        });
+    }
+
+    @Override
+    public Directory getDirectory(int directoryId) {
+        return read(() -> node(directoryId, true) instanceof Node node ? (Directory) node.copy() : null);
+    }
+
+    @Override
+    public File getFile(int fileId) {
+        return read(() -> node(fileId, false) instanceof Node node ? (File) node.copy() : null);
+    }
+
+    @Override
+    public void saveDirectory(Directory directory) {
+        try {
+            Node node = write(() -> insert(new Node(nextId, true, directory.getParentId(), directory.getName(),
+                    directory.getPath())));
+            directory.setId(node.id);
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Failed to save directory", e);
+        }
+    }
+
+    @Override
+    public void saveFile(File file, InputStream fileStream, StorageService storageService) {
+        try {
+            Node node = write(() -> {
+                Node parent = node(file.getParentId(), true);
+                if (parent == null) {
+                    throw new RuntimeException("Parent directory not found");
+                }
+                Node added = new Node(nextId, false, parent.id, file.getName(), parent.path + "/" + file.getName());
+                added.fileType = file.getFileType();
+                added.fileSize = file.getFileSize();
+                return insert(added);
+            });
+            file.setId(node.id);
+            file.setPath(node.path);
+            // The blob is written outside the lock, like the upload outside the insert's transaction;
+            // an item whose blob could not be written is taken out again
+            byte[] contentHash;
+            try {
+                contentHash = storageService.saveFileToDisk(node.id, fileStream, file.getFileType());
+            } catch (Exception e) {
+                write(() -> remove(node.id));
+                throw e;
+            }
+            if (contentHash != null) {
+                String hash = EntityRowMapper.hashHex(contentHash);
+                write(() -> node.contentHash = hash);
+                file.setContentHash(hash);
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to save file", e);
+        }
+    }
+
+    @Override
+    public void deleteFile(File file, StorageService storageService) {
+        try {
+            write(() -> remove(file.getId()));
+            String storageFilePath = storageService.getStorageFolder() + "/" + file.getId() + "." + file.getFileType();
+            Files.deleteIfExists(Paths.get(storageFilePath));
+            storageService.deleteFileFromDisk(file.getId(), file.getFileType());
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to delete file", e);
+        }
+    }
+
+    @Override
+    public void deleteDirectory(int directoryId) {
+        write(() -> remove(directoryId));
+    }
+
+    @Override
+    public void rename(int id, String newName, boolean isDirectory) {
+        try {
+            write(() -> {
+                Node node = node(id, isDirectory);
+                if (node == null) return null;
+                Node parent = node.parentId > 0 ? nodes[node.parentId] : null;
+                String newPath = (parent != null ? parent.path : "") + "/" + newName;
+                checkPathFree(newPath, node);
+                byName.remove(node);
+                node.name = newName;
+                byName.add(node);
+                node.updatedAt = LocalDateTime.now();
+                repath(node, newPath);
+                return null;
+            });
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Failed to rename item", e);
+        }
+    }
+
+    @Override
+    public void move(int id, int newParentId, String newPath) {
+        try {
+            write(() -> {
+                Node node = id > 0 && id < nodes.length ? nodes[id] : null;
+                if (node == null) return null;
+                Node newParent = parentFor(newParentId);
+                checkPathFree(newPath, node);
+                Node oldParent = node.parentId > 0 ? nodes[node.parentId] : null;
+                if (oldParent != null) {
+                    oldParent.children.removeValue(node.id);
+                    oldParent.childCount--;
+                    addToAncestors(oldParent, -node.files(), -node.bytes());
+                }
+                newParent.children.add(node.id);
+                newParent.childCount++;
+                addToAncestors(newParent, node.files(), node.bytes());
+                node.parentId = newParentId;
+                node.updatedAt = LocalDateTime.now();
+                repath(node, newPath);
+                return null;
+            });
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Failed to move item", e);
+        }
+    }
+
+    @Override
+    public StorageEntity resolvePath(String path) {
+        return read(() -> byPath.get(path) instanceof Node node ? node.copy() : null);
+    }
+
+    @Override
+    public Integer resolveDirectoryId(String path) {
+        return read(() -> byPath.get(path) instanceof Node node && node.directory ? node.id : null);
+    }
+
+    @Override
+    public List<StorageEntity> getChildren(int parentId) {
+        return read(() -> {
+            Node parent = node(parentId, true);
+            List<StorageEntity> children = new ArrayList<>();
+            if (parent != null) {
+                for (int i = 0; i < parent.children.size(); i++) children.add(nodes[parent.children.get(i)].copy());
+            }
+            return children;
+        });
+    }
+
+    @Override
+    public List<StorageEntity> getDirectoryContents(int directoryId) {
+        return getChildren(directoryId);
+    }
+
+    @Override
+    public List<StorageEntity> searchFilesAndDirectories(String query) {
+        Pattern pattern = likePattern("%" + query + "%");
+        return read(() -> {
+            List<StorageEntity> results = new ArrayList<>();
+            for (Node node : byName) {
+                if (pattern.matcher(node.name.toLowerCase(Locale.ROOT)).matches()) results.add(node.copy());
+            }
+            return results;
+        });
+    }
+
+    @Override
+    public Page<StorageEntity> searchFilesAndDirectories(String query, StorageEntity after, int limit) {
+        Pattern pattern = likePattern("%" + DatabaseService.escapeLikePattern(query) + "%");
+        List<StorageEntity> results = read(() -> {
+            NavigableSet<Node> rest = byName;
+            if (after != null) {
+                rest = byName.tailSet(new Node(after.getId(), after instanceof Directory, 0, after.getName(), null), false);
+            }
+            List<StorageEntity> matches = new ArrayList<>();
+            for (Node node : rest) {
+                if (matches.size() > limit) break;
+                if (pattern.matcher(node.name.toLowerCase(Locale.ROOT)).matches()) matches.add(node.copy());
+            }
+            return matches;
+        });
+        return Page.of(results, limit);
+    }
+
+    @Override
+    public List<StorageEntity> getItemsByIds(int[] ids) {
+        return read(() -> {
+            List<StorageEntity> items = new ArrayList<>(ids.length);
+            for (int id : ids) {
+                if (id > 0 && id < nodes.length && nodes[id] != null) items.add(nodes[id].copy());
+            }
+            return items;
+        });
+    }
+
+    @Override
+    public List<Directory> getAllDirectories() {
+        return read(() -> {
+            List<Directory> directories = new ArrayList<>();
+            for (int id = 1; id < nextId; id++) {
+                if (nodes[id] != null && nodes[id].directory) directories.add((Directory) nodes[id].copy());
+            }
+            return directories;
+        });
+    }
+
+    @Override
+    public Set<Integer> getAllDescendantDirectoryIds(int dirId) {
+        return read(() -> {
+            Set<Integer> descendants = new HashSet<>();
+            Node start = node(dirId, true);
+            if (start != null) {
+                IntList subtree = subtree(start);
+                for (int i = 1; i < subtree.size(); i++) {
+                    if (nodes[subtree.get(i)].directory) descendants.add(subtree.get(i));
+                }
+            }
+            return descendants;
+        });
+    }
+
+    /**
+     * Adds an item that already has an ID, path and timestamps, as when loading the repository
+     * from the database or replaying a journal. The parent must be added first; the rollups are
+     * recomputed from the items themselves. IDs handed out later follow the largest one added.
+     *
+     * @param item The directory or file.
+     */
+    public void restore(StorageEntity item) {
+        Node node = new Node(item.getId(), item instanceof Directory, item.getParentId(), item.getName(), item.getPath());
+        if (item.getCreatedAt() != null) node.createdAt = item.getCreatedAt();
+        node.updatedAt = item.getUpdatedAt() != null ? item.getUpdatedAt() : node.createdAt;
+        if (item instanceof File file) {
+            node.fileType = file.getFileType();
+            node.fileSize = file.getFileSize();
+            node.contentHash = file.getContentHash();
+        }
+        write(() -> {
+            if (node.parentId > 0) return insert(node);
+            checkPathFree(node.path, null);
+            nextId = Math.max(nextId, node.id + 1);
+            return add(node);
+        });
+    }
+
+    /**
+     * Removes an item and its subtree without touching any blob, for callers that delete blobs
+     * themselves.
+     *
+     * @param id The ID of the directory or file.
+     */
+    void forget(int id) {
+        write(() -> remove(id));
+    }
+
+    /**
+     * Returns the number of items stored.
+     *
+     * @return The number of directories and files, including the root.
+     */
+    public int size() {
+        return read(byPath::size);
+    }
+
+    private Node node(int id, boolean directory) {
+        Node node = id > 0 && id < nodes.length ? nodes[id] : null;
+        return node != null && node.directory == directory ? node : null;
+    }
+
+    /** Returns a parent directory, failing like the foreign key when there is none. */
+    private Node parentFor(int parentId) {
+        Node parent = node(parentId, true);
+        if (parent == null) {
+            throw new RuntimeException(new SQLException("No directory with ID " + parentId, "23503"));
+        }
+        return parent;
+    }
+
+    private void checkPathFree(String path, Node except) {
+        Node holder = byPath.get(path);
+        if (holder != null && holder != except) {
+            throw new RuntimeException(new SQLException("Duplicate path " + path, "23505"));
+        }
+    }
+
+    /** Links a new item under its parent and into the rollups of its ancestors. */
+    private Node insert(Node node) {
+        Node parent = parentFor(node.parentId);
+        checkPathFree(node.path, null);
+        nextId = Math.max(nextId, node.id + 1);
+        parent.children.add(node.id);
+        parent.childCount++;
+        addToAncestors(parent, node.files(), node.bytes());
+        return add(node);
+    }
+
+    private Node add(Node node) {
+        if (node.id >= nodes.length) nodes = Arrays.copyOf(nodes, Math.max(nodes.length * 2, node.id + 1));
+        nodes[node.id] = node;
+        byPath.put(node.path, node);
+        byName.add(node);
+        return node;
+    }
+
+    private void addToAncestors(Node directory, long files, long bytes) {
+        for (Node ancestor = directory; ancestor != null; ancestor = ancestor.parentId > 0 ? nodes[ancestor.parentId] : null) {
+            ancestor.fileCount += files;
+            ancestor.totalBytes += bytes;
+        }
+    }
+
+    /** Removes an item and its subtree, taking them off the rollups of its ancestors. */
+    private Void remove(int id) {
+        Node node = id > 0 && id < nodes.length ? nodes[id] : null;
+        if (node == null) return null;
+        Node parent = node.parentId > 0 ? nodes[node.parentId] : null;
+        if (parent != null) {
+            parent.children.removeValue(node.id);
+            parent.childCount--;
+            addToAncestors(parent, -node.files(), -node.bytes());
+        }
+        IntList subtree = subtree(node);
+        for (int i = 0; i < subtree.size(); i++) {
+            Node removed = nodes[subtree.get(i)];
+            nodes[removed.id] = null;
+            byPath.remove(removed.path);
+            byName.remove(removed);
+        }
+        return null;
+    }
+
+    /** Gives an item a new path and rewrites the paths of its subtree to match. */
+    private void repath(Node node, String newPath) {
+        String oldPath = node.path;
+        IntList subtree = subtree(node);
+        for (int i = 0; i < subtree.size(); i++) {
+            byPath.remove(nodes[subtree.get(i)].path);
+        }
+        for (int i = 0; i < subtree.size(); i++) {
+            Node current = nodes[subtree.get(i)];
+            current.path = newPath + current.path.substring(oldPath.length());
+            byPath.put(current.path, current);
+        }
+    }
+
+    /** Returns the IDs of an item and everything below it, breadth-first, the item first. */
+    private IntList subtree(Node node) {
+        IntList subtree = new IntList();
+        subtree.add(node.id);
+        for (int i = 0; i < subtree.size(); i++) {
+            Node current = nodes[subtree.get(i)];
+            if (current.directory) {
+                for (int c = 0; c < current.children.size(); c++) subtree.add(current.children.get(c));
+            }
+        }
+        return subtree;
+    }
+
+    /**
+     * Compares two names by code point. That is the order of their UTF-8 bytes, which PostgreSQL
+     * sorts by under the {@code "C"} collation. {@link String#compareTo} differs from it only where
+     * a surrogate pair meets a character from U+E000 to U+FFFF.
+     *
+     * @param a The first name.
+     * @param b The second name.
+     * @return A negative number, zero or a positive number as {@code a} sorts before, with or after {@code b}.
+     */
+    public static int compareNames(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        for (int i = 0; i < length; ) {
+            int ca = a.codePointAt(i);
+            int cb = b.codePointAt(i);
+            if (ca != cb) return Integer.compare(ca, cb);
+            i += Character.charCount(ca);
+        }
+        return Integer.compare(a.length(), b.length());
+    }
+
+    /**
+     * Compiles a LIKE pattern for lower-case names: {@code %} matches any text, {@code _} one
+     * character, and a backslash escapes the next character, as in PostgreSQL.
+     *
+     * @param like The LIKE pattern.
+     * @return The pattern, to be matched against the whole lower-cased name.
+     */
+    public static Pattern likePattern(String like) {
+        StringBuilder regex = new StringBuilder();
+        String lower = like.toLowerCase(Locale.ROOT);
+        for (int i = 0; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            if (c == '\\' && i + 1 < lower.length()) {
+                regex.append(Pattern.quote(String.valueOf(lower.charAt(++i))));
+            } else if (c == '%') {
+                regex.append(".*");
+            } else if (c == '_') {
+                regex.append('.');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    private <T> T read(Supplier<T> work) {
+        lock.readLock().lock();
+        try {
+            return work.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private <T> T write(Supplier<T> work) {
+        lock.writeLock().lock();
+        try {
+            return work.get();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
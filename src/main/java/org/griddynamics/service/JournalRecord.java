@@ -0,0 +1,174 @@
+package org.griddynamics.service;
+
+import org.griddynamics.domain.Directory;
+import org.griddynamics.domain.File;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * One change in the {@link OperationJournal}: everything needed to apply it again, to the
+ * in-process view after a restart and to PostgreSQL by {@link DatabaseService#replayJournal}.
+ * Creates carry the ID the view handed out, so both sides end up with the same IDs.
+ *
+ * @param seq         The position in the journal, from 1; 0 until appended.
+ * @param op          The change.
+ * @param id          The ID of the item.
+ * @param parentId    The parent for a create, the new parent for a move.
+ * @param directory   Whether the item is a directory.
+ * @param name        The name for a create, the new name for a rename.
+ * @param path        The logical path for a create, the new path for a move.
+ * @param fileType    The file type of a created file.
+ * @param fileSize    The size of a created file.
+ * @param storagePath Where the blob of a created or deleted file is stored.
+ * @param contentHash The content hash of a created file, in hex, or {@code null}.
+ * @param time        When the item was created.
+ */
+public record JournalRecord(long seq, Op op, int id, int parentId, boolean directory, String name, String path,
+                            String fileType, long fileSize, String storagePath, String contentHash,
+                            LocalDateTime time) {
+
+    /** The kinds of change, by their code in the file. */
+    public enum Op {
+        CREATE, DELETE, RENAME, MOVE
+    }
+
+    /**
+     * Records a created directory.
+     *
+     * @param dir The saved directory, with its ID.
+     * @return The record.
+     */
+    public static JournalRecord created(Directory dir) {
+        return new JournalRecord(0, Op.CREATE, dir.getId(), dir.getParentId(), true, dir.getName(), dir.getPath(),
+                null, 0, null, null, dir.getCreatedAt());
+    }
+
+    /**
+     * Records a created file.
+     *
+     * @param file        The saved file, with its ID, path and content hash.
+     * @param storagePath Where its blob is stored.
+     * @return The record.
+     */
+    public static JournalRecord created(File file, String storagePath) {
+        return new JournalRecord(0, Op.CREATE, file.getId(), file.getParentId(), false, file.getName(), file.getPath(),
+                file.getFileType(), file.getFileSize(), storagePath, file.getContentHash(), file.getCreatedAt());
+    }
+
+    /**
+     * Records a deleted item; a directory takes its subtree with it.
+     *
+     * @param id        The ID of the item.
+     * @param directory Whether it is a directory.
+     * @return The record.
+     */
+    public static JournalRecord deleted(int id, boolean directory) {
+        return new JournalRecord(0, Op.DELETE, id, 0, directory, null, null, null, 0, null, null, null);
+    }
+
+    /**
+     * Records a deleted file, with the blob to delete once the database has forgotten it.
+     *
+     * @param file        The deleted file.
+     * @param storagePath Where its blob is stored.
+     * @return The record.
+     */
+    public static JournalRecord deleted(File file, String storagePath) {
+        return new JournalRecord(0, Op.DELETE, file.getId(), 0, false, null, null, null, 0, storagePath, null, null);
+    }
+
+    /**
+     * Records a renamed item.
+     *
+     * @param id        The ID of the item.
+     * @param newName   The new name.
+     * @param directory Whether it is a directory.
+     * @return The record.
+     */
+    public static JournalRecord renamed(int id, String newName, boolean directory) {
+        return new JournalRecord(0, Op.RENAME, id, 0, directory, newName, null, null, 0, null, null, null);
+    }
+
+    /**
+     * Records a moved item.
+     *
+     * @param id          The ID of the item.
+     * @param newParentId The new parent.
+     * @param newPath     The new logical path.
+     * @return The record.
+     */
+    public static JournalRecord moved(int id, int newParentId, String newPath) {
+        return new JournalRecord(0, Op.MOVE, id, newParentId, false, null, newPath, null, 0, null, null, null);
+    }
+
+    /**
+     * Returns this record at a position in the journal.
+     *
+     * @param seq The position.
+     * @return The positioned record.
+     */
+    JournalRecord at(long seq) {
+        return new JournalRecord(seq, op, id, parentId, directory, name, path, fileType, fileSize, storagePath,
+                contentHash, time);
+    }
+
+    /**
+     * Writes the record.
+     *
+     * @param out The output.
+     * @throws IOException If writing fails.
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeLong(seq);
+        out.writeByte(op.ordinal());
+        out.writeInt(id);
+        out.writeInt(parentId);
+        out.writeBoolean(directory);
+        writeNullable(out, name);
+        writeNullable(out, path);
+        writeNullable(out, fileType);
+        out.writeLong(fileSize);
+        writeNullable(out, storagePath);
+        writeNullable(out, contentHash);
+        out.writeLong(time == null ? Long.MIN_VALUE : time.toInstant(ZoneOffset.UTC).toEpochMilli());
+    }
+
+    /**
+     * Reads a record written by {@link #writeTo(DataOutput)}.
+     *
+     * @param in The input.
+     * @return The record.
+     * @throws IOException If reading fails.
+     */
+    static JournalRecord readFrom(DataInput in) throws IOException {
+        long seq = in.readLong();
+        Op op = Op.values()[in.readByte()];
+        int id = in.readInt();
+        int parentId = in.readInt();
+        boolean directory = in.readBoolean();
+        String name = readNullable(in);
+        String path = readNullable(in);
+        String fileType = readNullable(in);
+        long fileSize = in.readLong();
+        String storagePath = readNullable(in);
+        String contentHash = readNullable(in);
+        long millis = in.readLong();
+        LocalDateTime time = millis == Long.MIN_VALUE ? null : LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000),
+                (int) Math.floorMod(millis, 1000) * 1_000_000, ZoneOffset.UTC);
+        return new JournalRecord(seq, op, id, parentId, directory, name, path, fileType, fileSize, storagePath,
+                contentHash, time);
+    }
+
+    private static void writeNullable(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value);
+    }
+
+    private static String readNullable(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,89 @@
+package org.griddynamics.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Hands out non-colliding names inside one local download directory.
+ * <p>
+ * The directory is listed once; every later name is checked against that listing and the names
+ * handed out since, and each name remembers the last suffix it was given. Downloading n files
+ * that share a name therefore costs one directory scan instead of O(n²) existence checks.
+ */
+final class LocalNames {
+
+    private final Path directory;
+    private final Set<String> taken;
+    private final Set<String> handedOut = new HashSet<>();
+    private final Map<String, Integer> nextSuffix = new HashMap<>();
+
+    private LocalNames(Path directory, Set<String> taken) {
+        this.directory = directory;
+        this.taken = taken;
+    }
+
+    /**
+     * Lists the names already present in a directory.
+     *
+     * @param directory The local directory; it may not exist yet.
+     * @return The allocator for the directory.
+     * @throws IOException If the directory cannot be listed.
+     */
+    static LocalNames scan(Path directory) throws IOException {
+        Set<String> taken = new HashSet<>();
+        if (Files.isDirectory(directory)) {
+            try (Stream<Path> entries = Files.list(directory)) {
+                entries.forEach(entry -> taken.add(entry.getFileName().toString()));
+            }
+        }
+        return new LocalNames(directory, taken);
+    }
+
+    /**
+     * Reserves a file name, adding "_1", "_2", ... before the extension while it is taken.
+     *
+     * @param fileName The preferred name.
+     * @return The path of the reserved name.
+     */
+    Path file(String fileName) {
+        if (taken.add(fileName)) {
+            handedOut.add(fileName);
+            return directory.resolve(fileName);
+        }
+        int dot = fileName.lastIndexOf('.');
+        String stem = dot <= 0 ? fileName : fileName.substring(0, dot);
+        String extension = dot <= 0 ? "" : fileName.substring(dot);
+        int suffix = nextSuffix.getOrDefault(fileName, 1);
+        String candidate;
+        do {
+            candidate = stem + "_" + suffix++ + extension;
+        } while (!taken.add(candidate));
+        nextSuffix.put(fileName, suffix);
+        handedOut.add(candidate);
+        return directory.resolve(candidate);
+    }
+
+    /**
+     * Reserves a directory name. A local directory of that name that was there before the scan is
+     * reused once, so downloading a folder again merges into the earlier copy; a file of that name
+     * is not, and neither is a directory this allocator handed out, so two selected folders with
+     * the same name stay apart.
+     *
+     * @param name The preferred name.
+     * @return The path of the directory.
+     */
+    Path directory(String name) {
+        Path existing = directory.resolve(name);
+        if (taken.contains(name) && !handedOut.contains(name) && Files.isDirectory(existing)) {
+            handedOut.add(name);
+            return existing;
+        }
+        return file(name);
+    }
+}
@@ -0,0 +1,169 @@
+package org.griddynamics.service;
+
+import org.griddynamics.domain.Directory;
+import org.griddynamics.domain.File;
+import org.griddynamics.domain.Page;
+import org.griddynamics.domain.StorageEntity;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The file and directory metadata of the drive: the tree, its paths and rollups, and name search.
+ * <p>
+ * {@link DatabaseService} keeps it in PostgreSQL; {@link InMemoryMetadataRepository} keeps it in
+ * the JVM, for tests, benchmarks and offline use; {@link WriteBehindRepository} answers from
+ * memory and journals changes to PostgreSQL asynchronously. All behave the same way, which
+ * {@code MetadataRepositoryContract} checks: deleting a directory deletes its subtree, renaming
+ * or moving one rewrites the paths below it, and logical paths are unique. Items are returned as
+ * copies; changing them changes nothing stored.
+ */
+public interface MetadataRepository {
+
+    /**
+     * Retrieves the root directory, creating it if it does not exist.
+     *
+     * @return The root directory, with path "root".
+     */
+    Directory getRootDirectory();
+
+    /**
+     * Retrieves a directory by its ID.
+     *
+     * @param directoryId The ID of the directory.
+     * @return The directory, or {@code null} if there is no directory with that ID.
+     */
+    Directory getDirectory(int directoryId);
+
+    /**
+     * Retrieves a file by its ID.
+     *
+     * @param fileId The ID of the file.
+     * @return The file, or {@code null} if there is no file with that ID.
+     */
+    File getFile(int fileId);
+
+    /**
+     * Saves a new directory under its parent, with the path it carries, and sets its ID.
+     *
+     * @param directory The directory to save.
+     */
+    void saveDirectory(Directory directory);
+
+    /**
+     * Saves a new file under its parent and its content to the blob store, and sets its ID, path
+     * and content hash.
+     *
+     * @param file           The file metadata.
+     * @param fileStream     The content.
+     * @param storageService The blob store.
+     */
+    void saveFile(File file, InputStream fileStream, StorageService storageService);
+
+    /**
+     * Deletes a file and its blob.
+     *
+     * @param file           The file.
+     * @param storageService The blob store.
+     */
+    void deleteFile(File file, StorageService storageService);
+
+    /**
+     * Deletes a directory and everything below it.
+     *
+     * @param directoryId The ID of the directory.
+     */
+    void deleteDirectory(int directoryId);
+
+    /**
+     * Renames an item in place and rewrites the paths below it.
+     *
+     * @param id          The ID of the item.
+     * @param newName     The new name.
+     * @param isDirectory Whether the item is a directory.
+     */
+    void rename(int id, String newName, boolean isDirectory);
+
+    /**
+     * Moves an item to another directory and rewrites the paths below it.
+     *
+     * @param id          The ID of the item.
+     * @param newParentId The ID of the new parent directory.
+     * @param newPath     The new logical path of the item.
+     */
+    void move(int id, int newParentId, String newPath);
+
+    /**
+     * Retrieves the item at a logical path.
+     *
+     * @param path The normalized logical path, e.g. "root/projects/2024".
+     * @return The directory or file, or {@code null} if nothing has that path.
+     */
+    StorageEntity resolvePath(String path);
+
+    /**
+     * Retrieves the ID of the directory at a logical path.
+     *
+     * @param path The normalized logical path.
+     * @return The ID, or {@code null} if no directory has that path.
+     */
+    Integer resolveDirectoryId(String path);
+
+    /**
+     * Retrieves the direct children of a directory.
+     *
+     * @param parentId The ID of the directory.
+     * @return The children, in no particular order.
+     */
+    List<StorageEntity> getChildren(int parentId);
+
+    /**
+     * Retrieves the direct children of a directory.
+     *
+     * @param directoryId The ID of the directory.
+     * @return The children, in no particular order.
+     */
+    List<StorageEntity> getDirectoryContents(int directoryId);
+
+    /**
+     * Searches items whose names contain a LIKE pattern, ignoring case.
+     *
+     * @param query The pattern; {@code %} and {@code _} are wildcards.
+     * @return The matches, directories first and then by name.
+     */
+    List<StorageEntity> searchFilesAndDirectories(String query);
+
+    /**
+     * Retrieves one page of items whose names contain the query, ignoring case.
+     *
+     * @param query The text to find; wildcards are matched literally.
+     * @param after The last item of the previous page, or {@code null} for the first page.
+     * @param limit The maximum number of items on the page.
+     * @return The page, directories first and then by name and ID.
+     */
+    Page<StorageEntity> searchFilesAndDirectories(String query, StorageEntity after, int limit);
+
+    /**
+     * Retrieves items by ID.
+     *
+     * @param ids The IDs.
+     * @return The items in the order of {@code ids}, without the IDs that do not exist.
+     */
+    List<StorageEntity> getItemsByIds(int[] ids);
+
+    /**
+     * Retrieves every directory.
+     *
+     * @return The directories, in no particular order.
+     */
+    List<Directory> getAllDirectories();
+
+    /**
+     * Retrieves the IDs of every directory below a directory.
+     *
+     * @param dirId The ID of the directory.
+     * @return The IDs, without {@code dirId} itself.
+     */
+    Set<Integer> getAllDescendantDirectoryIds(int dirId);
+}
@@ -0,0 +1,236 @@
+package org.griddynamics.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only file of {@link JournalRecord}s, fsync'd with group commit.
+ * <p>
+ * {@link #append(JournalRecord)} only numbers a record and queues it; {@link #awaitDurable(long)}
+ * waits until it is on disk. A single flusher thread writes everything queued since its last
+ * write and forces the file once, so writers that arrive while an fsync is running share the
+ * next one. Each record is framed by its length and a CRC-32. On open, the file is read up to the
+ * first incomplete or corrupt frame, which is what a crash in the middle of a write leaves
+ * behind, and cut there. Once every record has been replayed the file is emptied; numbering
+ * carries on from the last number used.
+ */
+public class OperationJournal implements Closeable {
+
+    private final FileChannel channel;
+    private final List<JournalRecord> recovered;
+    private final Consumer<List<JournalRecord>> onDurable;
+    private final Thread flusher;
+    private List<JournalRecord> pending = new ArrayList<>();
+    private long lastSeq;
+    private long durableSeq;
+    private long syncs;
+    private boolean flushing;
+    private boolean closed;
+    private IOException failure;
+
+    /**
+     * Opens a journal, recovering the records already in it, and starts the flusher.
+     *
+     * @param file      The journal file, created if missing.
+     * @param firstSeq  The lowest number to hand out, e.g. one past the last record replayed.
+     * @param onDurable Called by the flusher with each group of records once it is on disk.
+     * @throws IOException If the file cannot be read or written.
+     */
+    public OperationJournal(Path file, long firstSeq, Consumer<List<JournalRecord>> onDurable) throws IOException {
+        this.onDurable = onDurable;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.recovered = recover(Files.readAllBytes(file));
+        this.lastSeq = Math.max(firstSeq - 1, recovered.isEmpty() ? 0 : recovered.get(recovered.size() - 1).seq());
+        this.durableSeq = lastSeq;
+        this.flusher = new Thread(this::flushLoop, "journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Returns the records found in the file when it was opened, in order.
+     *
+     * @return The recovered records.
+     */
+    public List<JournalRecord> getRecovered() {
+        return recovered;
+    }
+
+    /**
+     * Numbers a record and queues it for the next write.
+     *
+     * @param record The record.
+     * @return Its number, to wait for with {@link #awaitDurable(long)}.
+     * @throws IOException If the journal is closed or a write has failed.
+     */
+    public synchronized long append(JournalRecord record) throws IOException {
+        if (failure != null) throw new IOException("Journal write failed earlier", failure);
+        if (closed) throw new IOException("Journal is closed");
+        pending.add(record.at(++lastSeq));
+        notifyAll();
+        return lastSeq;
+    }
+
+    /**
+     * Waits until a record is on disk.
+     *
+     * @param seq The number of the record.
+     * @throws IOException If the write failed.
+     */
+    public synchronized void awaitDurable(long seq) throws IOException {
+        boolean interrupted = false;
+        while (durableSeq < seq && failure == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                // The record is already queued; returning early would report it durable too soon
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        if (durableSeq < seq) throw new IOException("Journal write failed", failure);
+    }
+
+    /**
+     * Empties the file if every record in it has been replayed and nothing is waiting to be written.
+     * Does nothing once the journal is closed; the next open skips what was replayed.
+     *
+     * @param appliedSeq The last record replayed.
+     * @throws IOException If the file cannot be truncated.
+     */
+    public synchronized void truncateIfReplayed(long appliedSeq) throws IOException {
+        if (!closed && !flushing && pending.isEmpty() && durableSeq <= appliedSeq && channel.size() > 0) {
+            channel.truncate(0);
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Returns the number of the last record on disk.
+     *
+     * @return The number, 0 if none.
+     */
+    public synchronized long getDurableSeq() {
+        return durableSeq;
+    }
+
+    /**
+     * Returns how many times the file was forced to disk, for comparing with the records written.
+     *
+     * @return The number of fsyncs.
+     */
+    public synchronized long getSyncCount() {
+        return syncs;
+    }
+
+    /**
+     * Writes what is queued and stops the flusher.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    private void flushLoop() {
+        while (true) {
+            List<JournalRecord> group;
+            synchronized (this) {
+                while (pending.isEmpty() && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pending.isEmpty()) return;
+                group = pending;
+                pending = new ArrayList<>();
+                flushing = true;
+            }
+            IOException error = null;
+            try {
+                ByteBuffer frames = encode(group);
+                channel.position(channel.size());
+                while (frames.hasRemaining()) channel.write(frames);
+                channel.force(false);
+            } catch (IOException e) {
+                error = e;
+            }
+            synchronized (this) {
+                flushing = false;
+                if (error != null) {
+                    failure = error;
+                } else {
+                    durableSeq = group.get(group.size() - 1).seq();
+                    syncs++;
+                }
+                notifyAll();
+            }
+            if (error != null) return;
+            onDurable.accept(group);
+        }
+    }
+
+    private static ByteBuffer encode(List<JournalRecord> group) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        for (JournalRecord record : group) {
+            payload.reset();
+            record.writeTo(new DataOutputStream(payload));
+            CRC32 crc = new CRC32();
+            crc.update(payload.toByteArray());
+            out.writeInt(payload.size());
+            out.writeInt((int) crc.getValue());
+            payload.writeTo(out);
+        }
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    /** Reads the frames up to the first torn or corrupt one and cuts the file there. */
+    private List<JournalRecord> recover(byte[] content) throws IOException {
+        List<JournalRecord> records = new ArrayList<>();
+        ByteBuffer in = ByteBuffer.wrap(content);
+        int valid = 0;
+        while (in.remaining() >= 8) {
+            int length = in.getInt();
+            int expected = in.getInt();
+            if (length <= 0 || length > in.remaining()) break;
+            byte[] payload = new byte[length];
+            in.get(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != expected) break;
+            records.add(JournalRecord.readFrom(new DataInputStream(new ByteArrayInputStream(payload))));
+            valid = in.position();
+        }
+        if (valid < content.length) {
+            channel.truncate(valid);
+            channel.force(true);
+        }
+        return records;
+    }
+}
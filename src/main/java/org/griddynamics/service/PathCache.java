@@ -0,0 +1,70 @@
+package org.griddynamics.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded map from the logical paths of recently resolved directories to their IDs, evicting
+ * the least recently used entry when full.
+ * <p>
+ * {@link DatabaseService} keeps it consistent: renaming, moving or deleting an item drops the
+ * cached entries of its whole subtree.
+ */
+public class PathCache {
+
+    private final Map<String, Integer> entries;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param capacity The maximum number of paths kept.
+     */
+    public PathCache(int capacity) {
+        int maxEntries = Math.max(1, capacity);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Looks up a path, marking it as recently used.
+     *
+     * @param path The logical path.
+     * @return The directory ID, or {@code null} if the path is not cached.
+     */
+    public synchronized Integer get(String path) {
+        return entries.get(path);
+    }
+
+    /**
+     * Caches the ID of a directory.
+     *
+     * @param path The logical path of the directory.
+     * @param id   The directory ID.
+     */
+    public synchronized void put(String path, int id) {
+        entries.put(path, id);
+    }
+
+    /**
+     * Drops a path and every cached path below it.
+     *
+     * @param path The logical path of a renamed, moved or deleted item.
+     */
+    public synchronized void invalidate(String path) {
+        String prefix = path + "/";
+        entries.keySet().removeIf(cached -> cached.equals(path) || cached.startsWith(prefix));
+    }
+
+    /**
+     * Returns the number of cached paths.
+     *
+     * @return The cache size.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+}
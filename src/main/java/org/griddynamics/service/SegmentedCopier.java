@@ -0,0 +1,170 @@
+package org.griddynamics.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Copies large files as fixed-size segments in parallel.
+ * <p>
+ * A single sequential copy is limited to what one stream of reads and writes can reach, which
+ * is well below what NVMe arrays deliver to several queues at once. The target is sized up front,
+ * then each segment is copied with positional reads and writes ({@link FileChannel#read(ByteBuffer, long)}
+ * and {@link FileChannel#write(ByteBuffer, long)}), so the threads never share a channel position.
+ */
+public class SegmentedCopier {
+
+    /** Size of the direct buffer each copying thread reuses. */
+    static final int BUFFER_BYTES = 1024 * 1024;
+
+    private final long threshold;
+    private final long segmentSize;
+    private final int parallelism;
+
+    /**
+     * Creates a copier.
+     *
+     * @param threshold   The smallest file size copied in segments; smaller files are copied
+     *                    sequentially by the caller.
+     * @param segmentSize The number of bytes in each segment.
+     * @param parallelism The number of segments copied at once.
+     */
+    public SegmentedCopier(long threshold, long segmentSize, int parallelism) {
+        if (segmentSize <= 0 || parallelism <= 0) {
+            throw new IllegalArgumentException("Segment size and parallelism must be positive");
+        }
+        this.threshold = threshold;
+        this.segmentSize = segmentSize;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Tells whether a file is large enough to be worth splitting.
+     *
+     * @param size The file size in bytes.
+     * @return {@code true} if the file spans more than one segment and reaches the threshold.
+     */
+    public boolean appliesTo(long size) {
+        return parallelism > 1 && size >= threshold && size > segmentSize;
+    }
+
+    /**
+     * Copies the whole content of a channel into a new file. On failure the partial target is
+     * deleted.
+     *
+     * @param source The source; only positional reads are used, so its position is unchanged.
+     * @param target The new file; it must not exist yet.
+     * @return The number of bytes copied.
+     * @throws IOException If reading or writing fails.
+     */
+    public long copy(FileChannel source, Path target) throws IOException {
+        return copy(source, target, null);
+    }
+
+    /**
+     * Copies the whole content of a channel into a new file, feeding it to a digest on the way.
+     * The digest needs the bytes in order, so the calling thread reads the source front to back
+     * while the segments are being copied; its reads mostly hit pages the copying threads have
+     * just pulled in, and nothing is read back from the target. On failure the partial target is
+     * deleted.
+     *
+     * @param source The source; only positional reads are used, so its position is unchanged.
+     * @param target The new file; it must not exist yet.
+     * @param digest Receives the content, or {@code null} for a plain copy.
+     * @return The number of bytes copied.
+     * @throws IOException If reading or writing fails.
+     */
+    public long copy(FileChannel source, Path target, MessageDigest digest) throws IOException {
+        long size = source.size();
+        FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        try (out) {
+            if (size > 0) {
+                // Size the target once instead of growing it from every thread
+                out.write(ByteBuffer.allocate(1), size - 1);
+            }
+            copySegments(source, out, size, digest);
+            return size;
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(target);
+            throw e;
+        }
+    }
+
+    private void copySegments(FileChannel source, FileChannel out, long size, MessageDigest digest)
+            throws IOException {
+        int segments = (int) ((size + segmentSize - 1) / segmentSize);
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, Math.max(1, segments)));
+        try {
+            ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_BYTES));
+            List<Future<?>> copies = new ArrayList<>(segments);
+            for (long start = 0; start < size; start += segmentSize) {
+                long from = start;
+                long to = Math.min(size, start + segmentSize);
+                copies.add(pool.submit(() -> {
+                    copyRange(source, out, from, to, buffers.get());
+                    return null;
+                }));
+            }
+            if (digest != null) {
+                digestRange(source, size, digest);
+            }
+            for (Future<?> copy : copies) {
+                copy.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Copy interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) throw io;
+            throw new IOException("Copy failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void digestRange(FileChannel source, long size, MessageDigest digest) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+        long position = 0;
+        while (position < size) {
+            buffer.clear();
+            int read = source.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Source ended at byte " + position + " while hashing");
+            }
+            buffer.flip();
+            digest.update(buffer);
+            position += read;
+        }
+    }
+
+    private static void copyRange(FileChannel source, FileChannel out, long from, long to, ByteBuffer buffer)
+            throws IOException {
+        long position = from;
+        while (position < to) {
+            buffer.clear();
+            if (to - position < buffer.capacity()) {
+                buffer.limit((int) (to - position));
+            }
+            int read = source.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Source ended at byte " + position + " while copying");
+            }
+            buffer.flip();
+            long written = position;
+            while (buffer.hasRemaining()) {
+                written += out.write(buffer, written);
+            }
+            position += read;
+        }
+    }
+}
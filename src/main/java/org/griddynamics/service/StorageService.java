@@ -2,17 +2,24 @@ package org.griddynamics.service;
 
 import org.griddynamics.domain.Directory;
 import org.griddynamics.domain.File;
+import org.griddynamics.metrics.BlobTransferEvent;
+import org.griddynamics.metrics.DriveMetrics;
 import org.springframework.stereotype.Service;
 // NOTE: The following imports require Spring Boot dependencies in your build file (pom.xml or build.gradle):
 // import org.springframework.beans.factory.annotation.Value;
 // import org.springframework.stereotype.Service;
 
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.util.Scanner;
 
 import static org.griddynamics.app.MenuBar.listFilesInDirectory;
@@ -27,6 +34,8 @@ public class StorageService {
 
     private final Path storageDir;
     private final String storageFolder;
+    private SegmentedCopier segmentedCopier;
+    private DriveMetrics metrics;
 
     /**
      * Initializes the storage service and ensures the storage directory exists.
@@ -48,26 +57,75 @@ public class StorageService {
     }
 
     /**
-     * Saves a file to disk using its file ID and extension.
+     * Returns the location of a stored file on disk.
+     *
+     * @param fileId   The ID of the file.
+     * @param fileType The file extension.
+     * @return The path of the stored blob.
+     */
+    public Path resolveBlob(int fileId, String fileType) {
+        return storageDir.resolve(fileId + "." + fileType);
+    }
+
+    /**
+     * Copies large files in parallel segments from now on, see {@link SegmentedCopier}.
+     *
+     * @param segmentedCopier The copier, or {@code null} to copy every file sequentially.
+     */
+    public void setSegmentedCopier(SegmentedCopier segmentedCopier) {
+        this.segmentedCopier = segmentedCopier;
+    }
+
+    /**
+     * Counts the bytes written to and read from the blob store from now on.
+     *
+     * @param metrics The metrics, or {@code null} to stop counting.
+     */
+    public void setMetrics(DriveMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Saves a file to disk using its file ID and extension, hashing the content on the way. A large
+     * local file, passed as an unread {@link FileInputStream}, is copied in parallel segments when a
+     * segmented copier is set, and hashed from the source while the segments are copied.
      *
      * @param fileId        The unique file ID used as the filename.
      * @param inputStream   Input stream of the file's contents.
      * @param fileExtension The file's extension (e.g., "txt", "jpg").
+     * @return The SHA-256 of the saved content.
      * @throws Exception If an error occurs during writing to disk.
      */
-    public void saveFileToDisk(int fileId, InputStream inputStream, String fileExtension) throws Exception {
+    public byte[] saveFileToDisk(int fileId, InputStream inputStream, String fileExtension) throws Exception {
         if (!Files.exists(storageDir)) Files.createDirectories(storageDir);
         String filename = fileId + "." + fileExtension;
         Path filePath = storageDir.resolve(filename);
-
-        try (FileOutputStream fos = new FileOutputStream(filePath.toFile())) {
-            inputStream.transferTo(fos);
+        MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+        BlobTransferEvent event = new BlobTransferEvent();
+        event.begin();
+
+        if (segmentedCopier != null && inputStream instanceof FileInputStream local) {
+            FileChannel channel = local.getChannel();
+            if (channel.position() == 0 && segmentedCopier.appliesTo(channel.size())) {
+                Files.deleteIfExists(filePath);
+                long written = segmentedCopier.copy(channel, filePath, sha256);
+                if (metrics != null) metrics.blobWritten(written);
+                event.complete(fileId, written, BlobTransferEvent.WRITE);
+                return sha256.digest();
+            }
+        }
+        try (OutputStream out = new DigestOutputStream(new FileOutputStream(filePath.toFile()), sha256)) {
+            long written = inputStream.transferTo(out);
+            if (metrics != null) metrics.blobWritten(written);
+            event.complete(fileId, written, BlobTransferEvent.WRITE);
         }
+        return sha256.digest();
     }
 
     /**
      * Downloads a file from storage to a user-specified destination.
-     * Prompts the user to choose a file from the current directory.
+     * Prompts the user to choose a file by ID from the current directory, or by absolute
+     * or relative path.
      *
      * @param dbService        DatabaseService instance to fetch file metadata.
      * @param currentDirectory The directory to list files from.
@@ -75,12 +133,17 @@ public class StorageService {
      */
     public void downloadFile(DatabaseService dbService, Directory currentDirectory, Scanner scanner) {
         listFilesInDirectory(dbService, currentDirectory);
-        System.out.print("Enter file ID to download (or -1 to go back): ");
-        int id = scanner.nextInt();
-        scanner.nextLine();
-        if (id == -1) return;
-
-        File file = dbService.getFile(id);
+        System.out.print("Enter file ID or path to download (or -1 to go back): ");
+        String input = scanner.nextLine().trim();
+        if (input.equals("-1")) return;
+
+        File file;
+        if (input.matches("\\d+")) {
+            file = dbService.getFile(Integer.parseInt(input));
+        } else {
+            String path = DatabaseService.normalizePath(currentDirectory.getPath(), input);
+            file = path != null && dbService.resolvePath(path) instanceof File found ? found : null;
+        }
         if (file == null) {
             System.out.println("File not found.");
             return;
@@ -96,21 +159,8 @@ public class StorageService {
         String destPath = scanner.nextLine();
 
         try {
-            String baseName = file.getName();
-            String extension = file.getFileType();
-            if (!baseName.toLowerCase().endsWith("." + extension.toLowerCase())) {
-                baseName += "." + extension;
-            }
-
-            Path targetPath = Paths.get(destPath, baseName);
-            int counter = 1;
-            while (Files.exists(targetPath)) {
-                String nameWithoutExt = baseName.substring(0, baseName.lastIndexOf('.'));
-                targetPath = Paths.get(destPath, nameWithoutExt + "_" + counter + "." + extension);
-                counter++;
-            }
-
-            Files.copy(storageFile.toPath(), targetPath);
+            Path targetPath = LocalNames.scan(Path.of(destPath)).file(downloadName(file));
+            copyBlob(file, targetPath);
             System.out.println("Downloaded to " + targetPath);
 
         } catch (Exception e) {
@@ -118,6 +168,61 @@ public class StorageService {
         }
     }
 
+    /**
+     * Returns the name a file is downloaded under: its name, with its extension appended
+     * if the name does not already end with it.
+     *
+     * @param file The file.
+     * @return The local file name.
+     */
+    static String downloadName(File file) {
+        String name = file.getName();
+        String extension = file.getFileType();
+        if (extension == null || extension.isEmpty()
+                || name.toLowerCase().endsWith("." + extension.toLowerCase())) {
+            return name;
+        }
+        return name + "." + extension;
+    }
+
+    /**
+     * Copies a stored file to a new local file. The bytes move channel to channel, so the
+     * kernel can copy them without passing them through the JVM heap.
+     *
+     * @param file   The file to copy.
+     * @param target The local path; it must not exist yet.
+     * @return The number of bytes copied.
+     * @throws IOException If the blob cannot be read or the target cannot be written.
+     */
+    public long copyBlob(File file, Path target) throws IOException {
+        BlobTransferEvent event = new BlobTransferEvent();
+        event.begin();
+        try (FileChannel in = FileChannel.open(resolveBlob(file.getId(), file.getFileType()), StandardOpenOption.READ)) {
+            long size = in.size();
+            long copied;
+            if (segmentedCopier != null && segmentedCopier.appliesTo(size)) {
+                copied = segmentedCopier.copy(in, target);
+            } else {
+                copied = copySequentially(in, size, target);
+            }
+            if (metrics != null) metrics.blobRead(copied);
+            event.complete(file.getId(), copied, BlobTransferEvent.READ);
+            return copied;
+        }
+    }
+
+    private static long copySequentially(FileChannel in, long size, Path target) throws IOException {
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long position = 0;
+            while (position < size) {
+                long copied = in.transferTo(position, size - position, out);
+                if (copied <= 0) break;
+                position += copied;
+            }
+            return position;
+        }
+    }
+
     /**
      * Deletes a file from disk based on its file ID and type.
      *
@@ -0,0 +1,289 @@
+package org.griddynamics.service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * What a local folder and its drive folder looked like after their last sync, one entry per
+ * file, kept in a tab-separated file inside the local folder.
+ * <p>
+ * A file whose local size and modification time, and whose remote ID, size and update time,
+ * still match its entry has not changed on either side and needs no work. Entries are kept
+ * sorted by path, so the files below a folder are one range. A save appends only the entries
+ * changed since the last one to a log next to the state file; once the log would hold more lines
+ * than the state file, the state file is rewritten, replaced atomically, and the log is dropped.
+ * A line torn by an interrupted append is ignored on load, which costs that file one comparison
+ * as if it had never been synced.
+ * <p>
+ * The state also keeps the Merkle digest of each drive folder whose files all matched their
+ * entries at the end of a sync. While a folder's digest stays the same, its files on the drive are
+ * still the ones the entries describe, and the folder need not be listed again.
+ */
+public class SyncState {
+
+    /** Name of the state file in the synced local folder; it is never synced itself. */
+    public static final String FILE_NAME = ".drive-sync";
+
+    /** Name of the log of changes made since the state file was last written; never synced either. */
+    public static final String LOG_NAME = FILE_NAME + ".log";
+
+    private static final String NO_HASH = "-";
+
+    /** First field of a log line that removes an entry; a file ID never looks like this. */
+    private static final String REMOVED = "x";
+
+    /** First field of a line holding a folder digest, or removing it if the digest is {@code -}. */
+    private static final String FOLDER = "d";
+
+    private final NavigableMap<String, Entry> entries = new TreeMap<>();
+    private final Map<String, Entry> changed = new LinkedHashMap<>();
+    private final NavigableMap<String, String> digests = new TreeMap<>();
+    private final Map<String, String> changedDigests = new LinkedHashMap<>();
+    private int stateLines;
+    private int logLines;
+
+    /**
+     * The last synced state of one file.
+     *
+     * @param fileId        The drive ID of the file.
+     * @param size          The size on both sides.
+     * @param localModified The local modification time in epoch milliseconds.
+     * @param remoteUpdated The drive update time, as {@link java.time.LocalDateTime#toString()}.
+     * @param sha256        The content hash, or {@code null} if hashing was off.
+     */
+    public record Entry(int fileId, long size, long localModified, String remoteUpdated, String sha256) {
+    }
+
+    /**
+     * Loads the state of a local folder, replaying the changes logged since it was last written.
+     *
+     * @param localRoot The synced local folder.
+     * @return The state, empty if the folder was never synced.
+     * @throws IOException If the state file cannot be read or is corrupt.
+     */
+    public static SyncState load(Path localRoot) throws IOException {
+        SyncState state = new SyncState();
+        try (BufferedReader reader = Files.newBufferedReader(localRoot.resolve(FILE_NAME), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                state.apply(line);
+                state.stateLines++;
+            }
+        } catch (NoSuchFileException e) {
+            // Never synced, or everything is still in the log
+        }
+        try {
+            String log = Files.readString(localRoot.resolve(LOG_NAME), StandardCharsets.UTF_8);
+            // Anything after the last newline is a torn append
+            for (String line : log.substring(0, log.lastIndexOf('\n') + 1).split("\n")) {
+                if (line.isEmpty()) continue;
+                state.apply(line);
+                state.logLines++;
+            }
+        } catch (NoSuchFileException e) {
+            // Nothing changed since the state file was written
+        }
+        return state;
+    }
+
+    /**
+     * Persists the changes made since the last save or load, appending them to the log or, once
+     * the log would outgrow the state, rewriting the state file atomically and dropping the log.
+     *
+     * @param localRoot The synced local folder.
+     * @throws IOException If the state cannot be written.
+     */
+    public void save(Path localRoot) throws IOException {
+        int changes = changed.size() + changedDigests.size();
+        if (changes == 0) return;
+        if (logLines + changes > stateLines) {
+            Path temp = localRoot.resolve(FILE_NAME + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Entry> item : entries.entrySet()) {
+                    writer.write(format(item.getKey(), item.getValue()));
+                    writer.newLine();
+                }
+                for (Map.Entry<String, String> item : digests.entrySet()) {
+                    writer.write(formatDigest(item.getKey(), item.getValue()));
+                    writer.newLine();
+                }
+            }
+            Files.move(temp, localRoot.resolve(FILE_NAME), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            Files.deleteIfExists(localRoot.resolve(LOG_NAME));
+            stateLines = entries.size() + digests.size();
+            logLines = 0;
+        } else {
+            try (BufferedWriter writer = Files.newBufferedWriter(localRoot.resolve(LOG_NAME), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (Map.Entry<String, Entry> item : changed.entrySet()) {
+                    writer.write(format(item.getKey(), item.getValue()));
+                    writer.newLine();
+                }
+                for (Map.Entry<String, String> item : changedDigests.entrySet()) {
+                    writer.write(formatDigest(item.getKey(), item.getValue()));
+                    writer.newLine();
+                }
+            }
+            logLines += changes;
+        }
+        changed.clear();
+        changedDigests.clear();
+    }
+
+    /**
+     * Returns the entry of a file.
+     *
+     * @param path The path relative to the synced folders, with '/' separators.
+     * @return The entry, or {@code null} if the file was not present at the last sync.
+     */
+    public Entry get(String path) {
+        return entries.get(path);
+    }
+
+    /**
+     * Records the synced state of a file.
+     *
+     * @param path  The relative path.
+     * @param entry The state.
+     */
+    public void put(String path, Entry entry) {
+        if (!entry.equals(entries.put(path, entry))) {
+            changed.put(path, entry);
+        }
+    }
+
+    /**
+     * Forgets a file that is gone from both sides.
+     *
+     * @param path The relative path.
+     */
+    public void remove(String path) {
+        if (entries.remove(path) != null) {
+            changed.put(path, null);
+        }
+    }
+
+    /**
+     * Returns the relative paths of all recorded files.
+     *
+     * @return The paths, as a live view.
+     */
+    public Set<String> paths() {
+        return entries.keySet();
+    }
+
+    /**
+     * Returns the relative paths of the recorded files below a folder, read as one range of the
+     * sorted entries; '0' is the character right after '/'.
+     *
+     * @param folder The relative path of the folder, or "" for the synced folder itself.
+     * @return The paths, as a live view.
+     */
+    public Set<String> pathsUnder(String folder) {
+        return under(entries, folder).keySet();
+    }
+
+    /**
+     * Returns the digest a drive folder had when the last sync left all its files matching their
+     * entries.
+     *
+     * @param folder The relative path of the folder, or "" for the synced folder itself.
+     * @return The digest, or {@code null} if none was recorded.
+     */
+    public String getDigest(String folder) {
+        return digests.get(folder);
+    }
+
+    /**
+     * Records the digest of a drive folder whose files all match their entries.
+     *
+     * @param folder The relative path of the folder.
+     * @param digest The digest.
+     */
+    public void putDigest(String folder, String digest) {
+        if (!digest.equals(digests.put(folder, digest))) {
+            changedDigests.put(folder, digest);
+        }
+    }
+
+    /**
+     * Forgets the digest of a drive folder, so the next sync lists it again.
+     *
+     * @param folder The relative path of the folder.
+     */
+    public void removeDigest(String folder) {
+        if (digests.remove(folder) != null) {
+            changedDigests.put(folder, null);
+        }
+    }
+
+    /**
+     * Returns the relative paths of the folders with a recorded digest below a folder.
+     *
+     * @param folder The relative path of the folder, or "" for the synced folder itself.
+     * @return The paths, as a live view.
+     */
+    public Set<String> foldersUnder(String folder) {
+        return under(digests, folder).keySet();
+    }
+
+    private static <V> NavigableMap<String, V> under(NavigableMap<String, V> map, String folder) {
+        if (folder.isEmpty()) return map.tailMap("", false);
+        return map.subMap(folder + "/", true, folder + "0", false);
+    }
+
+    private void apply(String line) throws IOException {
+        try {
+            if (line.startsWith(REMOVED + "\t")) {
+                entries.remove(line.substring(REMOVED.length() + 1));
+                return;
+            }
+            if (line.startsWith(FOLDER + "\t")) {
+                String[] fields = line.split("\t", 3);
+                if (fields.length != 3) {
+                    throw new IOException("Corrupt sync state line: " + line);
+                }
+                if (fields[1].equals(NO_HASH)) {
+                    digests.remove(fields[2]);
+                } else {
+                    digests.put(fields[2], fields[1]);
+                }
+                return;
+            }
+            String[] fields = line.split("\t", 6);
+            if (fields.length != 6) {
+                throw new IOException("Corrupt sync state line: " + line);
+            }
+            entries.put(fields[5], new Entry(Integer.parseInt(fields[0]), Long.parseLong(fields[1]),
+                    Long.parseLong(fields[2]), fields[3], fields[4].equals(NO_HASH) ? null : fields[4]));
+        } catch (NumberFormatException e) {
+            throw new IOException("Corrupt sync state", e);
+        }
+    }
+
+    private static String format(String path, Entry entry) {
+        if (entry == null) {
+            return REMOVED + "\t" + path;
+        }
+        return entry.fileId() + "\t" + entry.size() + "\t" + entry.localModified() + "\t"
+                + entry.remoteUpdated() + "\t" + (entry.sha256() == null ? NO_HASH : entry.sha256())
+                + "\t" + path;
+    }
+
+    private static String formatDigest(String folder, String digest) {
+        return FOLDER + "\t" + (digest == null ? NO_HASH : digest) + "\t" + folder;
+    }
+}
@@ -0,0 +1,135 @@
+package org.griddynamics.service;
+
+import org.griddynamics.domain.Directory;
+import org.griddynamics.domain.File;
+import org.griddynamics.domain.StorageEntity;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+
+/**
+ * Compares two folder trees by their Merkle digests (see {@link Directory#getDigest()}).
+ * <p>
+ * The children of a pair of folders are listed only when the two digests differ, so an
+ * identical subtree costs nothing however large it is: comparing two trees of millions of
+ * files with a handful of changes reads just the folders on the paths to those changes.
+ * A folder present on one side only is reported as one change, without descending into it.
+ */
+public class TreeDiff {
+
+    private final DatabaseService dbService;
+
+    /** What happened to an item between the left tree and the right tree. */
+    public enum Kind {
+        /** Only in the right tree. */
+        ADDED,
+        /** Only in the left tree. */
+        REMOVED,
+        /** A file in both trees with a different size or content. */
+        MODIFIED
+    }
+
+    /**
+     * One difference between the trees.
+     *
+     * @param kind   The kind of change.
+     * @param path   The path relative to the compared folders, with '/' separators.
+     * @param before The item in the left tree, or {@code null} if added.
+     * @param after  The item in the right tree, or {@code null} if removed.
+     */
+    public record Change(Kind kind, String path, StorageEntity before, StorageEntity after) {
+    }
+
+    /**
+     * The outcome of a comparison.
+     *
+     * @param changes         The differences, ordered by path.
+     * @param foldersCompared The number of folder pairs whose children were listed.
+     * @param elapsedNanos    The wall-clock time of the comparison.
+     */
+    public record Result(List<Change> changes, int foldersCompared, long elapsedNanos) {
+    }
+
+    private record Pair(Directory left, Directory right, String path) {
+    }
+
+    /**
+     * Creates a tree diff.
+     *
+     * @param dbService The metadata source.
+     */
+    public TreeDiff(DatabaseService dbService) {
+        this.dbService = dbService;
+    }
+
+    /**
+     * Compares the contents of two folders. Their own names do not matter, so a folder can be
+     * compared with a copy of itself stored elsewhere.
+     *
+     * @param left  The folder treated as the old state.
+     * @param right The folder treated as the new state.
+     * @return The differences.
+     */
+    public Result diff(Directory left, Directory right) {
+        long started = System.nanoTime();
+        List<Change> changes = new ArrayList<>();
+        int compared = 0;
+        Deque<Pair> pending = new ArrayDeque<>();
+        pending.push(new Pair(left, right, ""));
+        while (!pending.isEmpty()) {
+            Pair pair = pending.pop();
+            if (sameDigest(pair.left(), pair.right())) continue;
+            compared++;
+            Map<String, StorageEntity> before = byName(dbService.getChildrenWithDigests(pair.left().getId()));
+            Map<String, StorageEntity> after = byName(dbService.getChildrenWithDigests(pair.right().getId()));
+            TreeSet<String> names = new TreeSet<>(before.keySet());
+            names.addAll(after.keySet());
+            for (String name : names) {
+                String path = pair.path().isEmpty() ? name : pair.path() + "/" + name;
+                StorageEntity old = before.get(name);
+                StorageEntity now = after.get(name);
+                if (old == null) {
+                    changes.add(new Change(Kind.ADDED, path, null, now));
+                } else if (now == null) {
+                    changes.add(new Change(Kind.REMOVED, path, old, null));
+                } else if (old instanceof Directory oldDir && now instanceof Directory newDir) {
+                    pending.push(new Pair(oldDir, newDir, path));
+                } else if (old instanceof File oldFile && now instanceof File newFile) {
+                    if (!sameContent(oldFile, newFile)) {
+                        changes.add(new Change(Kind.MODIFIED, path, old, now));
+                    }
+                } else {
+                    changes.add(new Change(Kind.REMOVED, path, old, null));
+                    changes.add(new Change(Kind.ADDED, path, null, now));
+                }
+            }
+        }
+        changes.sort(Comparator.comparing(Change::path));
+        return new Result(changes, compared, System.nanoTime() - started);
+    }
+
+    private static boolean sameDigest(Directory left, Directory right) {
+        return left.getDigest() != null && left.getDigest().equals(right.getDigest());
+    }
+
+    /** The same test the digests make: files stored before hashing compare by size alone. */
+    private static boolean sameContent(File left, File right) {
+        return left.getFileSize() == right.getFileSize()
+                && Objects.equals(left.getContentHash(), right.getContentHash());
+    }
+
+    private static Map<String, StorageEntity> byName(List<StorageEntity> children) {
+        Map<String, StorageEntity> byName = new HashMap<>(children.size() * 2);
+        for (StorageEntity child : children) {
+            byName.put(child.getName(), child);
+        }
+        return byName;
+    }
+}
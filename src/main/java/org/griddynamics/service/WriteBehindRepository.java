@@ -0,0 +1,643 @@
+package org.griddynamics.service;
+
+import org.griddynamics.domain.Directory;
+import org.griddynamics.domain.File;
+import org.griddynamics.domain.Page;
+import org.griddynamics.domain.StorageEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metadata repository that answers from memory and writes to PostgreSQL behind the caller's back.
+ * <p>
+ * A change is applied to an {@link InMemoryMetadataRepository} view, appended to an
+ * {@link OperationJournal} and returns once the journal is fsync'd, which concurrent changes
+ * share. A single worker thread replays the journal to the database over its own connection, in
+ * transactions of up to {@code batchSize} records that also store the last record applied, so a
+ * replay cut short by a crash resumes where the last commit left off. On start the view is
+ * loaded from the database and the records not yet replayed are applied to it again.
+ * <p>
+ * A change the journal fails to take is taken back out of the view before the caller sees the
+ * error. Blobs of deleted files are deleted once the replay has removed their rows. A record the
+ * database rejects for its content, such as a name conflict, is logged, counted, written to a
+ * {@code .rejected} file next to the journal and skipped, so it does not hold up the records
+ * behind it; the view is then rebuilt from the database and the records not replayed yet, so it
+ * drops the change the database never accepted.
+ * <p>
+ * The database lags behind by the replay backlog, and the view assumes it is the only writer:
+ * changes made to the database by another process while this repository is open are not seen,
+ * and IDs it hands out may collide with theirs.
+ */
+public class WriteBehindRepository implements MetadataRepository, AutoCloseable {
+
+    /** Longest pause between attempts after a replay fails. */
+    private static final long MAX_BACKOFF_MS = 30_000;
+
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindRepository.class);
+
+    private final DatabaseService db;
+    private final Connection connection;
+    private final String journalName;
+    private final int batchSize;
+    /** Replaced, holding {@code writeLock}, when it is rebuilt after a rejected record. */
+    private volatile InMemoryMetadataRepository view = new InMemoryMetadataRepository();
+    /** Keeps the order of the journal the order in which changes reached the view. */
+    private final Object writeLock = new Object();
+    /** Records on disk and not yet replayed, in order; guarded by {@code this}. */
+    private final Deque<JournalRecord> backlog = new ArrayDeque<>();
+    /** How to take back view changes not yet on disk, in journal order; guarded by {@code writeLock}. */
+    private final Deque<Undo> undos = new ArrayDeque<>();
+    /** Records appended and possibly not replayed yet, in order; guarded by {@code writeLock}. */
+    private final Deque<JournalRecord> unreplayed = new ArrayDeque<>();
+    private final OperationJournal journal;
+    private final Path rejectedFile;
+    private final Thread replayer;
+    private long appliedSeq;
+    private long replayedRecords;
+    private long replayBatches;
+    private long rejectedRecords;
+    private boolean replayFailing;
+    private boolean closed;
+
+    /**
+     * Loads the view from the database, recovers the journal and starts replaying it.
+     *
+     * @param dataSource  The source of the replay connection.
+     * @param dbService   The service whose indexes and caches the replay shares.
+     * @param journalFile The journal file; its name identifies the journal in the database.
+     * @param batchSize   The maximum number of records replayed per transaction.
+     */
+    public WriteBehindRepository(DataSource dataSource, DatabaseService dbService, Path journalFile, int batchSize) {
+        try {
+            this.connection = dataSource.getConnection();
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to open journal replay connection", e);
+        }
+        this.db = dbService.withConnection(connection);
+        this.journalName = journalFile.getFileName().toString();
+        this.rejectedFile = journalFile.resolveSibling(journalName + ".rejected");
+        this.batchSize = Math.max(1, batchSize);
+        db.getRootDirectory();
+        db.loadInto(view);
+        this.appliedSeq = db.getAppliedJournalSeq(journalName);
+        try {
+            if (journalFile.getParent() != null) Files.createDirectories(journalFile.getParent());
+            this.journal = new OperationJournal(journalFile, appliedSeq + 1, this::enqueue);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open journal " + journalFile, e);
+        }
+        for (JournalRecord record : journal.getRecovered()) {
+            if (record.seq() <= appliedSeq) {
+                // Replayed, but the blob may have outlived a crash right after the commit
+                deleteBlob(record);
+                continue;
+            }
+            reapply(view, record);
+            backlog.add(record);
+            unreplayed.add(record);
+        }
+        if (!backlog.isEmpty()) {
+            log.info("Replaying {} journal record(s) left from the last run", backlog.size());
+        }
+        this.replayer = new Thread(this::replayLoop, "journal-replay");
+        replayer.setDaemon(true);
+        replayer.start();
+    }
+
+    @Override
+    public Directory getRootDirectory() {
+        return view.getRootDirectory();
+    }
+
+    @Override
+    public Directory getDirectory(int directoryId) {
+        return view.getDirectory(directoryId);
+    }
+
+    @Override
+    public File getFile(int fileId) {
+        return view.getFile(fileId);
+    }
+
+    @Override
+    public void saveDirectory(Directory directory) {
+        long seq;
+        synchronized (writeLock) {
+            view.saveDirectory(directory);
+            int id = directory.getId();
+            seq = append(JournalRecord.created(view.getDirectory(id)), () -> view.forget(id));
+        }
+        awaitDurable(seq);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The blob is written while holding the journal order, so uploads through this repository
+     * store their blobs one at a time.
+     */
+    @Override
+    public void saveFile(File file, InputStream fileStream, StorageService storageService) {
+        long seq;
+        synchronized (writeLock) {
+            view.saveFile(file, fileStream, storageService);
+            int id = file.getId();
+            seq = append(JournalRecord.created(view.getFile(id), storagePath(file, storageService)), () -> {
+                view.forget(id);
+                storageService.deleteFileFromDisk(id, file.getFileType());
+            });
+        }
+        awaitDurable(seq);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The blob is deleted by the replay once the row is gone from the database, so neither a
+     * crash nor a replay that has not caught up can leave a row whose blob is gone.
+     */
+    @Override
+    public void deleteFile(File file, StorageService storageService) {
+        long seq;
+        synchronized (writeLock) {
+            File removed = view.getFile(file.getId());
+            if (removed == null) return;
+            view.forget(removed.getId());
+            seq = append(JournalRecord.deleted(removed, storagePath(removed, storageService)), () -> view.restore(removed));
+        }
+        awaitDurable(seq);
+    }
+
+    @Override
+    public void deleteDirectory(int directoryId) {
+        long seq;
+        synchronized (writeLock) {
+            Directory directory = view.getDirectory(directoryId);
+            if (directory == null) return;
+            List<StorageEntity> subtree = subtree(directory);
+            view.deleteDirectory(directoryId);
+            seq = append(JournalRecord.deleted(directoryId, true), () -> subtree.forEach(view::restore));
+        }
+        awaitDurable(seq);
+    }
+
+    @Override
+    public void rename(int id, String newName, boolean isDirectory) {
+        long seq;
+        synchronized (writeLock) {
+            StorageEntity item = isDirectory ? view.getDirectory(id) : view.getFile(id);
+            if (item == null) return;
+            view.rename(id, newName, isDirectory);
+            seq = append(JournalRecord.renamed(id, newName, isDirectory),
+                    () -> view.rename(id, item.getName(), isDirectory));
+        }
+        awaitDurable(seq);
+    }
+
+    @Override
+    public void move(int id, int newParentId, String newPath) {
+        long seq;
+        synchronized (writeLock) {
+            List<StorageEntity> items = view.getItemsByIds(new int[]{id});
+            if (items.isEmpty()) return;
+            StorageEntity item = items.get(0);
+            view.move(id, newParentId, newPath);
+            seq = append(JournalRecord.moved(id, newParentId, newPath),
+                    () -> view.move(id, item.getParentId(), item.getPath()));
+        }
+        awaitDurable(seq);
+    }
+
+    @Override
+    public StorageEntity resolvePath(String path) {
+        return view.resolvePath(path);
+    }
+
+    @Override
+    public Integer resolveDirectoryId(String path) {
+        return view.resolveDirectoryId(path);
+    }
+
+    @Override
+    public List<StorageEntity> getChildren(int parentId) {
+        return view.getChildren(parentId);
+    }
+
+    @Override
+    public List<StorageEntity> getDirectoryContents(int directoryId) {
+        return view.getDirectoryContents(directoryId);
+    }
+
+    @Override
+    public List<StorageEntity> searchFilesAndDirectories(String query) {
+        return view.searchFilesAndDirectories(query);
+    }
+
+    @Override
+    public Page<StorageEntity> searchFilesAndDirectories(String query, StorageEntity after, int limit) {
+        return view.searchFilesAndDirectories(query, after, limit);
+    }
+
+    @Override
+    public List<StorageEntity> getItemsByIds(int[] ids) {
+        return view.getItemsByIds(ids);
+    }
+
+    @Override
+    public List<Directory> getAllDirectories() {
+        return view.getAllDirectories();
+    }
+
+    @Override
+    public Set<Integer> getAllDescendantDirectoryIds(int dirId) {
+        return view.getAllDescendantDirectoryIds(dirId);
+    }
+
+    /**
+     * Waits until every change made so far has been replayed to the database.
+     *
+     * @param timeoutMs The longest time to wait, in milliseconds.
+     * @return {@code true} if the database caught up, {@code false} on timeout.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public boolean awaitReplay(long timeoutMs) throws InterruptedException {
+        long target = journal.getDurableSeq();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        synchronized (this) {
+            while (appliedSeq < target) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) return false;
+                wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of records on disk that the database has not seen yet.
+     *
+     * @return The replay backlog.
+     */
+    public synchronized int getBacklog() {
+        return backlog.size();
+    }
+
+    /**
+     * Returns the last journal record applied to the database.
+     *
+     * @return Its sequence number.
+     */
+    public synchronized long getAppliedSeq() {
+        return appliedSeq;
+    }
+
+    /**
+     * Returns the number of records replayed since the repository was opened.
+     *
+     * @return The record count.
+     */
+    public synchronized long getReplayedRecords() {
+        return replayedRecords;
+    }
+
+    /**
+     * Returns the number of replay transactions committed since the repository was opened.
+     *
+     * @return The transaction count.
+     */
+    public synchronized long getReplayBatches() {
+        return replayBatches;
+    }
+
+    /**
+     * Returns the number of records the database rejected and the replay skipped since the
+     * repository was opened.
+     *
+     * @return The record count.
+     */
+    public synchronized long getRejectedRecords() {
+        return rejectedRecords;
+    }
+
+    /**
+     * Returns the number of journal fsyncs since the repository was opened.
+     *
+     * @return The fsync count.
+     */
+    public long getSyncCount() {
+        return journal.getSyncCount();
+    }
+
+    /**
+     * Flushes the journal and waits briefly for the replay to catch up. Whatever is left stays
+     * in the journal and is replayed on the next start.
+     */
+    @Override
+    public void close() {
+        try {
+            journal.close();
+        } catch (IOException e) {
+            log.warn("Failed to close journal", e);
+        }
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            replayer.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (!backlog.isEmpty()) {
+                log.warn("{} journal record(s) not replayed yet; they will be replayed on the next start", backlog.size());
+            }
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            log.warn("Failed to close journal replay connection", e);
+        }
+    }
+
+    /**
+     * Appends a change already applied to the view, or takes it back out if the journal refuses it.
+     * Called holding {@code writeLock}.
+     */
+    private long append(JournalRecord record, Runnable undo) {
+        long seq;
+        try {
+            seq = journal.append(record);
+        } catch (IOException e) {
+            undo.run();
+            throw new RuntimeException("Failed to write journal", e);
+        }
+        long durableSeq = journal.getDurableSeq();
+        while (!undos.isEmpty() && undos.peekFirst().seq() <= durableSeq) undos.pollFirst();
+        undos.addLast(new Undo(seq, undo));
+        long applied = getAppliedSeq();
+        while (!unreplayed.isEmpty() && unreplayed.peekFirst().seq() <= applied) unreplayed.pollFirst();
+        unreplayed.addLast(record.at(seq));
+        return seq;
+    }
+
+    /**
+     * Waits for a change to reach the disk. If the journal write fails, every change it did not
+     * get to is taken back out of the view, newest first; the journal takes no more after that.
+     */
+    private void awaitDurable(long seq) {
+        try {
+            journal.awaitDurable(seq);
+        } catch (IOException e) {
+            synchronized (writeLock) {
+                long durableSeq = journal.getDurableSeq();
+                while (!undos.isEmpty() && undos.peekLast().seq() > durableSeq) {
+                    try {
+                        undos.pollLast().action().run();
+                    } catch (RuntimeException undoFailed) {
+                        log.warn("Failed to take back a change the journal did not write", undoFailed);
+                    }
+                }
+                undos.clear();
+                unreplayed.removeIf(record -> record.seq() > durableSeq);
+            }
+            throw new RuntimeException("Failed to write journal", e);
+        }
+    }
+
+    /** Returns a directory and everything below it, parents first, as they are now. */
+    private List<StorageEntity> subtree(Directory directory) {
+        List<StorageEntity> items = new ArrayList<>();
+        items.add(directory);
+        for (int i = 0; i < items.size(); i++) {
+            if (items.get(i) instanceof Directory dir) items.addAll(view.getChildren(dir.getId()));
+        }
+        return items;
+    }
+
+    private static String storagePath(File file, StorageService storageService) {
+        return storageService.getStorageFolder() + "/" + file.getId() + "." + file.getFileType();
+    }
+
+    /** Deletes the blob of a file deletion the database has applied. */
+    private void deleteBlob(JournalRecord record) {
+        if (record.op() != JournalRecord.Op.DELETE || record.directory() || record.storagePath() == null) return;
+        try {
+            Files.deleteIfExists(Paths.get(record.storagePath()));
+        } catch (IOException e) {
+            log.warn("Failed to delete blob {}", record.storagePath(), e);
+        }
+    }
+
+    /**
+     * Writes a record the database keeps rejecting to the {@code .rejected} file and moves the
+     * replay position past it; the caller then rebuilds the view without it.
+     */
+    private void reject(JournalRecord record, RuntimeException cause) {
+        log.error("Database rejected journal record {}, skipping it and reloading the view", record, cause);
+        try {
+            Files.writeString(rejectedFile, record + System.lineSeparator(),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            log.warn("Failed to write rejected journal record to {}", rejectedFile, e);
+        }
+        db.skipJournalRecord(journalName, record.seq());
+        synchronized (this) {
+            backlog.poll();
+            appliedSeq = record.seq();
+            rejectedRecords++;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Tells a record the database will never accept, such as one that breaks a constraint, from
+     * a failure that may pass, such as a lost connection.
+     */
+    private static boolean isRejection(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException sql && sql.getSQLState() != null
+                    && (sql.getSQLState().startsWith("23") || sql.getSQLState().startsWith("22"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void truncateJournal(long lastSeq) {
+        try {
+            journal.truncateIfReplayed(lastSeq);
+        } catch (IOException e) {
+            log.warn("Failed to truncate replayed journal", e);
+        }
+    }
+
+    /** Called by the journal's flusher with each group of records once it is on disk. */
+    private synchronized void enqueue(List<JournalRecord> records) {
+        backlog.addAll(records);
+        notifyAll();
+    }
+
+    /**
+     * Rebuilds the view from the database and the records it has not applied yet, after it
+     * rejected one. Holds {@code writeLock} throughout, so changes wait for the reload.
+     */
+    private void reloadView() {
+        synchronized (writeLock) {
+            long applied = getAppliedSeq();
+            InMemoryMetadataRepository reloaded = new InMemoryMetadataRepository();
+            db.loadInto(reloaded);
+            unreplayed.removeIf(record -> record.seq() <= applied);
+            for (JournalRecord record : unreplayed) {
+                try {
+                    reapply(reloaded, record);
+                } catch (RuntimeException e) {
+                    // It depends on the rejected change; the database will most likely reject it too
+                    log.warn("Journal record {} no longer applies to the view", record, e);
+                }
+            }
+            view = reloaded;
+        }
+        log.info("Reloaded the view from the database after a rejected journal record");
+    }
+
+    /** Applies a recovered record to a view, as it was applied before the restart. */
+    private static void reapply(InMemoryMetadataRepository view, JournalRecord record) {
+        switch (record.op()) {
+            case CREATE -> {
+                StorageEntity item;
+                if (record.directory()) {
+                    item = new Directory();
+                } else {
+                    File file = new File();
+                    file.setFileType(record.fileType());
+                    file.setFileSize(record.fileSize());
+                    file.setContentHash(record.contentHash());
+                    item = file;
+                }
+                item.setId(record.id());
+                item.setParentId(record.parentId());
+                item.setName(record.name());
+                item.setPath(record.path());
+                item.setCreatedAt(record.time());
+                item.setUpdatedAt(record.time());
+                view.restore(item);
+            }
+            case DELETE -> view.forget(record.id());
+            case RENAME -> view.rename(record.id(), record.name(), record.directory());
+            case MOVE -> view.move(record.id(), record.parentId(), record.path());
+        }
+    }
+
+    private void replayLoop() {
+        long backoffMs = 100;
+        // Records left to replay one at a time, to find the one a rejected batch tripped over
+        int isolate = 0;
+        // Whether the view still shows a change the database rejected
+        boolean staleView = false;
+        while (true) {
+            if (staleView) {
+                try {
+                    reloadView();
+                    staleView = false;
+                } catch (RuntimeException e) {
+                    log.warn("Failed to reload the view after a rejected journal record, retrying", e);
+                    if (!pause(backoffMs)) return;
+                    backoffMs = Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+                    continue;
+                }
+            }
+            List<JournalRecord> batch;
+            synchronized (this) {
+                while (backlog.isEmpty() && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (backlog.isEmpty()) return;
+                int limit = isolate > 0 ? 1 : batchSize;
+                batch = new ArrayList<>(Math.min(limit, backlog.size()));
+                for (JournalRecord record : backlog) {
+                    if (batch.size() == limit) break;
+                    batch.add(record);
+                }
+            }
+            RuntimeException failure;
+            try {
+                int applied = db.replayJournal(journalName, batch);
+                long lastSeq = batch.get(batch.size() - 1).seq();
+                batch.forEach(this::deleteBlob);
+                synchronized (this) {
+                    for (int i = 0; i < batch.size(); i++) backlog.poll();
+                    appliedSeq = lastSeq;
+                    replayedRecords += applied;
+                    replayBatches++;
+                    replayFailing = false;
+                    notifyAll();
+                }
+                if (isolate > 0) isolate--;
+                backoffMs = 100;
+                truncateJournal(lastSeq);
+                continue;
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            if (isRejection(failure)) {
+                if (batch.size() > 1) {
+                    isolate = batch.size();
+                    continue;
+                }
+                try {
+                    reject(batch.get(0), failure);
+                    staleView = true;
+                    if (isolate > 0) isolate--;
+                    backoffMs = 100;
+                    truncateJournal(batch.get(0).seq());
+                    continue;
+                } catch (RuntimeException e) {
+                    failure = e;
+                }
+            }
+            synchronized (this) {
+                // Log once per outage; the database may simply be down for a while
+                if (!replayFailing) log.warn("Failed to replay journal, retrying", failure);
+                replayFailing = true;
+            }
+            if (!pause(backoffMs)) return;
+            backoffMs = Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+        }
+    }
+
+    /** Waits before another attempt; {@code false} if the repository closed or the wait was interrupted. */
+    private synchronized boolean pause(long ms) {
+        if (closed) return false;
+        try {
+            wait(ms);
+        } catch (InterruptedException e) {
+            return false;
+        }
+        return true;
+    }
+
+    /** Takes a change back out of the view if the journal record {@code seq} never reaches the disk. */
+    private record Undo(long seq, Runnable action) {
+    }
+}
@@ -0,0 +1,505 @@
+package org.griddynamics.snapshot;
+
+import org.griddynamics.domain.Directory;
+import org.griddynamics.domain.File;
+import org.griddynamics.domain.Page;
+import org.griddynamics.domain.StorageEntity;
+import org.griddynamics.service.DatabaseService;
+import org.griddynamics.service.InMemoryMetadataRepository;
+import org.griddynamics.service.MetadataRepository;
+import org.griddynamics.service.StorageService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * A read-only copy of the drive metadata in one memory-mapped file, written by {@link SnapshotWriter}.
+ * <p>
+ * The file is columnar and little-endian: a 64-byte header, then one section per column (IDs,
+ * parent IDs, flags, sizes, file counts, creation and update times, name and file type
+ * references), the children of every directory sorted by name, and a string table holding every
+ * distinct name and file type once. Each section starts on an 8-byte boundary and is mapped on
+ * its own, so opening a snapshot reads only the header and the page cache does the rest. Rows
+ * are in ID order, so an ID is found by binary search, a path segment by binary search among the
+ * children, and a path is rebuilt by walking the parents. The string table is sorted, so name
+ * search matches each distinct name once, then scans the name column and keeps the first
+ * matches in search order by comparing integers. Nothing here needs the database: the
+ * snapshot can be browsed with PostgreSQL down. Digests and content hashes are not kept, and
+ * every change fails with {@link UnsupportedOperationException}.
+ */
+public class MetadataSnapshot implements MetadataRepository {
+
+    static final long MAGIC = 0x3150414e_53565244L; // "DRVSNAP1"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 64;
+    static final byte DIRECTORY = 1;
+    /** Stands for a missing timestamp in the time columns. */
+    static final long NO_TIME = Long.MIN_VALUE;
+
+    private final int rows;
+    private final int strings;
+    private final int rootRow;
+    private final LocalDateTime exportedAt;
+    private final IntBuffer ids;
+    private final IntBuffer parentIds;
+    private final ByteBuffer flags;
+    private final LongBuffer sizes;
+    private final LongBuffer fileCounts;
+    private final LongBuffer created;
+    private final LongBuffer updated;
+    private final IntBuffer nameRefs;
+    private final IntBuffer typeRefs;
+    private final IntBuffer childStart;
+    private final IntBuffer childRows;
+    private final IntBuffer stringStart;
+    private final ByteBuffer stringBytes;
+
+    /** The byte offset of every section, for a given number of rows and strings. */
+    record Layout(long ids, long parentIds, long flags, long sizes, long fileCounts, long created, long updated,
+                  long names, long types, long childStart, long childRows, long stringStart, long stringBytes,
+                  long end) {
+
+        static Layout of(int rows, int strings, long stringBytes) {
+            long ids = HEADER_BYTES;
+            long parentIds = align(ids + 4L * rows);
+            long flags = align(parentIds + 4L * rows);
+            long sizes = align(flags + rows);
+            long fileCounts = sizes + 8L * rows;
+            long created = fileCounts + 8L * rows;
+            long updated = created + 8L * rows;
+            long names = updated + 8L * rows;
+            long types = align(names + 4L * rows);
+            long childStart = align(types + 4L * rows);
+            long childRows = align(childStart + 4L * (rows + 1));
+            long stringStart = align(childRows + 4L * rows);
+            long bytes = align(stringStart + 4L * (strings + 1));
+            return new Layout(ids, parentIds, flags, sizes, fileCounts, created, updated, names, types,
+                    childStart, childRows, stringStart, bytes, bytes + stringBytes);
+        }
+
+        private static long align(long offset) {
+            return (offset + 7) & ~7L;
+        }
+    }
+
+    private MetadataSnapshot(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining() && channel.read(header) >= 0) {
+            // Reads the whole header
+        }
+        header.flip();
+        if (header.remaining() < HEADER_BYTES || header.getLong() != MAGIC) {
+            throw new IOException("Not a metadata snapshot");
+        }
+        int version = header.getInt();
+        if (version != VERSION) throw new IOException("Unsupported snapshot version " + version);
+        rows = header.getInt();
+        strings = header.getInt();
+        int stringLength = header.getInt();
+        rootRow = header.getInt();
+        header.getInt();
+        exportedAt = toDateTime(header.getLong());
+        Layout layout = Layout.of(rows, strings, stringLength);
+        if (channel.size() < layout.end()) throw new IOException("Truncated metadata snapshot");
+
+        ids = map(channel, layout.ids(), 4L * rows).asIntBuffer();
+        parentIds = map(channel, layout.parentIds(), 4L * rows).asIntBuffer();
+        flags = map(channel, layout.flags(), rows);
+        sizes = map(channel, layout.sizes(), 8L * rows).asLongBuffer();
+        fileCounts = map(channel, layout.fileCounts(), 8L * rows).asLongBuffer();
+        created = map(channel, layout.created(), 8L * rows).asLongBuffer();
+        updated = map(channel, layout.updated(), 8L * rows).asLongBuffer();
+        nameRefs = map(channel, layout.names(), 4L * rows).asIntBuffer();
+        typeRefs = map(channel, layout.types(), 4L * rows).asIntBuffer();
+        childStart = map(channel, layout.childStart(), 4L * (rows + 1)).asIntBuffer();
+        childRows = map(channel, layout.childRows(), 4L * rows).asIntBuffer();
+        stringStart = map(channel, layout.stringStart(), 4L * (strings + 1)).asIntBuffer();
+        stringBytes = map(channel, layout.stringBytes(), stringLength);
+    }
+
+    /**
+     * Opens a snapshot. The mappings outlive the file handle, which is closed before returning.
+     *
+     * @param file The snapshot file.
+     * @return The snapshot.
+     * @throws IOException If the file cannot be read or is not a snapshot.
+     */
+    public static MetadataSnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new MetadataSnapshot(channel);
+        }
+    }
+
+    /**
+     * Returns the number of items in the snapshot.
+     *
+     * @return The number of directories and files, including the root.
+     */
+    public int size() {
+        return rows;
+    }
+
+    /**
+     * Returns when the snapshot was written.
+     *
+     * @return The export time.
+     */
+    public LocalDateTime getExportedAt() {
+        return exportedAt;
+    }
+
+    @Override
+    public Directory getRootDirectory() {
+        return rootRow < 0 ? null : (Directory) entity(rootRow, path(rootRow));
+    }
+
+    @Override
+    public Directory getDirectory(int directoryId) {
+        int row = rowOf(directoryId);
+        return row >= 0 && isDirectory(row) ? (Directory) entity(row, path(row)) : null;
+    }
+
+    @Override
+    public File getFile(int fileId) {
+        int row = rowOf(fileId);
+        return row >= 0 && !isDirectory(row) ? (File) entity(row, path(row)) : null;
+    }
+
+    @Override
+    public void saveDirectory(Directory directory) {
+        throw readOnly();
+    }
+
+    @Override
+    public void saveFile(File file, InputStream fileStream, StorageService storageService) {
+        throw readOnly();
+    }
+
+    @Override
+    public void deleteFile(File file, StorageService storageService) {
+        throw readOnly();
+    }
+
+    @Override
+    public void deleteDirectory(int directoryId) {
+        throw readOnly();
+    }
+
+    @Override
+    public void rename(int id, String newName, boolean isDirectory) {
+        throw readOnly();
+    }
+
+    @Override
+    public void move(int id, int newParentId, String newPath) {
+        throw readOnly();
+    }
+
+    @Override
+    public StorageEntity resolvePath(String path) {
+        int row = rowAt(path);
+        return row >= 0 ? entity(row, path) : null;
+    }
+
+    @Override
+    public Integer resolveDirectoryId(String path) {
+        int row = rowAt(path);
+        return row >= 0 && isDirectory(row) ? ids.get(row) : null;
+    }
+
+    @Override
+    public List<StorageEntity> getChildren(int parentId) {
+        int parent = rowOf(parentId);
+        List<StorageEntity> children = new ArrayList<>();
+        if (parent < 0 || !isDirectory(parent)) return children;
+        String parentPath = path(parent);
+        for (int i = childStart.get(parent); i < childStart.get(parent + 1); i++) {
+            int child = childRows.get(i);
+            children.add(entity(child, parentPath + "/" + string(nameRefs.get(child))));
+        }
+        return children;
+    }
+
+    @Override
+    public List<StorageEntity> getDirectoryContents(int directoryId) {
+        return getChildren(directoryId);
+    }
+
+    @Override
+    public List<StorageEntity> searchFilesAndDirectories(String query) {
+        return search(query.contains("%") || query.contains("_") || query.contains("\\") ? query : null,
+                query, null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalArgumentException If {@code after} is not an item of this snapshot.
+     */
+    @Override
+    public Page<StorageEntity> searchFilesAndDirectories(String query, StorageEntity after, int limit) {
+        return Page.of(search(null, query, after, limit + 1), limit);
+    }
+
+    @Override
+    public List<StorageEntity> getItemsByIds(int[] ids) {
+        List<StorageEntity> items = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            int row = rowOf(id);
+            if (row >= 0) items.add(entity(row, path(row)));
+        }
+        return items;
+    }
+
+    @Override
+    public List<Directory> getAllDirectories() {
+        List<Directory> directories = new ArrayList<>();
+        for (int row = 0; row < rows; row++) {
+            if (isDirectory(row)) directories.add((Directory) entity(row, path(row)));
+        }
+        return directories;
+    }
+
+    @Override
+    public Set<Integer> getAllDescendantDirectoryIds(int dirId) {
+        Set<Integer> descendants = new HashSet<>();
+        Queue<Integer> queue = new ArrayDeque<>();
+        int start = rowOf(dirId);
+        if (start >= 0 && isDirectory(start)) queue.add(start);
+        while (!queue.isEmpty()) {
+            int row = queue.poll();
+            for (int i = childStart.get(row); i < childStart.get(row + 1); i++) {
+                int child = childRows.get(i);
+                if (isDirectory(child) && descendants.add(ids.get(child))) queue.add(child);
+            }
+        }
+        return descendants;
+    }
+
+    /**
+     * Finds the first matches that sort after a cursor. Each distinct name is matched once; the
+     * name column is then scanned for the smallest {@link #searchKey(int)} values.
+     *
+     * @param like    A LIKE pattern, or {@code null} to find {@code text} literally.
+     * @param text    The text to find when there is no pattern.
+     * @param after   The cursor, or {@code null}.
+     * @param limit   The maximum number of matches.
+     */
+    private List<StorageEntity> search(String like, String text, StorageEntity after, int limit) {
+        boolean[] hits = new boolean[strings];
+        if (like != null) {
+            Pattern pattern = InMemoryMetadataRepository.likePattern("%" + like + "%");
+            for (int ref = 0; ref < strings; ref++) {
+                hits[ref] = pattern.matcher(string(ref).toLowerCase(Locale.ROOT)).matches();
+            }
+        } else {
+            String lower = text.toLowerCase(Locale.ROOT);
+            byte[] needle = lower.getBytes(StandardCharsets.UTF_8);
+            boolean ascii = needle.length == lower.length();
+            for (int ref = 0; ref < strings; ref++) {
+                hits[ref] = ascii ? containsAscii(ref, needle) : string(ref).toLowerCase(Locale.ROOT).contains(lower);
+            }
+        }
+        long cursor = -1;
+        if (after != null) {
+            int row = rowOf(after.getId());
+            if (row < 0) throw new IllegalArgumentException("The cursor is not in the snapshot: " + after.getId());
+            cursor = searchKey(row);
+        }
+        // Keys are appended, then sorted and cut back to the limit whenever twice as many pile up
+        long[] keys = new long[64];
+        long ceiling = Long.MAX_VALUE;
+        int found = 0;
+        for (int row = 0; row < rows; row++) {
+            if (!hits[nameRefs.get(row)]) continue;
+            long key = searchKey(row);
+            if (key <= cursor || key > ceiling) continue;
+            if (found == keys.length) {
+                if (found >= 2L * limit) {
+                    Arrays.sort(keys, 0, found);
+                    found = limit;
+                    ceiling = keys[limit - 1];
+                    if (key > ceiling) continue;
+                } else {
+                    keys = Arrays.copyOf(keys, (int) Math.min(Integer.MAX_VALUE - 8, 2L * found));
+                }
+            }
+            keys[found++] = key;
+        }
+        Arrays.sort(keys, 0, found);
+        found = Math.min(found, limit);
+        List<StorageEntity> matches = new ArrayList<>(found);
+        for (int i = 0; i < found; i++) {
+            int row = (int) (keys[i] & Integer.MAX_VALUE);
+            matches.add(entity(row, path(row)));
+        }
+        return matches;
+    }
+
+    /**
+     * The position of a row in the search order: directories first, then by name and ID. The
+     * string table is sorted and the rows are in ID order, so the key is made of integers only.
+     */
+    private long searchKey(int row) {
+        return (isDirectory(row) ? 0L : 1L << 62) | (long) nameRefs.get(row) << 31 | row;
+    }
+
+    /**
+     * Whether a string contains lower-case ASCII text, ignoring ASCII case, read straight from the
+     * mapped bytes. A string with other characters is decoded and lower-cased instead.
+     */
+    private boolean containsAscii(int ref, byte[] needle) {
+        int start = stringStart.get(ref);
+        int end = stringStart.get(ref + 1);
+        for (int i = start; i < end; i++) {
+            if (stringBytes.get(i) < 0) {
+                return string(ref).toLowerCase(Locale.ROOT).contains(new String(needle, StandardCharsets.US_ASCII));
+            }
+        }
+        for (int i = start; i <= end - needle.length; i++) {
+            int j = 0;
+            while (j < needle.length && lowerAscii(stringBytes.get(i + j)) == needle[j]) j++;
+            if (j == needle.length) return true;
+        }
+        return false;
+    }
+
+    private static byte lowerAscii(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    /** Returns the row of an ID, or -1 if the snapshot does not have it. */
+    private int rowOf(int id) {
+        int low = 0;
+        int high = rows - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midId = ids.get(mid);
+            if (midId < id) {
+                low = mid + 1;
+            } else if (midId > id) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the row at a normalized path, or -1, searching each folder's sorted children. */
+    private int rowAt(String path) {
+        if (rootRow < 0 || path == null) return -1;
+        String[] segments = path.split("/");
+        if (!segments[0].equals(string(nameRefs.get(rootRow)))) return -1;
+        int row = rootRow;
+        for (int s = 1; s < segments.length && row >= 0; s++) {
+            row = child(row, segments[s]);
+        }
+        return row;
+    }
+
+    private int child(int parent, String name) {
+        int low = childStart.get(parent);
+        int high = childStart.get(parent + 1) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = string(nameRefs.get(childRows.get(mid))).compareTo(name);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return childRows.get(mid);
+            }
+        }
+        return -1;
+    }
+
+    /** Rebuilds the logical path of a row from the names of its ancestors. */
+    private String path(int row) {
+        List<String> names = new ArrayList<>();
+        for (int current = row; current >= 0; ) {
+            names.add(string(nameRefs.get(current)));
+            int parentId = parentIds.get(current);
+            current = parentId == 0 ? -1 : rowOf(parentId);
+        }
+        StringBuilder path = new StringBuilder();
+        for (int i = names.size() - 1; i >= 0; i--) {
+            path.append(names.get(i));
+            if (i > 0) path.append('/');
+        }
+        return path.toString();
+    }
+
+    private boolean isDirectory(int row) {
+        return flags.get(row) == DIRECTORY;
+    }
+
+    private StorageEntity entity(int row, String path) {
+        StorageEntity entity;
+        if (isDirectory(row)) {
+            Directory dir = new Directory();
+            dir.setChildCount(childStart.get(row + 1) - childStart.get(row));
+            dir.setFileCount(fileCounts.get(row));
+            dir.setTotalBytes(sizes.get(row));
+            entity = dir;
+        } else {
+            File file = new File();
+            int typeRef = typeRefs.get(row);
+            file.setFileType(typeRef < 0 ? null : string(typeRef));
+            file.setFileSize(sizes.get(row));
+            entity = file;
+        }
+        entity.setId(ids.get(row));
+        entity.setParentId(parentIds.get(row));
+        entity.setName(string(nameRefs.get(row)));
+        entity.setPath(path);
+        entity.setCreatedAt(toDateTime(created.get(row)));
+        entity.setUpdatedAt(toDateTime(updated.get(row)));
+        return entity;
+    }
+
+    private String string(int ref) {
+        int start = stringStart.get(ref);
+        byte[] bytes = new byte[stringStart.get(ref + 1) - start];
+        stringBytes.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer map(FileChannel channel, long offset, long length) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("The metadata snapshot is read-only");
+    }
+
+    static long toMillis(LocalDateTime time) {
+        return time == null ? NO_TIME : time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    static LocalDateTime toDateTime(long millis) {
+        return millis == NO_TIME ? null
+                : LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000), (int) Math.floorMod(millis, 1000) * 1_000_000,
+                ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,276 @@
+package org.griddynamics.snapshot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the rows of {@code storage_entities} and writes them as a {@link MetadataSnapshot}.
+ * <p>
+ * Rows must be added in ascending ID order, as the export query returns them. Names and file
+ * types go into one string table, each distinct string once. On {@link #write(Path)} the string
+ * table is sorted, so comparing two references compares the strings, and the children of every
+ * directory are grouped and sorted by name, so the reader can list a folder and resolve a path
+ * segment without a scan. The file is written next to the target and moved into place, so
+ * readers never see a partial snapshot.
+ */
+public class SnapshotWriter {
+
+    private int rows;
+    private int[] ids = new int[1024];
+    private int[] parentIds = new int[1024];
+    private byte[] flags = new byte[1024];
+    private long[] sizes = new long[1024];
+    private long[] fileCounts = new long[1024];
+    private long[] created = new long[1024];
+    private long[] updated = new long[1024];
+    private int[] nameRefs = new int[1024];
+    private int[] typeRefs = new int[1024];
+    private final Map<String, Integer> stringIds = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+
+    /**
+     * Adds one row.
+     *
+     * @param id          The item ID, greater than that of the previous row.
+     * @param parentId    The parent ID, 0 for the root.
+     * @param isDirectory Whether the item is a directory.
+     * @param name        The name.
+     * @param fileType    The file type, {@code null} for a directory.
+     * @param size        The file size, or the total bytes below a directory.
+     * @param fileCount   The files below a directory, 0 for a file.
+     * @param createdAt   The creation time, or {@code null}.
+     * @param updatedAt   The last update time, or {@code null}.
+     */
+    public void add(int id, int parentId, boolean isDirectory, String name, String fileType, long size,
+                    long fileCount, LocalDateTime createdAt, LocalDateTime updatedAt) {
+        if (rows > 0 && id <= ids[rows - 1]) {
+            throw new IllegalArgumentException("Rows must be added in ascending ID order, got " + id
+                    + " after " + ids[rows - 1]);
+        }
+        if (rows == ids.length) grow();
+        ids[rows] = id;
+        parentIds[rows] = parentId;
+        flags[rows] = isDirectory ? MetadataSnapshot.DIRECTORY : 0;
+        sizes[rows] = size;
+        fileCounts[rows] = fileCount;
+        created[rows] = MetadataSnapshot.toMillis(createdAt);
+        updated[rows] = MetadataSnapshot.toMillis(updatedAt);
+        nameRefs[rows] = intern(name);
+        typeRefs[rows] = fileType == null ? -1 : intern(fileType);
+        rows++;
+    }
+
+    /**
+     * Returns the number of rows added so far.
+     *
+     * @return The number of rows.
+     */
+    public int size() {
+        return rows;
+    }
+
+    /**
+     * Writes the snapshot.
+     *
+     * @param file The snapshot file; replaced if it exists.
+     * @throws IOException If the file cannot be written.
+     */
+    public void write(Path file) throws IOException {
+        Integer[] order = new Integer[strings.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, Comparator.comparing(strings::get));
+        int[] rank = new int[order.length];
+        byte[][] encoded = new byte[order.length][];
+        long stringBytes = 0;
+        for (int i = 0; i < order.length; i++) {
+            rank[order[i]] = i;
+            encoded[i] = strings.get(order[i]).getBytes(StandardCharsets.UTF_8);
+            stringBytes += encoded[i].length;
+        }
+        if (stringBytes > Integer.MAX_VALUE) throw new IOException("String table over 2 GiB");
+        int[] names = new int[rows];
+        int[] types = new int[rows];
+        for (int row = 0; row < rows; row++) {
+            names[row] = rank[nameRefs[row]];
+            types[row] = typeRefs[row] < 0 ? -1 : rank[typeRefs[row]];
+        }
+        int rootRow = -1;
+        int[] childStart = new int[rows + 1];
+        int[] parentRows = new int[rows];
+        for (int row = 0; row < rows; row++) {
+            parentRows[row] = parentIds[row] == 0 ? -1 : Arrays.binarySearch(ids, 0, rows, parentIds[row]);
+            if (parentRows[row] >= 0) {
+                childStart[parentRows[row] + 1]++;
+            } else if (rootRow < 0 && flags[row] == MetadataSnapshot.DIRECTORY) {
+                rootRow = row;
+            }
+        }
+        for (int row = 0; row < rows; row++) {
+            childStart[row + 1] += childStart[row];
+        }
+        int[] childRows = new int[rows];
+        int[] next = Arrays.copyOf(childStart, rows);
+        for (int row = 0; row < rows; row++) {
+            if (parentRows[row] >= 0) childRows[next[parentRows[row]]++] = row;
+        }
+        for (int row = 0; row < rows; row++) {
+            sortByName(childRows, childStart[row], childStart[row + 1], names);
+        }
+
+        MetadataSnapshot.Layout layout = MetadataSnapshot.Layout.of(rows, strings.size(), stringBytes);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Out out = new Out(channel);
+            out.putLong(MetadataSnapshot.MAGIC);
+            out.putInt(MetadataSnapshot.VERSION);
+            out.putInt(rows);
+            out.putInt(strings.size());
+            out.putInt((int) stringBytes);
+            out.putInt(rootRow);
+            out.putInt(0);
+            out.putLong(MetadataSnapshot.toMillis(LocalDateTime.now()));
+            out.padTo(layout.ids());
+            out.putInts(ids, rows);
+            out.padTo(layout.parentIds());
+            out.putInts(parentIds, rows);
+            out.padTo(layout.flags());
+            for (int row = 0; row < rows; row++) out.put(flags[row]);
+            out.padTo(layout.sizes());
+            out.putLongs(sizes, rows);
+            out.padTo(layout.fileCounts());
+            out.putLongs(fileCounts, rows);
+            out.padTo(layout.created());
+            out.putLongs(created, rows);
+            out.padTo(layout.updated());
+            out.putLongs(updated, rows);
+            out.padTo(layout.names());
+            out.putInts(names, rows);
+            out.padTo(layout.types());
+            out.putInts(types, rows);
+            out.padTo(layout.childStart());
+            out.putInts(childStart, rows + 1);
+            out.padTo(layout.childRows());
+            out.putInts(childRows, rows);
+            out.padTo(layout.stringStart());
+            int offset = 0;
+            for (byte[] bytes : encoded) {
+                out.putInt(offset);
+                offset += bytes.length;
+            }
+            out.putInt(offset);
+            out.padTo(layout.stringBytes());
+            for (byte[] bytes : encoded) out.put(bytes);
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private int intern(String value) {
+        Integer ref = stringIds.get(value);
+        if (ref == null) {
+            ref = strings.size();
+            stringIds.put(value, ref);
+            strings.add(value);
+        }
+        return ref;
+    }
+
+    /** Sorts a folder's child rows by name, the order the reader binary-searches in. */
+    private static void sortByName(int[] childRows, int from, int to, int[] names) {
+        if (to - from < 2) return;
+        long[] keys = new long[to - from];
+        for (int i = from; i < to; i++) keys[i - from] = (long) names[childRows[i]] << 32 | childRows[i];
+        Arrays.sort(keys);
+        for (int i = from; i < to; i++) childRows[i] = (int) keys[i - from];
+    }
+
+    private void grow() {
+        int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        parentIds = Arrays.copyOf(parentIds, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        sizes = Arrays.copyOf(sizes, capacity);
+        fileCounts = Arrays.copyOf(fileCounts, capacity);
+        created = Arrays.copyOf(created, capacity);
+        updated = Arrays.copyOf(updated, capacity);
+        nameRefs = Arrays.copyOf(nameRefs, capacity);
+        typeRefs = Arrays.copyOf(typeRefs, capacity);
+    }
+
+    /** Buffered little-endian output that tracks its position for the section padding. */
+    private static final class Out {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        private long position;
+
+        Out(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void putInt(int value) throws IOException {
+            room(Integer.BYTES);
+            buffer.putInt(value);
+            position += Integer.BYTES;
+        }
+
+        void putLong(long value) throws IOException {
+            room(Long.BYTES);
+            buffer.putLong(value);
+            position += Long.BYTES;
+        }
+
+        void put(byte value) throws IOException {
+            room(1);
+            buffer.put(value);
+            position++;
+        }
+
+        void put(byte[] bytes) throws IOException {
+            for (int offset = 0; offset < bytes.length; ) {
+                room(1);
+                int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+                position += length;
+            }
+        }
+
+        void putInts(int[] values, int count) throws IOException {
+            for (int i = 0; i < count; i++) putInt(values[i]);
+        }
+
+        void putLongs(long[] values, int count) throws IOException {
+            for (int i = 0; i < count; i++) putLong(values[i]);
+        }
+
+        void padTo(long offset) throws IOException {
+            while (position < offset) put((byte) 0);
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+
+        private void room(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) flush();
+        }
+    }
+}
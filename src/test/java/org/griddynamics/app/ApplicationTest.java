@@ -1,7 +1,9 @@
 package org.griddynamics.app;
 
+import org.griddynamics.db.ListingOrder;
 import org.griddynamics.domain.Directory;
 import org.griddynamics.domain.File;
+import org.griddynamics.domain.Page;
 import org.griddynamics.service.DatabaseService;
 import org.griddynamics.service.StorageService;
 import org.junit.jupiter.api.BeforeEach;
@@ -14,6 +16,9 @@ import java.io.FileInputStream;
 import java.util.List;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.*;
 
 @SpringBootTest
@@ -63,21 +68,24 @@ public class ApplicationTest {
 
     @Test
     public void testListContents_EmptyDirectory() {
-        when(dbService.getDirectoryContents(rootDir.getId())).thenReturn(List.of());
+        when(dbService.listChildren(eq(rootDir.getId()), eq(ListingOrder.NAME), isNull(), anyInt()))
+                .thenReturn(new Page<>(List.of(), false));
 
+        System.setIn(new ByteArrayInputStream("\n".getBytes()));
         application.listContents(rootDir);
 
-        verify(dbService, times(1)).getDirectoryContents(rootDir.getId());
+        verify(dbService, times(1)).listChildren(eq(rootDir.getId()), eq(ListingOrder.NAME), isNull(), anyInt());
     }
 
     @Test
     public void testSearchItems_NoResults() {
-        when(dbService.searchFilesAndDirectories("nosuchfile")).thenReturn(List.of());
+        when(dbService.searchFilesAndDirectories(eq("nosuchfile"), isNull(), anyInt()))
+                .thenReturn(new Page<>(List.of(), false));
 
         System.setIn(new ByteArrayInputStream("nosuchfile\n".getBytes()));
         application.searchItems();
 
-        verify(dbService, times(1)).searchFilesAndDirectories("nosuchfile");
+        verify(dbService, times(1)).searchFilesAndDirectories(eq("nosuchfile"), isNull(), anyInt());
     }
 
     @Test
@@ -0,0 +1,41 @@
+package org.griddynamics.app;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchCommandTest {
+
+    @Test
+    void parse_SplitsQuotedWordsAndFlags() {
+        BatchCommand command = BatchCommand.parse(3, "  upload \"./q3 report.pdf\" '/root/my docs' --json ");
+
+        assertEquals(3, command.line());
+        assertEquals("upload", command.name());
+        assertEquals(List.of("./q3 report.pdf", "/root/my docs"), command.args());
+        assertEquals(Set.of("json"), command.flags());
+        assertTrue(command.hasFlag("json"));
+    }
+
+    @Test
+    void parse_SkipsBlankAndCommentLines() {
+        assertNull(BatchCommand.parse(1, "   "));
+        assertNull(BatchCommand.parse(2, "# nightly import"));
+    }
+
+    @Test
+    void parse_RejectsUnterminatedQuote() {
+        assertThrows(IllegalArgumentException.class, () -> BatchCommand.parse(1, "mkdir \"/root/a"));
+    }
+
+    @Test
+    void arg_WhenMissing_Throws() {
+        BatchCommand command = BatchCommand.parse(1, "mv /root/a");
+
+        assertEquals("/root/a", command.arg(0));
+        assertThrows(IllegalArgumentException.class, () -> command.arg(1));
+    }
+}
@@ -0,0 +1,169 @@
+package org.griddynamics.app;
+
+import org.griddynamics.db.ListingOrder;
+import org.griddynamics.domain.Directory;
+import org.griddynamics.domain.File;
+import org.griddynamics.service.DatabaseService;
+import org.griddynamics.service.InMemoryMetadataRepository;
+import org.griddynamics.service.StorageService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class BatchRunnerTest {
+
+    private DatabaseService dbService;
+    private Connection connection;
+    private BatchRunner runner;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        dbService = mock(DatabaseService.class);
+        connection = mock(Connection.class);
+        DataSource dataSource = mock(DataSource.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(dbService.withConnection(connection)).thenReturn(dbService);
+        runner = new BatchRunner(dataSource, dbService, mock(StorageService.class), 2);
+    }
+
+    @Test
+    void run_ExecutesCommandsAndPrintsJsonListingInScriptOrder() throws SQLException {
+        Directory root = directory(1, "root", "root");
+        Directory reports = directory(2, "reports", "root/reports");
+        File quote = new File();
+        quote.setId(3);
+        quote.setName("say \"hi\".txt");
+        quote.setPath("root/say \"hi\".txt");
+        quote.setFileSize(12L);
+        quote.setUpdatedAt(LocalDateTime.of(2024, 5, 1, 10, 0));
+        when(dbService.resolveDirectoryId("root")).thenReturn(1);
+        when(dbService.resolvePath("root")).thenReturn(root);
+        when(dbService.streamChildren(1, ListingOrder.NAME)).thenReturn(Stream.of(reports, quote));
+
+        BatchSummary summary = run("mkdir /root/reports", "# listing", "ls / --json", "ls /root --json", "frobnicate x");
+
+        ArgumentCaptor<Directory> saved = ArgumentCaptor.forClass(Directory.class);
+        verify(dbService).saveDirectory(saved.capture());
+        assertEquals("root/reports", saved.getValue().getPath());
+        assertEquals(1, saved.getValue().getParentId());
+        assertEquals("""
+                [
+                  {"id":2,"name":"reports","type":"directory","path":"root/reports","size":0,"updatedAt":"2024-05-01T10:00"},
+                  {"id":3,"name":"say \\"hi\\".txt","type":"file","path":"root/say \\"hi\\".txt","size":12,"updatedAt":"2024-05-01T10:00"}
+                ]
+                """, out.toString(StandardCharsets.UTF_8));
+        String errors = err.toString(StandardCharsets.UTF_8);
+        assertTrue(errors.contains("line 3: ls / --json: Invalid path: /"));
+        assertTrue(errors.contains("line 5: frobnicate x: Unknown command: frobnicate"));
+        assertEquals(4, summary.getTotal());
+        assertEquals(2, summary.getFailed());
+        verify(connection, atLeastOnce()).close();
+    }
+
+    @Test
+    void run_RetriesCommandAbortedByDeadlock() {
+        when(dbService.resolveDirectoryId("root")).thenReturn(1);
+        doThrow(new RuntimeException("Failed to save directory", new SQLException("deadlock detected", "40P01")))
+                .doNothing()
+                .when(dbService).saveDirectory(any(Directory.class));
+
+        BatchSummary summary = run("mkdir a");
+
+        assertEquals(0, summary.getFailed());
+        verify(dbService, times(2)).saveDirectory(any(Directory.class));
+    }
+
+    @Test
+    void run_DoesNotRetryUploadAbortedByDeadlock(@TempDir Path dir) throws IOException {
+        Path local = Files.writeString(dir.resolve("a.txt"), "hello");
+        when(dbService.resolveDirectoryId("root")).thenReturn(1);
+        doThrow(new RuntimeException("Failed to save file", new SQLException("deadlock detected", "40P01")))
+                .when(dbService).saveFile(any(File.class), any(InputStream.class), any(StorageService.class));
+
+        BatchSummary summary = run("upload " + local + " /root");
+
+        assertEquals(1, summary.getFailed());
+        verify(dbService, times(1)).saveFile(any(File.class), any(InputStream.class), any(StorageService.class));
+    }
+
+    @Test
+    void run_ReportsMissingParentWithoutRetrying() {
+        when(dbService.resolveDirectoryId("root/missing")).thenReturn(null);
+
+        BatchSummary summary = run("mkdir /root/missing/a");
+
+        assertEquals(1, summary.getFailed());
+        assertTrue(err.toString(StandardCharsets.UTF_8).contains("No such directory: root/missing"));
+        verify(dbService, never()).saveDirectory(any(Directory.class));
+    }
+
+    @Test
+    void run_WorkersShareOneRepository() {
+        InMemoryMetadataRepository repository = new InMemoryMetadataRepository();
+        repository.getRootDirectory();
+        runner = new BatchRunner(repository, mock(StorageService.class), 2);
+
+        BatchSummary summary = run("mkdir /root/a", "mkdir /root/a/b", "mkdir /root/c", "ls /root/a");
+
+        assertEquals(0, summary.getFailed());
+        assertNotNull(repository.resolveDirectoryId("root/a/b"));
+        assertNotNull(repository.resolveDirectoryId("root/c"));
+        assertTrue(out.toString(StandardCharsets.UTF_8).contains("b"));
+        verifyNoInteractions(dbService);
+    }
+
+    @Test
+    void pathDependencies_WaitOnlyForOverlappingPaths() {
+        BatchRunner.PathDependencies dependencies = new BatchRunner.PathDependencies();
+        CompletableFuture<Void> mkdirA = new CompletableFuture<>();
+        dependencies.record(List.of("root/a"), mkdirA);
+
+        assertTrue(dependencies.before(List.of("root/b")).isDone());
+        assertTrue(dependencies.before(List.of("root/ab")).isDone());
+        CompletableFuture<Void> uploadIntoA = dependencies.before(List.of("root/a/x.txt"));
+        CompletableFuture<Void> listRoot = dependencies.before(List.of("root"));
+        assertFalse(uploadIntoA.isDone());
+        assertFalse(listRoot.isDone());
+
+        mkdirA.complete(null);
+
+        assertTrue(uploadIntoA.isDone());
+        assertTrue(listRoot.isDone());
+    }
+
+    private BatchSummary run(String... lines) {
+        return runner.run(List.of(lines), new PrintStream(out, true, StandardCharsets.UTF_8),
+                new PrintStream(err, true, StandardCharsets.UTF_8));
+    }
+
+    private static Directory directory(int id, String name, String path) {
+        Directory dir = new Directory();
+        dir.setId(id);
+        dir.setName(name);
+        dir.setPath(path);
+        dir.setUpdatedAt(LocalDateTime.of(2024, 5, 1, 10, 0));
+        return dir;
+    }
+}
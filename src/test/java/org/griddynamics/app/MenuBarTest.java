@@ -57,6 +57,13 @@ public class MenuBarTest {
                     8. View item details
                     9. Search
                     10.Change directory
+                    11.Search file contents
+                    12.Find
+                    13.Usage report
+                    14.Find duplicates
+                    15.Download folders and files
+                    16.Sync local folder
+                    17.Show metrics
                     0. Exit
                 """;
         assertEquals(expectedMenu, MenuBar.getMainMenu());
@@ -0,0 +1,104 @@
+package org.griddynamics.db;
+
+import org.griddynamics.domain.Directory;
+import org.griddynamics.domain.File;
+import org.griddynamics.domain.StorageEntity;
+import org.junit.jupiter.api.Test;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class EntityRowMapperTest {
+
+    @Test
+    void columnPositions_MatchProjection() {
+        List<String> columns = List.of(SqlQueries.ENTITY_COLUMNS.split(",\\s*"));
+
+        assertEquals(12, columns.size());
+        assertEquals(EntityRowMapper.ID, columns.indexOf("id") + 1);
+        assertEquals(EntityRowMapper.NAME, columns.indexOf("name") + 1);
+        assertEquals(EntityRowMapper.PARENT_ID, columns.indexOf("parent_id") + 1);
+        assertEquals(EntityRowMapper.IS_DIRECTORY, columns.indexOf("is_directory") + 1);
+        assertEquals(EntityRowMapper.FILE_TYPE, columns.indexOf("file_type") + 1);
+        assertEquals(EntityRowMapper.FILE_SIZE, columns.indexOf("file_size") + 1);
+        assertEquals(EntityRowMapper.PATH, columns.indexOf("path") + 1);
+        assertEquals(EntityRowMapper.CREATED_AT, columns.indexOf("created_at") + 1);
+        assertEquals(EntityRowMapper.UPDATED_AT, columns.indexOf("updated_at") + 1);
+        assertEquals(EntityRowMapper.CHILD_COUNT, columns.indexOf("child_count") + 1);
+        assertEquals(EntityRowMapper.FILE_COUNT, columns.indexOf("file_count") + 1);
+        assertEquals(EntityRowMapper.TOTAL_BYTES, columns.indexOf("total_bytes") + 1);
+        assertFalse(columns.contains("storage_path"));
+    }
+
+    @Test
+    void map_FileRow_DecodesTimestampsOnFirstRead() throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        Timestamp created = Timestamp.valueOf(LocalDateTime.of(2024, 5, 1, 10, 0));
+        when(rs.getBoolean(EntityRowMapper.IS_DIRECTORY)).thenReturn(false);
+        when(rs.getInt(EntityRowMapper.ID)).thenReturn(7);
+        when(rs.getString(EntityRowMapper.NAME)).thenReturn("a.txt");
+        when(rs.getString(EntityRowMapper.FILE_TYPE)).thenReturn("txt");
+        when(rs.getLong(EntityRowMapper.FILE_SIZE)).thenReturn(42L);
+        when(rs.getTimestamp(EntityRowMapper.CREATED_AT)).thenReturn(created);
+
+        StorageEntity entity = EntityRowMapper.map(rs);
+
+        File file = assertInstanceOf(File.class, entity);
+        assertEquals(7, file.getId());
+        assertEquals(42L, file.getFileSize());
+        assertEquals(LocalDateTime.of(2024, 5, 1, 10, 0), file.getCreatedAt());
+        assertNull(file.getUpdatedAt());
+        verify(rs, never()).getString("name");
+    }
+
+    @Test
+    void map_DirectoryRow_KeepsMicrosecondsUntilASetterReplacesThem() throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        LocalDateTime created = LocalDateTime.of(1969, 12, 31, 23, 59, 59, 123_456_000);
+        when(rs.getBoolean(EntityRowMapper.IS_DIRECTORY)).thenReturn(true);
+        when(rs.getTimestamp(EntityRowMapper.CREATED_AT)).thenReturn(Timestamp.valueOf(created));
+        when(rs.getTimestamp(EntityRowMapper.UPDATED_AT)).thenReturn(Timestamp.valueOf(created));
+
+        Directory dir = assertInstanceOf(Directory.class, EntityRowMapper.map(rs));
+        dir.setUpdatedAt(LocalDateTime.of(2024, 1, 1, 0, 0));
+
+        assertEquals(created, dir.getCreatedAt());
+        assertEquals(LocalDateTime.of(2024, 1, 1, 0, 0), dir.getUpdatedAt());
+    }
+
+    @Test
+    void map_DirectoryRow_ReadsRollups() throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getBoolean(EntityRowMapper.IS_DIRECTORY)).thenReturn(true);
+        when(rs.getInt(EntityRowMapper.CHILD_COUNT)).thenReturn(3);
+        when(rs.getLong(EntityRowMapper.TOTAL_BYTES)).thenReturn(2048L);
+
+        Directory dir = assertInstanceOf(Directory.class, EntityRowMapper.map(rs));
+
+        assertEquals(3, dir.getChildCount());
+        assertEquals(2048L, dir.getTotalBytes());
+    }
+
+    @Test
+    void mapWithDigests_ReadsDigestAsHexAndContentHash() throws SQLException {
+        ResultSet dirRow = mock(ResultSet.class);
+        when(dirRow.getBoolean(EntityRowMapper.IS_DIRECTORY)).thenReturn(true);
+        when(dirRow.getString(EntityRowMapper.DIGEST)).thenReturn("10000001" + "0".repeat(240) + "00001111");
+        ResultSet fileRow = mock(ResultSet.class);
+        when(fileRow.getBoolean(EntityRowMapper.IS_DIRECTORY)).thenReturn(false);
+        when(fileRow.getBytes(EntityRowMapper.CONTENT_HASH)).thenReturn(new byte[]{(byte) 0xab, 0x01});
+
+        Directory dir = assertInstanceOf(Directory.class, EntityRowMapper.mapWithDigests(dirRow));
+        File file = assertInstanceOf(File.class, EntityRowMapper.mapWithDigests(fileRow));
+
+        assertEquals("81" + "0".repeat(60) + "0f", dir.getDigest());
+        assertEquals("ab01", file.getContentHash());
+        assertNull(EntityRowMapper.digestHex(null));
+    }
+}
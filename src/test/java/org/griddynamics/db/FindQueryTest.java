@@ -0,0 +1,70 @@
+package org.griddynamics.db;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FindQueryTest {
+
+    @Test
+    void compile_WithoutPredicates_OnlyPaginates() {
+        FindQuery.Compiled compiled = new FindQuery().compile(0, 20);
+
+        assertEquals("SELECT " + SqlQueries.ENTITY_COLUMNS + " FROM storage_entities WHERE id > ? ORDER BY id LIMIT ?", compiled.sql());
+        assertEquals(List.of(0, 21), compiled.params());
+    }
+
+    @Test
+    void compile_FilePredicates_RestrictToFiles() {
+        FindQuery query = new FindQuery();
+        query.setFileTypes(List.of("PDF", "txt"));
+        query.setMinSize(1024L);
+
+        FindQuery.Compiled compiled = query.compile(42, 10);
+
+        assertTrue(compiled.sql().contains("AND NOT is_directory AND LOWER(file_type) = ANY(?) AND file_size >= ?"));
+        assertEquals(42, compiled.params().get(0));
+        assertArrayEquals(new String[]{"pdf", "txt"}, (String[]) compiled.params().get(1));
+        assertEquals(1024L, compiled.params().get(2));
+        assertEquals(11, compiled.params().get(3));
+    }
+
+    @Test
+    void compile_DateRanges_AreHalfOpen() {
+        LocalDateTime from = LocalDateTime.of(2024, 1, 1, 0, 0);
+        LocalDateTime to = LocalDateTime.of(2024, 2, 1, 0, 0);
+        FindQuery query = new FindQuery();
+        query.setModifiedAfter(from);
+        query.setModifiedBefore(to);
+
+        FindQuery.Compiled compiled = query.compile(0, 5);
+
+        assertTrue(compiled.sql().contains("AND updated_at >= ? AND updated_at < ?"));
+        assertEquals(List.of(0, from, to, 6), compiled.params());
+    }
+
+    @Test
+    void compile_SubtreeAndDepth_AreRelativeToSubtreeRoot() {
+        FindQuery query = new FindQuery();
+        query.setUnder("/root/docs/");
+        query.setMinDepth(1);
+        query.setMaxDepth(2);
+
+        FindQuery.Compiled compiled = query.compile(0, 5);
+
+        assertTrue(compiled.sql().contains("AND path ~>=~ ? AND path ~<~ ?"));
+        // root/docs is at depth 1, so depths 1..2 below it are absolute depths 2..3
+        assertEquals(List.of(0, "root/docs/", "root/docs0", 2, 3, 6), compiled.params());
+    }
+
+    @Test
+    void compile_DirectoryFlag_SelectsDirectories() {
+        FindQuery query = new FindQuery();
+        query.setDirectory(true);
+
+        assertTrue(query.compile(0, 5).sql().contains("AND is_directory"));
+    }
+}
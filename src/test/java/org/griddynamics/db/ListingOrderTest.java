@@ -0,0 +1,24 @@
+package org.griddynamics.db;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ListingOrderTest {
+
+    @Test
+    void ascendingOrder_PagesForwardWithGreaterThan() {
+        assertTrue(ListingOrder.NAME.nextPageSql().contains("(name COLLATE \"C\", id) > (?, ?)"));
+        assertTrue(ListingOrder.NAME.nextPageSql().contains("ORDER BY name COLLATE \"C\" ASC, id ASC"));
+        assertTrue(ListingOrder.NAME.previousPageSql().contains("(name COLLATE \"C\", id) < (?, ?)"));
+        assertTrue(ListingOrder.NAME.previousPageSql().contains("ORDER BY name COLLATE \"C\" DESC, id DESC"));
+    }
+
+    @Test
+    void descendingOrder_PagesForwardWithLessThan() {
+        assertTrue(ListingOrder.DATE.isDescending());
+        assertTrue(ListingOrder.DATE.firstPageSql().contains("ORDER BY updated_at DESC, id DESC"));
+        assertTrue(ListingOrder.DATE.nextPageSql().contains("(updated_at, id) < (?, ?)"));
+        assertTrue(ListingOrder.DATE.previousPageSql().contains("ORDER BY updated_at ASC, id ASC"));
+    }
+}
@@ -0,0 +1,207 @@
+package org.griddynamics.db;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.griddynamics.metrics.QueryEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class QueryTracerTest {
+
+    private Connection connection;
+    private PreparedStatement statement;
+    private ResultSet resultSet;
+    private QueryTracer tracer;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        connection = mock(Connection.class);
+        statement = mock(PreparedStatement.class);
+        resultSet = mock(ResultSet.class);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        tracer = new QueryTracer(0);
+    }
+
+    @Test
+    void summary_CountsQueriesRowsAndRepeatedStatementsPerCommand() throws SQLException {
+        // Arrange
+        when(statement.executeUpdate()).thenReturn(4);
+        when(resultSet.next()).thenReturn(true, true, false, true, false);
+        Connection traced = tracer.wrap(connection);
+
+        // Act
+        tracer.begin();
+        for (int i = 0; i < 2; i++) {
+            try (PreparedStatement stmt = traced.prepareStatement(SqlQueries.GET_ITEM)) {
+                stmt.setInt(1, i);
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    rs.getInt("id");
+                }
+            }
+        }
+        try (PreparedStatement stmt = traced.prepareStatement(SqlQueries.RENAME_ITEM)) {
+            stmt.executeUpdate();
+        }
+        QueryTracer.Summary summary = tracer.end();
+
+        // Assert
+        assertEquals(3, summary.queries());
+        assertEquals(7, summary.rows());
+        assertEquals(Map.of("GET_ITEM", 2, "RENAME_ITEM", 1), summary.byId());
+        assertTrue(summary.format().startsWith("3 queries, "));
+        assertTrue(summary.format().endsWith(", 7 rows (GET_ITEM x2)"));
+        verify(statement, times(2)).setInt(eq(1), anyInt());
+    }
+
+    @Test
+    void wrap_DataSourceTracesItsConnectionsOnlyInsideACommand() throws SQLException {
+        // Arrange
+        DataSource dataSource = mock(DataSource.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        Statement plain = mock(Statement.class);
+        when(connection.createStatement()).thenReturn(plain);
+        when(plain.executeUpdate(anyString())).thenReturn(1);
+        Connection traced = tracer.wrap(dataSource).getConnection();
+
+        // Act
+        traced.createStatement().executeUpdate("ANALYZE storage_entities");
+        tracer.begin();
+        traced.createStatement().executeUpdate("DELETE   FROM\n storage_entities WHERE name LIKE 'tmp%' AND parent_id IN (1, 2, 3, 4, 5, 6)");
+        QueryTracer.Summary summary = tracer.end();
+
+        // Assert
+        assertNotSame(connection, traced);
+        assertEquals(1, summary.queries());
+        assertEquals(Map.of("DELETE FROM storage_entities WHERE name LIKE 'tmp%' AND pare...", 1), summary.byId());
+        assertEquals(QueryTracer.Summary.EMPTY, tracer.end());
+    }
+
+    @Test
+    void wrap_ClosingTheTracedDataSourceClosesThePool() throws Exception {
+        // Arrange
+        DataSource pool = mock(DataSource.class, withSettings().extraInterfaces(Closeable.class));
+
+        // Act
+        DataSource traced = tracer.wrap(pool);
+        ((Closeable) traced).close();
+
+        // Assert
+        verify((Closeable) pool).close();
+        assertFalse(tracer.wrap(mock(DataSource.class)) instanceof Closeable);
+    }
+
+    @Test
+    void resultSet_PassesColumnReadsStraightToTheDriver() throws SQLException {
+        // Arrange
+        when(resultSet.next()).thenReturn(true, false);
+        when(resultSet.getString("name")).thenReturn("a.txt");
+        Connection traced = tracer.wrap(connection);
+
+        // Act
+        tracer.begin();
+        try (PreparedStatement stmt = traced.prepareStatement(SqlQueries.GET_ITEM)) {
+            ResultSet rs = stmt.executeQuery();
+            assertTrue(rs.next());
+            assertEquals("a.txt", rs.getString("name"));
+            assertFalse(rs.next());
+            rs.close();
+        }
+        QueryTracer.Summary summary = tracer.end();
+
+        // Assert
+        assertEquals(1, summary.queries());
+        assertEquals(1, summary.rows());
+        verify(resultSet).close();
+    }
+
+    @Test
+    void queries_EmitJfrEventsWhenEnabled(@TempDir Path dir) throws Exception {
+        // Arrange
+        when(statement.executeUpdate()).thenReturn(4);
+        when(resultSet.next()).thenReturn(true, true, false);
+        Connection traced = tracer.wrap(connection);
+        Path recorded = dir.resolve("queries.jfr");
+
+        // Act
+        try (Recording recording = new Recording()) {
+            recording.enable(QueryEvent.class).withoutThreshold();
+            recording.start();
+            try (PreparedStatement stmt = traced.prepareStatement(SqlQueries.GET_ITEM)) {
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    rs.getInt("id");
+                }
+            }
+            try (PreparedStatement stmt = traced.prepareStatement(SqlQueries.RENAME_ITEM)) {
+                stmt.executeUpdate();
+            }
+            recording.stop();
+            recording.dump(recorded);
+        }
+
+        // Assert
+        List<RecordedEvent> events = RecordingFile.readAllEvents(recorded).stream()
+                .filter(e -> e.getEventType().getName().equals("org.griddynamics.Query"))
+                .toList();
+        assertEquals(List.of("GET_ITEM", "RENAME_ITEM"), events.stream().map(e -> e.getString("sqlId")).toList());
+        assertEquals(List.of(2L, 4L), events.stream().map(e -> e.getLong("rows")).toList());
+    }
+
+    @Test
+    void tracingOff_PassesStatementsThroughUnlessARecordingWantsThem(@TempDir Path dir) throws Exception {
+        // Arrange
+        when(resultSet.next()).thenReturn(true, false, true, false);
+        QueryTracer eventsOnly = new QueryTracer(0, false);
+        Connection traced = eventsOnly.wrap(connection);
+        Path recorded = dir.resolve("events.jfr");
+
+        // Act
+        eventsOnly.begin();
+        ResultSet untraced = traced.prepareStatement(SqlQueries.GET_ITEM).executeQuery();
+        try (Recording recording = new Recording()) {
+            recording.enable(QueryEvent.class).withoutThreshold();
+            recording.start();
+            try (PreparedStatement stmt = traced.prepareStatement(SqlQueries.GET_ITEM)) {
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    rs.getInt("id");
+                }
+            }
+            recording.stop();
+            recording.dump(recorded);
+        }
+
+        // Assert
+        assertSame(resultSet, untraced);
+        assertEquals(QueryTracer.Summary.EMPTY, eventsOnly.end());
+        List<RecordedEvent> events = RecordingFile.readAllEvents(recorded).stream()
+                .filter(e -> e.getEventType().getName().equals("org.griddynamics.Query"))
+                .toList();
+        assertEquals(List.of("GET_ITEM"), events.stream().map(e -> e.getString("sqlId")).toList());
+        assertEquals(1L, events.get(0).getLong("rows"));
+    }
+
+    @Test
+    void sqlId_NamesQueryConstants() {
+        assertEquals("INSERT_FILE", QueryTracer.sqlId(SqlQueries.INSERT_FILE));
+        assertEquals("SELECT 1", QueryTracer.sqlId("  SELECT\n 1 "));
+    }
+}
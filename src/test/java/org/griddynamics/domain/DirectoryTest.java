@@ -41,11 +41,11 @@ class DirectoryTest {
         // Add some files
         File file1 = new File();
         file1.setName("file1.txt");
-        rootDirectory.files.add(file1);
+        rootDirectory.getFiles().add(file1);
 
         File file2 = new File();
         file2.setName("file2.txt");
-        rootDirectory.files.add(file2);
+        rootDirectory.getFiles().add(file2);
 
         String expected = String.format("""
                 Directory Information:
@@ -64,11 +64,11 @@ class DirectoryTest {
         // Add some subdirectories
         Directory subDir1 = new Directory();
         subDir1.setName("sub1");
-        rootDirectory.subDirectories.add(subDir1);
+        rootDirectory.getSubDirectories().add(subDir1);
 
         Directory subDir2 = new Directory();
         subDir2.setName("sub2");
-        rootDirectory.subDirectories.add(subDir2);
+        rootDirectory.getSubDirectories().add(subDir2);
 
         String expected = String.format("""
                 Directory Information:
@@ -87,11 +87,11 @@ class DirectoryTest {
         // Add files and subdirectories
         File file1 = new File();
         file1.setName("file1.txt");
-        rootDirectory.files.add(file1);
+        rootDirectory.getFiles().add(file1);
 
         Directory subDir1 = new Directory();
         subDir1.setName("sub1");
-        rootDirectory.subDirectories.add(subDir1);
+        rootDirectory.getSubDirectories().add(subDir1);
 
         String expected = String.format("""
                 Directory Information:
@@ -110,7 +110,7 @@ class DirectoryTest {
         // Add just one file
         File file1 = new File();
         file1.setName("file1.txt");
-        rootDirectory.files.add(file1);
+        rootDirectory.getFiles().add(file1);
 
         String expected = String.format("""
                 Directory Information:
@@ -124,4 +124,24 @@ class DirectoryTest {
         assertEquals(expected, rootDirectory.getDetails(1));
     }
 
+    @Test
+    void testGetDetails_FromRollups() {
+        rootDirectory.setChildCount(3);
+        rootDirectory.setFileCount(42);
+        rootDirectory.setTotalBytes(1024);
+
+        String expected = String.format("""
+                Directory Information:
+                    Name: root
+                    Path: /root
+                    Created: %s
+                    Modified: %s
+                    Contents: 3 items
+                    Files (recursive): 42
+                    Size (recursive): 1024 bytes
+                """, testTime, testTime);
+
+        assertEquals(expected, rootDirectory.getDetails());
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,34 @@
+package org.griddynamics.domain;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UsageReportTest {
+
+    @Test
+    void testSizeBucket_EmptyFiles() {
+        UsageReport.SizeBucket bucket = UsageReport.SizeBucket.ofBitLength(0, 3, 0);
+
+        assertEquals(0, bucket.lowerBound());
+        assertEquals(1, bucket.upperBound());
+    }
+
+    @Test
+    void testSizeBucket_PowerOfTwoBounds() {
+        UsageReport.SizeBucket bucket = UsageReport.SizeBucket.ofBitLength(11, 2, 3000);
+
+        assertEquals(1024, bucket.lowerBound());
+        assertEquals(2048, bucket.upperBound());
+        assertEquals(2, bucket.files());
+        assertEquals(3000, bucket.bytes());
+    }
+
+    @Test
+    void testSizeBucket_LargestBucketDoesNotOverflow() {
+        UsageReport.SizeBucket bucket = UsageReport.SizeBucket.ofBitLength(63, 1, Long.MAX_VALUE);
+
+        assertEquals(1L << 62, bucket.lowerBound());
+        assertEquals(Long.MAX_VALUE, bucket.upperBound());
+    }
+}
@@ -0,0 +1,116 @@
+package org.griddynamics.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+import org.griddynamics.domain.Page;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Scanner;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DriveMetricsTest {
+
+    private final DriveMetrics metrics = new DriveMetrics(false);
+
+    /** Stands in for a service: public operations, a setter, an interactive one and a sibling factory. */
+    static class Catalog {
+        private int limit = 10;
+
+        public List<String> list(int count) {
+            return List.of("a", "b", "c").subList(0, Math.min(count, limit));
+        }
+
+        public Page<String> page() {
+            return new Page<>(List.of("a", "b"), true);
+        }
+
+        public void fail() {
+            throw new IllegalStateException("broken");
+        }
+
+        public void setLimit(int limit) {
+            this.limit = limit;
+        }
+
+        public void prompt(Scanner scanner) {
+        }
+
+        public Catalog fork() {
+            return new Catalog();
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        metrics.close();
+    }
+
+    @Test
+    void instrument_TimesOperationsByOutcomeAndCountsRows() {
+        // Arrange
+        Catalog catalog = metrics.instrument(new Catalog(), "test");
+
+        // Act
+        catalog.setLimit(2);
+        List<String> listed = catalog.list(3);
+        catalog.page();
+        assertThrows(IllegalStateException.class, catalog::fail);
+        catalog.prompt(null);
+
+        // Assert
+        assertEquals(List.of("a", "b"), listed);
+        assertEquals(1, timer("list", "success").count());
+        assertEquals(1, timer("fail", "error").count());
+        assertEquals(0, timer("fail", "success").count());
+        assertEquals(2.0, rows("list").totalAmount());
+        assertEquals(2.0, rows("page").totalAmount());
+        assertNull(metrics.registry().find("drive.operation").tag("operation", "setLimit").timer());
+        assertNull(metrics.registry().find("drive.operation").tag("operation", "prompt").timer());
+        assertNull(metrics.registry().find("drive.operation.rows").tag("operation", "fail").summary());
+    }
+
+    @Test
+    void instrument_WrapsReturnedSiblingWithTheSameMeters() {
+        // Arrange
+        Catalog catalog = metrics.instrument(new Catalog(), "test");
+
+        // Act
+        Catalog forked = catalog.fork();
+        forked.list(1);
+        catalog.list(1);
+
+        // Assert
+        assertNotSame(Catalog.class, forked.getClass());
+        assertEquals(2, timer("list", "success").count());
+    }
+
+    @Test
+    void scrape_RendersPercentilesAndBlobTraffic() {
+        // Arrange
+        metrics.instrument(new Catalog(), "test").list(3);
+        metrics.blobWritten(100);
+        metrics.blobWritten(20);
+        metrics.blobRead(7);
+
+        // Act
+        String text = metrics.scrape();
+
+        // Assert
+        assertTrue(text.contains("drive_operation_seconds{component=\"test\",operation=\"list\",outcome=\"success\",quantile=\"0.99\"}"), text);
+        assertTrue(text.contains("drive_operation_rows{component=\"test\",operation=\"list\",quantile=\"0.5\"} 3.0"), text);
+        assertTrue(text.contains("drive_blob_bytes_total{direction=\"written\"} 120.0"), text);
+        assertTrue(text.contains("drive_blob_bytes_total{direction=\"read\"} 7.0"), text);
+    }
+
+    private Timer timer(String operation, String outcome) {
+        return metrics.registry().get("drive.operation")
+                .tags("component", "test", "operation", operation, "outcome", outcome).timer();
+    }
+
+    private DistributionSummary rows(String operation) {
+        return metrics.registry().get("drive.operation.rows").tags("operation", operation).summary();
+    }
+}
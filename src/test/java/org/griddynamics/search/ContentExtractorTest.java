@@ -0,0 +1,48 @@
+package org.griddynamics.search;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContentExtractorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void plainText_ReadsUtf8AndTruncates() throws IOException {
+        Path file = Files.writeString(tempDir.resolve("1.txt"), "héllo world");
+        PlainTextExtractor extractor = new PlainTextExtractor();
+
+        assertTrue(extractor.supports("TXT"));
+        assertFalse(extractor.supports("png"));
+        assertEquals("héllo world", extractor.extract(file, 100));
+        assertEquals("héllo", extractor.extract(file, 5));
+    }
+
+    @Test
+    void html_DropsMarkupScriptsAndDecodesEntities() throws IOException {
+        Path file = Files.writeString(tempDir.resolve("2.html"), """
+                <html><head><style>body { color: red; }</style><script>var x = 1;</script></head>
+                <body><h1>Quarterly&nbsp;Report</h1><!-- hidden --><p>Tom &amp; Jerry</p></body></html>
+                """);
+        HtmlExtractor extractor = new HtmlExtractor();
+
+        assertTrue(extractor.supports("htm"));
+        assertEquals("Quarterly Report Tom & Jerry", extractor.extract(file, 1000));
+    }
+
+    @Test
+    void csv_SplitsCellsIntoWords() throws IOException {
+        Path file = Files.writeString(tempDir.resolve("3.csv"), "name,city\n\"Smith, J\",\"say \"\"hi\"\"\"\n");
+        CsvExtractor extractor = new CsvExtractor();
+
+        assertTrue(extractor.supports("csv"));
+        assertEquals("name city\nSmith  J say \"hi\"\n", extractor.extract(file, 1000));
+    }
+}
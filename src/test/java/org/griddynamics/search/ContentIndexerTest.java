@@ -0,0 +1,51 @@
+package org.griddynamics.search;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.sql.DataSource;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.List;
+
+import static org.griddynamics.db.SqlQueries.UPSERT_FILE_CONTENT;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ContentIndexerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void submit_ExtractsTextAndStoresItInBackground() throws Exception {
+        DataSource dataSource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        PreparedStatement stmt = mock(PreparedStatement.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(UPSERT_FILE_CONTENT)).thenReturn(stmt);
+        Path blob = Files.writeString(tempDir.resolve("7.txt"), "meeting notes");
+
+        try (ContentIndexer indexer = new ContentIndexer(dataSource, List.of(new PlainTextExtractor()))) {
+            indexer.submit(7, "txt", blob).get();
+        }
+
+        verify(stmt).setString(1, "meeting notes");
+        verify(stmt).setInt(2, 7);
+        verify(stmt).executeUpdate();
+    }
+
+    @Test
+    void submit_SkipsUnsupportedTypes() throws Exception {
+        DataSource dataSource = mock(DataSource.class);
+
+        try (ContentIndexer indexer = new ContentIndexer(dataSource, List.of(new PlainTextExtractor()))) {
+            assertFalse(indexer.supports("png"));
+            indexer.submit(8, "png", tempDir.resolve("8.png")).get();
+        }
+
+        verifyNoInteractions(dataSource);
+    }
+}
@@ -0,0 +1,113 @@
+package org.griddynamics.search;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NameIndexTest {
+
+    private NameIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new NameIndex();
+        index.add(1, "Reports", true);
+        index.add(2, "report.pdf", false);
+        index.add(3, "annual-report.txt", false);
+        index.add(4, "photo.png", false);
+    }
+
+    @Test
+    void search_RanksExactThenPrefixThenSubstring() {
+        index.add(5, "report", false);
+
+        List<NameIndex.Match> matches = index.search("report", 10);
+
+        assertEquals(List.of(5, 1, 2, 3), matches.stream().map(NameIndex.Match::id).toList());
+        assertEquals(4.0, matches.get(0).score());
+        assertEquals(3.0, matches.get(1).score());
+        assertEquals(2.0, matches.get(3).score());
+    }
+
+    @Test
+    void search_IsCaseInsensitive() {
+        List<NameIndex.Match> matches = index.search("PHOTO", 10);
+
+        assertEquals(1, matches.size());
+        assertEquals("photo.png", matches.get(0).name());
+    }
+
+    @Test
+    void search_ShortQueryMatchesPrefixes() {
+        List<NameIndex.Match> matches = index.search("ph", 10);
+
+        assertEquals(1, matches.size());
+        assertEquals(4, matches.get(0).id());
+    }
+
+    @Test
+    void search_FindsTyposThroughFuzzyMatching() {
+        List<NameIndex.Match> matches = index.search("reprot", 10);
+
+        assertFalse(matches.isEmpty());
+        assertTrue(matches.stream().allMatch(m -> m.score() < 1.0));
+        assertTrue(matches.stream().anyMatch(m -> m.id() == 2));
+    }
+
+    @Test
+    void search_RespectsLimit() {
+        assertEquals(2, index.search("report", 2).size());
+    }
+
+    @Test
+    void rename_ReplacesIndexedName() {
+        index.rename(4, "holiday.png");
+
+        assertTrue(index.search("photo", 10).isEmpty());
+        assertEquals(4, index.search("holiday", 10).get(0).id());
+        assertEquals(4, index.size());
+    }
+
+    @Test
+    void remove_DropsEntry() {
+        index.remove(2);
+
+        assertTrue(index.search("report.pdf", 10).stream().noneMatch(m -> m.id() == 2));
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    void remove_CompactsAfterManyDeletes() {
+        for (int id = 100; id < 3100; id++) {
+            index.add(id, "tmp-" + id, false);
+        }
+        for (int id = 100; id < 3100; id++) {
+            index.remove(id);
+        }
+
+        assertEquals(4, index.size());
+        assertEquals(1, index.search("Reports", 10).get(0).id());
+    }
+
+    @Test
+    void rename_CompactsAfterManyRenames() {
+        for (int i = 0; i < 3000; i++) {
+            index.rename(1, "Reports-" + i);
+            index.add(2, "report.pdf", false);
+        }
+
+        assertEquals(4, index.size());
+        assertTrue(index.slotCount() < 3000);
+        assertEquals(1, index.search("Reports-2999", 10).get(0).id());
+        assertEquals(2, index.search("report.pdf", 10).get(0).id());
+    }
+
+    @Test
+    void trigrams_AreDistinctAndPadded() {
+        assertEquals(1, NameIndex.trigrams("aaaa", false).length);
+        assertEquals(4, NameIndex.trigrams("abc", true).length);
+    }
+}
@@ -0,0 +1,232 @@
+package org.griddynamics.server;
+
+import org.griddynamics.domain.File;
+import org.griddynamics.metrics.DriveMetrics;
+import org.griddynamics.service.DatabaseService;
+import org.griddynamics.service.StorageService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class DriveServerTest {
+
+    private static final String CONTENT = "0123456789abcdefghij";
+
+    @TempDir
+    Path storageFolder;
+
+    private DataSource dataSource;
+    private DatabaseService dbService;
+    private StorageService storageService;
+    private DriveServer server;
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dbService = mock(DatabaseService.class);
+        Connection connection = mock(Connection.class);
+        dataSource = mock(DataSource.class);
+        lenient().when(dataSource.getConnection()).thenReturn(connection);
+        lenient().when(dbService.withConnection(connection)).thenReturn(dbService);
+        storageService = new StorageService(storageFolder.toString());
+        storageService.saveFileToDisk(7, new ByteArrayInputStream(CONTENT.getBytes(StandardCharsets.UTF_8)), "txt");
+        File file = new File();
+        file.setId(7);
+        file.setName("notes.txt");
+        file.setFileType("txt");
+        file.setFileSize((long) CONTENT.length());
+        file.setPath("root/notes.txt");
+        lenient().when(dbService.resolvePath("root/notes.txt")).thenReturn(file);
+        server = start(256, 8);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    void download_WholeFileWithEtagThenNotModified() throws Exception {
+        // Act
+        HttpResponse<String> full = send(get("/api/files/root/notes.txt").build());
+        String etag = full.headers().firstValue("ETag").orElseThrow();
+        HttpResponse<String> cached = send(get("/api/files/root/notes.txt").header("If-None-Match", etag).build());
+
+        // Assert
+        assertEquals(200, full.statusCode());
+        assertEquals(CONTENT, full.body());
+        assertEquals("\"7-20\"", etag);
+        assertEquals("bytes", full.headers().firstValue("Accept-Ranges").orElseThrow());
+        assertEquals("text/plain", full.headers().firstValue("Content-Type").orElseThrow());
+        assertEquals(304, cached.statusCode());
+        assertEquals("", cached.body());
+    }
+
+    @Test
+    void download_RangeIsPartialAndOutOfFileRangeIsUnsatisfiable() throws Exception {
+        // Act
+        HttpResponse<String> partial = send(get("/api/files/root/notes.txt").header("Range", "bytes=5-9").build());
+        HttpResponse<String> suffix = send(get("/api/files/root/notes.txt").header("Range", "bytes=-3").build());
+        HttpResponse<String> outside = send(get("/api/files/root/notes.txt").header("Range", "bytes=50-").build());
+
+        // Assert
+        assertEquals(206, partial.statusCode());
+        assertEquals("56789", partial.body());
+        assertEquals("bytes 5-9/20", partial.headers().firstValue("Content-Range").orElseThrow());
+        assertEquals("hij", suffix.body());
+        assertEquals(416, outside.statusCode());
+        assertEquals("bytes */20", outside.headers().firstValue("Content-Range").orElseThrow());
+    }
+
+    @Test
+    void download_MissingItemIsNotFound() throws Exception {
+        // Act
+        HttpResponse<String> response = send(get("/api/files/root/missing.txt").build());
+
+        // Assert
+        assertEquals(404, response.statusCode());
+        assertEquals("{\"error\":\"No such file or directory: root/missing.txt\"}", response.body());
+    }
+
+    @Test
+    void upload_StreamsBodyIntoStorageUnderParentFolder() throws Exception {
+        // Arrange
+        Connection connection = dataSource.getConnection();
+        when(dbService.resolveDirectoryId("root/docs")).thenReturn(3);
+        doAnswer(invocation -> {
+            invocation.<File>getArgument(0).setId(11);
+            return null;
+        }).when(dbService).insertFile(any(File.class), eq(storageService));
+
+        // Act
+        HttpResponse<String> response = send(HttpRequest.newBuilder(uri("/api/files/root/docs/report.csv"))
+                .PUT(HttpRequest.BodyPublishers.ofString("a,b\n1,2\n")).build());
+
+        // Assert
+        assertEquals(201, response.statusCode());
+        assertEquals("\"11-8\"", response.headers().firstValue("ETag").orElseThrow());
+        assertTrue(response.body().contains("\"path\":\"root/docs/report.csv\""));
+        assertEquals("a,b\n1,2\n", Files.readString(storageService.resolveBlob(11, "csv")));
+        // The connection of the insert is returned before the body is read, and a new one completes the file
+        InOrder order = inOrder(dbService, connection);
+        order.verify(dbService).insertFile(argThat(file -> file.getParentId() == 3 && file.getFileSize() == 8L),
+                eq(storageService));
+        order.verify(connection).close();
+        order.verify(dbService).completeFile(argThat(file -> file.getId() == 11), notNull(), eq(storageService));
+        order.verify(connection).close();
+    }
+
+    @Test
+    void upload_BlobWriteFails_DeletesTheInsertedRow() throws Exception {
+        // Arrange
+        when(dbService.resolveDirectoryId("root/docs")).thenReturn(3);
+        doAnswer(invocation -> {
+            invocation.<File>getArgument(0).setId(12);
+            return null;
+        }).when(dbService).insertFile(any(File.class), eq(storageService));
+        // A directory where the blob should go makes the write fail
+        Files.createDirectories(storageService.resolveBlob(12, "csv"));
+
+        // Act
+        HttpResponse<String> response = send(HttpRequest.newBuilder(uri("/api/files/root/docs/report.csv"))
+                .PUT(HttpRequest.BodyPublishers.ofString("a,b\n")).build());
+
+        // Assert
+        assertEquals(500, response.statusCode());
+        verify(dbService).deleteFile(argThat(file -> file.getId() == 12), eq(storageService));
+        verify(dbService, never()).completeFile(any(), any(), any());
+    }
+
+    @Test
+    void upload_MalformedContentLengthIsBadRequest() throws Exception {
+        // Act: HttpClient will not send a made-up Content-Length, so write the request by hand
+        String status;
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            socket.getOutputStream().write(("PUT /api/files/root/docs/report.csv HTTP/1.1\r\n"
+                    + "Host: localhost\r\nContent-Length: -5\r\nConnection: close\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            status = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII))
+                    .readLine();
+        }
+
+        // Assert
+        assertEquals("HTTP/1.1 400 Bad Request", status);
+        verify(dbService, never()).saveFile(any(File.class), any(InputStream.class), any(StorageService.class));
+    }
+
+    @Test
+    void request_OverConcurrencyLimitIsRejectedWithRetryAfter() throws Exception {
+        // Arrange
+        server.stop();
+        server = start(0, 8);
+
+        // Act
+        HttpResponse<String> response = send(get("/api/files/root/notes.txt").build());
+
+        // Assert
+        assertEquals(503, response.statusCode());
+        assertEquals("1", response.headers().firstValue("Retry-After").orElseThrow());
+        verifyNoInteractions(dbService);
+    }
+
+    @Test
+    void metrics_CountsDownloadedBytesInPrometheusText() throws Exception {
+        // Arrange
+        server.stop();
+        DriveMetrics metrics = new DriveMetrics(false);
+        server = new DriveServer(dataSource, dbService, storageService, 0, 256, 8);
+        server.setMetrics(metrics);
+        server.start();
+
+        // Act
+        send(get("/api/files/root/notes.txt").header("Range", "bytes=5-9").build());
+        HttpResponse<String> response = send(get("/metrics").build());
+
+        // Assert
+        assertEquals(200, response.statusCode());
+        assertTrue(response.headers().firstValue("Content-Type").orElseThrow().startsWith("text/plain; version=0.0.4"));
+        assertTrue(response.body().contains("drive_blob_bytes_total{direction=\"read\"} 5.0"), response.body());
+        metrics.close();
+    }
+
+    private DriveServer start(int maxRequests, int maxTransfers) throws Exception {
+        DriveServer started = new DriveServer(dataSource, dbService, storageService, 0, maxRequests, maxTransfers);
+        started.start();
+        return started;
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + server.getPort() + path);
+    }
+
+    private HttpRequest.Builder get(String path) {
+        return HttpRequest.newBuilder(uri(path)).GET();
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws Exception {
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,109 @@
+package org.griddynamics.service;
+
+import org.griddynamics.db.FindQuery;
+import org.griddynamics.domain.Directory;
+import org.griddynamics.domain.File;
+import org.griddynamics.domain.Page;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class BulkDownloaderTest {
+
+    @TempDir
+    Path tempDir;
+    private StorageService storageService;
+    private DatabaseService mockDbService;
+    private BulkDownloader downloader;
+    private Path destination;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        storageService = new StorageService(tempDir.resolve("storage").toString());
+        mockDbService = mock(DatabaseService.class);
+        downloader = new BulkDownloader(mockDbService, storageService, 2);
+        destination = Files.createDirectory(tempDir.resolve("downloads"));
+    }
+
+    @Test
+    void download_MirrorsSubtreeAndRenamesCollisions() throws Exception {
+        Directory docs = directory(2, 1, "root/docs");
+        Directory drafts = directory(9, 2, "root/docs/drafts");
+        File first = store(10, 2, "root/docs/x.txt", "first");
+        File second = store(11, 2, "root/docs/x", "second");
+        File nested = store(12, 9, "root/docs/drafts/y.csv", "a,b");
+        File loose = store(13, 1, "root/x.txt", "loose");
+        // Children listed before their folder: IDs do not order a moved subtree
+        when(mockDbService.find(any(FindQuery.class), eq(0), eq(BulkDownloader.PAGE_SIZE)))
+                .thenReturn(new Page<>(List.of(first, second, nested, drafts), false));
+        Files.writeString(destination.resolve("x.txt"), "existing");
+        Files.createDirectory(destination.resolve("docs"));
+        List<BulkDownloader.Progress> progress = new ArrayList<>();
+
+        BulkDownloader.Result result = downloader.download(List.of(docs, loose), destination, progress::add);
+
+        assertEquals("first", Files.readString(destination.resolve("docs/x.txt")));
+        assertEquals("second", Files.readString(destination.resolve("docs/x_1.txt")));
+        assertEquals("a,b", Files.readString(destination.resolve("docs/drafts/y.csv")));
+        assertEquals("loose", Files.readString(destination.resolve("x_1.txt")));
+        assertEquals("existing", Files.readString(destination.resolve("x.txt")));
+        assertEquals(4, result.files());
+        assertEquals(2, result.directories());
+        assertEquals(19, result.bytes());
+        assertTrue(result.failures().isEmpty());
+        assertEquals(4, progress.size());
+        assertEquals(new BulkDownloader.Progress(4, 4, 19, 19), progress.get(3));
+    }
+
+    @Test
+    void download_MissingBlobIsReportedAndOthersAreCopied() throws Exception {
+        File present = store(10, 1, "root/a.txt", "here");
+        File missing = file(11, 1, "root/b.txt", 7);
+
+        BulkDownloader.Result result = downloader.download(List.of(present, missing), destination, p -> { });
+
+        assertEquals(1, result.files());
+        assertEquals(List.of("root/b.txt: stored file not found"), result.failures());
+        assertEquals("here", Files.readString(destination.resolve("a.txt")));
+        assertFalse(Files.exists(destination.resolve("b.txt")));
+        verifyNoInteractions(mockDbService);
+    }
+
+    private File store(int id, int parentId, String path, String content) throws Exception {
+        File file = file(id, parentId, path, content.length());
+        storageService.saveFileToDisk(id, new ByteArrayInputStream(content.getBytes()), file.getFileType());
+        return file;
+    }
+
+    private static File file(int id, int parentId, String path, long size) {
+        File file = new File();
+        file.setId(id);
+        file.setParentId(parentId);
+        file.setPath(path);
+        file.setName(path.substring(path.lastIndexOf('/') + 1));
+        // An extension-less name is stored as text, like "x" below
+        file.setFileType(file.getName().contains(".") ? File.extensionOf(file.getName()) : "txt");
+        file.setFileSize(size);
+        return file;
+    }
+
+    private static Directory directory(int id, int parentId, String path) {
+        Directory dir = new Directory();
+        dir.setId(id);
+        dir.setParentId(parentId);
+        dir.setPath(path);
+        dir.setName(path.substring(path.lastIndexOf('/') + 1));
+        return dir;
+    }
+}
@@ -1,19 +1,30 @@
 package org.griddynamics.service;
 
+import org.griddynamics.db.FindQuery;
+import org.griddynamics.db.ListingOrder;
 import org.griddynamics.domain.Directory;
 import org.griddynamics.domain.File;
+import org.griddynamics.domain.Page;
 import org.griddynamics.domain.StorageEntity;
+import org.griddynamics.domain.UsageReport;
+import org.griddynamics.search.ContentIndexer;
+import org.griddynamics.search.NameIndex;
+import org.griddynamics.snapshot.SnapshotWriter;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Paths;
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.stream.Stream;
 
+import static org.griddynamics.db.EntityRowMapper.*;
 import static org.griddynamics.db.SqlQueries.*;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -28,6 +39,9 @@ class DatabaseServiceTest {
     @Mock
     private PreparedStatement preparedStatement;
 
+    @Mock
+    private PreparedStatement digestStatement;
+
     @Mock
     private ResultSet resultSet;
 
@@ -46,6 +60,7 @@ class DatabaseServiceTest {
 
         // Mock common behavior
         when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        lenient().when(connection.prepareStatement(TOGGLE_DIGEST)).thenReturn(digestStatement);
     }
 
     @Test
@@ -130,6 +145,25 @@ class DatabaseServiceTest {
         assertEquals(1, result.getParentId());
     }
 
+    @Test
+    void getDirectory_MapsRollupColumns() throws SQLException {
+        // Arrange
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        mockDirectoryResultSet(resultSet, 2, "test", 1, "/root/test");
+        when(resultSet.getInt("child_count")).thenReturn(4);
+        when(resultSet.getLong("file_count")).thenReturn(10L);
+        when(resultSet.getLong("total_bytes")).thenReturn(2048L);
+
+        // Act
+        Directory result = databaseService.getDirectory(2);
+
+        // Assert
+        assertEquals(4, result.getChildCount());
+        assertEquals(10L, result.getFileCount());
+        assertEquals(2048L, result.getTotalBytes());
+    }
+
     @Test
     void getDirectory_WhenNotExists_ReturnsNull() throws SQLException {
         // Arrange
@@ -192,6 +226,57 @@ class DatabaseServiceTest {
     }
 
 
+    @Test
+    void saveFile_BlobWriteFails_DeletesTheRow() throws Exception {
+        // Arrange
+        File file = new File();
+        file.setName("test.txt");
+        file.setParentId(1);
+        file.setFileType("txt");
+        file.setFileSize(100L);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getInt("id")).thenReturn(5);
+        when(resultSet.getString("path")).thenReturn("/root");
+        when(storageService.getStorageFolder()).thenReturn("/storage");
+        when(storageService.saveFileToDisk(5, inputStream, "txt")).thenThrow(new IOException("Disk full"));
+
+        // Act
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> databaseService.saveFile(file, inputStream, storageService));
+
+        // Assert
+        assertEquals("Disk full", e.getCause().getMessage());
+        verify(connection).prepareStatement(DELETE_ITEM);
+        verify(preparedStatement).setInt(1, 5);
+        verify(storageService).deleteFileFromDisk(5, "txt");
+    }
+
+    @Test
+    void saveFile_WithContentIndexer_QueuesStoredFile() throws Exception {
+        // Arrange
+        ContentIndexer contentIndexer = mock(ContentIndexer.class);
+        databaseService.setContentIndexer(contentIndexer);
+        File file = new File();
+        file.setName("notes.txt");
+        file.setParentId(1);
+        file.setFileType("txt");
+
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getInt("id")).thenReturn(6);
+        when(resultSet.getString("path")).thenReturn("/root");
+        when(storageService.getStorageFolder()).thenReturn("/storage");
+
+        // Act
+        databaseService.saveFile(file, inputStream, storageService);
+
+        // Assert
+        InOrder inOrder = inOrder(storageService, contentIndexer);
+        inOrder.verify(storageService).saveFileToDisk(6, inputStream, "txt");
+        inOrder.verify(contentIndexer).submit(6, "txt", Paths.get("/storage/6.txt"));
+    }
+
     @Test
     void getFile_WhenExists_ReturnsFile() throws SQLException {
         // Arrange
@@ -220,28 +305,94 @@ class DatabaseServiceTest {
         file.setFileType("pdf");
         file.setPath("/root/doc.pdf");
 
-        when(preparedStatement.executeUpdate()).thenReturn(1);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getInt("id")).thenReturn(4);
 
         // Act
         databaseService.deleteFile(file, storageService);
 
         // Assert
+        verify(connection).prepareStatement(DELETE_ITEM);
         verify(preparedStatement).setInt(1, 4);
-        verify(preparedStatement).executeUpdate();
+        verify(preparedStatement).executeQuery();
         verify(storageService).deleteFileFromDisk(4, "pdf");
     }
 
     @Test
     void deleteDirectory_SuccessfullyDeletesDirectory() throws SQLException {
         // Arrange
-        when(preparedStatement.executeUpdate()).thenReturn(1);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getInt("id")).thenReturn(2);
 
         // Act
         databaseService.deleteDirectory(2);
 
         // Assert
         verify(preparedStatement).setInt(1, 2);
-        verify(preparedStatement).executeUpdate();
+        verify(preparedStatement).executeQuery();
+        verify(preparedStatement, never()).executeUpdate();
+    }
+
+    @Test
+    void deleteDirectory_WithNameIndex_RemovesWholeSubtreeFromIndex() throws SQLException {
+        // Arrange
+        PreparedStatement scanStmt = mock(PreparedStatement.class);
+        ResultSet scanRs = mock(ResultSet.class);
+        when(connection.prepareStatement(SELECT_ALL_NAMES)).thenReturn(scanStmt);
+        when(scanStmt.executeQuery()).thenReturn(scanRs);
+        when(scanRs.next()).thenReturn(true, true, true, false);
+        when(scanRs.getInt("id")).thenReturn(2, 3, 4);
+        when(scanRs.getString("name")).thenReturn("docs", "notes.txt", "other");
+        when(scanRs.getBoolean("is_directory")).thenReturn(true, false, true);
+        NameIndex index = new NameIndex();
+        databaseService.enableNameIndex(index);
+
+        PreparedStatement subtreeStmt = mock(PreparedStatement.class);
+        ResultSet subtreeRs = mock(ResultSet.class);
+        when(connection.prepareStatement(GET_SUBTREE_IDS)).thenReturn(subtreeStmt);
+        when(subtreeStmt.executeQuery()).thenReturn(subtreeRs);
+        when(subtreeRs.next()).thenReturn(true, true, false);
+        when(subtreeRs.getInt("id")).thenReturn(2, 3);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getInt("id")).thenReturn(2);
+
+        // Act
+        databaseService.deleteDirectory(2);
+
+        // Assert
+        verify(scanStmt).setFetchSize(anyInt());
+        verify(preparedStatement).setInt(1, 2);
+        assertEquals(1, index.size());
+        assertEquals(4, index.search("other", 1).get(0).id());
+    }
+
+    @Test
+    void deleteDirectory_AlreadyGone_LeavesNameIndexAlone() throws SQLException {
+        // Arrange
+        PreparedStatement scanStmt = mock(PreparedStatement.class);
+        ResultSet scanRs = mock(ResultSet.class);
+        when(connection.prepareStatement(SELECT_ALL_NAMES)).thenReturn(scanStmt);
+        when(scanStmt.executeQuery()).thenReturn(scanRs);
+        when(scanRs.next()).thenReturn(true, false);
+        when(scanRs.getInt("id")).thenReturn(2);
+        when(scanRs.getString("name")).thenReturn("docs");
+        when(scanRs.getBoolean("is_directory")).thenReturn(true);
+        NameIndex index = new NameIndex();
+        databaseService.enableNameIndex(index);
+        PreparedStatement subtreeStmt = mock(PreparedStatement.class);
+        when(connection.prepareStatement(GET_SUBTREE_IDS)).thenReturn(subtreeStmt);
+        when(subtreeStmt.executeQuery()).thenReturn(scanRs);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(false);
+
+        // Act
+        databaseService.deleteDirectory(2);
+
+        // Assert
+        assertEquals(1, index.size());
     }
 
     @Test
@@ -277,17 +428,8 @@ class DatabaseServiceTest {
                 .thenReturn(renameStmt);
 
         // Mock #4: updateDescendantPaths
-        PreparedStatement descendantsQueryStmt = mock(PreparedStatement.class);
-        ResultSet descendantsRs = mock(ResultSet.class);
-        when(connection.prepareStatement(SELECT_DESCENDANTS))
-                .thenReturn(descendantsQueryStmt);
-        when(descendantsQueryStmt.executeQuery()).thenReturn(descendantsRs);
-        when(descendantsRs.next()).thenReturn(true, true, false);
-        when(descendantsRs.getInt("id")).thenReturn(3, 4);
-        when(descendantsRs.getString("path")).thenReturn("/root/oldname/child1", "/root/oldname/child2");
-
         PreparedStatement updateDescendantsStmt = mock(PreparedStatement.class);
-        when(connection.prepareStatement(UPDATE_PATH))
+        when(connection.prepareStatement(UPDATE_DESCENDANT_PATHS))
                 .thenReturn(updateDescendantsStmt);
 
         // Act
@@ -300,10 +442,12 @@ class DatabaseServiceTest {
         verify(renameStmt).setInt(3, itemId);
         verify(renameStmt).executeUpdate();
 
-        // Verify descendant updates (adjusted verification)
-        verify(updateDescendantsStmt, times(2)).setString(eq(1), anyString());
-        verify(updateDescendantsStmt, times(2)).setInt(eq(2), anyInt());
-        verify(updateDescendantsStmt, times(2)).executeUpdate();
+        // Verify descendant updates: one statement for the whole subtree
+        verify(updateDescendantsStmt).setString(1, newPath);
+        verify(updateDescendantsStmt).setInt(2, currentPath.length() + 1);
+        verify(updateDescendantsStmt).setString(3, currentPath + "/");
+        verify(updateDescendantsStmt).setString(4, currentPath + "0");
+        verify(updateDescendantsStmt).executeUpdate();
     }
 
 
@@ -315,6 +459,8 @@ class DatabaseServiceTest {
         int newParentId = 2;
         String newPath = "/newparent/item";
 
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(false);
         when(preparedStatement.executeUpdate()).thenReturn(1);
 
         // Act
@@ -327,6 +473,184 @@ class DatabaseServiceTest {
         verify(preparedStatement).executeUpdate();
     }
 
+    @Test
+    void move_TogglesDigestOutOfOldParentAndIntoNewOneInOneTransaction() throws SQLException {
+        // Arrange
+        when(connection.getAutoCommit()).thenReturn(true);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+
+        // Act
+        databaseService.move(3, 2, "root/b/item");
+
+        // Assert
+        InOrder inOrder = inOrder(connection, digestStatement, preparedStatement);
+        inOrder.verify(connection).setAutoCommit(false);
+        inOrder.verify(digestStatement).setInt(1, 3);
+        inOrder.verify(digestStatement).executeUpdate();
+        inOrder.verify(preparedStatement).executeUpdate();
+        inOrder.verify(digestStatement).executeUpdate();
+        inOrder.verify(connection).commit();
+        inOrder.verify(connection).setAutoCommit(true);
+    }
+
+    @Test
+    void move_UpdatesDescendantPathsBeforeCommitting() throws SQLException {
+        // Arrange
+        PreparedStatement descendants = mock(PreparedStatement.class);
+        when(connection.prepareStatement(UPDATE_DESCENDANT_PATHS)).thenReturn(descendants);
+        when(connection.getAutoCommit()).thenReturn(true);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getString("path")).thenReturn("root/a/item");
+
+        // Act
+        databaseService.move(3, 2, "root/b/item");
+
+        // Assert
+        InOrder inOrder = inOrder(connection, descendants);
+        inOrder.verify(connection).setAutoCommit(false);
+        inOrder.verify(descendants).executeUpdate();
+        inOrder.verify(connection).commit();
+    }
+
+    @Test
+    void rename_FailedDescendantUpdateRollsBackTheRename() throws SQLException {
+        // Arrange
+        PreparedStatement descendants = mock(PreparedStatement.class);
+        when(connection.prepareStatement(UPDATE_DESCENDANT_PATHS)).thenReturn(descendants);
+        when(descendants.executeUpdate()).thenThrow(new SQLException("duplicate key value", "23505"));
+        when(connection.getAutoCommit()).thenReturn(true);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getString("path")).thenReturn("root/a", "root");
+
+        // Act
+        assertThrows(RuntimeException.class, () -> databaseService.rename(3, "b", true));
+
+        // Assert
+        verify(connection).rollback();
+        verify(connection, never()).commit();
+    }
+
+    @Test
+    void saveFile_AddsDigestEntryBeforeInsertAndRecordsContentHash() throws Exception {
+        // Arrange
+        File file = new File();
+        file.setName("a.txt");
+        file.setParentId(1);
+        file.setFileType("txt");
+        file.setFileSize(3);
+        PreparedStatement addStatement = mock(PreparedStatement.class);
+        PreparedStatement hashStatement = mock(PreparedStatement.class);
+        when(connection.prepareStatement(ADD_DIGEST_ENTRY)).thenReturn(addStatement);
+        when(connection.prepareStatement(UPDATE_CONTENT_HASH)).thenReturn(hashStatement);
+        when(connection.getAutoCommit()).thenReturn(true);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getInt("id")).thenReturn(8);
+        when(resultSet.getString("path")).thenReturn("root");
+        byte[] hash = {1, 2, 3};
+        when(storageService.saveFileToDisk(8, inputStream, "txt")).thenReturn(hash);
+
+        // Act
+        databaseService.saveFile(file, inputStream, storageService);
+
+        // Assert
+        assertEquals("010203", file.getContentHash());
+        InOrder inOrder = inOrder(connection, addStatement, preparedStatement, hashStatement);
+        inOrder.verify(connection).setAutoCommit(false);
+        inOrder.verify(addStatement).setString(2, "a.txt");
+        inOrder.verify(addStatement).setObject(4, 3L, Types.BIGINT);
+        inOrder.verify(addStatement).executeUpdate();
+        inOrder.verify(preparedStatement).executeQuery();
+        inOrder.verify(connection).commit();
+        inOrder.verify(hashStatement).setInt(1, 8);
+        inOrder.verify(hashStatement).setBytes(2, hash);
+        inOrder.verify(hashStatement).executeUpdate();
+        verifyNoInteractions(digestStatement);
+    }
+
+    @Test
+    void move_WithPathCache_EvictsMovedSubtree() throws SQLException {
+        // Arrange
+        PathCache pathCache = new PathCache(10);
+        pathCache.put("root/a", 3);
+        pathCache.put("root/a/b", 4);
+        pathCache.put("root/c", 5);
+        databaseService.setPathCache(pathCache);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, true, false);
+        when(resultSet.getString("path")).thenReturn("root/a");
+
+        // Act
+        databaseService.move(3, 5, "root/c/a");
+
+        // Assert
+        assertNull(pathCache.get("root/a"));
+        assertNull(pathCache.get("root/a/b"));
+        assertEquals(5, pathCache.get("root/c"));
+        verify(connection).prepareStatement(MOVE_ITEM);
+        verify(connection).prepareStatement(UPDATE_DESCENDANT_PATHS);
+        verify(preparedStatement).setString(3, "root/a/");
+    }
+
+    @Test
+    void resolvePath_Directory_CachesIdForLaterLookups() throws SQLException {
+        // Arrange
+        databaseService.setPathCache(new PathCache(10));
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getBoolean("is_directory")).thenReturn(true);
+        when(resultSet.getInt("id")).thenReturn(7);
+        when(resultSet.getString(anyString())).thenReturn("c");
+        when(resultSet.getTimestamp(anyString())).thenReturn(now);
+
+        // Act
+        StorageEntity resolved = databaseService.resolvePath("root/a/b/c");
+        Integer cachedId = databaseService.resolveDirectoryId("root/a/b/c");
+
+        // Assert
+        assertInstanceOf(Directory.class, resolved);
+        assertEquals(7, cachedId);
+        verify(preparedStatement).setString(1, "root/a/b/c");
+        verify(connection, times(1)).prepareStatement(GET_ITEM_BY_PATH);
+    }
+
+    @Test
+    void resolveDirectoryId_RelativePathToFile_ReturnsNull() throws SQLException {
+        // Arrange
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getBoolean("is_directory")).thenReturn(false);
+        when(resultSet.getTimestamp(anyString())).thenReturn(now);
+
+        // Act
+        String path = DatabaseService.normalizePath("root/x", "../a/./report.pdf");
+        Integer id = databaseService.resolveDirectoryId(path);
+
+        // Assert
+        assertNull(id);
+        verify(preparedStatement).setString(1, "root/a/report.pdf");
+        assertEquals("root/a/b", DatabaseService.normalizePath("root/x", "/root/a/b/"));
+        assertEquals("root/x/a/b", DatabaseService.normalizePath("root/x", "a//b"));
+        assertNull(DatabaseService.normalizePath("root/x", "../.."));
+        assertNull(DatabaseService.normalizePath("root/x", "/"));
+    }
+
+    @Test
+    void isPathTaken_LooksForAUniqueViolationInTheCauseChain() {
+        RuntimeException taken = new RuntimeException("Failed to save directory",
+                new SQLException("duplicate key value violates unique constraint", "23505"));
+        RuntimeException missingParent = new RuntimeException("Failed to save directory",
+                new SQLException("violates foreign key constraint", "23503"));
+
+        assertTrue(DatabaseService.isPathTaken(taken));
+        assertFalse(DatabaseService.isPathTaken(missingParent));
+        assertFalse(DatabaseService.isPathTaken(new RuntimeException("Failed to save directory")));
+    }
+
     @Test
     void getDirectoryContents_ReturnsFilesAndDirectories() throws SQLException {
         // Arrange
@@ -339,15 +663,17 @@ class DatabaseServiceTest {
         when(resultSet.next()).thenReturn(true, true, false);
 
         // Row 1: Directory
-        when(resultSet.getBoolean("is_directory")).thenReturn(true, false); // for row 1 and 2
-        when(resultSet.getInt("id")).thenReturn(2, 3);
-        when(resultSet.getString("name")).thenReturn("subdir", "file.txt");
-        when(resultSet.getInt("parent_id")).thenReturn(1, 1);
-        when(resultSet.getString("path")).thenReturn("/root/subdir", "/root/file.txt");
-        when(resultSet.getString("file_type")).thenReturn("txt");
-        when(resultSet.getLong("file_size")).thenReturn(123L);
-        when(resultSet.getTimestamp("created_at")).thenReturn(Timestamp.valueOf(LocalDateTime.now()), Timestamp.valueOf(LocalDateTime.now()));
-        when(resultSet.getTimestamp("updated_at")).thenReturn(Timestamp.valueOf(LocalDateTime.now()), Timestamp.valueOf(LocalDateTime.now()));
+        when(resultSet.getBoolean(IS_DIRECTORY)).thenReturn(true, false); // for row 1 and 2
+        when(resultSet.getInt(ID)).thenReturn(2, 3);
+        when(resultSet.getString(NAME)).thenReturn("subdir", "file.txt");
+        when(resultSet.getInt(PARENT_ID)).thenReturn(1, 1);
+        when(resultSet.getString(PATH)).thenReturn("/root/subdir", "/root/file.txt");
+        when(resultSet.getString(FILE_TYPE)).thenReturn("txt");
+        when(resultSet.getLong(FILE_SIZE)).thenReturn(123L);
+        when(resultSet.getLong(FILE_COUNT)).thenReturn(0L);
+        when(resultSet.getLong(TOTAL_BYTES)).thenReturn(0L);
+        when(resultSet.getTimestamp(CREATED_AT)).thenReturn(Timestamp.valueOf(LocalDateTime.now()), Timestamp.valueOf(LocalDateTime.now()));
+        when(resultSet.getTimestamp(UPDATED_AT)).thenReturn(Timestamp.valueOf(LocalDateTime.now()), Timestamp.valueOf(LocalDateTime.now()));
 
         // Act
         List<StorageEntity> contents = databaseService.getDirectoryContents(directoryId);
@@ -378,22 +704,22 @@ class DatabaseServiceTest {
 
         // First item: File
         // Second item: Directory
-        when(resultSet.getBoolean("is_directory")).thenReturn(false, true);
+        when(resultSet.getBoolean(IS_DIRECTORY)).thenReturn(false, true);
 
         // Common fields returned in order for two rows
-        when(resultSet.getInt("id")).thenReturn(2, 1);
-        when(resultSet.getString("name")).thenReturn("testfile.txt", "testdir");
-        when(resultSet.getInt("parent_id")).thenReturn(1, 0);
-        when(resultSet.getString("path")).thenReturn("/root/testfile.txt", "/root/testdir");
+        when(resultSet.getInt(ID)).thenReturn(2, 1);
+        when(resultSet.getString(NAME)).thenReturn("testfile.txt", "testdir");
+        when(resultSet.getInt(PARENT_ID)).thenReturn(1, 0);
+        when(resultSet.getString(PATH)).thenReturn("/root/testfile.txt", "/root/testdir");
 
         // File-specific fields
-        when(resultSet.getString("file_type")).thenReturn("txt", null);
-        when(resultSet.getLong("file_size")).thenReturn(100L, 0L);
+        when(resultSet.getString(FILE_TYPE)).thenReturn("txt", null);
+        when(resultSet.getLong(FILE_SIZE)).thenReturn(100L, 0L);
 
         // Timestamps
         Timestamp now = Timestamp.valueOf(LocalDateTime.now());
-        when(resultSet.getTimestamp("created_at")).thenReturn(now, now);
-        when(resultSet.getTimestamp("updated_at")).thenReturn(now, now);
+        when(resultSet.getTimestamp(CREATED_AT)).thenReturn(now, now);
+        when(resultSet.getTimestamp(UPDATED_AT)).thenReturn(now, now);
 
         // Act
         List<StorageEntity> results = databaseService.searchFilesAndDirectories(query);
@@ -411,15 +737,331 @@ class DatabaseServiceTest {
     }
 
 
+    @Test
+    void searchFilesAndDirectories_Paged_UsesCursorAndDetectsMore() throws SQLException {
+        // Arrange
+        Directory after = new Directory();
+        after.setId(7);
+        after.setName("docs");
+
+        when(connection.prepareStatement(SEARCH_ITEMS_PAGE)).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, true, false); // limit + 1 rows
+        when(resultSet.getBoolean(IS_DIRECTORY)).thenReturn(false, false);
+        mockFileRow(resultSet, 9, "report_1.txt", "/root/report_1.txt");
+
+        // Act
+        Page<StorageEntity> page = databaseService.searchFilesAndDirectories("report_", after, 1);
+
+        // Assert
+        verify(preparedStatement).setString(1, "%report\\_%");
+        verify(preparedStatement).setBoolean(2, true);
+        verify(preparedStatement).setBoolean(3, true);
+        verify(preparedStatement).setString(4, "docs");
+        verify(preparedStatement).setInt(5, 7);
+        verify(preparedStatement).setInt(6, 2);
+        assertEquals(1, page.items().size());
+        assertTrue(page.hasMore());
+        assertEquals(9, page.last().getId());
+    }
+
+    @Test
+    void find_BindsCompiledParametersAndPages() throws SQLException {
+        // Arrange
+        FindQuery query = new FindQuery();
+        query.setFileTypes(List.of("pdf"));
+        query.setModifiedAfter(LocalDateTime.of(2024, 1, 1, 0, 0));
+        Array types = mock(Array.class);
+
+        when(connection.prepareStatement(query.compile(5, 1).sql())).thenReturn(preparedStatement);
+        when(connection.createArrayOf("varchar", new String[]{"pdf"})).thenReturn(types);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, true, false); // limit + 1 rows
+        when(resultSet.getBoolean(IS_DIRECTORY)).thenReturn(false, false);
+        mockFileRow(resultSet, 9, "a.pdf", "/root/a.pdf");
+
+        // Act
+        Page<StorageEntity> page = databaseService.find(query, 5, 1);
+
+        // Assert
+        verify(preparedStatement).setObject(1, 5);
+        verify(preparedStatement).setArray(2, types);
+        verify(preparedStatement).setTimestamp(3, Timestamp.valueOf(LocalDateTime.of(2024, 1, 1, 0, 0)));
+        verify(preparedStatement).setObject(4, 2);
+        assertEquals(1, page.items().size());
+        assertTrue(page.hasMore());
+    }
+
+    @Test
+    void getUsageReport_ScopesQueriesToSubtreeAndMapsAggregates() throws SQLException {
+        // Arrange
+        Directory scope = new Directory();
+        scope.setId(2);
+        scope.setPath("root/docs");
+        PreparedStatement scopeStmt = mock(PreparedStatement.class);
+        ResultSet scopeRs = mock(ResultSet.class);
+        when(connection.prepareStatement(GET_ITEM)).thenReturn(scopeStmt);
+        when(scopeStmt.executeQuery()).thenReturn(scopeRs);
+        when(scopeRs.next()).thenReturn(true);
+        mockDirectoryResultSet(scopeRs, 2, "docs", 1, "root/docs");
+        when(scopeRs.getLong("file_count")).thenReturn(3L);
+        when(scopeRs.getLong("total_bytes")).thenReturn(4096L);
+        PreparedStatement emptyStmt = mock(PreparedStatement.class);
+        ResultSet emptyRs = mock(ResultSet.class);
+        PreparedStatement typeStmt = mock(PreparedStatement.class);
+        ResultSet typeRs = mock(ResultSet.class);
+        PreparedStatement histogramStmt = mock(PreparedStatement.class);
+        ResultSet histogramRs = mock(ResultSet.class);
+
+        when(connection.prepareStatement(USAGE_LARGEST_FILES)).thenReturn(emptyStmt);
+        when(connection.prepareStatement(USAGE_LARGEST_FOLDERS)).thenReturn(emptyStmt);
+        when(connection.prepareStatement(USAGE_BY_TYPE)).thenReturn(typeStmt);
+        when(connection.prepareStatement(USAGE_SIZE_HISTOGRAM)).thenReturn(histogramStmt);
+        when(emptyStmt.executeQuery()).thenReturn(emptyRs);
+        when(typeStmt.executeQuery()).thenReturn(typeRs);
+        when(histogramStmt.executeQuery()).thenReturn(histogramRs);
+        when(typeRs.next()).thenReturn(true, false);
+        when(typeRs.getString("file_type")).thenReturn("pdf");
+        when(typeRs.getLong("files")).thenReturn(3L);
+        when(typeRs.getLong("bytes")).thenReturn(4096L);
+        when(histogramRs.next()).thenReturn(true, false);
+        when(histogramRs.getInt("bit_length")).thenReturn(11);
+        when(histogramRs.getLong("files")).thenReturn(3L);
+        when(histogramRs.getLong("bytes")).thenReturn(4096L);
+
+        // Act
+        UsageReport report = databaseService.getUsageReport(scope, 5);
+
+        // Assert
+        verify(emptyStmt, times(2)).setString(1, "root/docs/");
+        verify(emptyStmt, times(2)).setString(2, "root/docs0");
+        verify(emptyStmt, times(2)).setInt(3, 5);
+        verify(typeStmt).setString(1, "root/docs/");
+        verify(scopeStmt).setInt(1, 2);
+        assertEquals(3, report.scope().getFileCount());
+        assertEquals(4096, report.scope().getTotalBytes());
+        assertTrue(report.largestFiles().isEmpty());
+        assertEquals(List.of(new UsageReport.TypeUsage("pdf", 3, 4096)), report.byType());
+        assertEquals(List.of(new UsageReport.SizeBucket(1024, 2048, 3, 4096)), report.histogram());
+    }
+
+    @Test
+    void listChildren_AfterCursor_BindsKeysetAndDetectsMore() throws SQLException {
+        // Arrange
+        File after = new File();
+        after.setId(4);
+        after.setName("b.txt");
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, true, false); // limit + 1 rows
+        when(resultSet.getBoolean(IS_DIRECTORY)).thenReturn(false, false);
+        mockFileRow(resultSet, 9, "c.txt", "/root/c.txt");
+
+        // Act
+        Page<StorageEntity> page = databaseService.listChildren(1, ListingOrder.NAME, after, 1);
+
+        // Assert
+        verify(connection).prepareStatement(ListingOrder.NAME.nextPageSql());
+        verify(preparedStatement).setInt(1, 1);
+        verify(preparedStatement).setString(2, "b.txt");
+        verify(preparedStatement).setInt(3, 4);
+        verify(preparedStatement).setInt(4, 2);
+        assertEquals(1, page.items().size());
+        assertTrue(page.hasMore());
+    }
+
+    @Test
+    void listChildrenBefore_ReturnsItemsInListingOrder() throws SQLException {
+        // Arrange
+        File before = new File();
+        before.setId(9);
+        before.setName("c.txt");
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, true, false);
+        when(resultSet.getBoolean(IS_DIRECTORY)).thenReturn(false, false);
+        when(resultSet.getInt(ID)).thenReturn(5, 3);
+        when(resultSet.getString(NAME)).thenReturn("b.txt", "a.txt");
+        when(resultSet.getTimestamp(CREATED_AT)).thenReturn(Timestamp.valueOf(LocalDateTime.now()));
+        when(resultSet.getTimestamp(UPDATED_AT)).thenReturn(Timestamp.valueOf(LocalDateTime.now()));
+
+        // Act
+        Page<StorageEntity> page = databaseService.listChildrenBefore(1, ListingOrder.NAME, before, 5);
+
+        // Assert
+        verify(connection).prepareStatement(ListingOrder.NAME.previousPageSql());
+        assertEquals(List.of("a.txt", "b.txt"), page.items().stream().map(StorageEntity::getName).toList());
+        assertFalse(page.hasMore());
+    }
+
+    @Test
+    void streamChildren_UsesCursorAndRestoresAutoCommitOnClose() throws SQLException {
+        // Arrange
+        when(connection.getAutoCommit()).thenReturn(true);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, false);
+        when(resultSet.getBoolean(IS_DIRECTORY)).thenReturn(false);
+        mockFileRow(resultSet, 9, "c.txt", "/root/c.txt");
+
+        // Act
+        List<StorageEntity> children;
+        try (Stream<StorageEntity> stream = databaseService.streamChildren(1, ListingOrder.DATE)) {
+            children = stream.toList();
+        }
+
+        // Assert
+        assertEquals(1, children.size());
+        verify(connection).setAutoCommit(false);
+        verify(preparedStatement).setFetchSize(anyInt());
+        verify(preparedStatement).close();
+        verify(connection).commit();
+        verify(connection).setAutoCommit(true);
+    }
+
+    @Test
+    void exportSnapshot_StreamsRowsWithCursorAndRollupsForDirectories() throws SQLException {
+        // Arrange
+        when(connection.getAutoCommit()).thenReturn(true);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, true, false);
+        when(resultSet.getInt("id")).thenReturn(1, 2);
+        when(resultSet.getInt("parent_id")).thenReturn(0, 1);
+        when(resultSet.getBoolean("is_directory")).thenReturn(true, false);
+        when(resultSet.getString("name")).thenReturn("root", "a.txt");
+        when(resultSet.getString("file_type")).thenReturn(null, "txt");
+        when(resultSet.getLong("total_bytes")).thenReturn(42L);
+        when(resultSet.getLong("file_count")).thenReturn(1L);
+        when(resultSet.getLong("file_size")).thenReturn(42L);
+        SnapshotWriter writer = new SnapshotWriter();
+
+        // Act
+        int exported = databaseService.exportSnapshot(writer);
+
+        // Assert
+        assertEquals(2, exported);
+        verify(connection).prepareStatement(SELECT_SNAPSHOT_ROWS);
+        verify(preparedStatement).setFetchSize(anyInt());
+        verify(connection).commit();
+        verify(connection).setAutoCommit(true);
+    }
+
+    @Test
+    void replayJournal_SkipsAppliedRecordsAndSavesPositionInTheSameTransaction() throws SQLException {
+        // Arrange
+        PreparedStatement insert = mock(PreparedStatement.class);
+        ResultSet inserted = mock(ResultSet.class);
+        when(connection.prepareStatement(INSERT_DIRECTORY_WITH_ID)).thenReturn(insert);
+        when(insert.executeQuery()).thenReturn(inserted);
+        when(inserted.next()).thenReturn(true);
+        when(inserted.getInt("id")).thenReturn(3);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getLong(1)).thenReturn(1L);
+        Directory dir = new Directory();
+        dir.setId(2);
+        dir.setParentId(1);
+        dir.setName("a");
+        dir.setPath("root/a");
+        Directory other = new Directory();
+        other.setId(3);
+        other.setParentId(1);
+        other.setName("b");
+        other.setPath("root/b");
+        List<JournalRecord> records = List.of(JournalRecord.created(dir).at(1), JournalRecord.created(other).at(2));
+
+        // Act
+        int applied = databaseService.replayJournal("metadata.journal", records);
+
+        // Assert
+        assertEquals(1, applied);
+        verify(insert).setInt(4, 3);
+        verify(insert, never()).setInt(4, 2);
+        verify(connection).prepareStatement(SELECT_JOURNAL_SEQ_FOR_UPDATE);
+        verify(preparedStatement).setLong(1, 2L);
+        verify(connection).setAutoCommit(false);
+        verify(connection).commit();
+        verify(connection).setAutoCommit(true);
+    }
+
+    @Test
+    void replayJournal_FailingRecord_RollsBackTheBatch() throws SQLException {
+        // Arrange
+        when(connection.prepareStatement(DELETE_ITEM)).thenThrow(new SQLException("connection lost"));
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getLong(1)).thenReturn(0L);
+
+        // Act & Assert
+        RuntimeException e = assertThrows(RuntimeException.class, () -> databaseService.replayJournal("metadata.journal",
+                List.of(JournalRecord.deleted(4, false).at(1))));
+        assertEquals("Failed to replay journal", e.getMessage());
+        verify(connection).rollback();
+        verify(connection, never()).commit();
+        verify(connection).setAutoCommit(true);
+    }
+
+    @Test
+    void replayJournal_RolledBack_LeavesNameIndexUnchanged() throws SQLException {
+        // Arrange
+        PreparedStatement scanStmt = mock(PreparedStatement.class);
+        ResultSet scanRs = mock(ResultSet.class);
+        when(connection.prepareStatement(SELECT_ALL_NAMES)).thenReturn(scanStmt);
+        when(scanStmt.executeQuery()).thenReturn(scanRs);
+        when(scanRs.next()).thenReturn(true, false);
+        when(scanRs.getInt("id")).thenReturn(4);
+        when(scanRs.getString("name")).thenReturn("notes.txt");
+        NameIndex index = new NameIndex();
+        databaseService.enableNameIndex(index);
+        PreparedStatement insert = mock(PreparedStatement.class);
+        ResultSet inserted = mock(ResultSet.class);
+        when(connection.prepareStatement(INSERT_DIRECTORY_WITH_ID)).thenReturn(insert);
+        when(insert.executeQuery()).thenReturn(inserted);
+        when(inserted.next()).thenReturn(true);
+        when(inserted.getInt("id")).thenReturn(2);
+        when(connection.prepareStatement(DELETE_ITEM)).thenThrow(new SQLException("connection lost"));
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getLong(1)).thenReturn(0L);
+        Directory dir = new Directory();
+        dir.setId(2);
+        dir.setParentId(1);
+        dir.setName("reports");
+        dir.setPath("root/reports");
+
+        // Act
+        assertThrows(RuntimeException.class, () -> databaseService.replayJournal("metadata.journal",
+                List.of(JournalRecord.created(dir).at(1), JournalRecord.deleted(4, false).at(2))));
+
+        // Assert
+        verify(connection).rollback();
+        assertEquals(1, index.size());
+        assertEquals(List.of(4), index.search("notes", 10).stream().map(NameIndex.Match::id).toList());
+        assertTrue(index.search("reports", 10).isEmpty());
+    }
+
+    @Test
+    void skipJournalRecord_SavesPositionPastTheRecord() throws SQLException {
+        // Arrange
+        when(connection.getAutoCommit()).thenReturn(true);
+
+        // Act
+        databaseService.skipJournalRecord("metadata.journal", 7);
+
+        // Assert
+        verify(connection).prepareStatement(INIT_JOURNAL_SEQ);
+        verify(connection).prepareStatement(SAVE_JOURNAL_SEQ);
+        verify(preparedStatement).setLong(1, 7L);
+        verify(preparedStatement, times(2)).setString(anyInt(), eq("metadata.journal"));
+        verify(connection).commit();
+    }
+
     @Test
     void getChildren_ReturnsDirectChildren() throws SQLException {
         // Arrange
         int parentId = 1;
         when(preparedStatement.executeQuery()).thenReturn(resultSet);
         when(resultSet.next()).thenReturn(true, false); // One child
-        when(resultSet.getBoolean("is_directory")).thenReturn(true);
+        when(resultSet.getBoolean(IS_DIRECTORY)).thenReturn(true);
 
-        mockDirectoryResultSet(resultSet, 2, "child", 1, "/root/child");
+        mockDirectoryRow(resultSet, 2, "child", 1, "/root/child");
 
         // Act
         List<StorageEntity> children = databaseService.getChildren(parentId);
@@ -439,12 +1081,12 @@ class DatabaseServiceTest {
         when(resultSet.next()).thenReturn(true, true, false); // Two directories
 
         // Mock directory 1 ("root") and directory 2 ("sub") in order
-        when(resultSet.getInt("id")).thenReturn(1, 2);
-        when(resultSet.getString("name")).thenReturn("root", "sub");
-        when(resultSet.getInt("parent_id")).thenReturn(0, 1);
-        when(resultSet.getString("path")).thenReturn("root", "/root/sub");
-        when(resultSet.getTimestamp("created_at")).thenReturn(Timestamp.valueOf(LocalDateTime.now()));
-        when(resultSet.getTimestamp("updated_at")).thenReturn(Timestamp.valueOf(LocalDateTime.now()));
+        when(resultSet.getInt(ID)).thenReturn(1, 2);
+        when(resultSet.getString(NAME)).thenReturn("root", "sub");
+        when(resultSet.getInt(PARENT_ID)).thenReturn(0, 1);
+        when(resultSet.getString(PATH)).thenReturn("root", "/root/sub");
+        when(resultSet.getTimestamp(CREATED_AT)).thenReturn(Timestamp.valueOf(LocalDateTime.now()));
+        when(resultSet.getTimestamp(UPDATED_AT)).thenReturn(Timestamp.valueOf(LocalDateTime.now()));
 
         // Act
         List<Directory> directories = databaseService.getAllDirectories();
@@ -552,50 +1194,23 @@ class DatabaseServiceTest {
     }
 
     @Test
-    void updateDescendantPaths_UpdatesAllDescendantPaths() throws SQLException {
+    void updateDescendantPaths_RewritesTheSubtreeInOneStatement() throws SQLException {
         // Arrange
         String oldBasePath = "/root/old";
         String newBasePath = "/root/new";
-
-        // Mock query result: two child items
-        when(connection.prepareStatement(SELECT_DESCENDANTS)).thenReturn(preparedStatement);
-        when(preparedStatement.executeQuery()).thenReturn(resultSet);
-        when(resultSet.next()).thenReturn(true, true, false); // two rows
-        when(resultSet.getInt("id")).thenReturn(2, 3);
-        when(resultSet.getString("path")).thenReturn(
-                "/root/old/child1",
-                "/root/old/child2"
-        );
-
-        // Mock the update statement for each descendant
-        PreparedStatement updateStmt = mock(PreparedStatement.class);
-        when(connection.prepareStatement(UPDATE_PATH)).thenReturn(updateStmt);
+        when(connection.prepareStatement(UPDATE_DESCENDANT_PATHS)).thenReturn(preparedStatement);
+        when(preparedStatement.executeUpdate()).thenReturn(2);
 
         // Act
         databaseService.updateDescendantPaths(oldBasePath, newBasePath);
 
         // Assert
-        // Verify SELECT query
-        verify(connection).prepareStatement(SELECT_DESCENDANTS);
-        verify(preparedStatement).setString(eq(1), eq(oldBasePath + "/%"));
-        verify(preparedStatement).executeQuery();
-
-        // Verify UPDATE query was prepared twice
-        verify(connection, times(2)).prepareStatement(UPDATE_PATH);
-
-        // Capture and assert updated paths
-        ArgumentCaptor<String> pathCaptor = ArgumentCaptor.forClass(String.class);
-        ArgumentCaptor<Integer> idCaptor = ArgumentCaptor.forClass(Integer.class);
-
-        verify(updateStmt, times(2)).setString(eq(1), pathCaptor.capture());
-        verify(updateStmt, times(2)).setInt(eq(2), idCaptor.capture());
-        verify(updateStmt, times(2)).executeUpdate();
-
-        List<String> updatedPaths = pathCaptor.getAllValues();
-        List<Integer> updatedIds = idCaptor.getAllValues();
-
-        assertEquals(List.of("/root/new/child1", "/root/new/child2"), updatedPaths);
-        assertEquals(List.of(2, 3), updatedIds);
+        verify(preparedStatement).setString(1, newBasePath);
+        verify(preparedStatement).setInt(2, oldBasePath.length() + 1);
+        verify(preparedStatement).setString(3, "/root/old/");
+        verify(preparedStatement).setString(4, "/root/old0");
+        verify(preparedStatement).executeUpdate();
+        verify(preparedStatement, never()).executeQuery();
     }
 
 
@@ -620,4 +1235,24 @@ class DatabaseServiceTest {
         when(rs.getTimestamp("created_at")).thenReturn(Timestamp.valueOf(LocalDateTime.now()));
         when(rs.getTimestamp("updated_at")).thenReturn(Timestamp.valueOf(LocalDateTime.now()));
     }
-}
\ No newline at end of file
+
+    private void mockDirectoryRow(ResultSet rs, int id, String name, int parentId, String path) throws SQLException {
+        when(rs.getInt(ID)).thenReturn(id);
+        when(rs.getString(NAME)).thenReturn(name);
+        when(rs.getInt(PARENT_ID)).thenReturn(parentId);
+        when(rs.getString(PATH)).thenReturn(path);
+        when(rs.getTimestamp(CREATED_AT)).thenReturn(Timestamp.valueOf(LocalDateTime.now()));
+        when(rs.getTimestamp(UPDATED_AT)).thenReturn(Timestamp.valueOf(LocalDateTime.now()));
+    }
+
+    private void mockFileRow(ResultSet rs, int id, String name, String path) throws SQLException {
+        when(rs.getInt(ID)).thenReturn(id);
+        when(rs.getString(NAME)).thenReturn(name);
+        when(rs.getInt(PARENT_ID)).thenReturn(1);
+        when(rs.getString(FILE_TYPE)).thenReturn("txt");
+        when(rs.getLong(FILE_SIZE)).thenReturn(100L);
+        when(rs.getString(PATH)).thenReturn(path);
+        when(rs.getTimestamp(CREATED_AT)).thenReturn(Timestamp.valueOf(LocalDateTime.now()));
+        when(rs.getTimestamp(UPDATED_AT)).thenReturn(Timestamp.valueOf(LocalDateTime.now()));
+    }
+}
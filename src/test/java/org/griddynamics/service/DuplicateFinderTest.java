@@ -0,0 +1,108 @@
+package org.griddynamics.service;
+
+import org.griddynamics.domain.DuplicateGroup;
+import org.griddynamics.domain.File;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class DuplicateFinderTest {
+
+    private static final int LARGE = 3 * DuplicateFinder.SAMPLE_BYTES;
+
+    @TempDir
+    Path tempDir;
+    private StorageService storageService;
+    private DatabaseService mockDbService;
+    private DuplicateFinder finder;
+
+    @BeforeEach
+    void setUp() {
+        storageService = new StorageService(tempDir.toString());
+        mockDbService = mock(DatabaseService.class);
+        finder = new DuplicateFinder(mockDbService, storageService, 2);
+    }
+
+    @Test
+    void find_GroupsSmallFilesWithSameContent() throws Exception {
+        File a = store(1, "hello".getBytes());
+        File b = store(2, "hello".getBytes());
+        File c = store(3, "world".getBytes());
+        when(mockDbService.getDuplicateSizeCandidates()).thenReturn(List.of(a, b, c));
+
+        DuplicateFinder.Result result = finder.find();
+
+        assertEquals(1, result.groups().size());
+        DuplicateGroup group = result.groups().get(0);
+        assertEquals(List.of(a, b), group.files());
+        assertEquals(5, group.reclaimableBytes());
+        assertEquals(15, result.bytesRead());
+    }
+
+    @Test
+    void find_LargeFilesDifferingOnlyInTheMiddle_AreNotDuplicates() throws Exception {
+        byte[] content = new byte[LARGE];
+        byte[] changed = content.clone();
+        changed[LARGE / 2] = 1;
+        File a = store(1, content);
+        File b = store(2, content);
+        File c = store(3, changed);
+        when(mockDbService.getDuplicateSizeCandidates()).thenReturn(List.of(a, b, c));
+
+        DuplicateFinder.Result result = finder.find();
+
+        assertEquals(1, result.groups().size());
+        assertEquals(List.of(a, b), result.groups().get(0).files());
+        assertEquals(LARGE, result.reclaimableBytes());
+    }
+
+    @Test
+    void find_DifferentHeads_SkipFullHash() throws Exception {
+        byte[] first = new byte[LARGE];
+        byte[] second = new byte[LARGE];
+        Arrays.fill(second, 0, 10, (byte) 7);
+        when(mockDbService.getDuplicateSizeCandidates()).thenReturn(List.of(store(1, first), store(2, second)));
+
+        DuplicateFinder.Result result = finder.find();
+
+        assertTrue(result.groups().isEmpty());
+        // Only the two samples of each file were read
+        assertEquals(4L * DuplicateFinder.SAMPLE_BYTES, result.bytesRead());
+    }
+
+    @Test
+    void find_MissingBlob_IsSkipped() throws Exception {
+        File a = store(1, "same".getBytes());
+        File b = store(2, "same".getBytes());
+        File missing = file(3, 4);
+        when(mockDbService.getDuplicateSizeCandidates()).thenReturn(List.of(a, b, missing));
+
+        DuplicateFinder.Result result = finder.find();
+
+        assertEquals(List.of(a, b), result.groups().get(0).files());
+        assertEquals(3, result.candidates());
+    }
+
+    private File store(int id, byte[] content) throws Exception {
+        Files.write(storageService.resolveBlob(id, "bin"), content);
+        return file(id, content.length);
+    }
+
+    private static File file(int id, long size) {
+        File file = new File();
+        file.setId(id);
+        file.setName("f" + id + ".bin");
+        file.setFileType("bin");
+        file.setFileSize(size);
+        file.setPath("root/f" + id + ".bin");
+        return file;
+    }
+}
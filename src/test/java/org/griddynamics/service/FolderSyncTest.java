@@ -0,0 +1,216 @@
+package org.griddynamics.service;
+
+import org.griddynamics.domain.Directory;
+import org.griddynamics.domain.File;
+import org.griddynamics.domain.StorageEntity;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class FolderSyncTest {
+
+    private static final LocalDateTime UPDATED = LocalDateTime.of(2024, 5, 1, 10, 0);
+
+    @TempDir
+    Path tempDir;
+    private Path local;
+    private StorageService storageService;
+    private DatabaseService mockDbService;
+    private final List<StorageEntity> remote = new ArrayList<>();
+    private Directory work;
+    private int nextId = 100;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        local = Files.createDirectory(tempDir.resolve("local"));
+        storageService = new StorageService(tempDir.resolve("storage").toString());
+        mockDbService = mock(DatabaseService.class);
+        work = new Directory();
+        work.setId(2);
+        work.setPath("root/work");
+        when(mockDbService.resolvePath("root/work")).thenReturn(work);
+        when(mockDbService.resolveDirectoryId("root/work")).thenReturn(2);
+        when(mockDbService.getChildrenWithDigests(2)).thenAnswer(invocation -> List.copyOf(remote));
+        doAnswer(invocation -> {
+            File file = invocation.getArgument(0);
+            file.setId(nextId++);
+            storageService.saveFileToDisk(file.getId(), invocation.getArgument(1, InputStream.class), file.getFileType());
+            return null;
+        }).when(mockDbService).saveFile(any(File.class), any(InputStream.class), eq(storageService));
+        when(mockDbService.getFile(anyInt())).thenAnswer(invocation -> {
+            File saved = new File();
+            saved.setId(invocation.getArgument(0));
+            saved.setUpdatedAt(UPDATED);
+            return saved;
+        });
+    }
+
+    @Test
+    void sync_FirstRunCopiesEachSideToTheOther() throws Exception {
+        Files.writeString(local.resolve("notes.txt"), "local");
+        remote.add(store(7, "plan.md", "remote"));
+
+        FolderSync.Report report = sync(false);
+
+        assertEquals(1, report.uploaded());
+        assertEquals(1, report.downloaded());
+        assertEquals("remote", Files.readString(local.resolve("plan.md")));
+        assertEquals("local", Files.readString(storageService.resolveBlob(100, "txt")));
+        SyncState state = SyncState.load(local);
+        assertEquals(7, state.get("plan.md").fileId());
+        assertEquals(100, state.get("notes.txt").fileId());
+    }
+
+    @Test
+    void sync_SecondRunOnlyActsOnChanges() throws Exception {
+        Files.writeString(local.resolve("same.txt"), "same");
+        Files.writeString(local.resolve("edited.txt"), "v1");
+        Files.writeString(local.resolve("gone-remote.txt"), "x");
+        File same = store(1, "same.txt", "same");
+        File edited = store(2, "edited.txt", "v1");
+        File goneRemote = store(3, "gone-remote.txt", "x");
+        File goneLocal = store(4, "gone-local.txt", "y");
+        remote.addAll(List.of(same, edited, goneRemote, goneLocal));
+        Files.writeString(local.resolve("gone-local.txt"), "y");
+        assertEquals(4, sync(false).unchanged());
+
+        Files.writeString(local.resolve("edited.txt"), "v2!");
+        Files.delete(local.resolve("gone-local.txt"));
+        remote.remove(goneRemote);
+        FolderSync.Report report = sync(false);
+
+        assertEquals(1, report.uploaded());
+        assertEquals(1, report.deletedLocal());
+        assertEquals(1, report.deletedRemote());
+        assertEquals(1, report.unchanged());
+        verify(mockDbService).deleteFile(edited, storageService);
+        verify(mockDbService).deleteFile(goneLocal, storageService);
+        verify(mockDbService, times(1)).saveFile(any(File.class), any(InputStream.class), eq(storageService));
+        assertFalse(Files.exists(local.resolve("gone-remote.txt")));
+    }
+
+    @Test
+    void sync_ChangesOnBothSidesAreConflictsAndTouchedFilesAreNotReuploadedWithHash() throws Exception {
+        Files.writeString(local.resolve("both.txt"), "base");
+        Files.writeString(local.resolve("touched.txt"), "same");
+        File both = store(1, "both.txt", "base");
+        remote.addAll(List.of(both, store(2, "touched.txt", "same")));
+        sync(true);
+
+        Files.writeString(local.resolve("both.txt"), "local edit");
+        remote.set(0, store(5, "both.txt", "remote edit"));
+        Files.setLastModifiedTime(local.resolve("touched.txt"), FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+        FolderSync.Report report = sync(true);
+
+        assertEquals(List.of("both.txt: changed locally and on the drive"), report.conflicts());
+        assertEquals(1, report.unchanged());
+        assertEquals(0, report.uploaded());
+        assertEquals("local edit", Files.readString(local.resolve("both.txt")));
+        verify(mockDbService, never()).saveFile(any(File.class), any(InputStream.class), any());
+    }
+
+    @Test
+    void sync_DriveFoldersWithTheRecordedDigestAreNotListedAgain() throws Exception {
+        Files.writeString(local.resolve("a.txt"), "a");
+        Files.createDirectory(local.resolve("docs"));
+        Files.writeString(local.resolve("docs/b.txt"), "b");
+        Directory docs = folder(3, "docs", "d1", 1);
+        remote.addAll(List.of(store(1, "a.txt", "a"), docs));
+        List<StorageEntity> docsChildren = new ArrayList<>(List.of(store(2, "b.txt", "b")));
+        when(mockDbService.getChildrenWithDigests(3)).thenAnswer(invocation -> List.copyOf(docsChildren));
+        work.setDigest("w1");
+        work.setFileCount(2);
+        assertEquals(2, sync(false).unchanged());
+        assertEquals("d1", SyncState.load(local).getDigest("docs"));
+
+        clearInvocations(mockDbService);
+        FolderSync.Report quiet = sync(false);
+
+        assertEquals(2, quiet.unchanged());
+        verify(mockDbService, never()).getChildrenWithDigests(anyInt());
+
+        docsChildren.set(0, store(9, "b.txt", "b2"));
+        docs.setDigest("d2");
+        work.setDigest("w2");
+        FolderSync.Report changed = sync(false);
+
+        assertEquals(1, changed.downloaded());
+        assertEquals(1, changed.unchanged());
+        assertEquals("b2", Files.readString(local.resolve("docs/b.txt")));
+        assertEquals("d2", SyncState.load(local).getDigest("docs"));
+    }
+
+    @Test
+    void sync_LocalEditBelowAnUnchangedDriveFolderIsStillUploaded() throws Exception {
+        Files.writeString(local.resolve("a.txt"), "a");
+        File a = store(1, "a.txt", "a");
+        remote.add(a);
+        work.setDigest("w1");
+        work.setFileCount(1);
+        sync(false);
+        when(mockDbService.resolvePath("root/work/a.txt")).thenReturn(a);
+        clearInvocations(mockDbService);
+
+        Files.writeString(local.resolve("a.txt"), "edited");
+        FolderSync.Report report = sync(false);
+
+        assertEquals(1, report.uploaded());
+        verify(mockDbService).deleteFile(a, storageService);
+        verify(mockDbService, never()).getChildrenWithDigests(anyInt());
+    }
+
+    @Test
+    void sync_DigestIsNotRecordedWhileAFileIsInConflict() throws Exception {
+        Files.writeString(local.resolve("a.txt"), "local");
+        remote.add(store(1, "a.txt", "remote"));
+        work.setDigest("w1");
+        work.setFileCount(1);
+
+        FolderSync.Report report = sync(false);
+
+        assertEquals(1, report.conflicts().size());
+        assertNull(SyncState.load(local).getDigest(""));
+    }
+
+    private FolderSync.Report sync(boolean hash) throws Exception {
+        return new FolderSync(mockDbService, storageService, local, "root/work", hash).sync();
+    }
+
+    private static Directory folder(int id, String name, String digest, long fileCount) {
+        Directory dir = new Directory();
+        dir.setId(id);
+        dir.setName(name);
+        dir.setParentId(2);
+        dir.setPath("root/work/" + name);
+        dir.setDigest(digest);
+        dir.setFileCount(fileCount);
+        return dir;
+    }
+
+    private File store(int id, String name, String content) throws Exception {
+        File file = new File();
+        file.setId(id);
+        file.setName(name);
+        file.setParentId(2);
+        file.setFileType(File.extensionOf(name));
+        file.setFileSize(content.length());
+        file.setPath("root/work/" + name);
+        file.setUpdatedAt(UPDATED);
+        storageService.saveFileToDisk(id, new ByteArrayInputStream(content.getBytes()), file.getFileType());
+        return file;
+    }
+}
@@ -0,0 +1,59 @@
+package org.griddynamics.service;
+
+import org.griddynamics.domain.Directory;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryMetadataRepositoryTest extends MetadataRepositoryContract {
+
+    @Override
+    protected MetadataRepository open() {
+        return new InMemoryMetadataRepository();
+    }
+
+    @Test
+    void likePattern_FollowsPostgresWildcardsAndEscapes() {
+        Pattern pattern = InMemoryMetadataRepository.likePattern("%A\\_b_%");
+
+        assertTrue(pattern.matcher("xa_bcy").matches());
+        assertFalse(pattern.matcher("xaxbcy").matches());
+        assertFalse(pattern.matcher("a_b").matches());
+        assertTrue(InMemoryMetadataRepository.likePattern("%.*%").matcher("a.*b").matches());
+        assertFalse(InMemoryMetadataRepository.likePattern("%.*%").matcher("ab").matches());
+    }
+
+    @Test
+    void saveDirectory_ConcurrentWriters_KeepRollupsAndIndexesConsistent() throws Exception {
+        Directory root = repository.getRootDirectory();
+        int before = ((InMemoryMetadataRepository) repository).size();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> done = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int thread = t;
+                done.add(pool.submit(() -> {
+                    Directory dir = mkdir(root, "writer-" + thread);
+                    for (int i = 0; i < 50; i++) {
+                        upload(dir, "f" + i + ".txt", "x");
+                        repository.searchFilesAndDirectories("f" + i);
+                    }
+                }));
+            }
+            for (Future<?> future : done) future.get();
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(before + 8 * 51, ((InMemoryMetadataRepository) repository).size());
+        assertEquals(8 * 50, repository.getRootDirectory().getFileCount());
+        assertEquals(8 * 50, repository.searchFilesAndDirectories(".txt").size());
+    }
+}
@@ -0,0 +1,54 @@
+package org.griddynamics.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalNamesTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void file_SkipsExistingAndAlreadyAllocatedNames() throws Exception {
+        Files.writeString(tempDir.resolve("report.pdf"), "");
+        Files.writeString(tempDir.resolve("report_2.pdf"), "");
+        LocalNames names = LocalNames.scan(tempDir);
+
+        assertEquals(tempDir.resolve("report_1.pdf"), names.file("report.pdf"));
+        assertEquals(tempDir.resolve("report_3.pdf"), names.file("report.pdf"));
+        assertEquals(tempDir.resolve("report_4.pdf"), names.file("report.pdf"));
+        assertEquals(tempDir.resolve("notes"), names.file("notes"));
+        assertEquals(tempDir.resolve("notes_1"), names.file("notes"));
+    }
+
+    @Test
+    void directory_ReusesExistingDirectoryButNotFile() throws Exception {
+        Files.createDirectory(tempDir.resolve("photos"));
+        Files.writeString(tempDir.resolve("music"), "");
+        LocalNames names = LocalNames.scan(tempDir);
+
+        assertEquals(tempDir.resolve("photos"), names.directory("photos"));
+        assertEquals(tempDir.resolve("music_1"), names.directory("music"));
+        assertEquals(tempDir.resolve("missing").resolve("a.txt"),
+                LocalNames.scan(tempDir.resolve("missing")).file("a.txt"));
+    }
+
+    @Test
+    void directory_SameNameTwiceGetsASuffixTheSecondTime() throws Exception {
+        Files.createDirectory(tempDir.resolve("photos"));
+        LocalNames names = LocalNames.scan(tempDir);
+
+        Path first = names.directory("photos");
+        Path reports = names.directory("reports");
+        Files.createDirectory(reports);
+
+        assertEquals(tempDir.resolve("photos"), first);
+        assertEquals(tempDir.resolve("photos_1"), names.directory("photos"));
+        assertEquals(tempDir.resolve("reports_1"), names.directory("reports"));
+    }
+}
@@ -0,0 +1,373 @@
+package org.griddynamics.service;
+
+import org.griddynamics.domain.Directory;
+import org.griddynamics.domain.File;
+import org.griddynamics.domain.Page;
+import org.griddynamics.domain.StorageEntity;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Behaviour every {@link MetadataRepository} shares, run once per backend by its subclasses.
+ * <p>
+ * Each test works below a folder of its own in root, deleted afterwards. Names that are searched
+ * for carry a random token, so other rows of a shared database do not show up in the results.
+ */
+abstract class MetadataRepositoryContract {
+
+    /** SHA-256 of "hello". */
+    private static final String HELLO_HASH = "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824";
+
+    @TempDir
+    Path storageDir;
+    protected MetadataRepository repository;
+    protected StorageService storage;
+    private String token;
+    private Directory top;
+
+    /**
+     * Opens the repository under test.
+     *
+     * @return The repository.
+     * @throws Exception If the backend is not available.
+     */
+    protected abstract MetadataRepository open() throws Exception;
+
+    /**
+     * Releases the repository after a test, once its folder is deleted.
+     *
+     * @throws Exception If closing fails.
+     */
+    protected void close() throws Exception {
+    }
+
+    @BeforeEach
+    void createTop() throws Exception {
+        repository = open();
+        storage = new StorageService(storageDir.toString());
+        token = new Random().ints(8, 'a', 'z' + 1)
+                .collect(StringBuilder::new, StringBuilder::appendCodePoint, StringBuilder::append).toString();
+        top = mkdir(repository.getRootDirectory(), "contract-" + System.nanoTime());
+    }
+
+    @AfterEach
+    void deleteTop() throws Exception {
+        try {
+            if (top != null) repository.deleteDirectory(top.getId());
+        } finally {
+            close();
+        }
+    }
+
+    @Test
+    void getRootDirectory_ReturnsTheSameRoot() {
+        Directory root = repository.getRootDirectory();
+
+        assertEquals("root", root.getPath());
+        assertEquals(root.getId(), repository.getRootDirectory().getId());
+        assertEquals(root.getId(), repository.resolveDirectoryId("root"));
+    }
+
+    @Test
+    void saveDirectory_AssignsIdAndResolvesByPath() {
+        Directory dir = mkdir(top, "docs");
+
+        assertTrue(dir.getId() > 0);
+        Directory stored = repository.getDirectory(dir.getId());
+        assertEquals("docs", stored.getName());
+        assertEquals(top.getId(), stored.getParentId());
+        assertEquals(top.getPath() + "/docs", stored.getPath());
+        assertEquals(dir.getId(), repository.resolveDirectoryId(top.getPath() + "/docs"));
+        assertEquals(1, repository.getDirectory(top.getId()).getChildCount());
+    }
+
+    @Test
+    void saveDirectory_TakenPath_FailsWithUniqueViolation() {
+        mkdir(top, "docs");
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> mkdir(top, "docs"));
+
+        assertEquals("23505", sqlState(e));
+        assertEquals(1, repository.getChildren(top.getId()).size());
+    }
+
+    @Test
+    void saveFile_SetsPathHashAndRollupsOfAncestors() {
+        Directory a = mkdir(top, "a");
+        Directory b = mkdir(a, "b");
+
+        File file = upload(b, "hello.txt", "hello");
+        upload(a, "more.txt", "0123456789");
+
+        assertEquals(b.getPath() + "/hello.txt", file.getPath());
+        assertEquals(HELLO_HASH, file.getContentHash());
+        File stored = repository.getFile(file.getId());
+        assertEquals("hello.txt", stored.getName());
+        assertEquals("txt", stored.getFileType());
+        assertEquals(5, stored.getFileSize());
+        assertEquals(HELLO_HASH, stored.getContentHash());
+        assertTrue(Files.exists(storage.resolveBlob(file.getId(), "txt")));
+        assertRollups(b, 1, 1, 5);
+        assertRollups(a, 2, 2, 15);
+        assertRollups(top, 1, 2, 15);
+    }
+
+    @Test
+    void saveFile_MissingParent_Fails() {
+        Directory gone = mkdir(top, "gone");
+        repository.deleteDirectory(gone.getId());
+
+        assertThrows(RuntimeException.class, () -> upload(gone, "x.txt", "x"));
+    }
+
+    @Test
+    void getFileAndGetDirectory_OtherKindOrMissing_ReturnNull() {
+        Directory dir = mkdir(top, "docs");
+        File file = upload(dir, "a.txt", "a");
+
+        assertNull(repository.getFile(dir.getId()));
+        assertNull(repository.getDirectory(file.getId()));
+        assertNull(repository.getDirectory(Integer.MAX_VALUE));
+        assertNull(repository.resolveDirectoryId(file.getPath()));
+        assertInstanceOf(File.class, repository.resolvePath(file.getPath()));
+    }
+
+    @Test
+    void getChildren_ListsDirectChildrenOnly() {
+        Directory a = mkdir(top, "a");
+        mkdir(a, "deep");
+        File file = upload(top, "f.txt", "f");
+
+        assertEquals(Set.of(a.getId(), file.getId()), ids(repository.getChildren(top.getId())));
+        assertEquals(Set.of(a.getId(), file.getId()), ids(repository.getDirectoryContents(top.getId())));
+    }
+
+    @Test
+    void rename_Directory_RewritesDescendantPaths() {
+        Directory a = mkdir(top, "a");
+        Directory b = mkdir(a, "b");
+        File file = upload(b, "f.txt", "f");
+
+        repository.rename(a.getId(), "renamed", true);
+
+        String base = top.getPath() + "/renamed";
+        assertEquals("renamed", repository.getDirectory(a.getId()).getName());
+        assertEquals(base, repository.getDirectory(a.getId()).getPath());
+        assertEquals(base + "/b", repository.getDirectory(b.getId()).getPath());
+        assertEquals(base + "/b/f.txt", repository.getFile(file.getId()).getPath());
+        assertNull(repository.resolvePath(top.getPath() + "/a"));
+        assertNull(repository.resolvePath(top.getPath() + "/a/b/f.txt"));
+        assertEquals(file.getId(), repository.resolvePath(base + "/b/f.txt").getId());
+    }
+
+    @Test
+    void rename_File_KeepsItsFolder() {
+        File file = upload(top, "old.txt", "x");
+
+        repository.rename(file.getId(), "new.txt", false);
+
+        File stored = repository.getFile(file.getId());
+        assertEquals("new.txt", stored.getName());
+        assertEquals(top.getPath() + "/new.txt", stored.getPath());
+        assertEquals(top.getId(), stored.getParentId());
+    }
+
+    @Test
+    void move_Directory_RewritesPathsAndMovesRollups() {
+        Directory from = mkdir(top, "from");
+        Directory to = mkdir(top, "to");
+        Directory moved = mkdir(from, "moved");
+        File file = upload(moved, "f.txt", "hello");
+
+        repository.move(moved.getId(), to.getId(), to.getPath() + "/moved");
+
+        assertEquals(to.getId(), repository.getDirectory(moved.getId()).getParentId());
+        assertEquals(to.getPath() + "/moved/f.txt", repository.getFile(file.getId()).getPath());
+        assertNull(repository.resolvePath(from.getPath() + "/moved"));
+        assertRollups(from, 0, 0, 0);
+        assertRollups(to, 1, 1, 5);
+        assertRollups(top, 2, 1, 5);
+    }
+
+    @Test
+    void move_OntoTakenPath_Fails() {
+        Directory to = mkdir(top, "to");
+        mkdir(to, "f.txt");
+        File file = upload(top, "f.txt", "x");
+
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> repository.move(file.getId(), to.getId(), to.getPath() + "/f.txt"));
+
+        assertEquals("23505", sqlState(e));
+        assertEquals(top.getId(), repository.getFile(file.getId()).getParentId());
+    }
+
+    @Test
+    void deleteDirectory_RemovesSubtreeAndRollups() {
+        Directory keep = mkdir(top, "keep");
+        upload(keep, "k.txt", "kk");
+        Directory gone = mkdir(top, "gone");
+        Directory below = mkdir(gone, "below");
+        File file = upload(below, "f.txt", "hello");
+
+        repository.deleteDirectory(gone.getId());
+
+        assertNull(repository.getDirectory(gone.getId()));
+        assertNull(repository.getDirectory(below.getId()));
+        assertNull(repository.getFile(file.getId()));
+        assertNull(repository.resolvePath(below.getPath()));
+        assertRollups(top, 1, 1, 2);
+        assertFalse(ids(repository.getAllDirectories()).contains(below.getId()));
+    }
+
+    @Test
+    void deleteFile_RemovesRowAndBlob() {
+        File file = upload(top, "f.txt", "hello");
+
+        repository.deleteFile(file, storage);
+
+        assertNull(repository.getFile(file.getId()));
+        assertFalse(Files.exists(storage.resolveBlob(file.getId(), "txt")));
+        assertRollups(top, 0, 0, 0);
+    }
+
+    @Test
+    void searchFilesAndDirectories_IgnoresCaseAndListsDirectoriesFirst() {
+        upload(top, token + "-b.txt", "b");
+        upload(top, token + "-a.txt", "a");
+        mkdir(top, "Dir-" + token.toUpperCase());
+        upload(top, "unrelated.txt", "u");
+
+        List<StorageEntity> found = repository.searchFilesAndDirectories(token);
+
+        assertEquals(List.of("Dir-" + token.toUpperCase(), token + "-a.txt", token + "-b.txt"), names(found));
+    }
+
+    @Test
+    void searchPage_WalksAllMatchesOnceInOrder() {
+        for (int i = 0; i < 5; i++) {
+            upload(top, token + "-f" + i + ".txt", "x");
+            mkdir(top, token + "-d" + i);
+        }
+
+        List<String> seen = new ArrayList<>();
+        StorageEntity after = null;
+        Page<StorageEntity> page;
+        do {
+            page = repository.searchFilesAndDirectories(token, after, 3);
+            seen.addAll(names(page.items()));
+            after = page.last();
+        } while (page.hasMore());
+
+        assertEquals(List.of(token + "-d0", token + "-d1", token + "-d2", token + "-d3", token + "-d4",
+                token + "-f0.txt", token + "-f1.txt", token + "-f2.txt", token + "-f3.txt", token + "-f4.txt"), seen);
+    }
+
+    @Test
+    void searchPage_SortsNamesInByteOrder() {
+        for (String suffix : new String[]{"b", "B", "a", "\u00c1", "\uff21", "\ud83d\ude00"}) {
+            mkdir(top, token + suffix);
+        }
+
+        List<String> seen = new ArrayList<>();
+        StorageEntity after = null;
+        Page<StorageEntity> page;
+        do {
+            page = repository.searchFilesAndDirectories(token, after, 2);
+            seen.addAll(names(page.items()));
+            after = page.last();
+        } while (page.hasMore());
+
+        assertEquals(List.of(token + "B", token + "a", token + "b", token + "\u00c1", token + "\uff21",
+                token + "\ud83d\ude00"), seen);
+    }
+
+    @Test
+    void searchPage_MatchesWildcardsLiterally() {
+        upload(top, token + "_1.txt", "x");
+        upload(top, token + "x1.txt", "x");
+
+        Page<StorageEntity> page = repository.searchFilesAndDirectories(token + "_", null, 10);
+
+        assertEquals(List.of(token + "_1.txt"), names(page.items()));
+        assertFalse(page.hasMore());
+    }
+
+    @Test
+    void getItemsByIds_KeepsOrderAndSkipsMissing() {
+        File a = upload(top, "a.txt", "a");
+        Directory b = mkdir(top, "b");
+
+        List<StorageEntity> items = repository.getItemsByIds(new int[]{b.getId(), Integer.MAX_VALUE, a.getId()});
+
+        assertEquals(List.of(b.getId(), a.getId()), items.stream().map(StorageEntity::getId).toList());
+    }
+
+    @Test
+    void getAllDescendantDirectoryIds_ListsFoldersBelowOnly() {
+        Directory a = mkdir(top, "a");
+        Directory b = mkdir(a, "b");
+        Directory c = mkdir(top, "c");
+        upload(b, "f.txt", "f");
+
+        assertEquals(Set.of(a.getId(), b.getId(), c.getId()), repository.getAllDescendantDirectoryIds(top.getId()));
+        assertEquals(Set.of(), repository.getAllDescendantDirectoryIds(b.getId()));
+    }
+
+    protected Directory mkdir(Directory parent, String name) {
+        Directory dir = new Directory();
+        dir.setName(name);
+        dir.setParentId(parent.getId());
+        dir.setPath(parent.getPath() + "/" + name);
+        repository.saveDirectory(dir);
+        return dir;
+    }
+
+    protected File upload(Directory parent, String name, String content) {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        File file = new File();
+        file.setName(name);
+        file.setParentId(parent.getId());
+        file.setFileType(name.substring(name.lastIndexOf('.') + 1));
+        file.setFileSize(bytes.length);
+        repository.saveFile(file, new ByteArrayInputStream(bytes), storage);
+        return file;
+    }
+
+    private void assertRollups(Directory dir, int children, long files, long bytes) {
+        Directory stored = repository.getDirectory(dir.getId());
+        assertEquals(children, stored.getChildCount(), "children of " + dir.getName());
+        assertEquals(files, stored.getFileCount(), "files below " + dir.getName());
+        assertEquals(bytes, stored.getTotalBytes(), "bytes below " + dir.getName());
+    }
+
+    private static String sqlState(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException sql) return sql.getSQLState();
+        }
+        return null;
+    }
+
+    private static Set<Integer> ids(List<? extends StorageEntity> items) {
+        return items.stream().map(StorageEntity::getId).collect(Collectors.toSet());
+    }
+
+    private static List<String> names(List<StorageEntity> items) {
+        return items.stream().map(StorageEntity::getName).toList();
+    }
+}
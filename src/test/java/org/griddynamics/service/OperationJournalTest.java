@@ -0,0 +1,162 @@
+package org.griddynamics.service;
+
+import org.griddynamics.domain.Directory;
+import org.griddynamics.domain.File;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OperationJournalTest {
+
+    private static final LocalDateTime CREATED = LocalDateTime.of(2024, 3, 1, 12, 30, 15, 250_000_000);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void append_RecordsAreRecoveredInOrderAfterReopening() throws IOException {
+        Path file = tempDir.resolve("metadata.journal");
+        File txt = new File();
+        txt.setId(7);
+        txt.setParentId(2);
+        txt.setName("a.txt");
+        txt.setPath("root/docs/a.txt");
+        txt.setFileType("txt");
+        txt.setFileSize(42);
+        txt.setContentHash("2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824");
+        txt.setCreatedAt(CREATED);
+        try (OperationJournal journal = new OperationJournal(file, 1, records -> { })) {
+            journal.awaitDurable(journal.append(JournalRecord.created(txt, "storage/7.txt")));
+            journal.awaitDurable(journal.append(JournalRecord.renamed(7, "b.txt", false)));
+            journal.awaitDurable(journal.append(JournalRecord.moved(7, 3, "root/other/b.txt")));
+            journal.awaitDurable(journal.append(JournalRecord.deleted(3, true)));
+        }
+
+        try (OperationJournal journal = new OperationJournal(file, 1, records -> { })) {
+            List<JournalRecord> recovered = journal.getRecovered();
+
+            assertEquals(List.of(1L, 2L, 3L, 4L), recovered.stream().map(JournalRecord::seq).toList());
+            assertEquals(JournalRecord.created(txt, "storage/7.txt").at(1), recovered.get(0));
+            assertEquals(JournalRecord.renamed(7, "b.txt", false).at(2), recovered.get(1));
+            assertEquals("root/other/b.txt", recovered.get(2).path());
+            assertTrue(recovered.get(3).directory());
+            assertEquals(5, journal.append(JournalRecord.deleted(7, false)));
+        }
+    }
+
+    @Test
+    void open_TornTail_IsCutAndNumberingContinues() throws IOException {
+        Path file = tempDir.resolve("metadata.journal");
+        try (OperationJournal journal = new OperationJournal(file, 1, records -> { })) {
+            journal.awaitDurable(journal.append(JournalRecord.created(directory(2, "a"))));
+            journal.awaitDurable(journal.append(JournalRecord.created(directory(3, "b"))));
+        }
+        long intact = Files.size(file);
+        // Half of a third frame, as a crash in the middle of a write leaves it
+        Files.write(file, new byte[]{0, 0, 0, 60, 1, 2, 3, 4, 5, 6}, StandardOpenOption.APPEND);
+
+        try (OperationJournal journal = new OperationJournal(file, 1, records -> { })) {
+            assertEquals(2, journal.getRecovered().size());
+            assertEquals(intact, Files.size(file));
+            journal.awaitDurable(journal.append(JournalRecord.created(directory(4, "c"))));
+        }
+        try (OperationJournal journal = new OperationJournal(file, 1, records -> { })) {
+            assertEquals(List.of(1L, 2L, 3L), journal.getRecovered().stream().map(JournalRecord::seq).toList());
+        }
+    }
+
+    @Test
+    void open_CorruptFrame_DropsItAndEverythingAfter() throws IOException {
+        Path file = tempDir.resolve("metadata.journal");
+        try (OperationJournal journal = new OperationJournal(file, 1, records -> { })) {
+            journal.awaitDurable(journal.append(JournalRecord.created(directory(2, "a"))));
+            journal.awaitDurable(journal.append(JournalRecord.created(directory(3, "b"))));
+        }
+        byte[] content = Files.readAllBytes(file);
+        content[content.length - 3] ^= 0x55;
+        Files.write(file, content);
+
+        try (OperationJournal journal = new OperationJournal(file, 1, records -> { })) {
+            assertEquals(List.of(1L), journal.getRecovered().stream().map(JournalRecord::seq).toList());
+        }
+    }
+
+    @Test
+    void append_RecordsQueuedDuringAnFsyncShareTheNextOne() throws Exception {
+        CountDownLatch firstWritten = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<List<JournalRecord>> groups = Collections.synchronizedList(new ArrayList<>());
+        try (OperationJournal journal = new OperationJournal(tempDir.resolve("metadata.journal"), 1, group -> {
+            groups.add(group);
+            firstWritten.countDown();
+            try {
+                // Hold the flusher, as a slow fsync would, while more records arrive
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        })) {
+            journal.append(JournalRecord.created(directory(2, "first")));
+            assertTrue(firstWritten.await(10, TimeUnit.SECONDS));
+            long last = 0;
+            for (int i = 0; i < 10; i++) {
+                last = journal.append(JournalRecord.created(directory(3 + i, "d" + i)));
+            }
+            release.countDown();
+            journal.awaitDurable(last);
+
+            assertEquals(2, journal.getSyncCount());
+            assertEquals(11, journal.getDurableSeq());
+        }
+        assertEquals(List.of(1, 10), groups.stream().map(List::size).toList());
+    }
+
+    @Test
+    void truncateIfReplayed_EmptiesTheFileOnceEverythingIsReplayed() throws IOException {
+        Path file = tempDir.resolve("metadata.journal");
+        try (OperationJournal journal = new OperationJournal(file, 1, records -> { })) {
+            journal.awaitDurable(journal.append(JournalRecord.created(directory(2, "a"))));
+            journal.awaitDurable(journal.append(JournalRecord.created(directory(3, "b"))));
+
+            journal.truncateIfReplayed(1);
+            assertTrue(Files.size(file) > 0);
+            journal.truncateIfReplayed(2);
+            assertEquals(0, Files.size(file));
+        }
+
+        try (OperationJournal journal = new OperationJournal(file, 3, records -> { })) {
+            assertTrue(journal.getRecovered().isEmpty());
+            assertEquals(3, journal.append(JournalRecord.deleted(2, true)));
+        }
+    }
+
+    @Test
+    void append_AfterClose_Fails() throws IOException {
+        OperationJournal journal = new OperationJournal(tempDir.resolve("metadata.journal"), 1, records -> { });
+        journal.close();
+
+        assertThrows(IOException.class, () -> journal.append(JournalRecord.deleted(2, true)));
+    }
+
+    private static Directory directory(int id, String name) {
+        Directory dir = new Directory();
+        dir.setId(id);
+        dir.setParentId(1);
+        dir.setName(name);
+        dir.setPath("root/" + name);
+        dir.setCreatedAt(CREATED);
+        return dir;
+    }
+}
@@ -0,0 +1,39 @@
+package org.griddynamics.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PathCacheTest {
+
+    @Test
+    void put_WhenFull_EvictsLeastRecentlyUsedPath() {
+        PathCache cache = new PathCache(2);
+        cache.put("root/a", 2);
+        cache.put("root/b", 3);
+        cache.get("root/a");
+
+        cache.put("root/c", 4);
+
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.get("root/a"));
+        assertNull(cache.get("root/b"));
+        assertEquals(4, cache.get("root/c"));
+    }
+
+    @Test
+    void invalidate_RemovesPathAndDescendantsOnly() {
+        PathCache cache = new PathCache(10);
+        cache.put("root/a", 2);
+        cache.put("root/a/b", 3);
+        cache.put("root/a/b/c", 4);
+        cache.put("root/ab", 5);
+
+        cache.invalidate("root/a");
+
+        assertNull(cache.get("root/a"));
+        assertNull(cache.get("root/a/b"));
+        assertNull(cache.get("root/a/b/c"));
+        assertEquals(5, cache.get("root/ab"));
+    }
+}
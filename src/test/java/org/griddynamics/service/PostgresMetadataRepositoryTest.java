@@ -0,0 +1,31 @@
+package org.griddynamics.service;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Runs the repository contract against {@link DatabaseService} on a PostgreSQL database with the
+ * schema from init.sql, when one is given:
+ * {@code mvn test -Dtest.db.url=jdbc:postgresql://localhost:5432/jhil_database -Dtest.db.user=... -Dtest.db.password=...}.
+ * Skipped otherwise.
+ */
+class PostgresMetadataRepositoryTest extends MetadataRepositoryContract {
+
+    private Connection connection;
+
+    @Override
+    protected MetadataRepository open() throws Exception {
+        String url = System.getProperty("test.db.url");
+        assumeTrue(url != null, "test.db.url not set");
+        connection = DriverManager.getConnection(url, System.getProperty("test.db.user"),
+                System.getProperty("test.db.password", ""));
+        return new DatabaseService(connection);
+    }
+
+    @Override
+    protected void close() throws Exception {
+        if (connection != null) connection.close();
+    }
+}
@@ -0,0 +1,97 @@
+package org.griddynamics.service;
+
+import org.griddynamics.domain.File;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.FileInputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentedCopierTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void copy_UnevenSegmentsProduceIdenticalFile() throws Exception {
+        byte[] content = new byte[3 * SegmentedCopier.BUFFER_BYTES + 12_345];
+        new Random(7).nextBytes(content);
+        Path source = Files.write(tempDir.resolve("source.bin"), content);
+        Path target = tempDir.resolve("target.bin");
+        SegmentedCopier copier = new SegmentedCopier(0, SegmentedCopier.BUFFER_BYTES + 7, 3);
+
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+            assertEquals(content.length, copier.copy(in, target));
+            assertEquals(0, in.position());
+        }
+
+        assertArrayEquals(content, Files.readAllBytes(target));
+    }
+
+    @Test
+    void copy_WithDigest_HashesTheContentInOrder() throws Exception {
+        byte[] content = new byte[2 * SegmentedCopier.BUFFER_BYTES + 999];
+        new Random(11).nextBytes(content);
+        Path source = Files.write(tempDir.resolve("source.bin"), content);
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+            new SegmentedCopier(0, SegmentedCopier.BUFFER_BYTES / 2, 4).copy(in, tempDir.resolve("target.bin"), digest);
+        }
+
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(content), digest.digest());
+        assertArrayEquals(content, Files.readAllBytes(tempDir.resolve("target.bin")));
+    }
+
+    @Test
+    void appliesTo_OnlyLargeMultiSegmentFilesWithParallelism() {
+        SegmentedCopier copier = new SegmentedCopier(100, 64, 4);
+
+        assertFalse(copier.appliesTo(99));
+        assertTrue(copier.appliesTo(100));
+        assertFalse(new SegmentedCopier(0, 64, 4).appliesTo(64));
+        assertFalse(new SegmentedCopier(0, 64, 1).appliesTo(1000));
+        assertThrows(IllegalArgumentException.class, () -> new SegmentedCopier(0, 0, 4));
+    }
+
+    @Test
+    void copy_ExistingTargetIsLeftAlone() throws Exception {
+        Path source = Files.write(tempDir.resolve("source.bin"), new byte[10]);
+        Path target = Files.writeString(tempDir.resolve("target.bin"), "keep");
+
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+            assertThrows(FileAlreadyExistsException.class, () -> new SegmentedCopier(0, 4, 2).copy(in, target));
+        }
+
+        assertEquals("keep", Files.readString(target));
+    }
+
+    @Test
+    void saveFileToDisk_LargeLocalFileIsCopiedInSegments() throws Exception {
+        byte[] content = new byte[SegmentedCopier.BUFFER_BYTES + 1];
+        new Random(3).nextBytes(content);
+        Path local = Files.write(tempDir.resolve("upload.bin"), content);
+        StorageService storageService = new StorageService(tempDir.resolve("storage").toString());
+        storageService.setSegmentedCopier(new SegmentedCopier(1024, 4096, 4));
+
+        try (FileInputStream in = new FileInputStream(local.toFile())) {
+            storageService.saveFileToDisk(5, in, "bin");
+        }
+        Path downloaded = tempDir.resolve("download.bin");
+        File file = new File();
+        file.setId(5);
+        file.setFileType("bin");
+        storageService.copyBlob(file, downloaded);
+
+        assertArrayEquals(content, Files.readAllBytes(storageService.resolveBlob(5, "bin")));
+        assertArrayEquals(content, Files.readAllBytes(downloaded));
+    }
+}
@@ -1,7 +1,11 @@
 package org.griddynamics.service;
 
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.griddynamics.domain.Directory;
 import org.griddynamics.domain.File;
+import org.griddynamics.metrics.BlobTransferEvent;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
@@ -13,6 +17,8 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.util.HexFormat;
+import java.util.List;
 import java.util.Scanner;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -63,6 +69,13 @@ class StorageServiceTest {
         assertEquals(content, Files.readString(expectedFile));
     }
 
+    @Test
+    void saveFileToDisk_shouldReturnSha256OfContent() throws Exception {
+        byte[] hash = storageService.saveFileToDisk(2, new ByteArrayInputStream("abc".getBytes()), "txt");
+
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", HexFormat.of().formatHex(hash));
+    }
+
     @Test
     void saveFileToDisk_shouldThrowWhenInputStreamFails() throws IOException {
         InputStream badStream = mock(InputStream.class);
@@ -72,6 +85,29 @@ class StorageServiceTest {
                 storageService.saveFileToDisk(1, badStream, "txt"));
     }
 
+    @Test
+    void blobTransfers_shouldEmitJfrEventsWhenEnabled() throws Exception {
+        File file = new File();
+        file.setId(3);
+        file.setFileType("txt");
+        Path recorded = tempDir.resolve("blob.jfr");
+
+        try (Recording recording = new Recording()) {
+            recording.enable(BlobTransferEvent.class).withoutThreshold();
+            recording.start();
+            storageService.saveFileToDisk(3, new ByteArrayInputStream("hello".getBytes()), "txt");
+            storageService.copyBlob(file, tempDir.resolve("copy.txt"));
+            recording.stop();
+            recording.dump(recorded);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(recorded).stream()
+                .filter(e -> e.getEventType().getName().equals("org.griddynamics.BlobTransfer"))
+                .toList();
+        assertEquals(List.of("write", "read"), events.stream().map(e -> e.getString("direction")).toList());
+        assertTrue(events.stream().allMatch(e -> e.getInt("fileId") == 3 && e.getLong("bytes") == 5));
+    }
+
     @Test
     void downloadFile_shouldCopyFileToDestination() throws IOException {
         File testFile = new File();
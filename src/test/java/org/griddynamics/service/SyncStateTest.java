@@ -0,0 +1,114 @@
+package org.griddynamics.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SyncStateTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void saveAndLoad_RoundTripsEntriesWithAndWithoutHash() throws Exception {
+        SyncState state = new SyncState();
+        state.put("a.txt", new SyncState.Entry(1, 5, 1000, "2024-05-01T10:00", "abc"));
+        state.put("docs/b c.txt", new SyncState.Entry(2, 7, 2000, "null", null));
+        state.save(tempDir);
+
+        SyncState loaded = SyncState.load(tempDir);
+
+        assertEquals(Set.of("a.txt", "docs/b c.txt"), loaded.paths());
+        assertEquals(state.get("a.txt"), loaded.get("a.txt"));
+        assertEquals(state.get("docs/b c.txt"), loaded.get("docs/b c.txt"));
+        assertFalse(Files.exists(tempDir.resolve(SyncState.FILE_NAME + ".tmp")));
+    }
+
+    @Test
+    void load_MissingFileIsEmptyAndCorruptFileFails() throws Exception {
+        assertTrue(SyncState.load(tempDir).paths().isEmpty());
+
+        Files.writeString(tempDir.resolve(SyncState.FILE_NAME), "1\tnot-a-size\t0\tnull\t-\ta.txt\n");
+
+        assertThrows(IOException.class, () -> SyncState.load(tempDir));
+    }
+
+    @Test
+    void save_AppendsChangesToTheLogAndCompactsOnceItOutgrowsTheState() throws Exception {
+        SyncState state = new SyncState();
+        for (int i = 0; i < 10; i++) {
+            state.put("f" + i, new SyncState.Entry(i, i, 1000, "2024-05-01T10:00", null));
+        }
+        state.save(tempDir);
+        assertFalse(Files.exists(tempDir.resolve(SyncState.LOG_NAME)));
+        state.put("f3", new SyncState.Entry(3, 4, 2000, "2024-05-01T10:00", null));
+        state.remove("f4");
+        state.save(tempDir);
+
+        String log = Files.readString(tempDir.resolve(SyncState.LOG_NAME));
+        assertTrue(log.endsWith("x\tf4" + System.lineSeparator()));
+        SyncState loaded = SyncState.load(tempDir);
+        assertEquals(9, loaded.paths().size());
+        assertEquals(4, loaded.get("f3").size());
+        assertNull(loaded.get("f4"));
+
+        for (int i = 0; i < 10; i++) {
+            loaded.put("f" + i, new SyncState.Entry(i, i, 3000, "2024-05-01T10:00", null));
+        }
+        loaded.save(tempDir);
+
+        assertFalse(Files.exists(tempDir.resolve(SyncState.LOG_NAME)));
+        assertEquals(10, SyncState.load(tempDir).paths().size());
+    }
+
+    @Test
+    void load_IgnoresALogLineTornByAnInterruptedAppend() throws Exception {
+        SyncState state = new SyncState();
+        state.put("a.txt", new SyncState.Entry(1, 5, 1000, "2024-05-01T10:00", null));
+        state.save(tempDir);
+        Files.writeString(tempDir.resolve(SyncState.LOG_NAME), "2\t7\t20", StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+
+        SyncState loaded = SyncState.load(tempDir);
+
+        assertEquals(Set.of("a.txt"), loaded.paths());
+    }
+
+    @Test
+    void folderDigests_SurviveTheLogAndCompaction() throws Exception {
+        SyncState state = new SyncState();
+        state.put("docs/a.txt", new SyncState.Entry(1, 5, 1000, "2024-05-01T10:00", null));
+        state.putDigest("", "aa");
+        state.putDigest("docs", "bb");
+        state.save(tempDir);
+        state.putDigest("docs", "cc");
+        state.removeDigest("");
+        state.save(tempDir);
+
+        SyncState loaded = SyncState.load(tempDir);
+
+        assertTrue(Files.exists(tempDir.resolve(SyncState.LOG_NAME)));
+        assertNull(loaded.getDigest(""));
+        assertEquals("cc", loaded.getDigest("docs"));
+        assertEquals(Set.of("docs"), loaded.foldersUnder(""));
+        assertEquals(Set.of("docs/a.txt"), loaded.paths());
+    }
+
+    @Test
+    void pathsUnder_ReturnsOnlyTheFolderSubtree() {
+        SyncState state = new SyncState();
+        for (String path : List.of("docs", "docs/a.txt", "docs/sub/b.txt", "docs-old/c.txt", "docs0", "e.txt")) {
+            state.put(path, new SyncState.Entry(1, 1, 1, "null", null));
+        }
+
+        assertEquals(List.of("docs/a.txt", "docs/sub/b.txt"), List.copyOf(state.pathsUnder("docs")));
+    }
+}
@@ -0,0 +1,80 @@
+package org.griddynamics.service;
+
+import org.griddynamics.domain.Directory;
+import org.griddynamics.domain.File;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class TreeDiffTest {
+
+    private DatabaseService mockDbService;
+    private TreeDiff treeDiff;
+
+    @BeforeEach
+    void setUp() {
+        mockDbService = mock(DatabaseService.class);
+        treeDiff = new TreeDiff(mockDbService);
+    }
+
+    @Test
+    void diff_EqualDigests_ListsNothing() {
+        TreeDiff.Result result = treeDiff.diff(directory(1, "a", "aa"), directory(2, "b", "aa"));
+
+        assertTrue(result.changes().isEmpty());
+        assertEquals(0, result.foldersCompared());
+        verifyNoInteractions(mockDbService);
+    }
+
+    @Test
+    void diff_DescendsOnlyIntoFoldersWhoseDigestsDiffer() {
+        Directory left = directory(1, "left", "01");
+        Directory right = directory(2, "right", "02");
+        when(mockDbService.getChildrenWithDigests(1)).thenReturn(List.of(
+                directory(10, "same", "ff"), directory(11, "changed", "03"),
+                file(12, "edited.txt", 5, "aa"), file(13, "gone.txt", 1, "bb"), directory(14, "kind", "04")));
+        when(mockDbService.getChildrenWithDigests(2)).thenReturn(List.of(
+                directory(20, "same", "ff"), directory(21, "changed", "05"),
+                file(22, "edited.txt", 5, "cc"), file(23, "new.txt", 1, "dd"), file(24, "kind", 0, "ee")));
+        when(mockDbService.getChildrenWithDigests(11)).thenReturn(List.of(file(30, "x", 1, "11")));
+        when(mockDbService.getChildrenWithDigests(21)).thenReturn(List.of(file(31, "x", 2, "12")));
+
+        TreeDiff.Result result = treeDiff.diff(left, right);
+
+        assertEquals(List.of("~ changed/x", "~ edited.txt", "- gone.txt", "- kind", "+ kind", "+ new.txt"),
+                result.changes().stream().map(TreeDiffTest::describe).toList());
+        assertEquals(2, result.foldersCompared());
+        verify(mockDbService, never()).getChildrenWithDigests(10);
+        verify(mockDbService, never()).getChildrenWithDigests(20);
+    }
+
+    private static String describe(TreeDiff.Change change) {
+        String mark = switch (change.kind()) {
+            case ADDED -> "+";
+            case REMOVED -> "-";
+            case MODIFIED -> "~";
+        };
+        return mark + " " + change.path();
+    }
+
+    private static Directory directory(int id, String name, String digest) {
+        Directory dir = new Directory();
+        dir.setId(id);
+        dir.setName(name);
+        dir.setDigest(digest);
+        return dir;
+    }
+
+    private static File file(int id, String name, long size, String hash) {
+        File file = new File();
+        file.setId(id);
+        file.setName(name);
+        file.setFileSize(size);
+        file.setContentHash(hash);
+        return file;
+    }
+}
@@ -0,0 +1,216 @@
+package org.griddynamics.service;
+
+import org.griddynamics.domain.Directory;
+import org.griddynamics.domain.File;
+import org.griddynamics.domain.StorageEntity;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Runs the repository contract against {@link WriteBehindRepository}, with the database mocked:
+ * it holds the root and the directories replayed to it, and replayed records are collected
+ * instead of written.
+ */
+class WriteBehindRepositoryTest extends MetadataRepositoryContract {
+
+    @TempDir
+    Path journalDir;
+
+    private final List<JournalRecord> replayed = Collections.synchronizedList(new ArrayList<>());
+    private volatile boolean databaseDown;
+    private DatabaseService replayService;
+
+    @Override
+    protected MetadataRepository open() throws Exception {
+        return openRepository();
+    }
+
+    @Override
+    protected void close() throws Exception {
+        ((WriteBehindRepository) repository).close();
+    }
+
+    @Test
+    void changes_AreReplayedToTheDatabaseInJournalOrder() throws Exception {
+        WriteBehindRepository writeBehind = (WriteBehindRepository) repository;
+        Directory dir = mkdir(repository.getRootDirectory(), "docs");
+        repository.rename(dir.getId(), "papers", true);
+        repository.deleteDirectory(dir.getId());
+
+        assertTrue(writeBehind.awaitReplay(10_000));
+        assertEquals(0, writeBehind.getBacklog());
+        List<JournalRecord.Op> ops = replayed.stream().map(JournalRecord::op).toList();
+        assertEquals(List.of(JournalRecord.Op.CREATE, JournalRecord.Op.RENAME, JournalRecord.Op.DELETE),
+                ops.subList(ops.size() - 3, ops.size()));
+        assertEquals(LongStream.rangeClosed(1, replayed.size()).boxed().toList(),
+                replayed.stream().map(JournalRecord::seq).toList());
+        assertEquals(replayed.size(), writeBehind.getAppliedSeq());
+    }
+
+    @Test
+    void open_ReappliesRecordsTheDatabaseHasNotSeen() throws Exception {
+        databaseDown = true;
+        Directory dir = mkdir(repository.getRootDirectory(), "kept");
+        upload(dir, "a.txt", "hello");
+        assertFalse(((WriteBehindRepository) repository).awaitReplay(200));
+        ((WriteBehindRepository) repository).close();
+
+        databaseDown = false;
+        repository = openRepository();
+
+        assertEquals("root/kept/a.txt", repository.resolvePath("root/kept/a.txt").getPath());
+        assertEquals(5, repository.getDirectory(dir.getId()).getTotalBytes());
+        assertTrue(((WriteBehindRepository) repository).awaitReplay(10_000));
+        assertTrue(replayed.stream().anyMatch(record -> "a.txt".equals(record.name())));
+    }
+
+    @Test
+    @Override
+    void deleteFile_RemovesRowAndBlob() {
+        Directory dir = mkdir(repository.getRootDirectory(), "deleted-" + System.nanoTime());
+        File file = upload(dir, "f.txt", "hello");
+        databaseDown = true;
+
+        repository.deleteFile(file, storage);
+
+        assertNull(repository.getFile(file.getId()));
+        assertEquals(0, repository.getDirectory(dir.getId()).getTotalBytes());
+        assertTrue(Files.exists(storage.resolveBlob(file.getId(), "txt")), "blob kept until the row is gone");
+        databaseDown = false;
+        assertDoesNotThrow(() -> assertTrue(((WriteBehindRepository) repository).awaitReplay(10_000)));
+        assertFalse(Files.exists(storage.resolveBlob(file.getId(), "txt")));
+    }
+
+    @Test
+    void journalFailure_TakesTheChangeBackOut() throws Exception {
+        WriteBehindRepository writeBehind = (WriteBehindRepository) repository;
+        Directory root = repository.getRootDirectory();
+        Directory dir = mkdir(root, "before-" + System.nanoTime());
+        writeBehind.close();
+
+        assertThrows(RuntimeException.class, () -> mkdir(root, "after"));
+        assertThrows(RuntimeException.class, () -> repository.rename(dir.getId(), "renamed", true));
+
+        assertNull(repository.resolvePath("root/after"));
+        assertEquals(dir.getName(), repository.getDirectory(dir.getId()).getName());
+        repository = openRepository();
+    }
+
+    @Test
+    void saveFile_BlobWriteFails_LeavesNoItemBehind() throws Exception {
+        Directory dir = mkdir(repository.getRootDirectory(), "uploads-" + System.nanoTime());
+        StorageService failing = mock(StorageService.class);
+        when(failing.saveFileToDisk(anyInt(), any(), anyString())).thenThrow(new IOException("disk full"));
+        File file = new File();
+        file.setName("a.txt");
+        file.setParentId(dir.getId());
+        file.setFileType("txt");
+        file.setFileSize(5);
+
+        assertThrows(RuntimeException.class,
+                () -> repository.saveFile(file, new ByteArrayInputStream(new byte[5]), failing));
+
+        assertNull(repository.resolvePath(dir.getPath() + "/a.txt"));
+        assertEquals(0, repository.getDirectory(dir.getId()).getChildCount());
+        assertEquals("a.txt", upload(dir, "a.txt", "hello").getName());
+    }
+
+    @Test
+    void rejectedRecord_IsSetAsideAndTheRestReplayed() throws Exception {
+        WriteBehindRepository writeBehind = (WriteBehindRepository) repository;
+        Directory root = repository.getRootDirectory();
+        mkdir(root, "first");
+        mkdir(root, "clash");
+        mkdir(root, "last");
+
+        assertTrue(writeBehind.awaitReplay(10_000));
+
+        assertEquals(1, writeBehind.getRejectedRecords());
+        assertEquals(0, writeBehind.getBacklog());
+        List<String> names = replayed.stream().map(JournalRecord::name).toList();
+        assertTrue(names.containsAll(List.of("first", "last")));
+        assertFalse(names.contains("clash"));
+        verify(replayService).skipJournalRecord(eq("metadata.journal"), anyLong());
+        assertTrue(Files.readString(journalDir.resolve("metadata.journal.rejected")).contains("name=clash"));
+    }
+
+    @Test
+    void rejectedRecord_IsDroppedFromTheView() throws Exception {
+        WriteBehindRepository writeBehind = (WriteBehindRepository) repository;
+        Directory root = repository.getRootDirectory();
+        mkdir(root, "first");
+        mkdir(root, "clash");
+        mkdir(root, "last");
+
+        assertTrue(writeBehind.awaitReplay(10_000));
+
+        assertNull(repository.resolvePath("root/clash"));
+        assertNotNull(repository.resolvePath("root/first"));
+        assertNotNull(repository.resolvePath("root/last"));
+        List<String> children = repository.getChildren(root.getId()).stream().map(StorageEntity::getName).toList();
+        assertTrue(children.containsAll(List.of("first", "last")));
+        assertFalse(children.contains("clash"));
+        assertEquals(children.size(), repository.getDirectory(root.getId()).getChildCount());
+        assertEquals("clash", mkdir(root, "clash").getName());
+    }
+
+    private WriteBehindRepository openRepository() throws Exception {
+        DataSource dataSource = mock(DataSource.class);
+        when(dataSource.getConnection()).thenReturn(mock(Connection.class));
+        DatabaseService dbService = mock(DatabaseService.class);
+        replayService = mock(DatabaseService.class);
+        when(dbService.withConnection(any())).thenReturn(replayService);
+        doAnswer(invocation -> {
+            Directory root = new Directory();
+            root.setId(1);
+            root.setName("root");
+            root.setPath("root");
+            InMemoryMetadataRepository target = invocation.getArgument(0);
+            target.restore(root);
+            synchronized (replayed) {
+                for (JournalRecord record : replayed) {
+                    if (record.op() != JournalRecord.Op.CREATE || !record.directory()) continue;
+                    Directory dir = new Directory();
+                    dir.setId(record.id());
+                    dir.setParentId(record.parentId());
+                    dir.setName(record.name());
+                    dir.setPath(record.path());
+                    target.restore(dir);
+                }
+            }
+            return 1;
+        }).when(replayService).loadInto(any());
+        when(replayService.getAppliedJournalSeq(anyString())).thenAnswer(invocation -> {
+            synchronized (replayed) {
+                return replayed.stream().mapToLong(JournalRecord::seq).max().orElse(0);
+            }
+        });
+        when(replayService.replayJournal(anyString(), anyList())).thenAnswer(invocation -> {
+            if (databaseDown) throw new RuntimeException("Failed to replay journal");
+            List<JournalRecord> records = invocation.getArgument(1);
+            if (records.stream().anyMatch(record -> "clash".equals(record.name()))) {
+                throw new RuntimeException("Failed to replay journal",
+                        new SQLException("duplicate key value violates unique constraint", "23505"));
+            }
+            replayed.addAll(records);
+            return records.size();
+        });
+        return new WriteBehindRepository(dataSource, dbService, journalDir.resolve("metadata.journal"), 100);
+    }
+}
@@ -0,0 +1,170 @@
+package org.griddynamics.snapshot;
+
+import org.griddynamics.domain.Directory;
+import org.griddynamics.domain.File;
+import org.griddynamics.domain.Page;
+import org.griddynamics.domain.StorageEntity;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetadataSnapshotTest {
+
+    private static final LocalDateTime CREATED = LocalDateTime.of(2024, 3, 1, 12, 30, 15, 250_000_000);
+
+    @TempDir
+    Path tempDir;
+
+    private MetadataSnapshot snapshot;
+
+    /** root(1) / docs(2) [b.txt(4), a.txt(5), reports(6) / q1.pdf(7)], photos(3) / A_B.jpg(8). */
+    @BeforeEach
+    void setUp() throws IOException {
+        SnapshotWriter writer = new SnapshotWriter();
+        writer.add(1, 0, true, "root", null, 1400, 4, CREATED, CREATED);
+        writer.add(2, 1, true, "docs", null, 400, 3, CREATED, CREATED);
+        writer.add(3, 1, true, "photos", null, 1000, 1, CREATED, null);
+        writer.add(4, 2, false, "b.txt", "txt", 100, 0, CREATED, CREATED);
+        writer.add(5, 2, false, "a.txt", "txt", 200, 0, CREATED, CREATED);
+        writer.add(6, 2, true, "reports", null, 100, 1, CREATED, CREATED);
+        writer.add(7, 6, false, "q1.pdf", "pdf", 100, 0, CREATED, CREATED);
+        writer.add(8, 3, false, "A_B.jpg", "jpg", 1000, 0, null, null);
+        Path file = tempDir.resolve("drive.snap");
+        writer.write(file);
+        snapshot = MetadataSnapshot.open(file);
+    }
+
+    @Test
+    void open_ReadsTheRootAndRollups() {
+        Directory root = snapshot.getRootDirectory();
+
+        assertEquals(8, snapshot.size());
+        assertEquals(1, root.getId());
+        assertEquals("root", root.getPath());
+        assertEquals(2, root.getChildCount());
+        assertEquals(4, root.getFileCount());
+        assertEquals(1400, root.getTotalBytes());
+        assertEquals(CREATED, root.getCreatedAt());
+    }
+
+    @Test
+    void getChildren_ReturnsChildrenSortedByNameWithTheirPaths() {
+        List<StorageEntity> children = snapshot.getChildren(2);
+
+        assertEquals(List.of("a.txt", "b.txt", "reports"), children.stream().map(StorageEntity::getName).toList());
+        assertEquals("root/docs/a.txt", children.get(0).getPath());
+        assertEquals("txt", ((File) children.get(0)).getFileType());
+        assertEquals(200, ((File) children.get(0)).getFileSize());
+        assertTrue(snapshot.getChildren(7).isEmpty());
+    }
+
+    @Test
+    void resolvePath_FindsItemsAtEveryDepth() {
+        assertEquals(7, snapshot.resolvePath("root/docs/reports/q1.pdf").getId());
+        assertEquals(6, snapshot.resolveDirectoryId("root/docs/reports"));
+        assertNull(snapshot.resolveDirectoryId("root/docs/a.txt"));
+        assertNull(snapshot.resolvePath("root/docs/missing"));
+        assertNull(snapshot.resolvePath("other/docs"));
+    }
+
+    @Test
+    void getFile_BuildsThePathAndKeepsMissingTimestamps() {
+        File file = snapshot.getFile(8);
+
+        assertEquals("root/photos/A_B.jpg", file.getPath());
+        assertNull(file.getCreatedAt());
+        assertNull(snapshot.getFile(3));
+        assertNull(snapshot.getDirectory(99));
+    }
+
+    @Test
+    void searchFilesAndDirectories_MatchesCaseInsensitiveDirectoriesFirst() {
+        List<StorageEntity> results = snapshot.searchFilesAndDirectories("S");
+
+        assertEquals(List.of("docs", "photos", "reports"), results.stream().map(StorageEntity::getName).toList());
+        assertEquals("root/docs/reports", results.get(2).getPath());
+        assertEquals(List.of(8), snapshot.searchFilesAndDirectories("a_b").stream().map(StorageEntity::getId).toList());
+    }
+
+    @Test
+    void searchFilesAndDirectories_PagesFromTheCursorAndMatchesWildcardsLiterally() {
+        Page<StorageEntity> first = snapshot.searchFilesAndDirectories("T", null, 3);
+        Page<StorageEntity> second = snapshot.searchFilesAndDirectories("T", first.last(), 3);
+
+        assertEquals(List.of("photos", "reports", "root"), first.items().stream().map(StorageEntity::getName).toList());
+        assertTrue(first.hasMore());
+        assertEquals(List.of("a.txt", "b.txt"), second.items().stream().map(StorageEntity::getName).toList());
+        assertFalse(second.hasMore());
+        assertEquals(List.of(8), snapshot.searchFilesAndDirectories("_", null, 10).items().stream()
+                .map(StorageEntity::getId).toList());
+    }
+
+    @Test
+    void searchFilesAndDirectories_PagesThroughManyMatchesInSearchOrder() throws IOException {
+        SnapshotWriter writer = new SnapshotWriter();
+        writer.add(1, 0, true, "root", null, 0, 0, null, null);
+        List<String> expected = new ArrayList<>();
+        Random random = new Random(7);
+        for (int id = 2; id < 500; id++) {
+            String name = "Äpfel-" + random.nextInt(100_000) + "-" + id;
+            writer.add(id, 1, id % 10 == 0, name, id % 10 == 0 ? null : "txt", 1, 0, null, null);
+            expected.add((id % 10 == 0 ? "0" : "1") + name);
+        }
+        Collections.sort(expected);
+        Path file = tempDir.resolve("many.snap");
+        writer.write(file);
+        MetadataSnapshot many = MetadataSnapshot.open(file);
+
+        List<String> paged = new ArrayList<>();
+        Page<StorageEntity> page = many.searchFilesAndDirectories("äPFEL", null, 7);
+        paged.addAll(page.items().stream().map(StorageEntity::getName).toList());
+        while (page.hasMore()) {
+            page = many.searchFilesAndDirectories("äPFEL", page.last(), 7);
+            paged.addAll(page.items().stream().map(StorageEntity::getName).toList());
+        }
+
+        assertEquals(expected.stream().map(name -> name.substring(1)).toList(), paged);
+        assertEquals(498, many.searchFilesAndDirectories("%-%").size());
+    }
+
+    @Test
+    void getAllDescendantDirectoryIds_WalksTheSubtree() {
+        assertEquals(Set.of(2, 3, 6), snapshot.getAllDescendantDirectoryIds(1));
+        assertEquals(4, snapshot.getAllDirectories().size());
+        assertEquals(List.of(5, 8), snapshot.getItemsByIds(new int[]{5, 42, 8}).stream().map(StorageEntity::getId).toList());
+    }
+
+    @Test
+    void changes_AreRejected() {
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.deleteDirectory(2));
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.rename(4, "c.txt", false));
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.saveDirectory(new Directory()));
+    }
+
+    @Test
+    void add_RejectsRowsOutOfIdOrder() {
+        SnapshotWriter writer = new SnapshotWriter();
+        writer.add(5, 0, true, "root", null, 0, 0, null, null);
+
+        assertThrows(IllegalArgumentException.class, () -> writer.add(3, 5, true, "a", null, 0, 0, null, null));
+    }
+
+    @Test
+    void open_RejectsOtherFiles() throws IOException {
+        Path other = Files.writeString(tempDir.resolve("other.snap"), "not a snapshot, just some text to read");
+
+        assertThrows(IOException.class, () -> MetadataSnapshot.open(other));
+    }
+}